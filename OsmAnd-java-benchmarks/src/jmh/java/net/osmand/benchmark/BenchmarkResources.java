@@ -0,0 +1,63 @@
+package net.osmand.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.util.Algorithms;
+
+// Test resources of OsmAnd-java (OBF maps, routing and search tests), see collectTestResources task
+public class BenchmarkResources {
+
+	public static final String RESOURCES_PROPERTY = "osmand.test.resources";
+
+	public static File getResourcesDir() {
+		return new File(System.getProperty(RESOURCES_PROPERTY, "../OsmAnd-java/src/test/resources"));
+	}
+
+	public static File getFile(String path) throws FileNotFoundException {
+		File f = new File(getResourcesDir(), path);
+		if (!f.exists()) {
+			throw new FileNotFoundException("Benchmark resource is missing (run OsmAnd-java:collectTestResources): "
+					+ f.getAbsolutePath());
+		}
+		return f;
+	}
+
+	public static BinaryMapIndexReader openReader(File obf) throws IOException {
+		return new BinaryMapIndexReader(new RandomAccessFile(obf, "r"), obf);
+	}
+
+	// the biggest search test map gives the most representative load
+	public static File getSearchObf() throws IOException {
+		File[] files = getFile("search").listFiles();
+		File obfZipFile = null;
+		for (int i = 0; files != null && i < files.length; i++) {
+			File file = files[i];
+			if (file.getName().endsWith(".obf.gz") && (obfZipFile == null || file.length() > obfZipFile.length())) {
+				obfZipFile = file;
+			}
+		}
+		if (obfZipFile == null) {
+			throw new FileNotFoundException("No search test maps in " + getFile("search").getAbsolutePath());
+		}
+		return unpack(obfZipFile);
+	}
+
+	public static File unpack(File obfZipFile) throws IOException {
+		File obfFile = new File(obfZipFile.getParentFile(), obfZipFile.getName().replace(".gz", ""));
+		if (!obfFile.exists() || obfFile.lastModified() < obfZipFile.lastModified()) {
+			GZIPInputStream gzin = new GZIPInputStream(new FileInputStream(obfZipFile));
+			FileOutputStream fous = new FileOutputStream(obfFile);
+			Algorithms.streamCopy(gzin, fous);
+			fous.close();
+			gzin.close();
+		}
+		return obfFile;
+	}
+}
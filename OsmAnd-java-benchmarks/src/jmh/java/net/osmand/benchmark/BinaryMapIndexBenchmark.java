@@ -0,0 +1,54 @@
+package net.osmand.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.binary.BinaryMapDataObject;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.data.QuadRect;
+
+// OBF decoding: BinaryMapIndexReader.searchPoi and searchMapIndex over the whole map bounding box
+@State(Scope.Benchmark)
+public class BinaryMapIndexBenchmark {
+
+	@Param({ "14" })
+	public int zoom;
+
+	private BinaryMapIndexReader reader;
+	private QuadRect bbox;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		reader = BenchmarkResources.openReader(BenchmarkResources.getSearchObf());
+		bbox = new QuadRect(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public List<Amenity> searchPoi() throws IOException {
+		SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest((int) bbox.left, (int) bbox.right,
+				(int) bbox.top, (int) bbox.bottom, zoom, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+		return reader.searchPoi(req);
+	}
+
+	@Benchmark
+	public List<BinaryMapDataObject> searchMapIndex() throws IOException {
+		SearchRequest<BinaryMapDataObject> req = BinaryMapIndexReader.buildSearchRequest((int) bbox.left, (int) bbox.right,
+				(int) bbox.top, (int) bbox.bottom, zoom, null);
+		return reader.searchMapIndex(req);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+}
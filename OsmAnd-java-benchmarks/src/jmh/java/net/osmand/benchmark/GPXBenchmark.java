@@ -0,0 +1,74 @@
+package net.osmand.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.gpx.GPXFile;
+import net.osmand.gpx.GPXUtilities;
+import net.osmand.gpx.GPXUtilities.Track;
+import net.osmand.gpx.GPXUtilities.TrkSegment;
+import net.osmand.gpx.GPXUtilities.WptPt;
+
+// GPXUtilities load and save of generated track (random walk with time, elevation and speed)
+@State(Scope.Benchmark)
+public class GPXBenchmark {
+
+	@Param({ "10000" })
+	public int points;
+
+	private GPXFile gpx;
+	private File file;
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random rnd = new Random(points);
+		gpx = new GPXFile("benchmark");
+		Track track = new Track();
+		TrkSegment segment = new TrkSegment();
+		double lat = 52.37, lon = 4.89;
+		long time = 1_600_000_000_000L;
+		for (int i = 0; i < points; i++) {
+			lat += (rnd.nextDouble() - 0.5) * 1e-3;
+			lon += (rnd.nextDouble() - 0.5) * 1e-3;
+			time += 1000;
+			segment.points.add(new WptPt(lat, lon, time, 10 + rnd.nextInt(50), rnd.nextDouble() * 20, 5));
+		}
+		track.segments.add(segment);
+		gpx.tracks.add(track);
+		for (int i = 0; i < points / 100; i++) {
+			gpx.addPoint(new WptPt(lat + i * 1e-4, lon, "desc " + i, "wpt " + i, "benchmark", null, null, null));
+		}
+		file = File.createTempFile("benchmark", ".gpx");
+		output = File.createTempFile("benchmark-out", ".gpx");
+		Exception e = GPXUtilities.writeGpxFile(file, gpx);
+		if (e != null) {
+			throw new IOException(e);
+		}
+	}
+
+	@Benchmark
+	public GPXFile load() {
+		return GPXUtilities.loadGPXFile(file);
+	}
+
+	@Benchmark
+	public Exception save() {
+		return GPXUtilities.writeGpxFile(output, gpx);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		output.delete();
+	}
+}
@@ -0,0 +1,109 @@
+package net.osmand.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.LocationsHolder;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.GpxRouteApproximation;
+import net.osmand.router.RoutePlannerFrontEnd;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RouteSegmentResult;
+import net.osmand.router.RoutingConfiguration;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.router.RoutingContext;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+// GpxRouteApproximation by routing (sequential and split into parallel chunks) of a long track:
+// the longest route of test_routing.json is calculated in setup and driven there and back
+@State(Scope.Benchmark)
+public class GpxApproximationBenchmark {
+
+	private static final String ROUTING_MAP = "routing/Routing_test_archive.obf";
+
+	@Param({ "1", "4" })
+	public int threads;
+
+	private BinaryMapIndexReader[] readers;
+	private RoutePlannerFrontEnd frontEnd;
+	private List<LatLon> track;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		RoutePlannerFrontEnd.CALCULATE_MISSING_MAPS = false;
+		File map = BenchmarkResources.getFile(ROUTING_MAP);
+		readers = new BinaryMapIndexReader[] { BenchmarkResources.openReader(map) };
+		frontEnd = new RoutePlannerFrontEnd();
+		frontEnd.disableHHRoutingConfig();
+		frontEnd.setUseNativeApproximation(false);
+		frontEnd.setGpxApproximationThreads(threads);
+
+		LatLon[] longest = null;
+		JSONArray tests = new JSONArray(Algorithms.getFileAsString(BenchmarkResources.getFile("test_routing.json")));
+		for (int i = 0; i < tests.length(); i++) {
+			JSONObject te = tests.getJSONObject(i);
+			JSONObject params = te.optJSONObject("params");
+			if (te.optBoolean("ignore") || (params != null && params.has("map"))) {
+				continue;
+			}
+			LatLon[] route = new LatLon[] { parseLatLon(te.getJSONObject("startPoint")), parseLatLon(te.getJSONObject("endPoint")) };
+			if (longest == null || MapUtils.getDistance(route[0], route[1]) > MapUtils.getDistance(longest[0], longest[1])) {
+				longest = route;
+			}
+		}
+		List<RouteSegmentResult> route = frontEnd.searchRoute(createContext(), longest[0], longest[1], null).getList();
+		track = new ArrayList<LatLon>();
+		for (RouteSegmentResult s : route) {
+			int inc = s.isForwardDirection() ? 1 : -1;
+			for (int i = s.getStartPointIndex(); i != s.getEndPointIndex() + inc; i += inc) {
+				LatLon l = s.getPoint(i);
+				if (track.isEmpty() || !track.get(track.size() - 1).equals(l)) {
+					track.add(l);
+				}
+			}
+		}
+		List<LatLon> back = new ArrayList<LatLon>(track);
+		Collections.reverse(back);
+		track.addAll(back.subList(1, back.size()));
+	}
+
+	private static LatLon parseLatLon(JSONObject o) {
+		return new LatLon(o.getDouble("latitude"), o.getDouble("longitude"));
+	}
+
+	private RoutingContext createContext() {
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3, RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT));
+		return frontEnd.buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL);
+	}
+
+	@Benchmark
+	public GpxRouteApproximation approximate() throws IOException, InterruptedException {
+		GpxRouteApproximation gctx = new GpxRouteApproximation(createContext());
+		List<GpxPoint> points = frontEnd.generateGpxPoints(gctx, new LocationsHolder(track));
+		return frontEnd.searchGpxRoute(gctx, points, null, false);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : readers) {
+			r.close();
+		}
+	}
+}
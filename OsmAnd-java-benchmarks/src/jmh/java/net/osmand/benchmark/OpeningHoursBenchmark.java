@@ -0,0 +1,25 @@
+package net.osmand.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import net.osmand.util.OpeningHoursParser;
+import net.osmand.util.OpeningHoursParser.OpeningHours;
+
+// OpeningHoursParser.parseOpenedHours of typical and complex opening_hours values
+@State(Scope.Benchmark)
+public class OpeningHoursBenchmark {
+
+	@Param({ "Mo-Fr 08:00-20:00; Sa 09:00-14:00",
+			"Mo-Fr 10:00-18:30; We 10:00-14:00; Sa 10:00-13:00; Dec-Feb Mo-Fr 11:00-17:00; Dec-Feb We off; PH off",
+			"Mo-Su (sunrise-00:30)-(sunset+00:30)",
+			"2022 Oct 24 - 2023 Oct 30" })
+	public String openingHours;
+
+	@Benchmark
+	public OpeningHours parseOpenedHours() {
+		return OpeningHoursParser.parseOpenedHours(openingHours);
+	}
+}
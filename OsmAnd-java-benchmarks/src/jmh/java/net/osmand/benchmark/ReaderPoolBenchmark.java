@@ -0,0 +1,80 @@
+package net.osmand.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapReaderPool;
+import net.osmand.data.Amenity;
+
+// Scaling of BinaryMapReaderPool.searchPoi by number of concurrent queries: every invocation runs one query
+// per thread, so queries/s (aux counter) should grow linearly with threads up to the core count
+@State(Scope.Benchmark)
+public class ReaderPoolBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Param({ "14" })
+	public int zoom;
+
+	private BinaryMapIndexReader reader;
+	private BinaryMapReaderPool pool;
+	private ExecutorService executor;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Queries {
+		public long queries;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		reader = BenchmarkResources.openReader(BenchmarkResources.getSearchObf());
+		pool = new BinaryMapReaderPool(reader, threads);
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@Benchmark
+	public int searchPoi(Queries counter) throws Exception {
+		List<Future<List<Amenity>>> futures = new ArrayList<Future<List<Amenity>>>();
+		for (int i = 0; i < threads; i++) {
+			futures.add(executor.submit(new Callable<List<Amenity>>() {
+				@Override
+				public List<Amenity> call() throws IOException {
+					SearchRequest<Amenity> req = BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+							Integer.MAX_VALUE, zoom, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+					return pool.searchPoi(req);
+				}
+			}));
+		}
+		int found = 0;
+		for (Future<List<Amenity>> f : futures) {
+			found += f.get().size();
+		}
+		counter.queries += threads;
+		return found;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		pool.close();
+		reader.close();
+	}
+}
@@ -0,0 +1,85 @@
+package net.osmand.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.router.RoutingContext;
+import net.osmand.util.Algorithms;
+
+// RoutePlannerFrontEnd.searchRoute over routes of test_routing.json (one route per operation, round robin)
+@State(Scope.Benchmark)
+public class RoutingBenchmark {
+
+	private static final String ROUTING_MAP = "routing/Routing_test_archive.obf";
+
+	// astar - BinaryRoutePlanner only, hh - HHRoutePlanner with fallback to A* for maps without HH sections
+	@Param({ "astar", "hh" })
+	public String mode;
+
+	private BinaryMapIndexReader[] readers;
+	private RoutePlannerFrontEnd frontEnd;
+	private final List<LatLon[]> routes = new ArrayList<LatLon[]>();
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		RoutePlannerFrontEnd.CALCULATE_MISSING_MAPS = false;
+		File map = BenchmarkResources.getFile(ROUTING_MAP);
+		readers = new BinaryMapIndexReader[] { BenchmarkResources.openReader(map) };
+		frontEnd = new RoutePlannerFrontEnd();
+		if ("hh".equals(mode)) {
+			frontEnd.setDefaultHHRoutingConfig();
+		} else {
+			frontEnd.disableHHRoutingConfig();
+		}
+		JSONArray tests = new JSONArray(Algorithms.getFileAsString(BenchmarkResources.getFile("test_routing.json")));
+		for (int i = 0; i < tests.length(); i++) {
+			JSONObject te = tests.getJSONObject(i);
+			JSONObject params = te.optJSONObject("params");
+			// routes over additional maps and ignored tests are skipped
+			if (te.optBoolean("ignore") || (params != null && params.has("map"))) {
+				continue;
+			}
+			routes.add(new LatLon[] { parseLatLon(te.getJSONObject("startPoint")), parseLatLon(te.getJSONObject("endPoint")) });
+		}
+	}
+
+	private static LatLon parseLatLon(JSONObject o) {
+		return new LatLon(o.getDouble("latitude"), o.getDouble("longitude"));
+	}
+
+	@Benchmark
+	public RouteCalcResult searchRoute() throws IOException, InterruptedException {
+		LatLon[] route = routes.get(next++ % routes.size());
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build("car",
+				new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3, RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT));
+		RoutingContext ctx = frontEnd.buildRoutingContext(config, null, readers, RouteCalculationMode.NORMAL);
+		return frontEnd.searchRoute(ctx, route[0], route[1], null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : readers) {
+			r.close();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package net.osmand.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.osm.MapPoiTypes;
+import net.osmand.search.SearchUICore;
+import net.osmand.search.SearchUICore.SearchResultCollection;
+import net.osmand.search.core.SearchSettings;
+
+// SearchUICore.immediateSearch of address, poi type and name phrases around the map center
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+	@Param({ "Main Street", "cafe", "Restaurant", "1" })
+	public String phrase;
+
+	private BinaryMapIndexReader reader;
+	private SearchUICore core;
+	private LatLon center;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		File poiTypes = BenchmarkResources.getFile("poi_types.xml");
+		MapPoiTypes.setDefault(new MapPoiTypes(poiTypes.getAbsolutePath()));
+		reader = BenchmarkResources.openReader(BenchmarkResources.getSearchObf());
+		center = reader.getRegionCenter();
+		core = new SearchUICore(MapPoiTypes.getDefault(), "en", false);
+		core.init();
+		SearchSettings settings = core.getSearchSettings().setOriginalLocation(center);
+		settings.setOfflineIndexes(Collections.singletonList(reader));
+		core.updateSettings(settings);
+	}
+
+	@Benchmark
+	public SearchResultCollection immediateSearch() {
+		return core.immediateSearch(phrase, center);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+	}
+}
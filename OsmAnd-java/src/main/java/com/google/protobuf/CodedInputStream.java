@@ -33,6 +33,7 @@ package com.google.protobuf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -68,6 +69,14 @@ public final class CodedInputStream {
     return new CodedInputStream(raf);
   }
 
+  /**
+   * Create a new CodedInputStream over memory mapped file. Streams created over
+   * the same mapping have independent positions.
+   */
+  public static CodedInputStream newInstance(MappedFileSegments mapped) {
+    return new CodedInputStream(mapped);
+  }
+
   /**
    * Create a new CodedInputStream wrapping the given byte array slice.
    */
@@ -336,6 +345,26 @@ public final class CodedInputStream {
     }
   }
 
+  // osmand change
+  /**
+   * Read a {@code bytes} field value as read-only buffer. For memory mapped stream
+   * the buffer is a view of the mapping (no copy), otherwise bytes are copied.
+   */
+  public ByteBuffer readByteBuffer() throws IOException {
+    final int size = readRawVarint32();
+    if (mappedViews != null && size > 0) {
+      final long start = totalBytesRetired + bufferPos;
+      if (start + size <= currentLimit && start + size <= mappedLength) {
+        ByteBuffer slice = mapped.slice(mappedViews, start, size);
+        if (slice != null) {
+          seek(start + size);
+          return slice;
+        }
+      }
+    }
+    return ByteBuffer.wrap(readRawBytes(size)).asReadOnlyBuffer();
+  }
+
   /** Read a {@code uint32} field value from the stream. */
   public int readUInt32() throws IOException {
     return readRawVarint32();
@@ -539,6 +568,11 @@ public final class CodedInputStream {
 
   private final byte[] buffer;
   private RandomAccessFile raf;
+  // osmand change: memory mapped backend (position of the next byte to copy into buffer)
+  private MappedFileSegments mapped;
+  private ByteBuffer[] mappedViews;
+  private long mappedLength;
+  private long mappedPosition;
   private int bufferSize;
   private int bufferSizeAfterLimit;
   private int bufferPos;
@@ -589,6 +623,18 @@ public final class CodedInputStream {
 		input = null;
 	}
 
+   // osmand change
+   private CodedInputStream(final MappedFileSegments mapped) {
+		buffer = new byte[BUFFER_SIZE];
+		this.bufferSize = 0;
+		bufferPos = 0;
+		totalBytesRetired = 0;
+		this.mapped = mapped;
+		this.mappedViews = mapped.createViews();
+		this.mappedLength = mapped.length();
+		input = null;
+	}
+
   private CodedInputStream(final InputStream input) {
     buffer = new byte[BUFFER_SIZE];
     bufferSize = 0;
@@ -777,6 +823,16 @@ public final class CodedInputStream {
     	} else {
     		bufferSize = -1;
     	}
+    } else if (mappedViews != null) {
+    	// osmand change
+    	totalBytesRetired = mappedPosition;
+    	bufferSize = (int) Math.min(mappedLength - mappedPosition, buffer.length);
+    	if (bufferSize > 0) {
+    		mapped.read(mappedViews, mappedPosition, buffer, 0, bufferSize);
+    		mappedPosition += bufferSize;
+    	} else {
+    		bufferSize = -1;
+    	}
     } else {
     	bufferSize = (input == null) ? -1 : input.read(buffer);
     }
@@ -840,6 +896,21 @@ public final class CodedInputStream {
       System.arraycopy(buffer, bufferPos, bytes, 0, size);
       bufferPos += size;
       return bytes;
+    } else if (mappedViews != null) {
+      // osmand change: copy directly from mapping without intermediate chunks
+      final byte[] bytes = new byte[size];
+      int pos = bufferSize - bufferPos;
+      System.arraycopy(buffer, bufferPos, bytes, 0, pos);
+      long start = totalBytesRetired + bufferSize;
+      if (start + (size - pos) > mappedLength) {
+        throw InvalidProtocolBufferException.truncatedMessage();
+      }
+      mapped.read(mappedViews, start, bytes, pos, size - pos);
+      mappedPosition = start + (size - pos);
+      totalBytesRetired = mappedPosition;
+      bufferPos = 0;
+      bufferSize = 0;
+      return bytes;
     } else if (size < BUFFER_SIZE) {
       // Reading more bytes than are in the buffer, but not an excessive number
       // of bytes.  We can safely allocate the resulting array ahead of time.
@@ -962,6 +1033,12 @@ public final class CodedInputStream {
          bufferSize = 0;
          raf.seek(raf.getFilePointer() + (size - pos));
          totalBytesRetired = raf.getFilePointer();
+      } else if (mappedViews != null) {
+         // osmand change
+         mappedPosition = totalBytesRetired + bufferSize + (size - pos);
+         totalBytesRetired = mappedPosition;
+         bufferPos = 0;
+         bufferSize = 0;
       } else {
         // Keep refilling the buffer until we get to the point we wanted to skip
         // to.  This has the side effect of ensuring the limits are updated
@@ -987,7 +1064,11 @@ public final class CodedInputStream {
 	  } else {
 		  totalBytesRetired = pointer;
 		  bufferSizeAfterLimit = 0;
-		  raf.seek(pointer);
+		  if (mappedViews != null) {
+			  mappedPosition = pointer;
+		  } else {
+			  raf.seek(pointer);
+		  }
 		  bufferPos = 0;
 		  bufferSize = 0;
 	  }
@@ -0,0 +1,91 @@
+package com.google.protobuf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// osmand change
+/**
+ * Read-only memory mapping of a whole file split into segments (MappedByteBuffer is limited to 2 GB).
+ * One mapping is shared by any number of {@link CodedInputStream}, each stream reads through its own
+ * views (see {@link #createViews()}), so streams have independent positions and need no synchronization.
+ */
+public final class MappedFileSegments {
+
+  static final int SEGMENT_SHIFT = 30;
+
+  private final File file;
+  private final long length;
+  private final MappedByteBuffer[] segments;
+  private final int segmentShift;
+
+  public MappedFileSegments(File file) throws IOException {
+    this(file, SEGMENT_SHIFT);
+  }
+
+  // small segments are used by tests to read across segment boundaries
+  MappedFileSegments(File file, int segmentShift) throws IOException {
+    this.file = file;
+    this.segmentShift = segmentShift;
+    long segmentSize = 1L << segmentShift;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      length = channel.size();
+      int count = (int) ((length + segmentSize - 1) >> segmentShift);
+      segments = new MappedByteBuffer[count];
+      for (int i = 0; i < count; i++) {
+        long start = ((long) i) << segmentShift;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+      }
+    } finally {
+      // mapping stays valid after channel is closed
+      raf.close();
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  ByteBuffer[] createViews() {
+    ByteBuffer[] views = new ByteBuffer[segments.length];
+    for (int i = 0; i < segments.length; i++) {
+      views[i] = segments[i].duplicate();
+    }
+    return views;
+  }
+
+  void read(ByteBuffer[] views, long pos, byte[] dst, int off, int len) {
+    while (len > 0) {
+      ByteBuffer view = views[(int) (pos >> segmentShift)];
+      int segmentPos = (int) (pos & ((1L << segmentShift) - 1));
+      int cnt = Math.min(len, view.limit() - segmentPos);
+      view.position(segmentPos);
+      view.get(dst, off, cnt);
+      pos += cnt;
+      off += cnt;
+      len -= cnt;
+    }
+  }
+
+  // returns null when range crosses segment boundary
+  ByteBuffer slice(ByteBuffer[] views, long pos, int len) {
+    ByteBuffer view = views[(int) (pos >> segmentShift)];
+    int segmentPos = (int) (pos & ((1L << segmentShift) - 1));
+    if (segmentPos + len > view.limit()) {
+      return null;
+    }
+    ByteBuffer slice = view.duplicate();
+    slice.position(segmentPos);
+    slice.limit(segmentPos + len);
+    return slice.slice().asReadOnlyBuffer();
+  }
+}
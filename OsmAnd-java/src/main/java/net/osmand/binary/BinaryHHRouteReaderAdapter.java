@@ -1,6 +1,7 @@
 package net.osmand.binary;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,7 +14,6 @@ import gnu.trove.map.hash.TLongObjectHashMap;
 import net.osmand.PlatformUtil;
 import net.osmand.binary.BinaryMapIndexReader.TagValuePair;
 import net.osmand.binary.OsmandOdb.OsmAndHHRoutingIndex;
-import net.osmand.binary.OsmandOdb.OsmAndHHRoutingIndex.HHRoutePointSegments;
 import net.osmand.data.QuadRect;
 import net.osmand.router.HHRouteDataStructure;
 import net.osmand.router.HHRouteDataStructure.HHRouteRegionPointsCtx;
@@ -417,12 +417,11 @@ public class BinaryHHRouteReaderAdapter {
 //						HHRoutePointSegments s = bld.buildPartial();
 						int len = codedIS.readRawVarint32();
 						long olLimit = codedIS.pushLimitLong(len);
-						HHRoutePointSegments s = readSegments();
+						ByteBuffer[] s = readSegments();
 						codedIS.popLimit(olLimit);
 						if (point != null) {
 							// not used from this file
-							HHRouteDataStructure.setSegments(ctx, point, s.getSegmentsIn().toByteArray(),
-									s.getSegmentsOut().toByteArray());
+							HHRouteDataStructure.setSegments(ctx, point, s[0], s[1]);
 							loaded += point.connected(true).size() + point.connected(false).size();
 						}
 					}
@@ -438,19 +437,20 @@ public class BinaryHHRouteReaderAdapter {
 		}
 	}
 
-	private HHRoutePointSegments readSegments() throws IOException {
-		HHRoutePointSegments.Builder bld = HHRoutePointSegments.newBuilder();
+	// segments in / out of HHRoutePointSegments, buffers are views of mapped file (no copy) for mapped reader
+	private ByteBuffer[] readSegments() throws IOException {
+		ByteBuffer[] s = new ByteBuffer[2];
 		while (true) {
 			int t = codedIS.readTag();
 			int tag = WireFormat.getTagFieldNumber(t);
 			switch (tag) {
 			case 0:
-				return bld.buildPartial();
+				return s;
 			case OsmAndHHRoutingIndex.HHRoutePointSegments.SEGMENTSIN_FIELD_NUMBER:
-				bld.setSegmentsIn(codedIS.readBytes());
+				s[0] = codedIS.readByteBuffer();
 				break;
 			case OsmAndHHRoutingIndex.HHRoutePointSegments.SEGMENTSOUT_FIELD_NUMBER:
-				bld.setSegmentsOut(codedIS.readBytes());
+				s[1] = codedIS.readByteBuffer();
 				break;
 			}
 		}
@@ -36,6 +36,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.MappedFileSegments;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.WireFormat;
@@ -107,6 +108,8 @@ public class BinaryMapIndexReader {
 	
 	
 	private final RandomAccessFile raf;
+	// not null when file is read through memory mapping (raf is null)
+	private final MappedFileSegments mappedFile;
 	protected final File file;
 	/*private*/ int version;
 	/*private*/ long dateCreated;
@@ -123,6 +126,8 @@ public class BinaryMapIndexReader {
 	TLongObjectHashMap<IncompleteTransportRoute> incompleteTransportRoutes = null;
 	
 	protected CodedInputStream codedIS;
+	// optional cache of decoded map data blocks (shared by readers created with referenceToSameFile)
+	private MapDataBlockCache mapDataBlockCache;
 
 	private final BinaryMapTransportReaderAdapter transportAdapter;
 	private final BinaryMapPoiReaderAdapter poiAdapter;
@@ -135,6 +140,7 @@ public class BinaryMapIndexReader {
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file) throws IOException {
 		this.raf = raf;
+		this.mappedFile = null;
 		this.file = file;
 		codedIS = CodedInputStream.newInstance(raf);
 		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
@@ -148,6 +154,7 @@ public class BinaryMapIndexReader {
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, File file, boolean init) throws IOException {
 		this.raf = raf;
+		this.mappedFile = null;
 		this.file = file;
 		codedIS = CodedInputStream.newInstance(raf);
 		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
@@ -162,9 +169,35 @@ public class BinaryMapIndexReader {
 	}
 
 	public BinaryMapIndexReader(final RandomAccessFile raf, BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(raf, null, CodedInputStream.newInstance(raf), referenceToSameFile);
+	}
+
+	// Reader over memory mapped file: no file descriptor and no syscalls per seek
+	public BinaryMapIndexReader(final MappedFileSegments mappedFile) throws IOException {
+		this.raf = null;
+		this.mappedFile = mappedFile;
+		this.file = mappedFile.getFile();
+		codedIS = CodedInputStream.newInstance(mappedFile);
+		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
+		transportAdapter = new BinaryMapTransportReaderAdapter(this);
+		addressAdapter = new BinaryMapAddressReaderAdapter(this);
+		poiAdapter = new BinaryMapPoiReaderAdapter(this);
+		routeAdapter = new BinaryMapRouteReaderAdapter(this);
+		hhAdapter = new BinaryHHRouteReaderAdapter(this);
+		init();
+	}
+
+	// Independent reader (own position) over the same mapping as referenceToSameFile, parsed indexes are shared
+	public BinaryMapIndexReader(final MappedFileSegments mappedFile, BinaryMapIndexReader referenceToSameFile) throws IOException {
+		this(null, mappedFile, CodedInputStream.newInstance(mappedFile), referenceToSameFile);
+	}
+
+	private BinaryMapIndexReader(final RandomAccessFile raf, final MappedFileSegments mappedFile, CodedInputStream codedIS,
+			BinaryMapIndexReader referenceToSameFile) throws IOException {
 		this.raf = raf;
+		this.mappedFile = mappedFile;
 		this.file = referenceToSameFile.file;
-		codedIS = CodedInputStream.newInstance(raf);
+		this.codedIS = codedIS;
 		codedIS.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
 		version = referenceToSameFile.version;
 		dateCreated = referenceToSameFile.dateCreated;
@@ -181,9 +214,18 @@ public class BinaryMapIndexReader {
 		hhIndexes = new ArrayList<HHRouteRegion>(referenceToSameFile.hhIndexes);
 		indexes = new ArrayList<BinaryIndexPart>(referenceToSameFile.indexes);
 		basemap = referenceToSameFile.basemap;
+		mapDataBlockCache = referenceToSameFile.mapDataBlockCache;
 		calculateCenterPointForRegions();
 	}
 
+	public MapDataBlockCache getMapDataBlockCache() {
+		return mapDataBlockCache;
+	}
+
+	public void setMapDataBlockCache(MapDataBlockCache mapDataBlockCache) {
+		this.mapDataBlockCache = mapDataBlockCache;
+	}
+
 
 	public long getDateCreated() {
 		return dateCreated;
@@ -455,6 +497,10 @@ public class BinaryMapIndexReader {
 		return raf;
 	}
 
+	public MappedFileSegments getMappedFile() {
+		return mappedFile;
+	}
+
 	public File getFile() {
 		return file;
 	}
@@ -1003,7 +1049,9 @@ public class BinaryMapIndexReader {
 						}
 					});
 					for (MapTree tree : foundSubtrees) {
-						if (!req.isCancelled()) {
+						if (!req.isCancelled() && mapDataBlockCache != null && !READ_STATS) {
+							searchCachedMapDataBlock(req, tree, index, mapIndex);
+						} else if (!req.isCancelled()) {
 							codedIS.seek(tree.mapDataBlock);
 							int length = codedIS.readRawVarint32();
 							long oldLimit = codedIS.pushLimitLong((long) length);
@@ -1025,6 +1073,47 @@ public class BinaryMapIndexReader {
 
 	
 
+	// block is decoded once without bbox and search filter, then cached objects are filtered for every request
+	private void searchCachedMapDataBlock(SearchRequest<BinaryMapDataObject> req, MapTree tree, MapRoot index, MapIndex mapIndex)
+			throws IOException {
+		Object fileKey = file != null ? file : this;
+		MapDataBlockCache.CachedBlock block = mapDataBlockCache.get(fileKey, tree.mapDataBlock, index);
+		if (block == null) {
+			SearchRequest<BinaryMapDataObject> blockReq = new SearchRequest<BinaryMapDataObject>();
+			blockReq.left = 0;
+			blockReq.right = Integer.MAX_VALUE;
+			blockReq.top = 0;
+			blockReq.bottom = Integer.MAX_VALUE;
+			blockReq.zoom = req.zoom;
+			blockReq.log = false;
+			codedIS.seek(tree.mapDataBlock);
+			int length = codedIS.readRawVarint32();
+			long oldLimit = codedIS.pushLimitLong((long) length);
+			readMapDataBlocks(blockReq, tree, mapIndex);
+			codedIS.popLimit(oldLimit);
+			block = mapDataBlockCache.put(fileKey, tree.mapDataBlock, index,
+					new ArrayList<BinaryMapDataObject>(blockReq.getSearchResults()));
+		}
+		int[] bounds = block.bounds;
+		for (int i = 0; i < block.objects.size() && !req.isCancelled(); i++) {
+			req.numberOfVisitedObjects++;
+			int b = i * 4;
+			if (bounds[b + 2] < req.left || bounds[b] > req.right || bounds[b + 3] < req.top || bounds[b + 1] > req.bottom) {
+				continue;
+			}
+			BinaryMapDataObject obj = block.objects.get(i);
+			if (req.searchFilter != null) {
+				req.cacheTypes.clear();
+				req.cacheTypes.add(obj.types);
+				if (!req.searchFilter.accept(req.cacheTypes, mapIndex)) {
+					continue;
+				}
+			}
+			req.numberOfAcceptedObjects++;
+			req.publish(obj);
+		}
+	}
+
 	protected void readMapDataBlocks(SearchRequest<BinaryMapDataObject> req, MapTree tree, MapIndex root) throws IOException {
 		List<BinaryMapDataObject> tempResults = null;
 		long baseId = 0;
@@ -1401,6 +1490,32 @@ public class BinaryMapIndexReader {
 		poiAdapter.initCategories(poiIndex);
 	}
 
+	// Reads structures that are otherwise initialized lazily by searches (map rules and trees, poi categories, route rules),
+	// after that parsed indexes are not modified by queries and can be shared between readers of different threads
+	public void initLazyIndexes() throws IOException {
+		for (MapIndex mapIndex : mapIndexes) {
+			if (mapIndex.encodingRules.isEmpty()) {
+				codedIS.seek(mapIndex.filePointer);
+				long oldLimit = codedIS.pushLimitLong(mapIndex.length);
+				readMapIndex(mapIndex, true);
+				codedIS.popLimit(oldLimit);
+			}
+			for (MapRoot index : mapIndex.getRoots()) {
+				if (index.trees == null) {
+					index.trees = new ArrayList<MapTree>();
+					codedIS.seek(index.filePointer);
+					long oldLimit = codedIS.pushLimitLong(index.length);
+					readMapLevel(index);
+					codedIS.popLimit(oldLimit);
+				}
+			}
+		}
+		initCategories();
+		for (RouteRegion routeRegion : routingIndexes) {
+			initRouteRegion(routeRegion);
+		}
+	}
+
 	public void initCategories() throws IOException {
 		for (PoiRegion poiIndex : poiIndexes) {
 			poiAdapter.initCategories(poiIndex);
@@ -1710,7 +1825,9 @@ public class BinaryMapIndexReader {
 
 	public void close() throws IOException {
 		if (codedIS != null) {
-			raf.close();
+			if (raf != null) {
+				raf.close();
+			}
 			codedIS = null;
 			mapIndexes.clear();
 			addressIndexes.clear();
@@ -1737,6 +1854,11 @@ public class BinaryMapIndexReader {
 		String getIconResource();
 	}
 
+	// called for every POI atom which passed bbox and type filters before Amenity is created
+	public static interface SearchPoiAtomFilter {
+		public boolean accept(PoiAtomCursor cursor) throws IOException;
+	}
+
 	public static class MapObjectStat {
 		public int lastStringNamesSize;
 		public int lastObjectIdSize;
@@ -1806,6 +1928,7 @@ public class BinaryMapIndexReader {
 
 		SearchPoiTypeFilter poiTypeFilter = null;
 		SearchPoiAdditionalFilter poiAdditionalFilter;
+		SearchPoiAtomFilter poiAtomFilter;
 
 		// cache information
 		TIntArrayList cacheCoordinates = new TIntArrayList();
@@ -1889,6 +2012,14 @@ public class BinaryMapIndexReader {
 			this.limit = limit;
 		}
 
+		boolean hasResultMatcher() {
+			return resultMatcher != null;
+		}
+
+		public void setPoiAtomFilter(SearchPoiAtomFilter poiAtomFilter) {
+			this.poiAtomFilter = poiAtomFilter;
+		}
+
 		public boolean isCancelled() {
 			if (this.interrupted) {
 				return interrupted;
@@ -2218,7 +2349,7 @@ public class BinaryMapIndexReader {
 			return maxZoom;
 		}
 
-		private List<MapTree> trees = null;
+		List<MapTree> trees = null;
 
 
 		public MapZooms.MapZoomPair getMapZoom() {
@@ -2226,7 +2357,7 @@ public class BinaryMapIndexReader {
 		}
 	}
 
-	private static class MapTree {
+	static class MapTree {
 		long filePointer = 0;
 		long length = 0;
 
@@ -2802,6 +2933,17 @@ public class BinaryMapIndexReader {
 		}
 	}
 
+	public List<List<RouteDataObject>> loadRouteIndexData(List<RouteSubregion> toLoad) throws IOException {
+		if (routeAdapter != null) {
+			return routeAdapter.loadRouteRegionData(toLoad);
+		}
+		List<List<RouteDataObject>> res = new ArrayList<List<RouteDataObject>>();
+		for (int i = 0; i < toLoad.size(); i++) {
+			res.add(Collections.<RouteDataObject>emptyList());
+		}
+		return res;
+	}
+
 	public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
 		if (routeAdapter != null) {
 			return routeAdapter.loadRouteRegionData(rs);
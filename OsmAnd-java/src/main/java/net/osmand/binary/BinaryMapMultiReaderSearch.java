@@ -0,0 +1,121 @@
+package net.osmand.binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+
+/**
+ * Map search of one bbox in many files (basemap, country, srtm, ...) in parallel: every file is searched on executor
+ * with own request, results are published to original request in order of readers (and order of objects inside file),
+ * so result doesn't depend on timing. Result matcher publish() is called only from calling thread,
+ * isCancelled() is checked from executor threads as well.
+ * Limit of request is global: once it's reached by files in order, searches of remaining files are cancelled.
+ * Every file stops reading after limit as well, unless request has result matcher (it could reject objects,
+ * which are counted only when accepted).
+ * Interrupted calling thread cancels file searches and gets InterruptedException (no partial result).
+ * Reader is used by one search at a time (synchronized on reader), pooled readers could be passed for concurrent callers.
+ */
+public class BinaryMapMultiReaderSearch {
+
+	private final ExecutorService executor;
+
+	public BinaryMapMultiReaderSearch(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	public List<BinaryMapDataObject> searchMapIndex(List<BinaryMapIndexReader> readers, final SearchRequest<BinaryMapDataObject> req)
+			throws IOException, InterruptedException {
+		req.numberOfVisitedObjects = 0;
+		req.numberOfAcceptedObjects = 0;
+		req.numberOfAcceptedSubtrees = 0;
+		req.numberOfReadSubtrees = 0;
+		final AtomicBoolean stop = new AtomicBoolean();
+		List<SearchRequest<BinaryMapDataObject>> requests = new ArrayList<SearchRequest<BinaryMapDataObject>>();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		final int fileLimit = req.hasResultMatcher() ? -1 : req.limit;
+		for (final BinaryMapIndexReader reader : readers) {
+			final SearchRequest<BinaryMapDataObject> fileReq = BinaryMapIndexReader.buildSearchRequest(req.left, req.right,
+					req.top, req.bottom, req.zoom, req.searchFilter, new ResultMatcher<BinaryMapDataObject>() {
+						// called only by executor thread of file
+						private int published;
+
+						@Override
+						public boolean publish(BinaryMapDataObject object) {
+							return fileLimit == -1 || published++ < fileLimit;
+						}
+
+						@Override
+						public boolean isCancelled() {
+							return stop.get() || req.isCancelled() || (fileLimit != -1 && published >= fileLimit);
+						}
+					});
+			fileReq.log = false;
+			fileReq.setLimit(fileLimit);
+			requests.add(fileReq);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					synchronized (reader) {
+						reader.searchMapIndex(fileReq);
+					}
+					return null;
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				if (reachedLimit(req) || req.isCancelled()) {
+					break;
+				}
+				futures.get(i).get();
+				SearchRequest<BinaryMapDataObject> fileReq = requests.get(i);
+				mergeStats(req, fileReq);
+				for (BinaryMapDataObject obj : fileReq.getSearchResults()) {
+					if (reachedLimit(req) || req.isCancelled()) {
+						break;
+					}
+					req.publish(obj);
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			stop.set(true);
+			for (Future<?> f : futures) {
+				f.cancel(false);
+			}
+		}
+		return req.getSearchResults();
+	}
+
+	private static boolean reachedLimit(SearchRequest<BinaryMapDataObject> req) {
+		return req.limit != -1 && req.getSearchResults().size() >= req.limit;
+	}
+
+	private static void mergeStats(SearchRequest<BinaryMapDataObject> req, SearchRequest<BinaryMapDataObject> fileReq) {
+		req.numberOfVisitedObjects += fileReq.numberOfVisitedObjects;
+		req.numberOfAcceptedObjects += fileReq.numberOfAcceptedObjects;
+		req.numberOfReadSubtrees += fileReq.numberOfReadSubtrees;
+		req.numberOfAcceptedSubtrees += fileReq.numberOfAcceptedSubtrees;
+		if (fileReq.isOcean()) {
+			req.publishOceanTile(true);
+		}
+		if (fileReq.isLand()) {
+			req.publishOceanTile(false);
+		}
+	}
+}
@@ -43,6 +43,8 @@ public class BinaryMapPoiReaderAdapter {
 	private static final int FINAL_POI_SHIFT = BinaryMapIndexReader.SHIFT_COORDINATES;// 5
 	private static final int BASE_POI_ZOOM = 31 - BASE_POI_SHIFT;// 24 zoom
 	private static final int FINAL_POI_ZOOM = 31 - FINAL_POI_SHIFT;// 26 zoom
+	// false - single pass decode of filtered requests (to compare), atom filter always needs projection
+	static boolean TWO_PHASE_DECODE = true;
 
 
 	public static class PoiSubType {
@@ -133,11 +135,13 @@ public class BinaryMapPoiReaderAdapter {
 	private final BinaryMapIndexReader map;
 
 	private MapPoiTypes poiTypes;
+	private final PoiAtomCursor cursor;
 
 	protected BinaryMapPoiReaderAdapter(BinaryMapIndexReader map) {
 		this.codedIS = map.codedIS;
 		this.map = map;
 		this.poiTypes = MapPoiTypes.getDefault();
+		this.cursor = new PoiAtomCursor(codedIS);
 	}
 
 	private void skipUnknownField(int t) throws IOException {
@@ -600,7 +604,7 @@ public class BinaryMapPoiReaderAdapter {
 			case OsmandOdb.OsmAndPoiBoxData.POIDATA_FIELD_NUMBER:
 				int len = codedIS.readRawVarint32();
 				long oldLim = codedIS.pushLimitLong((long) len);
-				Amenity am = readPoiPoint(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, x, y, zoom, req, region, false);
+				Amenity am = readAcceptedPoiPoint(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, x, y, zoom, req, region, false);
 				codedIS.popLimit(oldLim);
 				if (am != null) {
 					boolean matches = matcher.matches(am.getName().toLowerCase())
@@ -664,7 +668,7 @@ public class BinaryMapPoiReaderAdapter {
 			case OsmandOdb.OsmAndPoiBoxData.POIDATA_FIELD_NUMBER:
 				int len = codedIS.readRawVarint32();
 				long oldLim = codedIS.pushLimitLong((long) len);
-				Amenity am = readPoiPoint(left31, right31, top31, bottom31, x, y, zoom, req, region, true);
+				Amenity am = readAcceptedPoiPoint(left31, right31, top31, bottom31, x, y, zoom, req, region, true);
 				codedIS.popLimit(oldLim);
 				if (am != null) {
 					if (toSkip != null) {
@@ -721,6 +725,138 @@ public class BinaryMapPoiReaderAdapter {
 		return arp;
 	}
 
+	// Two phase decode: when request could reject atoms (type / additional / atom filters, route radius),
+	// projection pass reads atom into cursor without allocating Amenity, full decode is done only for accepted atoms
+	private Amenity readAcceptedPoiPoint(int left31, int right31, int top31, int bottom31,
+			int px, int py, int zoom, SearchRequest<Amenity> req, PoiRegion region, boolean checkBounds) throws IOException {
+		boolean project = req.poiAtomFilter != null || (TWO_PHASE_DECODE && (req.poiAdditionalFilter != null || req.radius > 0
+				|| (req.poiTypeFilter != null && req.poiTypeFilter != BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER)));
+		if (!project) {
+			return readPoiPoint(left31, right31, top31, bottom31, px, py, zoom, req, region, checkBounds);
+		}
+		long start = codedIS.getTotalBytesRead();
+		if (!projectPoiPoint(left31, right31, top31, bottom31, px, py, zoom, req, region, checkBounds)) {
+			codedIS.skipRawBytes(codedIS.getBytesUntilLimit());
+			return null;
+		}
+		codedIS.seek(start);
+		// object is already counted by projection
+		int visited = req.numberOfVisitedObjects;
+		Amenity am = readPoiPoint(left31, right31, top31, bottom31, px, py, zoom, req, region, checkBounds);
+		req.numberOfVisitedObjects = visited;
+		return am;
+	}
+
+	private boolean projectPoiPoint(int left31, int right31, int top31, int bottom31,
+			int px, int py, int zoom, SearchRequest<Amenity> req, PoiRegion region, boolean checkBounds) throws IOException {
+		PoiAtomCursor c = cursor;
+		c.reset(codedIS.getTotalBytesRead());
+		int x = 0;
+		int y = 0;
+		int precisionXY = 0;
+		boolean hasLocation = false;
+		boolean hasSubcategoriesField = false;
+		boolean topIndexAdditonalFound = false;
+		StringBuilder retValue = null;
+		while (true) {
+			int t = codedIS.readTag();
+			int tag = WireFormat.getTagFieldNumber(t);
+			if (c.type == null && (tag > OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER || tag == 0)) {
+				return false;
+			}
+			if (req.poiAdditionalFilter != null && (tag > OsmandOdb.OsmAndPoiBoxDataAtom.SUBCATEGORIES_FIELD_NUMBER || tag == 0)) {
+				if (!hasSubcategoriesField || !topIndexAdditonalFound) {
+					return false;
+				}
+			}
+			switch (tag) {
+			case 0:
+				if (!hasLocation) {
+					return false;
+				}
+				if (precisionXY != 0) {
+					int[] xy = MapUtils.calculateFinalXYFromBaseAndPrecisionXY(BASE_POI_ZOOM, FINAL_POI_ZOOM, precisionXY, x >> BASE_POI_SHIFT, y >> BASE_POI_SHIFT, true);
+					c.x31 = xy[0] << FINAL_POI_SHIFT;
+					c.y31 = xy[1] << FINAL_POI_SHIFT;
+				} else {
+					c.x31 = x;
+					c.y31 = y;
+				}
+				// distance to route is checked by full decode
+				if (req.radius > 0 && req.tiles.get(req.getTileHashOnPath(MapUtils.get31LatitudeY(c.y31),
+						MapUtils.get31LongitudeX(c.x31))) == null) {
+					return false;
+				}
+				return req.poiAtomFilter == null || req.poiAtomFilter.accept(c);
+			case OsmandOdb.OsmAndPoiBoxDataAtom.DX_FIELD_NUMBER:
+				x = (codedIS.readSInt32() + (px << (BASE_POI_ZOOM - zoom))) << BASE_POI_SHIFT;
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.DY_FIELD_NUMBER:
+				y = (codedIS.readSInt32() + (py << (BASE_POI_ZOOM - zoom))) << BASE_POI_SHIFT;
+				req.numberOfVisitedObjects++;
+				if (checkBounds) {
+					if (left31 > x || right31 < x || top31 > y || bottom31 < y) {
+						return false;
+					}
+				}
+				hasLocation = true;
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.SUBCATEGORIES_FIELD_NUMBER:
+				int subtypev = codedIS.readUInt32();
+				hasSubcategoriesField = true;
+				if (req.poiAdditionalFilter != null && !topIndexAdditonalFound) {
+					if (retValue == null) {
+						retValue = new StringBuilder();
+					}
+					retValue.setLength(0);
+					PoiSubType st = region.getSubtypeFromId(subtypev, retValue);
+					topIndexAdditonalFound = st != null && req.poiAdditionalFilter.accept(st, retValue.toString());
+				}
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.CATEGORIES_FIELD_NUMBER:
+				int cat = codedIS.readUInt32();
+				c.categories.add(cat);
+				if (c.type != null) {
+					break;
+				}
+				int subcatId = cat >> SHIFT_BITS_CATEGORY;
+				int catId = cat & CATEGORY_MASK;
+				PoiCategory type = poiTypes.getOtherPoiCategory();
+				String subtype = "";
+				if (catId < region.categoriesType.size()) {
+					type = region.categoriesType.get(catId);
+					List<String> subcats = region.subcategories.get(catId);
+					if (subcatId < subcats.size()) {
+						subtype = subcats.get(subcatId);
+					}
+				}
+				subtype = poiTypes.replaceDeprecatedSubtype(type, subtype);
+				if (!poiTypes.isTypeForbidden(subtype) && (req.poiTypeFilter == null || req.poiTypeFilter.accept(type, subtype))) {
+					c.type = type;
+					c.subType = subtype;
+				}
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.ID_FIELD_NUMBER:
+				c.id = codedIS.readUInt64();
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.NAME_FIELD_NUMBER:
+				c.nameOffset = codedIS.getTotalBytesRead();
+				skipUnknownField(t);
+				break;
+			case OsmandOdb.OsmAndPoiBoxDataAtom.PRECISIONXY_FIELD_NUMBER:
+				if (hasLocation) {
+					precisionXY = codedIS.readInt32();
+				} else {
+					skipUnknownField(t);
+				}
+				break;
+			default:
+				skipUnknownField(t);
+				break;
+			}
+		}
+	}
+
 	private Amenity readPoiPoint(int left31, int right31, int top31, int bottom31,
 			int px, int py, int zoom, SearchRequest<Amenity> req, PoiRegion region, boolean checkBounds) throws IOException {
 		Amenity am = null;
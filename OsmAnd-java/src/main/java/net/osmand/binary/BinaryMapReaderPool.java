@@ -0,0 +1,130 @@
+package net.osmand.binary;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.data.MapObject;
+
+import com.google.protobuf.MappedFileSegments;
+
+/**
+ * Pool of readers of one OBF file for concurrent queries. Parsed index structure (MapIndex, PoiRegion,
+ * RouteRegion, AddressRegion) of the base reader is shared, every reader of the pool has own cursor (codedIS),
+ * reader is used by one thread between acquire() and release().
+ * Readers are opened over the same memory mapping if base reader is mapped, otherwise with own RandomAccessFile.
+ */
+public class BinaryMapReaderPool {
+
+	public interface ReaderCallable<T> {
+		T call(BinaryMapIndexReader reader) throws IOException;
+	}
+
+	private final BinaryMapIndexReader baseReader;
+	private final int maxIdleReaders;
+	private final ArrayDeque<BinaryMapIndexReader> idleReaders = new ArrayDeque<BinaryMapIndexReader>();
+	private int createdReaders;
+	private boolean closed;
+
+	public BinaryMapReaderPool(BinaryMapIndexReader baseReader, int maxIdleReaders) throws IOException {
+		this.baseReader = baseReader;
+		this.maxIdleReaders = maxIdleReaders;
+		// shared structures must not be initialized lazily by concurrent queries
+		baseReader.initLazyIndexes();
+	}
+
+	public BinaryMapReaderPool(BinaryMapIndexReader baseReader) throws IOException {
+		this(baseReader, Runtime.getRuntime().availableProcessors());
+	}
+
+	public BinaryMapIndexReader getBaseReader() {
+		return baseReader;
+	}
+
+	public BinaryMapIndexReader acquire() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("Reader pool is closed: " + baseReader.getFile());
+			}
+			if (!idleReaders.isEmpty()) {
+				return idleReaders.pop();
+			}
+			createdReaders++;
+		}
+		MappedFileSegments mapped = baseReader.getMappedFile();
+		if (mapped != null) {
+			return new BinaryMapIndexReader(mapped, baseReader);
+		}
+		return new BinaryMapIndexReader(new RandomAccessFile(baseReader.getFile(), "r"), baseReader);
+	}
+
+	public void release(BinaryMapIndexReader reader) throws IOException {
+		synchronized (this) {
+			if (!closed && idleReaders.size() < maxIdleReaders) {
+				idleReaders.push(reader);
+				return;
+			}
+		}
+		reader.close();
+	}
+
+	public <T> T execute(ReaderCallable<T> callable) throws IOException {
+		BinaryMapIndexReader reader = acquire();
+		try {
+			return callable.call(reader);
+		} finally {
+			release(reader);
+		}
+	}
+
+	public List<Amenity> searchPoi(final SearchRequest<Amenity> req) throws IOException {
+		return execute(new ReaderCallable<List<Amenity>>() {
+			@Override
+			public List<Amenity> call(BinaryMapIndexReader reader) throws IOException {
+				return reader.searchPoi(req);
+			}
+		});
+	}
+
+	public List<BinaryMapDataObject> searchMapIndex(final SearchRequest<BinaryMapDataObject> req) throws IOException {
+		return execute(new ReaderCallable<List<BinaryMapDataObject>>() {
+			@Override
+			public List<BinaryMapDataObject> call(BinaryMapIndexReader reader) throws IOException {
+				return reader.searchMapIndex(req);
+			}
+		});
+	}
+
+	public List<MapObject> searchAddressDataByName(final SearchRequest<MapObject> req) throws IOException {
+		return execute(new ReaderCallable<List<MapObject>>() {
+			@Override
+			public List<MapObject> call(BinaryMapIndexReader reader) throws IOException {
+				return reader.searchAddressDataByName(req);
+			}
+		});
+	}
+
+	public synchronized int getCreatedReaders() {
+		return createdReaders;
+	}
+
+	public synchronized int getIdleReaders() {
+		return idleReaders.size();
+	}
+
+	// closes idle readers, readers in use are closed on release
+	public void close() throws IOException {
+		ArrayDeque<BinaryMapIndexReader> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayDeque<BinaryMapIndexReader>(idleReaders);
+			idleReaders.clear();
+		}
+		for (BinaryMapIndexReader r : toClose) {
+			r.close();
+		}
+	}
+}
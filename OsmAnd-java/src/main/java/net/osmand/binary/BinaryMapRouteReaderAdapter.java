@@ -337,7 +337,7 @@ public class BinaryMapRouteReaderAdapter {
 			return OsmandOdb.OsmAndStructure.ROUTINGINDEX_FIELD_NUMBER;
 		}
 		
-		public int searchRouteEncodingRule(String tag, String value) {
+		public synchronized int searchRouteEncodingRule(String tag, String value) {
 			if(decodingRules == null) {
 				decodingRules = new LinkedHashMap<String, Integer>();
 				for(int i = 1; i < routeEncodingRules.size(); i++) {
@@ -369,7 +369,7 @@ public class BinaryMapRouteReaderAdapter {
 			return routeEncodingRules.size();
 		}
 
-		public void initRouteEncodingRule(int id, String tags, String val) {
+		public synchronized void initRouteEncodingRule(int id, String tags, String val) {
 			decodingRules = null;
 			while (routeEncodingRules.size() <= id) {
 				routeEncodingRules.add(null);
@@ -477,7 +477,7 @@ public class BinaryMapRouteReaderAdapter {
 		}
 
 
-		public RouteDataObject adopt(RouteDataObject o) {
+		public synchronized RouteDataObject adopt(RouteDataObject o) {
 			if (o.region == this || o.region == referenceRouteRegion) {
 				return o;
 			}
@@ -564,7 +564,8 @@ public class BinaryMapRouteReaderAdapter {
 		}
 
 
-		public int findOrCreateRouteType(String tag, String value) {
+		// region could be shared by routing contexts of different threads (decoded tiles are cached, see RoutingTilesCache)
+		public synchronized int findOrCreateRouteType(String tag, String value) {
 			int ruleId = searchRouteEncodingRule(tag, value);
 			if(ruleId == -1) {
 				ruleId = routeEncodingRules.size() ;
@@ -1103,6 +1104,37 @@ public class BinaryMapRouteReaderAdapter {
 		return res;
 	}
 	
+	// subregions are read in order of file pointers (sequential I/O), results are in order of toLoad
+	public List<List<RouteDataObject>> loadRouteRegionData(List<RouteSubregion> toLoad) throws IOException {
+		List<RouteSubregion> sorted = new ArrayList<RouteSubregion>(toLoad);
+		Collections.sort(sorted, new Comparator<RouteSubregion>() {
+			@Override
+			public int compare(RouteSubregion o1, RouteSubregion o2) {
+				return Long.compare(o1.filePointer + o1.shiftToData, o2.filePointer + o2.shiftToData);
+			}
+		});
+		TLongArrayList idMap = new TLongArrayList();
+		TLongObjectHashMap<RestrictionInfo> restrictionMap = new TLongObjectHashMap<RestrictionInfo>();
+		for (RouteSubregion rs : sorted) {
+			if (rs.dataObjects == null) {
+				codedIS.seek(rs.filePointer + rs.shiftToData);
+				int limit = codedIS.readRawVarint32();
+				long oldLimit = codedIS.pushLimitLong((long) limit);
+				readRouteTreeData(rs, idMap, restrictionMap);
+				codedIS.popLimit(oldLimit);
+			}
+		}
+		List<List<RouteDataObject>> res = new ArrayList<List<RouteDataObject>>(toLoad.size());
+		for (RouteSubregion rs : toLoad) {
+			res.add(rs.dataObjects);
+		}
+		// free objects (after all, same subregion could be requested twice)
+		for (RouteSubregion rs : toLoad) {
+			rs.dataObjects = null;
+		}
+		return res;
+	}
+
 	public void loadRouteRegionData(List<RouteSubregion> toLoad, ResultMatcher<RouteDataObject> matcher) throws IOException {
 		Collections.sort(toLoad, new Comparator<RouteSubregion>() {
 			@Override
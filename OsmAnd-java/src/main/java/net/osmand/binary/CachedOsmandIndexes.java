@@ -39,6 +39,8 @@ public class CachedOsmandIndexes {
 	private OsmAndStoredIndex.Builder storedIndexBuilder;
 	private Log log = PlatformUtil.getLog(CachedOsmandIndexes.class);
 	private boolean hasChanged = false;
+	// optional sidecar with lazily read headers (map trees, poi categories, route subregion trees)
+	private CachedOsmandTreeIndexes treeIndexes;
 	public static final String INDEXES_DEFAULT_FILENAME = "indexes.cache";
 
 	public static final int VERSION = 5;// synchronize with binaryRead.cpp CACHE_VERSION
@@ -222,9 +224,20 @@ public class CachedOsmandIndexes {
 		} else {
 			reader = initReaderFromFileIndex(found, mf, f);
 		}
+		if (treeIndexes != null && !treeIndexes.initReader(reader, f)) {
+			treeIndexes.addToCache(reader, f);
+		}
 		return reader;
 	}
 
+	public CachedOsmandTreeIndexes getTreeIndexes() {
+		return treeIndexes;
+	}
+
+	public void setTreeIndexes(CachedOsmandTreeIndexes treeIndexes) {
+		this.treeIndexes = treeIndexes;
+	}
+
 
 	public FileIndex getFileIndex(File f, boolean init) throws IOException {
 		FileIndex found = null;
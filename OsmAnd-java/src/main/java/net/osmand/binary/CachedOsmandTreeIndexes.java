@@ -0,0 +1,348 @@
+package net.osmand.binary;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.MapTree;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiSubType;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.osm.MapPoiTypes;
+
+// Sidecar of CachedOsmandIndexes (indexes.cache stores only top level parts): headers which are read lazily
+// by first query - MapRoot trees, POI categories / subtypes tables and route subregion trees - are stored per file
+// (keyed by name, size and date) and set to reader on creation, so first query after startup doesn't read them.
+// File: int version, int files, (UTF name, long size, long date, int length, byte[length] trees) * files.
+public class CachedOsmandTreeIndexes {
+
+	private static final Log log = PlatformUtil.getLog(CachedOsmandTreeIndexes.class);
+	public static final String TREES_DEFAULT_FILENAME = "indexes-trees.cache";
+	public static final int VERSION = 1;
+
+	private final Map<String, FileTrees> files = new LinkedHashMap<String, FileTrees>();
+	private boolean hasChanged = false;
+
+	private static class FileTrees {
+		long size;
+		long dateModified;
+		byte[] data;
+	}
+
+	private static long getDateModified(BinaryMapIndexReader reader, File f) {
+		long d = reader.getDateCreated();
+		return d == 0 ? f.lastModified() : d;
+	}
+
+	// sets cached trees to reader, returns false if file is not cached (or cache is outdated)
+	public boolean initReader(BinaryMapIndexReader reader, File f) throws IOException {
+		FileTrees ft = files.get(f.getName());
+		if (ft == null || ft.size != f.length() || ft.dateModified != getDateModified(reader, f)) {
+			return false;
+		}
+		try {
+			readTrees(reader, new DataInputStream(new ByteArrayInputStream(ft.data)));
+			return true;
+		} catch (IOException e) {
+			log.warn("Ignore cached trees of " + f.getName() + ": " + e.getMessage());
+			files.remove(f.getName());
+			hasChanged = true;
+			return false;
+		}
+	}
+
+	// reads all lazy headers of reader (including full route subregion trees) and stores them
+	public void addToCache(BinaryMapIndexReader reader, File f) throws IOException {
+		reader.initLazyIndexes();
+		SearchRequest<?> all = BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15, null);
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			reader.searchRouteIndexTree(all, reg.getSubregions());
+			reader.searchRouteIndexTree(all, reg.getBaseSubregions());
+		}
+		ByteArrayOutputStream bous = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bous);
+		writeTrees(reader, out);
+		out.flush();
+		FileTrees ft = new FileTrees();
+		ft.size = f.length();
+		ft.dateModified = getDateModified(reader, f);
+		ft.data = bous.toByteArray();
+		files.put(f.getName(), ft);
+		hasChanged = true;
+	}
+
+	public void readFromFile(File f) throws IOException {
+		long time = System.currentTimeMillis();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try {
+			files.clear();
+			hasChanged = false;
+			if (in.readInt() != VERSION) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				FileTrees ft = new FileTrees();
+				ft.size = in.readLong();
+				ft.dateModified = in.readLong();
+				ft.data = new byte[in.readInt()];
+				in.readFully(ft.data);
+				files.put(name, ft);
+			}
+		} finally {
+			in.close();
+		}
+		log.info("Initialize trees cache " + f.getName() + " " + (System.currentTimeMillis() - time) + " ms");
+	}
+
+	public void writeToFile(File f) throws IOException {
+		if (!hasChanged) {
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+		try {
+			out.writeInt(VERSION);
+			out.writeInt(files.size());
+			for (Map.Entry<String, FileTrees> e : files.entrySet()) {
+				FileTrees ft = e.getValue();
+				out.writeUTF(e.getKey());
+				out.writeLong(ft.size);
+				out.writeLong(ft.dateModified);
+				out.writeInt(ft.data.length);
+				out.write(ft.data);
+			}
+		} finally {
+			out.close();
+		}
+		hasChanged = false;
+	}
+
+	private void writeTrees(BinaryMapIndexReader reader, DataOutputStream out) throws IOException {
+		out.writeInt(reader.mapIndexes.size());
+		for (MapIndex mi : reader.mapIndexes) {
+			out.writeInt(mi.getRoots().size());
+			for (MapRoot root : mi.getRoots()) {
+				out.writeInt(root.trees == null ? -1 : root.trees.size());
+				for (int i = 0; root.trees != null && i < root.trees.size(); i++) {
+					MapTree t = root.trees.get(i);
+					out.writeLong(t.filePointer);
+					out.writeLong(t.length);
+					out.writeLong(t.mapDataBlock);
+					out.writeByte(t.ocean == null ? 0 : (t.ocean ? 2 : 1));
+					writeBounds(out, t.left, t.top, t.right, t.bottom);
+				}
+			}
+		}
+		out.writeInt(reader.poiIndexes.size());
+		for (PoiRegion reg : reader.poiIndexes) {
+			out.writeInt(reg.categories.size());
+			for (int i = 0; i < reg.categories.size(); i++) {
+				out.writeUTF(reg.categories.get(i));
+				writeStrings(out, reg.subcategories.get(i));
+			}
+			out.writeInt(reg.subTypes.size());
+			for (PoiSubType st : reg.subTypes) {
+				out.writeUTF(st.name == null ? "" : st.name);
+				out.writeBoolean(st.text);
+				writeStrings(out, st.possibleValues);
+			}
+		}
+		out.writeInt(reader.routingIndexes.size());
+		for (RouteRegion reg : reader.routingIndexes) {
+			writeRouteTrees(out, reg.subregions);
+			writeRouteTrees(out, reg.basesubregions);
+		}
+	}
+
+	// entry is read and validated completely before reader is changed, so broken or outdated entry leaves it as is
+	private void readTrees(BinaryMapIndexReader reader, DataInputStream in) throws IOException {
+		List<List<MapTree>> mapTrees = new ArrayList<List<MapTree>>();
+		checkCount(in.readInt(), reader.mapIndexes.size());
+		for (MapIndex mi : reader.mapIndexes) {
+			checkCount(in.readInt(), mi.getRoots().size());
+			for (int r = 0; r < mi.getRoots().size(); r++) {
+				int trees = in.readInt();
+				List<MapTree> list = trees == -1 ? null : new ArrayList<MapTree>(trees);
+				for (int i = 0; i < trees; i++) {
+					MapTree t = new MapTree();
+					t.filePointer = in.readLong();
+					t.length = in.readLong();
+					t.mapDataBlock = in.readLong();
+					byte ocean = in.readByte();
+					t.ocean = ocean == 0 ? null : Boolean.valueOf(ocean == 2);
+					t.left = in.readInt();
+					t.top = in.readInt();
+					t.right = in.readInt();
+					t.bottom = in.readInt();
+					list.add(t);
+				}
+				mapTrees.add(list);
+			}
+		}
+		checkCount(in.readInt(), reader.poiIndexes.size());
+		MapPoiTypes poiTypes = MapPoiTypes.getDefault();
+		List<PoiRegion> poiRegions = new ArrayList<PoiRegion>();
+		for (int r = 0; r < reader.poiIndexes.size(); r++) {
+			PoiRegion read = new PoiRegion();
+			int categories = in.readInt();
+			for (int i = 0; i < categories; i++) {
+				String cat = in.readUTF().intern();
+				read.categories.add(cat);
+				read.categoriesType.add(poiTypes.getPoiCategoryByName(cat.toLowerCase(), true));
+				read.subcategories.add(readStrings(in, new ArrayList<String>()));
+			}
+			int subTypes = in.readInt();
+			for (int i = 0; i < subTypes; i++) {
+				PoiSubType st = new PoiSubType();
+				st.name = in.readUTF().intern();
+				st.text = in.readBoolean();
+				st.possibleValues = readStrings(in, null);
+				read.subTypes.add(st);
+				if (poiTypes.topIndexPoiAdditional.containsKey(st.name)) {
+					read.topIndexSubTypes.add(st);
+				}
+			}
+			poiRegions.add(read);
+		}
+		checkCount(in.readInt(), reader.routingIndexes.size());
+		// children of top level subregions in order of regions
+		List<List<RouteSubregion>> routeTrees = new ArrayList<List<RouteSubregion>>();
+		for (RouteRegion reg : reader.routingIndexes) {
+			readRouteTrees(in, reg, reg.subregions, routeTrees);
+			readRouteTrees(in, reg, reg.basesubregions, routeTrees);
+		}
+		if (in.read() != -1) {
+			throw new IOException("Cached trees have more data than file structure");
+		}
+
+		int ind = 0;
+		for (MapIndex mi : reader.mapIndexes) {
+			for (MapRoot root : mi.getRoots()) {
+				List<MapTree> list = mapTrees.get(ind++);
+				if (root.trees == null) {
+					root.trees = list;
+				}
+			}
+		}
+		for (int r = 0; r < reader.poiIndexes.size(); r++) {
+			PoiRegion reg = reader.poiIndexes.get(r);
+			PoiRegion read = poiRegions.get(r);
+			// same as BinaryMapPoiReaderAdapter.initCategories (categories are read together with subtypes)
+			if (reg.categories.isEmpty() && !read.categories.isEmpty()) {
+				reg.categories = read.categories;
+				reg.categoriesType = read.categoriesType;
+				reg.subcategories = read.subcategories;
+				reg.subTypes = read.subTypes;
+				reg.topIndexSubTypes = read.topIndexSubTypes;
+			}
+		}
+		ind = 0;
+		for (RouteRegion reg : reader.routingIndexes) {
+			for (List<RouteSubregion> existing : Arrays.asList(reg.subregions, reg.basesubregions)) {
+				for (RouteSubregion s : existing) {
+					List<RouteSubregion> children = routeTrees.get(ind++);
+					if (s.subregions == null) {
+						s.subregions = children;
+					}
+				}
+			}
+		}
+	}
+
+	private void writeRouteTrees(DataOutputStream out, List<RouteSubregion> list) throws IOException {
+		out.writeInt(list == null ? -1 : list.size());
+		for (int i = 0; list != null && i < list.size(); i++) {
+			RouteSubregion s = list.get(i);
+			out.writeLong(s.filePointer);
+			out.writeLong(s.length);
+			out.writeLong(s.shiftToData);
+			writeBounds(out, s.left, s.top, s.right, s.bottom);
+			writeRouteTrees(out, s.subregions);
+		}
+	}
+
+	// top level subregions already exist in reader (from indexes.cache or file), their read children are collected
+	private void readRouteTrees(DataInputStream in, RouteRegion reg, List<RouteSubregion> existing,
+	                            List<List<RouteSubregion>> children) throws IOException {
+		int size = in.readInt();
+		checkCount(size, existing.size());
+		for (RouteSubregion s : existing) {
+			RouteSubregion read = readRouteSubregion(in, reg);
+			if (read.filePointer != s.filePointer) {
+				throw new IOException("Route subregion " + s.filePointer + " doesn't match " + read.filePointer);
+			}
+			children.add(read.subregions);
+		}
+	}
+
+	private RouteSubregion readRouteSubregion(DataInputStream in, RouteRegion reg) throws IOException {
+		RouteSubregion s = new RouteSubregion(reg);
+		s.filePointer = in.readLong();
+		s.length = in.readLong();
+		s.shiftToData = in.readLong();
+		s.left = in.readInt();
+		s.top = in.readInt();
+		s.right = in.readInt();
+		s.bottom = in.readInt();
+		int children = in.readInt();
+		if (children >= 0) {
+			s.subregions = new ArrayList<RouteSubregion>(children);
+			for (int i = 0; i < children; i++) {
+				s.subregions.add(readRouteSubregion(in, reg));
+			}
+		}
+		return s;
+	}
+
+	private static void writeBounds(DataOutputStream out, int left, int top, int right, int bottom) throws IOException {
+		out.writeInt(left);
+		out.writeInt(top);
+		out.writeInt(right);
+		out.writeInt(bottom);
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+		out.writeInt(list == null ? -1 : list.size());
+		for (int i = 0; list != null && i < list.size(); i++) {
+			out.writeUTF(list.get(i));
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in, List<String> def) throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			return def;
+		}
+		List<String> list = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(in.readUTF().intern());
+		}
+		return list;
+	}
+
+	private static void checkCount(int cached, int actual) throws IOException {
+		if (cached != actual) {
+			throw new IOException("Cached structure doesn't match file: " + cached + " != " + actual);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package net.osmand.binary;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+
+// Cache of decoded map data blocks (all objects of block without bbox / SearchFilter) shared by readers
+// (see BinaryMapIndexReader.setMapDataBlockCache), blocks are keyed by (file, mapDataBlock pointer, zoom level root)
+// and evicted in LRU order when size limit is exceeded. Cached objects are shared by queries and must not be modified.
+public class MapDataBlockCache {
+
+	private final static Log log = PlatformUtil.getLog(MapDataBlockCache.class);
+
+	private final long maxSizeBytes;
+	private final LinkedHashMap<BlockKey, CachedBlock> blocks = new LinkedHashMap<BlockKey, CachedBlock>(16, 0.75f, true);
+	private long sizeBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public MapDataBlockCache(long maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+	}
+
+	synchronized CachedBlock get(Object file, long mapDataBlock, MapRoot root) {
+		CachedBlock block = blocks.get(new BlockKey(file, mapDataBlock, root));
+		if (block != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return block;
+	}
+
+	synchronized CachedBlock put(Object file, long mapDataBlock, MapRoot root, List<BinaryMapDataObject> objects) {
+		CachedBlock block = new CachedBlock(objects);
+		CachedBlock prev = blocks.put(new BlockKey(file, mapDataBlock, root), block);
+		if (prev != null) {
+			sizeBytes -= prev.size;
+		}
+		sizeBytes += block.size;
+		evict();
+		return block;
+	}
+
+	private void evict() {
+		Iterator<Entry<BlockKey, CachedBlock>> it = blocks.entrySet().iterator();
+		while (sizeBytes > maxSizeBytes && it.hasNext()) {
+			CachedBlock b = it.next().getValue();
+			it.remove();
+			sizeBytes -= b.size;
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		blocks.clear();
+		sizeBytes = 0;
+	}
+
+	public synchronized int getBlocksCount() {
+		return blocks.size();
+	}
+
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void printStatistics() {
+		log.info(String.format("Map blocks cache: %d blocks, %d / %d KB, hits %d, misses %d, evictions %d",
+				blocks.size(), sizeBytes >> 10, maxSizeBytes >> 10, hits, misses, evictions));
+	}
+
+	static long getEstimatedSize(BinaryMapDataObject o) {
+		long sz = 80 + arraySize(o.coordinates) + arraySize(o.types) + arraySize(o.additionalTypes);
+		if (o.polygonInnerCoordinates != null) {
+			sz += 16 + o.polygonInnerCoordinates.length * 4;
+			for (int[] inner : o.polygonInnerCoordinates) {
+				sz += arraySize(inner);
+			}
+		}
+		TIntObjectHashMap<String> names = o.objectNames;
+		if (names != null) {
+			sz += 64 + names.size() * 16;
+			for (String s : names.valueCollection()) {
+				sz += 40 + s.length() * 2;
+			}
+		}
+		TIntArrayList order = o.namesOrder;
+		if (order != null) {
+			sz += 32 + order.size() * 4;
+		}
+		return sz;
+	}
+
+	private static long arraySize(int[] a) {
+		return a == null ? 0 : 16 + a.length * 4;
+	}
+
+	static class CachedBlock {
+		final List<BinaryMapDataObject> objects;
+		// left, top, right, bottom of every object
+		final int[] bounds;
+		final long size;
+
+		CachedBlock(List<BinaryMapDataObject> objects) {
+			this.objects = Collections.unmodifiableList(objects);
+			bounds = new int[objects.size() * 4];
+			long sz = 64 + bounds.length * 4;
+			for (int i = 0; i < objects.size(); i++) {
+				BinaryMapDataObject o = objects.get(i);
+				int left = Integer.MAX_VALUE, top = Integer.MAX_VALUE, right = Integer.MIN_VALUE, bottom = Integer.MIN_VALUE;
+				for (int k = 0; k + 1 < o.coordinates.length; k += 2) {
+					left = Math.min(left, o.coordinates[k]);
+					right = Math.max(right, o.coordinates[k]);
+					top = Math.min(top, o.coordinates[k + 1]);
+					bottom = Math.max(bottom, o.coordinates[k + 1]);
+				}
+				bounds[i * 4] = left;
+				bounds[i * 4 + 1] = top;
+				bounds[i * 4 + 2] = right;
+				bounds[i * 4 + 3] = bottom;
+				sz += getEstimatedSize(o);
+			}
+			this.size = sz;
+		}
+	}
+
+	private static class BlockKey {
+		final Object file;
+		final long mapDataBlock;
+		final MapRoot root;
+
+		BlockKey(Object file, long mapDataBlock, MapRoot root) {
+			this.file = file;
+			this.mapDataBlock = mapDataBlock;
+			this.root = root;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + Long.hashCode(mapDataBlock);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof BlockKey)) {
+				return false;
+			}
+			// objects of other reader instance (same file) refer to another MapIndex and its rules
+			BlockKey other = (BlockKey) obj;
+			return mapDataBlock == other.mapDataBlock && root == other.root && file.equals(other.file);
+		}
+	}
+}
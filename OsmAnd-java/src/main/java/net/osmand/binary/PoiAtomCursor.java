@@ -0,0 +1,82 @@
+package net.osmand.binary;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedInputStream;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.osm.PoiCategory;
+
+// Flyweight view of POI atom (OsmAndPoiBoxDataAtom) read by projection pass of BinaryMapPoiReaderAdapter:
+// only location, id, categories and name offset are decoded, Amenity is created only for accepted atoms.
+// Cursor is reused by reader for every atom, so values are valid only inside SearchPoiAtomFilter.accept().
+public class PoiAtomCursor {
+
+	private final CodedInputStream codedIS;
+
+	long atomStart;
+	int x31;
+	int y31;
+	long id;
+	// first accepted category (full decode joins all accepted subtypes with ';')
+	PoiCategory type;
+	String subType;
+	final TIntArrayList categories = new TIntArrayList();
+	long nameOffset;
+	private String name;
+
+	PoiAtomCursor(CodedInputStream codedIS) {
+		this.codedIS = codedIS;
+	}
+
+	void reset(long atomStart) {
+		this.atomStart = atomStart;
+		x31 = y31 = 0;
+		id = 0;
+		type = null;
+		subType = null;
+		categories.resetQuick();
+		nameOffset = -1;
+		name = null;
+	}
+
+	public int getX31() {
+		return x31;
+	}
+
+	public int getY31() {
+		return y31;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public PoiCategory getType() {
+		return type;
+	}
+
+	public String getSubType() {
+		return subType;
+	}
+
+	// raw category values (category id | subcategory id << SHIFT_BITS_CATEGORY)
+	public TIntArrayList getCategories() {
+		return categories;
+	}
+
+	public long getNameOffset() {
+		return nameOffset;
+	}
+
+	// name is read on demand from name offset, stream position is kept
+	public String getName() throws IOException {
+		if (name == null && nameOffset != -1) {
+			long pos = codedIS.getTotalBytesRead();
+			codedIS.seek(nameOffset);
+			name = codedIS.readString();
+			codedIS.seek(pos);
+		}
+		return name == null ? "" : name;
+	}
+}
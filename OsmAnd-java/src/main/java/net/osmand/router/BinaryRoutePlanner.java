@@ -10,6 +10,12 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import net.osmand.PlatformUtil;
 import net.osmand.binary.RouteDataObject;
@@ -59,12 +65,16 @@ public class BinaryRoutePlanner {
 		return ctx.config.heuristicCoefficient * distanceToEnd + distanceFromStart;
 	}
 
+	private static float cost(RouteSegment segment, RoutingContext ctx) {
+		return cost(segment.distanceFromStart, segment.distanceToEnd, ctx);
+	}
+
 	private static class RouteSegmentCost {
 		float cost;
 		RouteSegment segment;
 		
-		public RouteSegmentCost(RouteSegment segment, RoutingContext ctx) {
-			this.cost = cost(segment.distanceFromStart, segment.distanceToEnd, ctx);
+		public RouteSegmentCost(RouteSegment segment, float cost) {
+			this.cost = cost;
 			this.segment = segment;
 		}
 
@@ -74,26 +84,170 @@ public class BinaryRoutePlanner {
 		}
 	}
 
+	private static class RouteSegmentPriorityQueue implements RouteSegmentQueue {
+		private final PriorityQueue<RouteSegmentCost> queue = new PriorityQueue<>(50, new SegmentsComparator());
+
+		@Override
+		public void add(RouteSegment segment, float cost) {
+			queue.add(new RouteSegmentCost(segment, cost));
+		}
+
+		@Override
+		public RouteSegment peek() {
+			RouteSegmentCost c = queue.peek();
+			return c == null ? null : c.segment;
+		}
+
+		@Override
+		public float peekCost() {
+			RouteSegmentCost c = queue.peek();
+			return c == null ? Float.NaN : c.cost;
+		}
+
+		@Override
+		public RouteSegment poll() {
+			RouteSegmentCost c = queue.poll();
+			return c == null ? null : c.segment;
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		@Override
+		public void clear() {
+			queue.clear();
+		}
+	}
+
+	private static RouteSegmentQueue createQueue(RoutingContext ctx) {
+		if (ctx.config.primitiveHeapQueue) {
+			return new RouteSegmentHeap();
+		}
+		return new RouteSegmentPriorityQueue();
+	}
+
+	// Visited segments which could be read by opposite search running in another thread
+	private static class ConcurrentVisitedSegments extends TLongObjectHashMap<RouteSegment> {
+		private static final long serialVersionUID = -1572311113466571232L;
+
+		@Override
+		public synchronized RouteSegment put(long key, RouteSegment value) {
+			return super.put(key, value);
+		}
+
+		@Override
+		public synchronized RouteSegment get(long key) {
+			return super.get(key);
+		}
+
+		@Override
+		public synchronized boolean containsKey(long key) {
+			return super.containsKey(key);
+		}
+
+		@Override
+		public synchronized RouteSegment remove(long key) {
+			return super.remove(key);
+		}
+
+		@Override
+		public synchronized int size() {
+			return super.size();
+		}
+	}
+
+	// Shared stop condition of parallel bidirectional search: final segments are registered when created,
+	// so each side knows the best route found by both sides
+	static class ParallelSearchState {
+		private FinalRouteSegment finalSegment;
+		private volatile float finalCost = Float.POSITIVE_INFINITY;
+		private final RouteCalculationProgress progress;
+		volatile boolean stopped;
+		volatile int directQueueSize;
+		volatile int reverseQueueSize;
+
+		ParallelSearchState(RouteCalculationProgress progress) {
+			this.progress = progress;
+		}
+
+		boolean isCancelled() {
+			return progress != null && progress.isCancelled;
+		}
+
+		synchronized void offerFinalSegment(FinalRouteSegment segment, float cost) {
+			if (cost < finalCost) {
+				finalCost = cost;
+				finalSegment = segment;
+			}
+		}
+
+		float getFinalCost() {
+			return finalCost;
+		}
+
+		synchronized FinalRouteSegment getFinalSegment() {
+			return finalSegment;
+		}
+	}
+
+	private static ExecutorService parallelSearchExecutor;
+
+	private static synchronized ExecutorService getParallelSearchExecutor() {
+		if (parallelSearchExecutor == null) {
+			parallelSearchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ReverseRouteSearch");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return parallelSearchExecutor;
+	}
+
+	private boolean isParallelSearchPossible(RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
+			TLongObjectMap<RouteSegment> boundaries) {
+		return ctx.config.parallelBidirectional && ctx.planRouteIn2Directions() && start != null && end != null
+				&& boundaries == null && ctx.nativeLib == null && ctx.precalculatedRouteDirection == null
+				&& ctx.reverseSearchTree == null;
+	}
+
 	/**
 	 * Calculate route between start.segmentEnd and end.segmentStart (using A* algorithm)
 	 * return list of segments
 	 */
 	FinalRouteSegment searchRouteInternal(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end, 
 			TLongObjectMap<RouteSegment> boundaries) throws InterruptedException, IOException {
+		if (isParallelSearchPossible(ctx, start, end, boundaries)) {
+			return searchRouteParallel(ctx, start, end);
+		}
 		// measure time
 		ctx.memoryOverhead = 1000;
 		// Initializing priority queue to visit way segments 
-		PriorityQueue<RouteSegmentCost> graphDirectSegments = new PriorityQueue<>(50, new SegmentsComparator());
-		PriorityQueue<RouteSegmentCost> graphReverseSegments = new PriorityQueue<>(50, new SegmentsComparator());
+		RouteSegmentQueue graphDirectSegments = createQueue(ctx);
+		RouteSegmentQueue graphReverseSegments = createQueue(ctx);
 		// Set to not visit one segment twice (stores road.id << X + segmentStart)
 		TLongObjectHashMap<RouteSegment> visitedDirectSegments = new TLongObjectHashMap<RouteSegment>();
 		TLongObjectHashMap<RouteSegment> visitedOppositeSegments = new TLongObjectHashMap<RouteSegment>();
+		// only forward search meeting reverse tree of previous calculation
+		boolean incremental = ctx.reverseSearchTree != null && start != null && end != null;
+		if (incremental) {
+			visitedOppositeSegments = ctx.reverseSearchTree.segments;
+		}
 		initQueuesWithStartEnd(ctx, start, end, graphDirectSegments, graphReverseSegments);
 
 		boolean onlyBackward = ctx.getPlanRoadDirection() < 0;
 		boolean onlyForward = ctx.getPlanRoadDirection() > 0;
 		// Extract & analyze segment with min(f(x)) from queue while final segment is not found
-		boolean forwardSearch = !onlyForward; 
+		boolean forwardSearch = !onlyForward || incremental;
 
 		FinalRouteSegment finalSegment = null;
 		ctx.dijkstraMode = end == null ? 1 : (start == null ? -1 : 0);
@@ -104,11 +258,11 @@ public class BinaryRoutePlanner {
 			end.others = null;
 			forwardSearch = false;
 		}
-		PriorityQueue<RouteSegmentCost> graphSegments = forwardSearch ?  graphDirectSegments : graphReverseSegments;
+		RouteSegmentQueue graphSegments = forwardSearch ?  graphDirectSegments : graphReverseSegments;
 		float[] minCost = new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
 		while (!graphSegments.isEmpty()) {
-			RouteSegmentCost cst = graphSegments.poll();
-			RouteSegment segment = cst.segment;
+			float cstCost = graphSegments.peekCost();
+			RouteSegment segment = graphSegments.poll();
 			int visitedCnt = (start != null ? visitedDirectSegments.size() : 0) + (end != null ? visitedOppositeSegments.size() : 0);
 			// use accumulative approach
 			ctx.memoryOverhead = visitedCnt * STANDARD_ROAD_VISITED_OVERHEAD +
@@ -164,12 +318,12 @@ public class BinaryRoutePlanner {
 					println("  " + segment.segEnd + ">> Already visited by minimum");
 				}
 				skipSegment = true;
-			} else if (cst.cost + 0.1 < minCost[forwardSearch ? 1 : 0] && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX) {
+			} else if (cstCost + 0.1 < minCost[forwardSearch ? 1 : 0] && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX) {
 				if (ctx.config.heuristicCoefficient <= 1) {
-					throw new IllegalStateException(cst.cost + " < ???  " + minCost[forwardSearch ? 1 : 0]);
+					throw new IllegalStateException(cstCost + " < ???  " + minCost[forwardSearch ? 1 : 0]);
 				}
 			} else {
-				minCost[forwardSearch ? 1 : 0] = cst.cost;
+				minCost[forwardSearch ? 1 : 0] = cstCost;
 			}
 			if (!skipSegment) {
 				if (forwardSearch) {
@@ -192,7 +346,9 @@ public class BinaryRoutePlanner {
 			if (reiterate) {
 				minCost = new float[] { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
 			}
-			if (ctx.planRouteIn2Directions()) {
+			if (incremental) {
+				forwardSearch = true;
+			} else if (ctx.planRouteIn2Directions()) {
 				// initial iteration make in 2 directions 
 				if (visitedDirectSegments.isEmpty() && !graphDirectSegments.isEmpty()) {
 					forwardSearch = true;
@@ -203,17 +359,17 @@ public class BinaryRoutePlanner {
 					graphSegments = graphDirectSegments.isEmpty() ? graphReverseSegments : graphDirectSegments;
 					if (finalSegment == null) {
 						while (!graphSegments.isEmpty()) {
-							RouteSegmentCost pc = graphSegments.poll();
-							if (pc.segment instanceof FinalRouteSegment) {
-								finalSegment = (FinalRouteSegment) pc.segment;
+							RouteSegment pc = graphSegments.poll();
+							if (pc instanceof FinalRouteSegment) {
+								finalSegment = (FinalRouteSegment) pc;
 								break;
 							}
 						}
 					}
 					return finalSegment;
 				} else {
-					RouteSegment fw = graphDirectSegments.peek().segment;
-					RouteSegment bw = graphReverseSegments.peek().segment;
+					RouteSegment fw = graphDirectSegments.peek();
+					RouteSegment bw = graphReverseSegments.peek();
 					forwardSearch = Double.compare(cost(fw.distanceFromStart, fw.distanceToEnd, ctx), 
 							cost(bw.distanceFromStart, bw.distanceToEnd,ctx)) <= 0;
 				}
@@ -244,11 +400,175 @@ public class BinaryRoutePlanner {
 			ctx.calculationProgress.directQueueSize += graphDirectSegments.size(); // Math.max(ctx.directQueueSize, graphDirectSegments.size());
 			ctx.calculationProgress.oppositeQueueSize += graphReverseSegments.size();
 		}
+		if (ctx.keepReverseSearchTree && !incremental && finalSegment != null && ctx.dijkstraMode == 0) {
+			ctx.reverseSearchTree = new ReverseSearchTree(visitedOppositeSegments);
+		}
+		return finalSegment;
+	}
+
+	/**
+	 * Same as searchRouteInternal in 2 directions but forward and reverse A* run on 2 threads.
+	 * Searches meet through visited segments of opposite direction and stop when
+	 * the cheapest queued segment can't improve the best found final segment.
+	 */
+	private FinalRouteSegment searchRouteParallel(final RoutingContext ctx, final RouteSegmentPoint start,
+			final RouteSegmentPoint end) throws InterruptedException, IOException {
+		ctx.memoryOverhead = 1000;
+		ctx.dijkstraMode = 0;
+		final RouteSegmentQueue graphDirectSegments = createQueue(ctx);
+		final RouteSegmentQueue graphReverseSegments = createQueue(ctx);
+		final TLongObjectHashMap<RouteSegment> visitedDirectSegments = new ConcurrentVisitedSegments();
+		final TLongObjectHashMap<RouteSegment> visitedOppositeSegments = new ConcurrentVisitedSegments();
+		initQueuesWithStartEnd(ctx, start, end, graphDirectSegments, graphReverseSegments);
+
+		final ParallelSearchState state = new ParallelSearchState(ctx.calculationProgress);
+		final RoutingContext reverseCtx = ctx.createParallelSearchContext();
+		ctx.parallelSearchState = state;
+		reverseCtx.parallelSearchState = state;
+		Future<Void> reverseSearch = getParallelSearchExecutor().submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				boolean completed = false;
+				try {
+					searchRouteInDirection(reverseCtx, true, graphReverseSegments, visitedOppositeSegments,
+							visitedDirectSegments, end, state);
+					completed = true;
+				} finally {
+					if (!completed) {
+						state.stopped = true;
+					}
+				}
+				return null;
+			}
+		});
+		try {
+			boolean completed = false;
+			try {
+				searchRouteInDirection(ctx, false, graphDirectSegments, visitedDirectSegments, visitedOppositeSegments,
+						start, state);
+				completed = true;
+			} finally {
+				if (!completed) {
+					state.stopped = true;
+				}
+				waitParallelSearch(reverseSearch);
+			}
+		} finally {
+			ctx.tilesLock = null;
+			ctx.parallelSearchState = null;
+			ctx.alertFasterRoadToVisitedSegments += reverseCtx.alertFasterRoadToVisitedSegments;
+			ctx.alertSlowerSegmentedWasVisitedEarlier += reverseCtx.alertSlowerSegmentedWasVisitedEarlier;
+			if (ctx.calculationProgress != null && reverseCtx.calculationProgress != null) {
+				ctx.calculationProgress.addCounters(reverseCtx.calculationProgress);
+			}
+		}
+		// the cheapest of final segments created by both sides
+		FinalRouteSegment finalSegment = state.getFinalSegment();
+		updateCalculationProgress(ctx, graphDirectSegments, graphReverseSegments);
+		if (ctx.calculationProgress != null) {
+			ctx.calculationProgress.visitedDirectSegments += visitedDirectSegments.size();
+			ctx.calculationProgress.visitedOppositeSegments += visitedOppositeSegments.size();
+			ctx.calculationProgress.directQueueSize += graphDirectSegments.size();
+			ctx.calculationProgress.oppositeQueueSize += graphReverseSegments.size();
+		}
 		return finalSegment;
 	}
 
+	private void waitParallelSearch(Future<Void> search) throws InterruptedException, IOException {
+		try {
+			search.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InterruptedException) {
+				throw (InterruptedException) cause;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void searchRouteInDirection(final RoutingContext ctx, boolean reverseWaySearch, RouteSegmentQueue graphSegments,
+			TLongObjectMap<RouteSegment> visitedSegments, TLongObjectMap<RouteSegment> oppositeSegments,
+			RouteSegmentPoint pnt, ParallelSearchState state) throws InterruptedException {
+		float minCost = Float.NEGATIVE_INFINITY;
+		while (!state.stopped) {
+			if (graphSegments.isEmpty()) {
+				String msg = reverseWaySearch ? "Route is not found to selected target point."
+						: "Route is not found from selected start point.";
+				if (!checkIfGraphIsEmpty(ctx, true, reverseWaySearch, graphSegments, pnt, visitedSegments, msg)) {
+					// can't proceed any more (same as for sequential search)
+					state.stopped = true;
+					break;
+				}
+				minCost = Float.NEGATIVE_INFINITY;
+			}
+			float cstCost = graphSegments.peekCost();
+			if (cstCost >= state.getFinalCost()) {
+				// found route can't be improved from this side anymore, opposite side continues till the same
+				// condition (sequential search stops when the cheapest segment of both queues is final)
+				break;
+			}
+			RouteSegment segment = graphSegments.poll();
+			if (reverseWaySearch) {
+				state.reverseQueueSize = graphSegments.size();
+			} else {
+				state.directQueueSize = graphSegments.size();
+			}
+			int visitedCnt = visitedSegments.size() + oppositeSegments.size();
+			ctx.memoryOverhead = visitedCnt * STANDARD_ROAD_VISITED_OVERHEAD +
+					(state.directQueueSize + state.reverseQueueSize) * STANDARD_ROAD_IN_QUEUE_OVERHEAD;
+			if (TRACE_ROUTING) {
+				printRoad(">", segment, reverseWaySearch);
+			}
+			if (ctx.config.MAX_VISITED > 0 && visitedCnt > ctx.config.MAX_VISITED) {
+				state.stopped = true;
+				break;
+			}
+			if (segment instanceof FinalRouteSegment) {
+				// already registered with its cost, so not reached (cost check above)
+				if (TRACE_ROUTING) {
+					println(" >>FINAL segment: " + segment);
+				}
+				break;
+			}
+			if (ctx.memoryOverhead > ctx.config.memoryLimitation * 0.9) {
+				throw new IllegalStateException(
+						String.format("There is not enough memory %.5f, %.5f -> %.5f, %.5f - limit  %d  MB",
+								MapUtils.get31LatitudeY(ctx.startY), MapUtils.get31LongitudeX(ctx.startX),
+								MapUtils.get31LatitudeY(ctx.targetY), MapUtils.get31LongitudeX(ctx.targetX),
+								ctx.config.memoryLimitation / (1 << 20)));
+			}
+			if (ctx.calculationProgress != null) {
+				ctx.calculationProgress.visitedSegments++;
+			}
+			if (visitedSegments.containsKey(calculateRoutePointId(segment))) {
+				if (TRACE_ROUTING) {
+					println("  " + segment.segEnd + ">> Already visited by minimum");
+				}
+				continue;
+			}
+			if (cstCost + 0.1 < minCost && ASSERT_CHECKS && ctx.calculationMode != RouteCalculationMode.COMPLEX) {
+				if (ctx.config.heuristicCoefficient <= 1) {
+					throw new IllegalStateException(cstCost + " < ???  " + minCost);
+				}
+			} else {
+				minCost = cstCost;
+			}
+			processRouteSegment(ctx, reverseWaySearch, graphSegments, visitedSegments, segment,
+					oppositeSegments, null, false);
+			if (state.isCancelled()) {
+				throw new InterruptedException("Route calculation interrupted");
+			}
+		}
+	}
+
 	protected boolean checkIfGraphIsEmpty(final RoutingContext ctx, boolean allowDirection,
-			boolean reverseWaySearch, PriorityQueue<RouteSegmentCost> graphSegments, RouteSegmentPoint pnt, TLongObjectMap<RouteSegment> visited,
+			boolean reverseWaySearch, RouteSegmentQueue graphSegments, RouteSegmentPoint pnt, TLongObjectMap<RouteSegment> visited,
 			String msg) {
 		if (allowDirection && graphSegments.isEmpty()) {
 			if (pnt.others != null) {
@@ -263,7 +583,7 @@ public class BinaryRoutePlanner {
 						pos.setParentRoute(null);
 						pos.distanceFromStart = 0;
 						pos.distanceToEnd = estimatedDistance;
-						graphSegments.add(new RouteSegmentCost(pos, ctx));
+						graphSegments.add(pos, cost(pos, ctx));
 					}
 					RouteSegment neg = next.initRouteSegment(false);
 					if (neg != null && !visited.containsKey(calculateRoutePointId(neg)) && 
@@ -271,7 +591,7 @@ public class BinaryRoutePlanner {
 						neg.setParentRoute(null);
 						neg.distanceFromStart = 0;
 						neg.distanceToEnd = estimatedDistance;
-						graphSegments.add(new RouteSegmentCost(neg, ctx));
+						graphSegments.add(neg, cost(neg, ctx));
 					}
 					if (!graphSegments.isEmpty()) {
 						println("Reiterate point with new " + (!reverseWaySearch ? "start " : "destination ")
@@ -287,7 +607,7 @@ public class BinaryRoutePlanner {
 		return false;
 	}
 
-	public RouteSegment initEdgeSegment(final RoutingContext ctx, RouteSegmentPoint pnt, boolean originalDir, PriorityQueue<RouteSegmentCost> graphSegments, boolean reverseSearchWay) {
+	public RouteSegment initEdgeSegment(final RoutingContext ctx, RouteSegmentPoint pnt, boolean originalDir, RouteSegmentQueue graphSegments, boolean reverseSearchWay) {
 		if (pnt == null) {
 			return null;
 		}
@@ -331,7 +651,7 @@ public class BinaryRoutePlanner {
 		}
 		if (checkMovementAllowed(ctx, reverseSearchWay, seg)) {
 			seg.distanceToEnd = estimatedDistance(seg, reverseSearchWay, ctx);
-			graphSegments.add(new RouteSegmentCost(seg, ctx));
+			graphSegments.add(seg, cost(seg, ctx));
 			return seg;
 		}
 		return null;
@@ -348,7 +668,7 @@ public class BinaryRoutePlanner {
 	
 
 	private void initQueuesWithStartEnd(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
-			PriorityQueue<RouteSegmentCost> graphDirectSegments, PriorityQueue<RouteSegmentCost> graphReverseSegments) {
+			RouteSegmentQueue graphDirectSegments, RouteSegmentQueue graphReverseSegments) {
 		if (ctx.precalculatedRouteDirection != null) {
 			ctx.precalculatedRouteDirection.updatePreciseStartEnd(
 					(start != null) ? start.preciseX : 0, (start != null) ? start.preciseY : 0,
@@ -383,19 +703,19 @@ public class BinaryRoutePlanner {
 	}
 
 
-	private void updateCalculationProgress(final RoutingContext ctx, PriorityQueue<RouteSegmentCost> graphDirectSegments,
-			PriorityQueue<RouteSegmentCost> graphReverseSegments) {
+	private void updateCalculationProgress(final RoutingContext ctx, RouteSegmentQueue graphDirectSegments,
+			RouteSegmentQueue graphReverseSegments) {
 		if (ctx.calculationProgress != null) {
 			ctx.calculationProgress.reverseSegmentQueueSize = graphReverseSegments.size();
 			ctx.calculationProgress.directSegmentQueueSize = graphDirectSegments.size();
 			if (!graphDirectSegments.isEmpty() && ctx.getPlanRoadDirection() >= 0) {
-				RouteSegment peek = graphDirectSegments.peek().segment;
+				RouteSegment peek = graphDirectSegments.peek();
 				ctx.calculationProgress.distanceFromBegin = Math.max(peek.distanceFromStart,
 						ctx.calculationProgress.distanceFromBegin);
 				ctx.calculationProgress.directDistance = peek.distanceFromStart + peek.distanceToEnd;
 			}
 			if (!graphReverseSegments.isEmpty() && ctx.getPlanRoadDirection() <= 0) {
-				RouteSegment peek = graphReverseSegments.peek().segment;
+				RouteSegment peek = graphReverseSegments.peek();
 				ctx.calculationProgress.distanceFromEnd = Math.max(peek.distanceFromStart + peek.distanceToEnd,
 							ctx.calculationProgress.distanceFromEnd);
 				ctx.calculationProgress.reverseDistance = peek.distanceFromStart + peek.distanceToEnd;
@@ -456,6 +776,16 @@ public class BinaryRoutePlanner {
 		short prevSegmentInd = !reverseWaySearch ? segment.getSegmentStart() : segment.getSegmentEnd();
 
 		double distTimeOnRoadToPass = calcRoutingSegmentTimeOnlyDist(ctx.getRouter(), segment);
+		if (ctx.config.speedProfiles != null && !reverseWaySearch) {
+			// speed at time of entering segment, not faster than router speed (A* heuristic)
+			float factor = ctx.config.speedProfiles.getSpeedFactor(road.getId(),
+					ctx.getDepartureSecondOfWeek() + (int) segment.distanceFromStart);
+			if (factor <= 0) {
+				return -1;
+			} else if (factor < 1) {
+				distTimeOnRoadToPass /= factor;
+			}
+		}
 		// calculate possible obstacle plus time
 		double obstacle = ctx.getRouter().defineRoutingObstacle(road, segmentInd, prevSegmentInd > segmentInd);
 		if (obstacle < 0) {
@@ -489,7 +819,7 @@ public class BinaryRoutePlanner {
 	}
 
 	private void processRouteSegment(final RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegmentCost> graphSegments, TLongObjectMap<RouteSegment> visitedSegments,
+			RouteSegmentQueue graphSegments, TLongObjectMap<RouteSegment> visitedSegments,
 			RouteSegment startSegment, TLongObjectMap<RouteSegment> oppositeSegments,
 			TLongObjectMap<RouteSegment> boundaries, boolean doNotAddIntersections) {
 		if (ASSERT_CHECKS && !checkMovementAllowed(ctx, reverseWaySearch, startSegment)) {
@@ -519,16 +849,16 @@ public class BinaryRoutePlanner {
 			// 2. check if segment was already visited in opposite direction
 			// We check before we calculate segmentTime (to not calculate it twice with opposite and calculate turns
 			// onto each segment).
+			float distFromStart = currentSegment.distanceFromStart;
 			boolean bothDirVisited = checkIfOppositeSegmentWasVisited(ctx, reverseWaySearch, graphSegments,
-					currentSegment, oppositeSegments, boundaries);
+					currentSegment, distFromStart, oppositeSegments, boundaries);
  			
 			// 3. upload segment itself to visited segments
 			long nextPntId = calculateRoutePointId(currentSegment);
-			RouteSegment existingSegment = visitedSegments.put(nextPntId, currentSegment);
+			RouteSegment existingSegment = visitedSegments.get(nextPntId);
 			if (existingSegment != null) {
 				if (distFromStartPlusSegmentTime > existingSegment.distanceFromStart) {
-					// insert back original segment (test case with large area way)
-					visitedSegments.put(nextPntId, existingSegment);
+					// keep original segment (test case with large area way)
 					if (TRACE_ROUTING) {
 						println("  " + currentSegment.segEnd + ">> Already visited");
 					}
@@ -546,7 +876,14 @@ public class BinaryRoutePlanner {
 			}
 						
 			// reassign @distanceFromStart to make it correct for visited segment
+			// (before put: visited segments are read by opposite search in parallel mode)
 			currentSegment.distanceFromStart = distFromStartPlusSegmentTime;
+			visitedSegments.put(nextPntId, currentSegment);
+			if (!bothDirVisited && ctx.parallelSearchState != null) {
+				// opposite side could visit segment between check and put (and didn't see this side)
+				bothDirVisited = checkIfOppositeSegmentWasVisited(ctx, reverseWaySearch, graphSegments,
+						currentSegment, distFromStart, oppositeSegments, boundaries);
+			}
 			
 			if (bothDirVisited) {
  				// We stop here for shortcut creation (we can't improve the neighbors if they're already visited cause the opposite is min - prove by contradiction) 
@@ -563,7 +900,7 @@ public class BinaryRoutePlanner {
 			// a) final segment is always in queue & double checked b) using osm segment almost always is shorter routing than other connected
 			if (DEBUG_BREAK_EACH_SEGMENT && nextCurrentSegment != null) {
 				if (!doNotAddIntersections) {
-					graphSegments.add(new RouteSegmentCost(nextCurrentSegment, ctx));
+					graphSegments.add(nextCurrentSegment, cost(nextCurrentSegment, ctx));
 				}
 				break;
 			}
@@ -633,17 +970,23 @@ public class BinaryRoutePlanner {
 	}
 
 	private boolean checkIfOppositeSegmentWasVisited(RoutingContext ctx, boolean reverseWaySearch,
-			PriorityQueue<RouteSegmentCost> graphSegments, RouteSegment currentSegment,
+			RouteSegmentQueue graphSegments, RouteSegment currentSegment, float distFromStart,
 			TLongObjectMap<RouteSegment> oppositeSegments, TLongObjectMap<RouteSegment> boundaries) {
 		// check inverse direction for opposite
 		long currPoint = calculateRoutePointInternalId(currentSegment.getRoad(), 
 				currentSegment.getSegmentEnd(), currentSegment.getSegmentStart());
+		RouteSegment opposite;
+		boolean visited;
 		if (boundaries != null && ctx.dijkstraMode != 0) {
-			// limit by boundaries for dijkstra mode
-			oppositeSegments = boundaries;
+			// limit by boundaries for dijkstra mode (values could be null)
+			visited = boundaries.containsKey(currPoint);
+			opposite = boundaries.get(currPoint);
+		} else {
+			// single lookup: opposite side running in parallel could remove segment between 2 calls
+			opposite = oppositeSegments.get(currPoint);
+			visited = opposite != null;
 		}
-		if (oppositeSegments.containsKey(currPoint)) {
-			RouteSegment opposite = oppositeSegments.get(currPoint);
+		if (visited) {
 			RouteSegment curParent = getParentDiffId(currentSegment);
 			RouteSegment oppParent = getParentDiffId(opposite);
 			RouteSegment to = reverseWaySearch ? curParent : oppParent;
@@ -654,14 +997,17 @@ public class BinaryRoutePlanner {
 				frs.setParentRoute(currentSegment.getParentRoute());
 				frs.reverseWaySearch = reverseWaySearch;
 				float oppTime = opposite == null ? 0 : opposite.distanceFromStart;
-				frs.distanceFromStart = oppTime + currentSegment.distanceFromStart;
+				frs.distanceFromStart = oppTime + distFromStart;
 				frs.distanceToEnd = 0;
 				frs.opposite = opposite;
 				if (frs.distanceFromStart < 0) {
 					// impossible route (when start/point on same segment but different dir) don't add to queue
 					return true;
 				}
-				graphSegments.add(new RouteSegmentCost(frs, ctx));
+				graphSegments.add(frs, cost(frs, ctx));
+				if (ctx.parallelSearchState != null) {
+					ctx.parallelSearchState.offerFinalSegment(frs, cost(frs, ctx));
+				}
 				if (TRACE_ROUTING) {
 					printRoad("  " + currentSegment.segEnd + ">> Final segment : ", frs, reverseWaySearch);
 				}
@@ -678,7 +1024,7 @@ public class BinaryRoutePlanner {
 		return false;
 	}
 
-	private long calculateRoutePointInternalId(final RouteDataObject road, int pntId, int nextPntId) {
+	static long calculateRoutePointInternalId(final RouteDataObject road, int pntId, int nextPntId) {
 		int positive = nextPntId - pntId;
 		int pntLen = road.getPointsLength();
 		if (pntId < 0 || nextPntId < 0 || pntId >= pntLen || nextPntId >= pntLen || (positive != -1 && positive != 1)) {
@@ -688,7 +1034,7 @@ public class BinaryRoutePlanner {
 		return (road.getId() << ROUTE_POINTS) + (pntId << 1) + (positive > 0 ? 1 : 0);
 	}
 	
-	private long calculateRoutePointId(RouteSegment segm) {
+	static long calculateRoutePointId(RouteSegment segm) {
 		return calculateRoutePointInternalId(segm.getRoad(), segm.getSegmentStart(), 
 				segm.isPositive() ? segm.getSegmentStart() + 1 : segm.getSegmentStart() - 1);
 		// return calculateRoutePointInternalId(segm.getRoad(), segm.getSegmentStart(), segm.getSegmentEnd()); 
@@ -806,7 +1152,7 @@ public class BinaryRoutePlanner {
 		}
 	}
 
-	private RouteSegment processIntersections(RoutingContext ctx, PriorityQueue<RouteSegmentCost> graphSegments,
+	private RouteSegment processIntersections(RoutingContext ctx, RouteSegmentQueue graphSegments,
 			TLongObjectMap<RouteSegment> visitedSegments,  RouteSegment currentSegment,
 			boolean reverseWaySearch, boolean doNotAddIntersections) {
 		RouteSegment nextCurrentSegment = null;
@@ -913,7 +1259,7 @@ public class BinaryRoutePlanner {
 		return nextCurrentSegment;
 	}
 
-	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, PriorityQueue<RouteSegmentCost> graphSegments,
+	private boolean processOneRoadIntersection(RoutingContext ctx, boolean reverseWaySearch, RouteSegmentQueue graphSegments,
 			TLongObjectMap<RouteSegment> visitedSegments, RouteSegment segment, RouteSegment next) {
 		if (next != null) {
 			if (!checkMovementAllowed(ctx, reverseWaySearch, next)) {
@@ -978,7 +1324,7 @@ public class BinaryRoutePlanner {
 				// put additional information to recover whole route after
 				next.setParentRoute(segment);
 				if (graphSegments != null) {
-					graphSegments.add(new RouteSegmentCost(next, ctx));
+					graphSegments.add(next, cost(next, ctx));
 				}
 				return true;
 			}
@@ -19,6 +19,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TLongHashSet;
@@ -65,7 +67,7 @@ public class GeneralRouter implements VehicleRouter {
 	private final Map<String, Integer> universalRules;
 	private final List<String> universalRulesById;
 	private final Map<String, BitSet> tagRuleMask;
-	private final ArrayList<Object> ruleToValue;
+	private final List<Object> ruleToValue;
 	private boolean shortestRoute;
 	private boolean heightObstacles;
 	private boolean allowPrivate;
@@ -92,7 +94,9 @@ public class GeneralRouter implements VehicleRouter {
 	
 	private GeneralRouterProfile profile;
 	
-	Map<RouteRegion, Map<IntHolder, Float>>[] evalCache;
+	// evaluated attributes by region and types (see RouteTypesLookupTable)
+	Map<RouteRegion, RouteTypesLookupTable> evalCache;
+	private volatile RouteTypesLookupTable lastEvalTable;
 
 	public String[] hhNativeFilter = new String[0]; // getFilteredTags() as flat Array (JNI)
 	public String[] hhNativeParameterValues = new String[0]; // parameterValues as flat Array (JNI)
@@ -212,23 +216,22 @@ public class GeneralRouter implements VehicleRouter {
 		for (int i = 0; i < objectAttributes.length; i++) {
 			objectAttributes[i] = new RouteAttributeContext();
 		}
-		universalRules = new LinkedHashMap<String, Integer>();
-		universalRulesById = new ArrayList<String>();
-		tagRuleMask = new LinkedHashMap<String, BitSet>();
-		ruleToValue = new ArrayList<Object>();
+		// shared by all routers created from this one: read without locks, new tag values are registered
+		// rarely (copy on write), so concurrent routers don't wait for each other
+		universalRules = new ConcurrentHashMap<String, Integer>();
+		universalRulesById = new CopyOnWriteArrayList<String>();
+		tagRuleMask = new ConcurrentHashMap<String, BitSet>();
+		ruleToValue = new CopyOnWriteArrayList<Object>();
 		parameters = new LinkedHashMap<String, GeneralRouter.RoutingParameter>();
 		
 		initCaches();
 
 	}
 
-	@SuppressWarnings("unchecked")
 	private void initCaches() {
-		int l = RouteDataObjectAttribute.values().length;
-		evalCache = new Map[l];
-		for (int i = 0; i < l; i++) {
-			evalCache[i] = new HashMap<>();
-		}
+		// concurrent: router could be shared by parallel bidirectional search
+		evalCache = new ConcurrentHashMap<>();
+		lastEvalTable = null;
 	}
 
 	public String getFilename() {
@@ -351,18 +354,22 @@ public class GeneralRouter implements VehicleRouter {
 	}
 	
 	public int registerTagValueAttribute(String tag, String value) {
-		String key = tag +"$"+value;
-		if(universalRules.containsKey(key)) {
-			return universalRules.get(key);
-		}
-		int id = universalRules.size();
-		universalRulesById.add(key);
-		universalRules.put(key, id);
-		if(!tagRuleMask.containsKey(tag)) {
-			tagRuleMask.put(tag, new BitSet());
+		synchronized (universalRules) {
+			String key = tag + "$" + value;
+			if (universalRules.containsKey(key)) {
+				return universalRules.get(key);
+			}
+			int id = universalRules.size();
+			universalRulesById.add(key);
+			ruleToValue.add(null);
+			// mask could be read by evaluation of other router, so it's replaced instead of modified
+			BitSet mask = tagRuleMask.get(tag);
+			mask = mask == null ? new BitSet() : (BitSet) mask.clone();
+			mask.set(id);
+			tagRuleMask.put(tag, mask);
+			universalRules.put(key, id);
+			return id;
 		}
-		tagRuleMask.get(tag).set(id);
-		return id;
 	}
 	
 	
@@ -389,9 +396,7 @@ public class GeneralRouter implements VehicleRouter {
 	}
 	
 	private Object parseValueFromTag(int id, String type) {
-		while (ruleToValue.size() <= id) {
-			ruleToValue.add(null);
-		}
+		// list is filled by registerTagValueAttribute
 		Object res = ruleToValue.get(id);
 		if (res == null) {
 			String v = universalRulesById.get(id);
@@ -422,8 +427,8 @@ public class GeneralRouter implements VehicleRouter {
 	public float defineObstacle(RouteDataObject road, int point, boolean dir) {
 		int[] pointTypes = road.getPointTypes(point);
 		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, dir);
-			if (obst == null) {
+			float obst = getCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, dir);
+			if (Float.isNaN(obst)) {
 				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
 				obst = getObjContext(RouteDataObjectAttribute.OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
 				putCache(RouteDataObjectAttribute.OBSTACLES, road.region, pointTypes, obst, dir);
@@ -437,8 +442,8 @@ public class GeneralRouter implements VehicleRouter {
 	public float defineRoutingObstacle(RouteDataObject road, int point, boolean dir) {
 		int[] pointTypes = road.getPointTypes(point);
 		if(pointTypes != null) {
-			Float obst = getCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, dir);
-			if (obst == null) {
+			float obst = getCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, dir);
+			if (Float.isNaN(obst)) {
 				int[] filteredPointTypes = filterDirectionTags(road, pointTypes, dir);
 				obst = getObjContext(RouteDataObjectAttribute.ROUTING_OBSTACLES).evaluateFloat(road.region, filteredPointTypes, 0);
 				putCache(RouteDataObjectAttribute.ROUTING_OBSTACLES, road.region, pointTypes, obst, dir);
@@ -516,12 +521,12 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public int isOneWay(RouteDataObject road) {
-		Float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
-		if(res == null) {
+		float res = getCache(RouteDataObjectAttribute.ONEWAY, road);
+		if (Float.isNaN(res)) {
 			res = (float) getObjContext(RouteDataObjectAttribute.ONEWAY).evaluateInt(road, 0);
 			putCache(RouteDataObjectAttribute.ONEWAY, road, res);
 		}
-		return res.intValue();
+		return (int) res;
 	}
 	
 	@Override
@@ -531,8 +536,8 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float getPenaltyTransition(RouteDataObject road) {
-		Float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
-		if (vl == null) {
+		float vl = getCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road);
+		if (Float.isNaN(vl)) {
 			vl = (float) getObjContext(RouteDataObjectAttribute.PENALTY_TRANSITION).evaluateInt(road, 0);
 			putCache(RouteDataObjectAttribute.PENALTY_TRANSITION, road, vl);
 		}
@@ -541,8 +546,8 @@ public class GeneralRouter implements VehicleRouter {
 
 	@Override
 	public float defineRoutingSpeed(RouteDataObject road, boolean dir) {
-		Float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
-		if (definedSpd == null) {
+		float definedSpd = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
+		if (Float.isNaN(definedSpd)) {
 			// not implemented direction usage
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
  			definedSpd = Math.max(Math.min(spd, maxSpeed), minSpeed);
@@ -559,8 +564,8 @@ public class GeneralRouter implements VehicleRouter {
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			return Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
 		}
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
-		if (sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.ROAD_SPEED, road, dir);
+		if (Float.isNaN(sp)) {
 			// not implemented direction usage
 			float spd = getObjContext(RouteDataObjectAttribute.ROAD_SPEED).evaluateFloat(road, defaultSpeed);
 			sp = Math.max(Math.min(spd, maxVehicleSpeed), minSpeed);
@@ -571,8 +576,8 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float defineSpeedPriority(RouteDataObject road, boolean dir) {
-		Float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, dir);
-		if(sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, dir);
+		if (Float.isNaN(sp)) {
 			// not implemented direction usage
 			sp = getObjContext(RouteDataObjectAttribute.ROAD_PRIORITIES).evaluateFloat(road, 1f);
 			putCache(RouteDataObjectAttribute.ROAD_PRIORITIES, road, sp, dir);
@@ -582,89 +587,61 @@ public class GeneralRouter implements VehicleRouter {
 	
 	@Override
 	public float defineDestinationPriority(RouteDataObject road) {
-		Float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
-		if(sp == null) {
+		float sp = getCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road);
+		if (Float.isNaN(sp)) {
 			sp = getObjContext(RouteDataObjectAttribute.DESTINATION_PRIORITIES).evaluateFloat(road, 1f);
 			putCache(RouteDataObjectAttribute.DESTINATION_PRIORITIES, road, sp, false);
 		}
 		return sp;
 	}
 
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val) {
+	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, float val) {
 		putCache(attr, road.region, road.types, val, false);
 	}
 	
-	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, Float val, boolean extra) {
+	private void putCache(RouteDataObjectAttribute attr, RouteDataObject road, float val, boolean extra) {
 		putCache(attr, road.region, road.types, val, extra);
 	}
 	
-	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, Float val, boolean extra) {
-//		TIMER -= System.nanoTime();
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
+	private void putCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, float val, boolean extra) {
 		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				rM = new HashMap<IntHolder, Float>();
-				ch.put(reg, rM);
-			}
-			rM.put(new IntHolder(types, extra), val);
-		}
-//		TIMER += System.nanoTime();
-	}
-	
-	class IntHolder {
-		private final int[] array;
-		private final boolean extra;
-
-		IntHolder(int[] ts, boolean extra) {
-			array = ts;
-			this.extra = extra;
-		}
-
-		@Override
-		public int hashCode() {
-			return Arrays.hashCode(array) + (extra ? 1 : 0);
-		}
-
-		@Override
-		public boolean equals(Object other) {
-			if (array == other) {
-				return true;
-			}
-			if (!(other instanceof IntHolder)) {
-				return false;
-			}
-			if (((IntHolder) other).extra != this.extra) {
-				return false;
-			}
-			// noinspection unchecked
-			return Arrays.equals(array, ((IntHolder) other).array);
+			RouteTypesLookupTable t = getEvalTable(reg);
+			t.put(types, attr.ordinal() * 2 + (extra ? 1 : 0), val);
 		}
 	}
 
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
+	private float getCache(RouteDataObjectAttribute attr, RouteDataObject road) {
 		return getCache(attr, road.region, road.types, false);
 	}
 	
-	private Float getCache(RouteDataObjectAttribute attr, RouteDataObject road, boolean extra) {
+	private float getCache(RouteDataObjectAttribute attr, RouteDataObject road, boolean extra) {
 		return getCache(attr, road.region, road.types, extra);
 	}
 	
-	private Float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
-		Map<RouteRegion, Map<IntHolder, Float>> ch = evalCache[attr.ordinal()];
-//		TIMER -= System.nanoTime();
+	// NaN if not evaluated
+	private float getCache(RouteDataObjectAttribute attr, RouteRegion reg, int[] types, boolean extra) {
 		if (USE_CACHE) {
-			Map<IntHolder, Float> rM = ch.get(reg);
-			if (rM == null) {
-				return null;
-			}
-			Float vl = rM.get(new IntHolder(types, extra));
-			if(vl != null) {
-//				TIMER += System.nanoTime();
-				return vl;
+			return getEvalTable(reg).get(types, attr.ordinal() * 2 + (extra ? 1 : 0));
+		}
+		return Float.NaN;
+	}
+
+	private RouteTypesLookupTable getEvalTable(RouteRegion reg) {
+		// routing mostly reads roads of one region in a row
+		RouteTypesLookupTable t = lastEvalTable;
+		if (t != null && t.region == reg) {
+			return t;
+		}
+		t = evalCache.get(reg);
+		if (t == null) {
+			t = new RouteTypesLookupTable(reg, RouteDataObjectAttribute.values().length * 2);
+			RouteTypesLookupTable p = evalCache.putIfAbsent(reg, t);
+			if (p != null) {
+				t = p;
 			}
 		}
-		return null;
+		lastEvalTable = t;
+		return t;
 	}
 
 	@Override
@@ -958,22 +935,24 @@ public class GeneralRouter implements VehicleRouter {
 		}
 		
 		private BitSet convert(RouteRegion reg, int[] types) {
-			BitSet b = new BitSet(universalRules.size());
-			Map<Integer, Integer> map = regionConvert.get(reg);
-			if(map == null){
-				map = new HashMap<Integer, Integer>();
-				regionConvert.put(reg, map);
-			}
-			for(int k = 0; k < types.length; k++) {
-				Integer nid = map.get(types[k]);
-				if (nid == null) {
-					RouteTypeRule r = reg.quickGetEncodingRule(types[k]);
-					nid = registerTagValueAttribute(r.getTag(), r.getValue());
-					map.put(types[k], nid);
+			synchronized (regionConvert) {
+				BitSet b = new BitSet(universalRules.size());
+				Map<Integer, Integer> map = regionConvert.get(reg);
+				if (map == null) {
+					map = new HashMap<Integer, Integer>();
+					regionConvert.put(reg, map);
 				}
-				b.set(nid);
+				for (int k = 0; k < types.length; k++) {
+					Integer nid = map.get(types[k]);
+					if (nid == null) {
+						RouteTypeRule r = reg.quickGetEncodingRule(types[k]);
+						nid = registerTagValueAttribute(r.getTag(), r.getValue());
+						map.put(types[k], nid);
+					}
+					b.set(nid);
+				}
+				return b;
 			}
-			return b;
 		}
 	}
 
@@ -1223,7 +1202,8 @@ public class GeneralRouter implements VehicleRouter {
 
 		protected Object calcSelectValue(BitSet types, ParameterContext paramContext) {
 			if (selectExpression != null) {
-				selectValue = selectExpression.calculateExprValue(types, paramContext);
+				// rule is shared by routers of the same root, so the value isn't stored
+				return selectExpression.calculateExprValue(types, paramContext);
 			} else if (selectValue instanceof String && selectValue.toString().startsWith("$")) {
 				BitSet mask = tagRuleMask.get(selectValue.toString().substring(1));
 				if (mask != null && mask.intersects(types)) {
@@ -1317,9 +1297,8 @@ public class GeneralRouter implements VehicleRouter {
 	
 	public void clearCaches() {
 		if (evalCache != null) {
-			for (int i = 0; i < evalCache.length; i++) {
-				evalCache[i].clear();
-			}
+			evalCache.clear();
+			lastEvalTable = null;
 		}
 	}
 
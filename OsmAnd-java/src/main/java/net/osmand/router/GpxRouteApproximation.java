@@ -13,6 +13,12 @@ import org.apache.commons.logging.Log;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class GpxRouteApproximation {
 	public List<RoutePlannerFrontEnd.GpxPoint> finalPoints = new ArrayList<>();
@@ -28,6 +34,10 @@ public class GpxRouteApproximation {
 	private int routeDistanceUnmatched;
 	private final Log log = PlatformUtil.getLog(RoutePlannerFrontEnd.class);
 
+	private static final int CHUNKS_PER_THREAD = 2;
+	// default minimal chunk length, see RoutePlannerFrontEnd.setGpxApproximationMinChunkDistance
+	public static final double PARALLEL_MIN_CHUNK_DISTANCE = 10000;
+
 	public GpxRouteApproximation(RoutingContext ctx) {
 		this.ctx = ctx;
 	}
@@ -204,91 +214,275 @@ public class GpxRouteApproximation {
 			if (gctx.ctx.calculationProgress == null) {
 				gctx.ctx.calculationProgress = new RouteCalculationProgress();
 			}
-			RoutePlannerFrontEnd.GpxPoint start = null;
-			RoutePlannerFrontEnd.GpxPoint prev = null;
 			if (gpxPoints.size() > 0) {
 				gctx.ctx.calculationProgress.totalApproximateDistance = (float) gpxPoints.get(gpxPoints.size() - 1).cumDist;
-				start = gpxPoints.get(0);
-			}
-			float minPointApproximation = gctx.ctx.config.minPointApproximation;
-			while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
-				double routeDist = gctx.ctx.config.maxStepApproximation;
-				RoutePlannerFrontEnd.GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-				boolean routeFound = false;
-				if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
-					while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
-						routeFound = initRoutingPoint(next, gctx, minPointApproximation);
+			}
+			if (router.getGpxApproximationThreads() > 1) {
+				approximateByRoutingParallel(gctx, gpxPoints, router.getGpxApproximationThreads(),
+						router.getGpxApproximationMinChunkDistance(), router.getGpxApproximationExecutor());
+			} else {
+				approximateByRouting(gctx, gpxPoints);
+			}
+			if (gctx.ctx.calculationProgress != null) {
+				gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+			}
+			gctx.ctx.deleteNativeRoutingContext();
+			calculateGpxRoute(gctx, gpxPoints);
+			if (!gctx.fullRoute.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
+				RouteResultPreparation.printResults(gctx.ctx, gpxPoints.get(0).loc,
+						gpxPoints.get(gpxPoints.size() - 1).loc, gctx.fullRoute);
+				log.info(gctx);
+			}
+		}
+		return gctx;
+	}
+
+	private void approximateByRouting(GpxRouteApproximation gctx, List<RoutePlannerFrontEnd.GpxPoint> gpxPoints) throws IOException, InterruptedException {
+		RoutePlannerFrontEnd.GpxPoint start = gpxPoints.size() > 0 ? gpxPoints.get(0) : null;
+		RoutePlannerFrontEnd.GpxPoint prev = null;
+		float minPointApproximation = gctx.ctx.config.minPointApproximation;
+		while (start != null && !gctx.ctx.calculationProgress.isCancelled) {
+			double routeDist = gctx.ctx.config.maxStepApproximation;
+			RoutePlannerFrontEnd.GpxPoint next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+			boolean routeFound = false;
+			if (next != null && initRoutingPoint(start, gctx, minPointApproximation)) {
+				while (routeDist >= gctx.ctx.config.minStepApproximation && !routeFound) {
+					routeFound = initRoutingPoint(next, gctx, minPointApproximation);
+					if (routeFound) {
+						routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
 						if (routeFound) {
-							routeFound = findGpxRouteSegment(gctx, gpxPoints, start, next, prev != null);
-							if (routeFound) {
-								routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
-								if (!routeFound) {
-									start.routeToTarget = null;
-								}
+							routeFound = isRouteCloseToGpxPoints(minPointApproximation, gpxPoints, start, next);
+							if (!routeFound) {
+								start.routeToTarget = null;
 							}
-							if (routeFound && next.ind < gpxPoints.size() - 1) {
-								// route is found - cut the end of the route and move to next iteration
-								// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
-								// boolean stepBack = true;
-								boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
-								if (!stepBack) {
-									// not supported case (workaround increase routing.xml maxStepApproximation)
-									log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
-									start.routeToTarget = null;
-									routeFound = false;
-								} else {
-									if (gctx.ctx.getVisitor() != null) {
-										gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
-												next);
-									}
+						}
+						if (routeFound && next.ind < gpxPoints.size() - 1) {
+							// route is found - cut the end of the route and move to next iteration
+							// start.stepBackRoute = new ArrayList<RouteSegmentResult>();
+							// boolean stepBack = true;
+							boolean stepBack = stepBackAndFindPrevPointInRoute(gctx, gpxPoints, start, next);
+							if (!stepBack) {
+								// not supported case (workaround increase routing.xml maxStepApproximation)
+								log.info("Consider to increase routing.xml maxStepApproximation to: " + routeDist * 2);
+								start.routeToTarget = null;
+								routeFound = false;
+							} else {
+								if (gctx.ctx.getVisitor() != null) {
+									gctx.ctx.getVisitor().visitApproximatedSegments(start.routeToTarget, start,
+											next);
 								}
 							}
 						}
-						if (!routeFound) {
-							// route is not found move next point closer to start point (distance / 2)
-							routeDist = routeDist / 2;
-							if (routeDist < gctx.ctx.config.minStepApproximation
-									&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
-								routeDist = gctx.ctx.config.minStepApproximation;
-							}
-							next = findNextGpxPointWithin(gpxPoints, start, routeDist);
-							if (next != null) {
-								routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
-							}
+					}
+					if (!routeFound) {
+						// route is not found move next point closer to start point (distance / 2)
+						routeDist = routeDist / 2;
+						if (routeDist < gctx.ctx.config.minStepApproximation
+								&& routeDist > gctx.ctx.config.minStepApproximation / 2 + 1) {
+							routeDist = gctx.ctx.config.minStepApproximation;
+						}
+						next = findNextGpxPointWithin(gpxPoints, start, routeDist);
+						if (next != null) {
+							routeDist = Math.min(next.cumDist - start.cumDist, routeDist);
 						}
 					}
 				}
-				// route is not found skip segment and keep it as straight line on display
-				if (!routeFound && next != null) {
-					// route is not found, move start point by
-					next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
-					if (prev != null) {
-						prev.routeToTarget.addAll(prev.stepBackRoute);
-						if (next != null) {
-							log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+			}
+			// route is not found skip segment and keep it as straight line on display
+			if (!routeFound && next != null) {
+				// route is not found, move start point by
+				next = findNextGpxPointWithin(gpxPoints, start, gctx.ctx.config.minStepApproximation);
+				if (prev != null) {
+					prev.routeToTarget.addAll(prev.stepBackRoute);
+					if (next != null) {
+						log.warn("NOT found route from: " + start.pnt.getRoad() + " at " + start.pnt.getSegmentStart());
+					}
+				}
+				prev = null;
+			} else {
+				prev = start;
+			}
+			start = next;
+			if (gctx.ctx.calculationProgress != null && start != null) {
+				gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			}
+		}
+	}
+
+	// Track is split at points confidently attached to roads (anchors) and chunks are approximated concurrently,
+	// each with own RoutingContext (map data is shared through RoutingTilesCache), results are joined at anchors.
+	// Memory limit is split between chunks running at the same time, finished chunk unloads its data.
+	private void approximateByRoutingParallel(GpxRouteApproximation gctx, List<RoutePlannerFrontEnd.GpxPoint> gpxPoints,
+	                                          int threads, double minChunkDistance, ExecutorService executor)
+			throws IOException, InterruptedException {
+		TIntArrayList anchors = findChunkAnchors(gctx, gpxPoints, threads * CHUNKS_PER_THREAD, minChunkDistance);
+		if (anchors.size() <= 2) {
+			approximateByRouting(gctx, gpxPoints);
+			return;
+		}
+		RoutingTilesCache sharedTiles = gctx.ctx.sharedTiles != null ? gctx.ctx.sharedTiles
+				: new RoutingTilesCache(gctx.ctx.config.memoryLimitation);
+		List<GpxRouteApproximation> chunks = new ArrayList<>();
+		List<List<RoutePlannerFrontEnd.GpxPoint>> chunkPoints = new ArrayList<>();
+		List<Future<?>> futures = new ArrayList<>();
+		RoutingConfiguration chunkConfig = gctx.ctx.config.copy();
+		chunkConfig.memoryLimitation = gctx.ctx.config.memoryLimitation / Math.min(threads, anchors.size() - 1);
+		try {
+			for (int k = 0; k < anchors.size() - 1; k++) {
+				RoutingContext cctx = router.buildRoutingContext(chunkConfig, null, gctx.ctx.getMaps(),
+						gctx.ctx.calculationMode);
+				cctx.sharedTiles = sharedTiles;
+				cctx.calculationProgress = new RouteCalculationProgress();
+				final GpxRouteApproximation chunk = new GpxRouteApproximation(cctx);
+				chunk.router = router;
+				final List<RoutePlannerFrontEnd.GpxPoint> points = copyChunk(gpxPoints, anchors.get(k), anchors.get(k + 1));
+				chunks.add(chunk);
+				chunkPoints.add(points);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						try {
+							chunk.approximateByRouting(chunk, points);
+						} finally {
+							chunk.ctx.unloadAllData();
 						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				while (true) {
+					try {
+						f.get(100, TimeUnit.MILLISECONDS);
+						break;
+					} catch (TimeoutException e) {
+						updateChunksProgress(gctx, chunks, chunkPoints);
 					}
-					prev = null;
-				} else {
-					prev = start;
 				}
-				start = next;
-				if (gctx.ctx.calculationProgress != null && start != null) {
-					gctx.ctx.calculationProgress.approximatedDistance = (float) start.cumDist;
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			// executor is shared, stop remaining chunks by flags (e.g. after failure of other chunk)
+			for (int k = 0; k < futures.size(); k++) {
+				if (!futures.get(k).isDone()) {
+					chunks.get(k).ctx.calculationProgress.isCancelled = true;
+					futures.get(k).cancel(false);
 				}
 			}
-			if (gctx.ctx.calculationProgress != null) {
-				gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
+		}
+		for (int k = 0; k < chunks.size(); k++) {
+			GpxRouteApproximation chunk = chunks.get(k);
+			mergeChunk(gpxPoints, chunkPoints.get(k), anchors.get(k), k == chunks.size() - 1);
+			gctx.routeCalculations += chunk.routeCalculations;
+			gctx.routeDistCalculations += chunk.routeDistCalculations;
+			gctx.routePointsSearched += chunk.routePointsSearched;
+		}
+		gctx.ctx.calculationProgress.approximatedDistance = gctx.ctx.calculationProgress.totalApproximateDistance;
+	}
+
+	private void updateChunksProgress(GpxRouteApproximation gctx, List<GpxRouteApproximation> chunks,
+	                                  List<List<RoutePlannerFrontEnd.GpxPoint>> chunkPoints) {
+		float approximated = 0;
+		for (int k = 0; k < chunks.size(); k++) {
+			RouteCalculationProgress cp = chunks.get(k).ctx.calculationProgress;
+			cp.isCancelled = gctx.ctx.calculationProgress.isCancelled;
+			approximated += Math.max(0, cp.approximatedDistance - chunkPoints.get(k).get(0).cumDist);
+		}
+		gctx.ctx.calculationProgress.approximatedDistance = approximated;
+	}
+
+	// indexes of first point, anchors (chunk is at least chunkDist long) and last point
+	private TIntArrayList findChunkAnchors(GpxRouteApproximation gctx, List<RoutePlannerFrontEnd.GpxPoint> gpxPoints,
+	                                       int chunks, double minChunkDistance) throws IOException {
+		TIntArrayList anchors = new TIntArrayList();
+		if (gpxPoints.size() < 2) {
+			return anchors;
+		}
+		anchors.add(0);
+		double total = gpxPoints.get(gpxPoints.size() - 1).cumDist;
+		double chunkDist = Math.max(total / chunks, minChunkDistance);
+		int lastAnchor = 0;
+		for (int j = 1; j < gpxPoints.size() - 1 && !gctx.ctx.calculationProgress.isCancelled; j++) {
+			RoutePlannerFrontEnd.GpxPoint p = gpxPoints.get(j);
+			if (total - p.cumDist < chunkDist / 2) {
+				break;
 			}
-			gctx.ctx.deleteNativeRoutingContext();
-			calculateGpxRoute(gctx, gpxPoints);
-			if (!gctx.fullRoute.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
-				RouteResultPreparation.printResults(gctx.ctx, gpxPoints.get(0).loc,
-						gpxPoints.get(gpxPoints.size() - 1).loc, gctx.fullRoute);
-				log.info(gctx);
+			if (p.cumDist - gpxPoints.get(lastAnchor).cumDist >= chunkDist && isConfidentAnchor(gctx, p)) {
+				anchors.add(j);
+				lastAnchor = j;
 			}
 		}
-		return gctx;
+		anchors.add(gpxPoints.size() - 1);
+		return anchors;
+	}
+
+	// point is close to the road and there is no other road nearby (i.e. not a junction or parallel roads)
+	private boolean isConfidentAnchor(GpxRouteApproximation gctx, RoutePlannerFrontEnd.GpxPoint p) throws IOException {
+		float minPointApproximation = gctx.ctx.config.minPointApproximation;
+		if (!initRoutingPoint(p, gctx, minPointApproximation)
+				|| MapUtils.getDistance(p.pnt.getPreciseLatLon(), p.loc) > minPointApproximation / 5) {
+			return false;
+		}
+		if (p.pnt.others != null) {
+			for (BinaryRoutePlanner.RouteSegmentPoint o : p.pnt.others) {
+				if (o.getRoad().getId() != p.pnt.getRoad().getId()
+						&& MapUtils.getDistance(o.getPreciseLatLon(), p.loc) < minPointApproximation / 2) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// copy of points [from, to] with indexes of chunk
+	private static List<RoutePlannerFrontEnd.GpxPoint> copyChunk(List<RoutePlannerFrontEnd.GpxPoint> gpxPoints, int from, int to) {
+		List<RoutePlannerFrontEnd.GpxPoint> points = new ArrayList<>(to - from + 1);
+		for (int i = from; i <= to; i++) {
+			RoutePlannerFrontEnd.GpxPoint src = gpxPoints.get(i);
+			RoutePlannerFrontEnd.GpxPoint p = new RoutePlannerFrontEnd.GpxPoint(src);
+			p.ind = i - from;
+			p.x31 = src.x31;
+			p.y31 = src.y31;
+			p.time = src.time;
+			if (src.pnt != null) {
+				p.pnt = new BinaryRoutePlanner.RouteSegmentPoint(src.pnt);
+			}
+			points.add(p);
+		}
+		return points;
+	}
+
+	// end anchor of chunk is the start of the next chunk and takes its result from there
+	private static void mergeChunk(List<RoutePlannerFrontEnd.GpxPoint> gpxPoints, List<RoutePlannerFrontEnd.GpxPoint> points,
+	                               int from, boolean lastChunk) {
+		int size = lastChunk ? points.size() : points.size() - 1;
+		for (int i = 0; i < size; i++) {
+			RoutePlannerFrontEnd.GpxPoint p = points.get(i);
+			RoutePlannerFrontEnd.GpxPoint dst = gpxPoints.get(from + i);
+			dst.pnt = p.pnt;
+			dst.routeToTarget = setGpxPointIndex(p.routeToTarget, dst.ind);
+			dst.stepBackRoute = setGpxPointIndex(p.stepBackRoute, dst.ind);
+			dst.targetInd = p.targetInd < 0 ? -1 : p.targetInd + from;
+			dst.straightLine = p.straightLine;
+		}
+	}
+
+	private static List<RouteSegmentResult> setGpxPointIndex(List<RouteSegmentResult> segments, int ind) {
+		if (segments != null) {
+			for (RouteSegmentResult r : segments) {
+				if (r.getGpxPointIndex() != -1) {
+					r.setGpxPointIndex(ind);
+				}
+			}
+		}
+		return segments;
 	}
 
 	private boolean stepBackAndFindPrevPointInRoute(GpxRouteApproximation gctx, List<RoutePlannerFrontEnd.GpxPoint> gpxPoints,
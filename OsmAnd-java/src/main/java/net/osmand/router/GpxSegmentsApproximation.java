@@ -15,7 +15,7 @@ import net.osmand.util.MapUtils;
 // TO-THINK ? makePrecise for start / end segments (just check how correctly they are calculated)
 
 public class GpxSegmentsApproximation {
-	private final int LOOKUP_AHEAD = 10;
+	static final int LOOKUP_AHEAD = 10;
 	private final boolean TEST_SHIFT_GPX_POINTS = false;
 	private final double DILUTE_BY_SEGMENT_DISTANCE = 0.001; // add a fraction of seg dist to pnt-to-gpx dist (0.001)
 
@@ -32,61 +32,25 @@ public class GpxSegmentsApproximation {
 		GpxPoint currentPoint = findNextRoutablePoint(frontEnd, gctx, minPointApproximation, gpxPoints, 0);
 
 		while (currentPoint != null && currentPoint.pnt != null) {
-			double minDistSqrSegment = 0;
-			RouteSegmentResult fres = null;
-			int minNextInd = -1;
-			for (int j = currentPoint.ind + 1; j < Math.min(currentPoint.ind + LOOKUP_AHEAD, gpxPoints.size()); j++) {
-				RouteSegmentResult[] res = new RouteSegmentResult[1];
-				double minDistSqr = Double.POSITIVE_INFINITY;
-				GpxPoint ps = gpxPoints.get(j);
-				minDistSqr = minDistResult(res, minDistSqr, currentPoint.pnt, ps);
-				if (currentPoint.pnt.others != null) {
-					for (RouteSegmentPoint oth : currentPoint.pnt.others) {
-						minDistSqr = minDistResult(res, minDistSqr, oth, ps);
-					}
-				}
-				if (fres == null || minDistSqr <= minDistSqrSegment) {
-					fres = res[0];
-					minDistSqrSegment = minDistSqr;
-					minNextInd = j;
-				}
-				if (MapUtils.getDistance(currentPoint.loc, gpxPoints.get(j).loc) > minPointApproximation) {
-					break; // avoid shortcutting of loops
-				}
-			}
+			RouteSegmentResult[] fres = new RouteSegmentResult[1];
+			double[] minDistSqrSegment = new double[1];
+			int minNextInd = findNextPoint(currentPoint, gpxPoints, currentPoint.ind + 1, minPointApproximation, fres,
+					minDistSqrSegment);
 			if (minNextInd < 0) {
 				break;
 			}
-			if (minDistSqrSegment > minPointApproximation * minPointApproximation) {
+			if (minDistSqrSegment[0] > minPointApproximation * minPointApproximation) {
 				final int nextIndex = currentPoint.ind + 1;
 				currentPoint = findNextRoutablePoint(frontEnd, gctx, minPointApproximation, gpxPoints, nextIndex);
 				continue;
 			}
 			currentPoint.routeToTarget = new ArrayList<RouteSegmentResult>();
-			fres.setGpxPointIndex(currentPoint.ind);
-			currentPoint.routeToTarget.add(fres);
+			fres[0].setGpxPointIndex(currentPoint.ind);
+			currentPoint.routeToTarget.add(fres[0]);
 			currentPoint.targetInd = minNextInd;
 
 			currentPoint = gpxPoints.get(minNextInd); // next point
-
-			RouteSegment sg = gctx.ctx.loadRouteSegment(fres.getEndPointX(), fres.getEndPointY(),
-					gctx.ctx.config.memoryLimitation);
-
-			while (sg != null) {
-				if (sg.getRoad().getId() != fres.getObject().getId() || sg.getSegmentEnd() != fres.getEndPointIndex()) {
-					RouteSegmentPoint p = new RouteSegmentPoint(sg.getRoad(), sg.getSegmentStart(), sg.getSegmentEnd(),
-							0);
-					if (currentPoint.pnt == null) {
-						currentPoint.pnt = p;
-					} else {
-						if (currentPoint.pnt.others == null) {
-							currentPoint.pnt.others = new ArrayList<>();
-						}
-						currentPoint.pnt.others.add(p);
-					}
-				}
-				sg = sg.getNext();
-			}
+			attachNextCandidates(gctx, fres[0], currentPoint);
 		}
 		if (gctx.ctx.calculationProgress != null) {
 			gctx.ctx.calculationProgress.timeToCalculate = System.nanoTime() - timeToCalculate;
@@ -96,7 +60,65 @@ public class GpxSegmentsApproximation {
 		return gctx;
 	}
 
-	private boolean initRoutingPoint(RoutePlannerFrontEnd frontEnd, GpxRouteApproximation gctx, GpxPoint start,
+	// finds the best next point among gpxPoints[from, from + LOOKUP_AHEAD - 1) (stops after first point further than
+	// minPointApproximation), returns its index or -1, fres[0] - segment to it, minDistSqrSegment[0] - its distance
+	int findNextPoint(GpxPoint currentPoint, List<GpxPoint> gpxPoints, int from, float minPointApproximation,
+	                  RouteSegmentResult[] fres, double[] minDistSqrSegment) {
+		int minNextInd = -1;
+		for (int j = from; j < Math.min(from - 1 + LOOKUP_AHEAD, gpxPoints.size()); j++) {
+			RouteSegmentResult[] res = new RouteSegmentResult[1];
+			double minDistSqr = Double.POSITIVE_INFINITY;
+			GpxPoint ps = gpxPoints.get(j);
+			minDistSqr = minDistResult(res, minDistSqr, currentPoint.pnt, ps);
+			if (currentPoint.pnt.others != null) {
+				for (RouteSegmentPoint oth : currentPoint.pnt.others) {
+					minDistSqr = minDistResult(res, minDistSqr, oth, ps);
+				}
+			}
+			if (fres[0] == null || minDistSqr <= minDistSqrSegment[0]) {
+				fres[0] = res[0];
+				minDistSqrSegment[0] = minDistSqr;
+				minNextInd = j;
+			}
+			if (MapUtils.getDistance(currentPoint.loc, ps.loc) > minPointApproximation) {
+				break; // avoid shortcutting of loops
+			}
+		}
+		return minNextInd;
+	}
+
+	// true if gpxPoints already contain all points checked by findNextPoint (decision won't change with next points)
+	boolean isNextPointDecidable(GpxPoint currentPoint, List<GpxPoint> gpxPoints, int from, float minPointApproximation) {
+		for (int j = from; j < gpxPoints.size(); j++) {
+			if (j >= from - 1 + LOOKUP_AHEAD - 1
+					|| MapUtils.getDistance(currentPoint.loc, gpxPoints.get(j).loc) > minPointApproximation) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// road segments at the end of fres (except fres itself) become candidates of next point
+	void attachNextCandidates(GpxRouteApproximation gctx, RouteSegmentResult fres, GpxPoint next) {
+		RouteSegment sg = gctx.ctx.loadRouteSegment(fres.getEndPointX(), fres.getEndPointY(),
+				gctx.ctx.config.memoryLimitation);
+		while (sg != null) {
+			if (sg.getRoad().getId() != fres.getObject().getId() || sg.getSegmentEnd() != fres.getEndPointIndex()) {
+				RouteSegmentPoint p = new RouteSegmentPoint(sg.getRoad(), sg.getSegmentStart(), sg.getSegmentEnd(), 0);
+				if (next.pnt == null) {
+					next.pnt = p;
+				} else {
+					if (next.pnt.others == null) {
+						next.pnt.others = new ArrayList<>();
+					}
+					next.pnt.others.add(p);
+				}
+			}
+			sg = sg.getNext();
+		}
+	}
+
+	boolean initRoutingPoint(RoutePlannerFrontEnd frontEnd, GpxRouteApproximation gctx, GpxPoint start,
 	                                 double distThreshold) throws IOException {
 		if (start != null && start.pnt == null) {
 			gctx.routePointsSearched++;
@@ -173,12 +195,16 @@ public class GpxSegmentsApproximation {
 
 	private void initGpxPointsXY31(List<GpxPoint> gpxPoints) {
 		for (GpxPoint p : gpxPoints) {
-			if (TEST_SHIFT_GPX_POINTS) {
-				final double shift = 0.00015; // shift ~15 meters to check attached geometry visually
-				p.loc = new LatLon(p.loc.getLatitude() - shift, p.loc.getLongitude() + shift);
-			}
-			p.x31 = MapUtils.get31TileNumberX(p.loc.getLongitude());
-			p.y31 = MapUtils.get31TileNumberY(p.loc.getLatitude());
+			initGpxPointXY31(p);
+		}
+	}
+
+	void initGpxPointXY31(GpxPoint p) {
+		if (TEST_SHIFT_GPX_POINTS) {
+			final double shift = 0.00015; // shift ~15 meters to check attached geometry visually
+			p.loc = new LatLon(p.loc.getLatitude() - shift, p.loc.getLongitude() + shift);
 		}
+		p.x31 = MapUtils.get31TileNumberX(p.loc.getLongitude());
+		p.y31 = MapUtils.get31TileNumberY(p.loc.getLatitude());
 	}
 }
@@ -0,0 +1,105 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+import net.osmand.util.MapUtils;
+
+// Incremental version of GpxSegmentsApproximation for live gps feeds: points are added one by one and
+// only a window of points after the last matched point is kept (bounded by LOOKUP_AHEAD of GpxSegmentsApproximation).
+// Segment is emitted as soon as the next point is chosen, so it doesn't change when further points arrive.
+// Routing tiles are unloaded by RoutingContext within config.memoryLimitation, memory doesn't grow with track length.
+// Unlike fastGpxApproximation, matching is restarted (findRouteSegment) when no road is connected to the next point.
+public class GpxStreamingApproximation {
+
+	private final RoutePlannerFrontEnd frontEnd;
+	private final GpxRouteApproximation gctx;
+	private final GpxSegmentsApproximation approximation = new GpxSegmentsApproximation();
+	private final float minPointApproximation;
+	private final List<GpxPoint> window = new ArrayList<GpxPoint>();
+	private int pointsCount = 0;
+	private int segmentsCount = 0;
+	private double cumDist = 0;
+
+	public GpxStreamingApproximation(RoutePlannerFrontEnd frontEnd, RoutingContext ctx) {
+		this.frontEnd = frontEnd;
+		this.gctx = new GpxRouteApproximation(ctx);
+		this.minPointApproximation = ctx.config.minPointApproximation;
+		if (ctx.calculationProgress == null) {
+			ctx.calculationProgress = new RouteCalculationProgress();
+		}
+	}
+
+	// returns segments finalized by this point (gpxPointIndex is index of point in the feed)
+	public List<RouteSegmentResult> addPoint(LatLon loc, long time) throws IOException {
+		GpxPoint p = new GpxPoint();
+		p.ind = pointsCount++;
+		p.loc = loc;
+		p.time = time;
+		if (!window.isEmpty()) {
+			cumDist += MapUtils.getDistance(window.get(window.size() - 1).loc, loc);
+		}
+		p.cumDist = cumDist;
+		approximation.initGpxPointXY31(p);
+		window.add(p);
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		advance(res, false);
+		return res;
+	}
+
+	// end of the feed: matches remaining points of the window
+	public List<RouteSegmentResult> finish() throws IOException {
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>();
+		advance(res, true);
+		window.clear();
+		return res;
+	}
+
+	private void advance(List<RouteSegmentResult> res, boolean last) throws IOException {
+		while (!window.isEmpty() && !gctx.ctx.calculationProgress.isCancelled) {
+			GpxPoint current = window.get(0);
+			if (current.pnt == null
+					&& !approximation.initRoutingPoint(frontEnd, gctx, current, minPointApproximation)) {
+				window.remove(0);
+				continue;
+			}
+			if (!last && !approximation.isNextPointDecidable(current, window, 1, minPointApproximation)) {
+				return;
+			}
+			RouteSegmentResult[] fres = new RouteSegmentResult[1];
+			double[] minDistSqr = new double[1];
+			int next = approximation.findNextPoint(current, window, 1, minPointApproximation, fres, minDistSqr);
+			if (next < 0) {
+				return;
+			}
+			if (minDistSqr[0] > minPointApproximation * minPointApproximation) {
+				window.remove(0);
+				continue;
+			}
+			fres[0].setGpxPointIndex(current.ind);
+			res.add(fres[0]);
+			segmentsCount++;
+			approximation.attachNextCandidates(gctx, fres[0], window.get(next));
+			window.subList(0, next).clear();
+		}
+	}
+
+	public int getPointsCount() {
+		return pointsCount;
+	}
+
+	public int getSegmentsCount() {
+		return segmentsCount;
+	}
+
+	public int getWindowSize() {
+		return window.size();
+	}
+
+	public int getRoutePointsSearched() {
+		return gctx.routePointsSearched;
+	}
+}
@@ -0,0 +1,225 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+// Compact (CSR) representation of HH network segments indexed by point index:
+// edges of point i (per direction) are [offsets[i], offsets[i + 1]) in targets / dist arrays.
+// Replaces NetworkDBSegment lists (object per segment) for the whole network, buffers are optionally allocated off-heap.
+// Segment objects are still created on demand (see materialize) for route reconstruction and corrections
+// and released after search (see release), so they don't accumulate in long living context.
+public class HHNetworkCompactGraph {
+
+	private final NetworkDBPoint[] points;
+	private final Edges out;
+	private final Edges in;
+	private final List<NetworkDBPoint> materialized = new ArrayList<>();
+
+	private HHNetworkCompactGraph(NetworkDBPoint[] points, Edges out, Edges in) {
+		this.points = points;
+		this.out = out;
+		this.in = in;
+	}
+
+	// loads all segments of the context and releases segment objects after conversion
+	public static <T extends NetworkDBPoint> HHNetworkCompactGraph build(HHRoutingContext<T> hctx, boolean offHeap)
+			throws SQLException, IOException {
+		int maxIndex = 0;
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			maxIndex = Math.max(maxIndex, pnt.index);
+		}
+		NetworkDBPoint[] points = new NetworkDBPoint[maxIndex + 1];
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			points[pnt.index] = pnt;
+		}
+		EdgesBuilder out = new EdgesBuilder(points.length);
+		EdgesBuilder in = new EdgesBuilder(points.length);
+		for (int i = 0; i < points.length; i++) {
+			@SuppressWarnings("unchecked")
+			T pnt = (T) points[i];
+			if (pnt != null) {
+				hctx.loadNetworkSegmentPoint(pnt, false);
+				hctx.loadNetworkSegmentPoint(pnt, true);
+				for (NetworkDBSegment s : pnt.connected(false)) {
+					if (s.end != null) {
+						out.add(s.end.index, s.dist, s.shortcut);
+					}
+				}
+				for (NetworkDBSegment s : pnt.connected(true)) {
+					if (s.start != null) {
+						in.add(s.start.index, s.dist, s.shortcut);
+					}
+				}
+				pnt.markSegmentsNotLoaded();
+			}
+			out.next();
+			in.next();
+		}
+		return new HHNetworkCompactGraph(points, out.build(offHeap), in.build(offHeap));
+	}
+
+	public NetworkDBPoint getPoint(int index) {
+		return index >= 0 && index < points.length ? points[index] : null;
+	}
+
+	public int size() {
+		return points.length;
+	}
+
+	public int getEdgesCount() {
+		return out.targets.capacity() + in.targets.capacity();
+	}
+
+	// first edge of point, edges of direction rev are stored for point end (i.e. target is segment start)
+	public int first(int index, boolean rev) {
+		return edges(rev).offsets.get(index);
+	}
+
+	public int last(int index, boolean rev) {
+		return edges(rev).offsets.get(index + 1);
+	}
+
+	public int target(int edge, boolean rev) {
+		return edges(rev).targets.get(edge);
+	}
+
+	public float dist(int edge, boolean rev) {
+		return edges(rev).dist.get(edge);
+	}
+
+	public void setDist(int edge, boolean rev, double dist) {
+		edges(rev).dist.put(edge, (float) dist);
+	}
+
+	public boolean shortcut(int edge, boolean rev) {
+		return edges(rev).shortcuts.get(edge);
+	}
+
+	// creates segment lists for point (ignored if already created), segments are not synchronized back with graph
+	public int materialize(NetworkDBPoint point) {
+		if (point.connected(false) != null && point.connected(true) != null) {
+			return 0;
+		}
+		int cnt = 0;
+		for (int r = 0; r < 2; r++) {
+			boolean rev = r == 1;
+			if (point.connected(rev) != null) {
+				continue;
+			}
+			List<NetworkDBSegment> l = new ArrayList<>();
+			for (int e = first(point.index, rev), last = last(point.index, rev); e < last; e++) {
+				NetworkDBPoint p = points[target(e, rev)];
+				l.add(new NetworkDBSegment(rev ? p : point, rev ? point : p, dist(e, rev), !rev, shortcut(e, rev)));
+			}
+			point.connectedSet(rev, l);
+			cnt += l.size();
+		}
+		materialized.add(point);
+		return cnt;
+	}
+
+	// drops segment lists created by materialize (segments referenced by route results stay valid)
+	public void release() {
+		for (NetworkDBPoint p : materialized) {
+			p.markSegmentsNotLoaded();
+		}
+		materialized.clear();
+	}
+
+	public int getMaterializedCount() {
+		return materialized.size();
+	}
+
+	public long getEstimatedSize() {
+		return 4l * points.length + out.getEstimatedSize() + in.getEstimatedSize();
+	}
+
+	private Edges edges(boolean rev) {
+		return rev ? in : out;
+	}
+
+	private static class Edges {
+		final IntBuffer offsets;
+		final IntBuffer targets;
+		final FloatBuffer dist;
+		final BitSet shortcuts;
+
+		Edges(IntBuffer offsets, IntBuffer targets, FloatBuffer dist, BitSet shortcuts) {
+			this.offsets = offsets;
+			this.targets = targets;
+			this.dist = dist;
+			this.shortcuts = shortcuts;
+		}
+
+		long getEstimatedSize() {
+			return 4l * offsets.capacity() + 8l * targets.capacity() + shortcuts.size() / 8;
+		}
+	}
+
+	private static class EdgesBuilder {
+		final TIntArrayList offsets;
+		final TIntArrayList targets = new TIntArrayList();
+		final TIntArrayList dist = new TIntArrayList(); // float bits
+		final BitSet shortcuts = new BitSet();
+
+		EdgesBuilder(int size) {
+			offsets = new TIntArrayList(size + 1);
+			offsets.add(0);
+		}
+
+		void add(int target, double d, boolean shortcut) {
+			if (shortcut) {
+				shortcuts.set(targets.size());
+			}
+			targets.add(target);
+			dist.add(Float.floatToRawIntBits((float) d));
+		}
+
+		void next() {
+			offsets.add(targets.size());
+		}
+
+		Edges build(boolean offHeap) {
+			IntBuffer o = allocate(offsets.size(), offHeap);
+			o.put(offsets.toArray());
+			IntBuffer t = allocate(targets.size(), offHeap);
+			t.put(targets.toArray());
+			FloatBuffer d;
+			if (offHeap) {
+				ByteBuffer bb = allocateDirect(dist.size());
+				bb.asIntBuffer().put(dist.toArray());
+				d = bb.asFloatBuffer();
+			} else {
+				float[] arr = new float[dist.size()];
+				for (int i = 0; i < arr.length; i++) {
+					arr[i] = Float.intBitsToFloat(dist.get(i));
+				}
+				d = FloatBuffer.wrap(arr);
+			}
+			return new Edges(o, t, d, shortcuts);
+		}
+
+		static IntBuffer allocate(int size, boolean offHeap) {
+			if (offHeap) {
+				return allocateDirect(size).asIntBuffer();
+			}
+			return IntBuffer.allocate(size);
+		}
+
+		static ByteBuffer allocateDirect(int size) {
+			return ByteBuffer.allocateDirect(4 * size).order(ByteOrder.nativeOrder());
+		}
+	}
+}
@@ -1,7 +1,7 @@
 package net.osmand.router;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -12,7 +12,6 @@ import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.TreeMap;
 
-import com.google.protobuf.CodedInputStream;
 
 import gnu.trove.iterator.TLongObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -49,6 +48,8 @@ public class HHRouteDataStructure {
 		boolean ROUTE_ALL_SEGMENTS = false;
 		boolean ROUTE_ALL_ALT_SEGMENTS = false;
 		boolean PRELOAD_SEGMENTS = false;
+		boolean COMPACT_GRAPH = false; // segments are stored in HHNetworkCompactGraph instead of objects
+		boolean COMPACT_GRAPH_OFF_HEAP = false;
 		
 		boolean CACHE_CALCULATION_CONTEXT = false;
 		boolean CALC_ALTERNATIVES = false;
@@ -57,6 +58,12 @@ public class HHRouteDataStructure {
 		double ALT_EXCLUDE_RAD_MULT = 0.3; // radius multiplier to exclude points
 		double ALT_EXCLUDE_RAD_MULT_IN = 3; // skip some points to speed up calculation
 		double ALT_NON_UNIQUENESS = 0.7; // 0.7 - 30% of points must be unique
+		// plateau alternatives (forward / backward trees instead of penalty rounds)
+		boolean ALT_PLATEAU = false;
+		double ALT_MAX_STRETCH = 1.3; // max cost of alternative to best route
+		double ALT_MIN_PLATEAU = 0.1; // min plateau cost to best route
+		double ALT_OVERLAP_WEIGHT = 1; // rank = cost / best + weight * overlap
+		int ALT_MAX_ROUTES = 3;
 
 		
 		double MAX_COST;
@@ -106,6 +113,12 @@ public class HHRouteDataStructure {
 			return this;
 		}
 		
+		public HHRoutingConfig compactGraph(boolean offHeap) {
+			this.COMPACT_GRAPH = true;
+			this.COMPACT_GRAPH_OFF_HEAP = offHeap;
+			return this;
+		}
+		
 		public HHRoutingConfig cacheContext(HHRoutingContext<NetworkDBPoint> toCache) {
 			this.CACHE_CALCULATION_CONTEXT = true;
 			this.cacheCtx = toCache;
@@ -117,6 +130,15 @@ public class HHRouteDataStructure {
 			return this;
 		}
 		
+		public HHRoutingConfig calcAlternativePlateau(double maxStretch, double overlapWeight, int maxRoutes) {
+			this.CALC_ALTERNATIVES = true;
+			this.ALT_PLATEAU = true;
+			this.ALT_MAX_STRETCH = maxStretch;
+			this.ALT_OVERLAP_WEIGHT = overlapWeight;
+			this.ALT_MAX_ROUTES = maxRoutes;
+			return this;
+		}
+		
 		public HHRoutingConfig calcDetailed(int segments) {
 			this.ROUTE_LAST_MILE = true;
 			this.ROUTE_ALL_SEGMENTS = segments >= 1;
@@ -220,6 +242,7 @@ public class HHRouteDataStructure {
 
 		DataTileManager<T> pointsRect = new DataTileManager<>(11); // 20km tile
 		TLongObjectHashMap<RouteSegment> boundaries;
+		HHNetworkCompactGraph compactGraph;
 		boolean initialized = false;
 		
 		// Route specific details
@@ -252,6 +275,9 @@ public class HHRouteDataStructure {
 		
 		public void clearAll(TLongObjectHashMap<T> stPoints, TLongObjectHashMap<T> endPoints) {
 			clearVisited();
+			if (compactGraph != null) {
+				compactGraph.release();
+			}
 			if (stPoints != null) {
 				for (NetworkDBPoint p : stPoints.valueCollection()) {
 					p.clearRouting();
@@ -341,7 +367,10 @@ public class HHRouteDataStructure {
 					pnts = r.networkDB.loadNetworkPoints(r.id, pointClass);
 				}
 				if (r.file != null) {
-					pnts = r.file.initHHPoints(r.fileRegion, r.id, pointClass);
+					// reader could be shared with contexts of other threads (see RoutingService)
+					synchronized (r.file) {
+						pnts = r.file.initHHPoints(r.fileRegion, r.id, pointClass);
+					}
 				}
 				if (pnts != null) {
 					TLongObjectIterator<T> it = pnts.iterator();
@@ -384,13 +413,18 @@ public class HHRouteDataStructure {
 		}
 
 		public int loadNetworkSegmentPoint(T point, boolean reverse) throws SQLException, IOException {
+			if (compactGraph != null) {
+				return point.connected(reverse) != null ? 0 : compactGraph.materialize(point);
+			}
 			short mapId = point.mapId;
 			HHRouteRegionPointsCtx<T> r = regions.get(mapId);
 			if (r.networkDB != null) {
 				return r.networkDB.loadNetworkSegmentPoint(this, r, point, reverse);
 			}
 			if (r.file != null) {
-				return r.file.loadNetworkSegmentPoint(this, r, point, reverse);
+				synchronized (r.file) {
+					return r.file.loadNetworkSegmentPoint(this, r, point, reverse);
+				}
 			}
 			throw new UnsupportedOperationException();
 		}
@@ -515,40 +549,57 @@ public class HHRouteDataStructure {
 	
 	public static <T extends NetworkDBPoint> void setSegments(HHRoutingContext<T> ctx, T point,
 			byte[] in, byte[] out) {
+		setSegments(ctx, point, in == null ? null : ByteBuffer.wrap(in), out == null ? null : ByteBuffer.wrap(out));
+	}
+
+	// buffers could be views of memory mapped file (see CodedInputStream.readByteBuffer)
+	public static <T extends NetworkDBPoint> void setSegments(HHRoutingContext<T> ctx, T point,
+			ByteBuffer in, ByteBuffer out) {
 		point.connectedSet(true, HHRouteDataStructure.parseSegments(in, ctx.pointsById,
 				ctx.getIncomingPoints(point), point, false));
 		point.connectedSet(false, HHRouteDataStructure.parseSegments(out, ctx.pointsById,
 				ctx.getOutgoingPoints(point), point, true));		
 	}
 	
-	private static List<NetworkDBSegment> parseSegments(byte[] bytes, TLongObjectHashMap<? extends NetworkDBPoint> pntsById,
+	private static List<NetworkDBSegment> parseSegments(ByteBuffer bytes, TLongObjectHashMap<? extends NetworkDBPoint> pntsById,
 			List<? extends NetworkDBPoint> lst, NetworkDBPoint pnt, boolean out)  {
-		try {
-			List<NetworkDBSegment> l = new ArrayList<>();
-			if (bytes == null || bytes.length == 0 || pnt.incomplete) {
-				return l;
-			}
-			ByteArrayInputStream str = new ByteArrayInputStream(bytes);
-			for (int i = 0; i < lst.size(); i++) {
-				int d = CodedInputStream.readRawVarint32(str);
-				if (d <= 0) {
-					continue;
-				}
-				double dist = d / 10.0;
-				NetworkDBPoint start = out ? pnt : lst.get(i);
-				NetworkDBPoint end = out ? lst.get(i) : pnt;
-				NetworkDBSegment seg = new NetworkDBSegment(start, end, dist, out, false);
-				l.add(seg);
-			}
-			if (str.available() > 0) {
-				System.err.println("Error reading file: " + pnt + " " + out);
+		List<NetworkDBSegment> l = new ArrayList<>();
+		if (bytes == null || !bytes.hasRemaining() || pnt.incomplete) {
+			return l;
+		}
+		for (int i = 0; i < lst.size(); i++) {
+			int d = readRawVarint32(bytes);
+			if (d <= 0) {
+				continue;
 			}
+			double dist = d / 10.0;
+			NetworkDBPoint start = out ? pnt : lst.get(i);
+			NetworkDBPoint end = out ? lst.get(i) : pnt;
+			NetworkDBSegment seg = new NetworkDBSegment(start, end, dist, out, false);
+			l.add(seg);
+		}
+		if (bytes.hasRemaining()) {
+			System.err.println("Error reading file: " + pnt + " " + out);
+		}
+		return l;
+	}
 
-			return l;
-		} catch (IOException e) {
-			throw new IllegalStateException(e);
+	// same as CodedInputStream.readRawVarint32(InputStream)
+	private static int readRawVarint32(ByteBuffer bytes) {
+		int result = 0;
+		for (int offset = 0; offset < 64; offset += 7) {
+			if (!bytes.hasRemaining()) {
+				throw new IllegalStateException("Truncated segments");
+			}
+			int b = bytes.get();
+			if (offset < 32) {
+				result |= (b & 0x7f) << offset;
+			}
+			if ((b & 0x80) == 0) {
+				return result;
+			}
 		}
-		
+		throw new IllegalStateException("Malformed varint");
 	}
 	
 
@@ -0,0 +1,194 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+// One-to-many Dijkstra over HH network graph used by HHRoutePlanner.runRoutingMatrix: only costs are calculated.
+// Routing state is kept in own arrays indexed by point index (not in NetworkDBPoint.rt),
+// so searches with different instances run in parallel over the same (preloaded) network.
+class HHRouteMatrixSearch {
+
+	// target attached to network point with cost of last mile (linked list per point)
+	static class TargetLink {
+		final int target;
+		final double cost;
+		final TargetLink next;
+
+		TargetLink(int target, double cost, TargetLink next) {
+			this.target = target;
+			this.cost = cost;
+			this.next = next;
+		}
+	}
+
+	private final NetworkDBPoint[] points;
+	private final HHNetworkCompactGraph graph;
+	private final HHRoutingConfig config;
+	private final double[] dist;
+	private final boolean[] settled;
+	private final TIntArrayList touched = new TIntArrayList();
+
+	// binary heap (cost, point index), outdated entries are skipped on poll
+	private double[] heapCosts = new double[256];
+	private int[] heapPoints = new int[256];
+	private int heapSize;
+
+	int visitedVertices;
+
+	HHRouteMatrixSearch(NetworkDBPoint[] points, HHNetworkCompactGraph graph, HHRoutingConfig config) {
+		this.points = points;
+		this.graph = graph;
+		this.config = config;
+		this.dist = new double[points.length];
+		this.settled = new boolean[points.length];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+	}
+
+	double[] search(int[] startPoints, double[] startCosts, TIntObjectHashMap<TargetLink> targetLinks, int targetsSize,
+			RouteCalculationProgress progress) {
+		double[] res = new double[targetsSize];
+		Arrays.fill(res, Double.POSITIVE_INFINITY);
+		for (int i = 0; i < startPoints.length; i++) {
+			relax(startPoints[i], startCosts[i]);
+		}
+		int reached = 0;
+		double maxReached = 0;
+		while (heapSize > 0) {
+			double cost = heapCosts[0];
+			int ind = poll();
+			if (settled[ind] || cost > dist[ind]) {
+				continue;
+			}
+			// all targets are reached with smaller cost
+			if (reached == targetsSize && cost >= maxReached) {
+				break;
+			}
+			if (config.MAX_COST > 0 && cost > config.MAX_COST) {
+				break;
+			}
+			if (progress != null && progress.isCancelled) {
+				break;
+			}
+			settled[ind] = true;
+			visitedVertices++;
+			TargetLink link = targetLinks.get(ind);
+			if (link != null) {
+				for (; link != null; link = link.next) {
+					double c = cost + link.cost;
+					if (c < res[link.target]) {
+						if (res[link.target] == Double.POSITIVE_INFINITY) {
+							reached++;
+						}
+						res[link.target] = c;
+					}
+				}
+				if (reached == targetsSize) {
+					maxReached = 0;
+					for (double r : res) {
+						maxReached = Math.max(maxReached, r);
+					}
+				}
+			}
+			NetworkDBPoint point = points[ind];
+			List<NetworkDBSegment> connected = point.connected(false);
+			if (connected == null && graph != null) {
+				for (int e = graph.first(ind, false), last = graph.last(ind, false); e < last; e++) {
+					int next = graph.target(e, false);
+					if (acceptSegment(points[next], graph.dist(e, false), graph.shortcut(e, false))) {
+						relax(next, cost + graph.dist(e, false));
+					}
+				}
+				continue;
+			}
+			if (connected == null) {
+				continue;
+			}
+			for (NetworkDBSegment segment : connected) {
+				if (acceptSegment(segment.end, segment.dist, segment.shortcut)) {
+					relax(segment.end.index, cost + segment.dist);
+				}
+			}
+		}
+		clear();
+		return res;
+	}
+
+	// same edges as in HHRoutePlanner.addConnectedToQueue (without CH / midpoint specifics)
+	private boolean acceptSegment(NetworkDBPoint end, double dist, boolean shortcut) {
+		if (!config.USE_CH && !config.USE_CH_SHORTCUTS && shortcut) {
+			return false;
+		}
+		return !end.rtExclude && dist >= 0;
+	}
+
+	private void relax(int ind, double cost) {
+		if (!settled[ind] && cost < dist[ind]) {
+			if (dist[ind] == Double.POSITIVE_INFINITY) {
+				touched.add(ind);
+			}
+			dist[ind] = cost;
+			add(ind, cost);
+		}
+	}
+
+	private void clear() {
+		for (int i = 0; i < touched.size(); i++) {
+			int ind = touched.get(i);
+			dist[ind] = Double.POSITIVE_INFINITY;
+			settled[ind] = false;
+		}
+		touched.reset();
+		heapSize = 0;
+	}
+
+	private void add(int ind, double cost) {
+		if (heapSize == heapCosts.length) {
+			heapCosts = Arrays.copyOf(heapCosts, heapSize * 2);
+			heapPoints = Arrays.copyOf(heapPoints, heapSize * 2);
+		}
+		int pos = heapSize++;
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (heapCosts[parent] <= cost) {
+				break;
+			}
+			heapCosts[pos] = heapCosts[parent];
+			heapPoints[pos] = heapPoints[parent];
+			pos = parent;
+		}
+		heapCosts[pos] = cost;
+		heapPoints[pos] = ind;
+	}
+
+	private int poll() {
+		int result = heapPoints[0];
+		heapSize--;
+		if (heapSize > 0) {
+			double cost = heapCosts[heapSize];
+			int ind = heapPoints[heapSize];
+			int pos = 0;
+			int half = heapSize >>> 1;
+			while (pos < half) {
+				int child = 2 * pos + 1;
+				if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child]) {
+					child++;
+				}
+				if (cost <= heapCosts[child]) {
+					break;
+				}
+				heapCosts[pos] = heapCosts[child];
+				heapPoints[pos] = heapPoints[child];
+				pos = child;
+			}
+			heapCosts[pos] = cost;
+			heapPoints[pos] = ind;
+		}
+		return result;
+	}
+}
@@ -15,12 +15,19 @@ import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import gnu.trove.iterator.TIntIterator;
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.TLongObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TLongObjectHashMap;
 import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TIntHashSet;
 import gnu.trove.set.hash.TLongHashSet;
 import net.osmand.binary.BinaryHHRouteReaderAdapter.HHRouteRegion;
 import net.osmand.binary.BinaryMapIndexReader;
@@ -294,6 +301,211 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		return route;
 	}
 
+	// Travel time matrix sources x targets (Double.POSITIVE_INFINITY if not reachable), geometry is not built.
+	// Network is loaded once in the current context, sources are calculated in parallel (one-to-many search each).
+	public double[][] runRoutingMatrix(List<LatLon> sources, List<LatLon> targets, HHRoutingConfig config, int threads)
+			throws SQLException, IOException, InterruptedException {
+		long startTime = System.nanoTime();
+		if (config == null) {
+			config = HHRoutingConfig.dijkstra(0);
+			config.ROUTE_LAST_MILE = true;
+		}
+		double[][] res = new double[sources.size()][];
+		if (sources.isEmpty() || targets.isEmpty()) {
+			return res;
+		}
+		if (currentCtx.rctx.calculationProgress == null) {
+			currentCtx.rctx.calculationProgress = new RouteCalculationProgress();
+		}
+		final RouteCalculationProgress progress = currentCtx.rctx.calculationProgress;
+		List<LatLon> all = new ArrayList<>(sources);
+		all.addAll(targets);
+		final HHRoutingContext<T> hctx = initHCtx(config, sources.get(0), targets.get(0), all);
+		if (hctx == null) {
+			throw new IllegalStateException("Files for hh routing were not initialized. Matrix couldn't be calculated.");
+		}
+		filterPointsBasedOnConfiguration(hctx);
+		// preload network (forward edges) as searches run in parallel without loading (compact graph is already loaded)
+		long time = System.nanoTime();
+		int maxIndex = 0;
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			if (hctx.compactGraph == null) {
+				hctx.loadNetworkSegmentPoint(pnt, false);
+			}
+			maxIndex = Math.max(maxIndex, pnt.index);
+		}
+		final NetworkDBPoint[] points = new NetworkDBPoint[maxIndex + 1];
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			points[pnt.index] = pnt;
+		}
+		hctx.stats.loadEdgesTime += (System.nanoTime() - time) / 1e6;
+
+		// last mile (detailed routing context is not thread-safe)
+		time = System.nanoTime();
+		progress.hhIteration(HHIteration.START_END_POINT);
+		final int[][] startPoints = new int[sources.size()][];
+		final double[][] startCosts = new double[sources.size()][];
+		RouteSegmentPoint[] sourceSegments = new RouteSegmentPoint[sources.size()];
+		TIntHashSet[] sourceClusters = new TIntHashSet[sources.size()];
+		for (int i = 0; i < sources.size(); i++) {
+			sourceSegments[i] = findMatrixSegment(hctx, sources.get(i));
+			TLongObjectHashMap<T> pnts = initMatrixPoint(hctx, sources.get(i), sourceSegments[i], false);
+			sourceClusters[i] = getClusters(pnts);
+			startPoints[i] = new int[pnts.size()];
+			startCosts[i] = new double[pnts.size()];
+			int k = 0;
+			for (T pnt : pnts.valueCollection()) {
+				startPoints[i][k] = pnt.index;
+				startCosts[i][k++] = pnt.rt(false).rtDistanceFromStart;
+				pnt.rtPos = null;
+			}
+		}
+		final TIntObjectHashMap<HHRouteMatrixSearch.TargetLink> targetLinks = new TIntObjectHashMap<>();
+		RouteSegmentPoint[] targetSegments = new RouteSegmentPoint[targets.size()];
+		TIntHashSet[] targetClusters = new TIntHashSet[targets.size()];
+		for (int j = 0; j < targets.size(); j++) {
+			targetSegments[j] = findMatrixSegment(hctx, targets.get(j));
+			TLongObjectHashMap<T> pnts = initMatrixPoint(hctx, targets.get(j), targetSegments[j], true);
+			targetClusters[j] = getClusters(pnts);
+			for (T pnt : pnts.valueCollection()) {
+				targetLinks.put(pnt.index, new HHRouteMatrixSearch.TargetLink(j, pnt.rt(true).rtDistanceFromStart,
+						targetLinks.get(pnt.index)));
+				pnt.rtRev = null;
+			}
+		}
+		hctx.stats.searchPointsTime = (System.nanoTime() - time) / 1e6;
+
+		time = System.nanoTime();
+		progress.hhIteration(HHIteration.ROUTING);
+		final int targetsSize = targets.size();
+		final int nthreads = Math.max(1, Math.min(threads, sources.size()));
+		final double[][] result = res;
+		final HHRoutingConfig fconfig = config;
+		ExecutorService executor = Executors.newFixedThreadPool(nthreads);
+		try {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int t = 0; t < nthreads; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						HHRouteMatrixSearch search = new HHRouteMatrixSearch(points, hctx.compactGraph, fconfig);
+						for (int i = thread; i < startPoints.length; i += nthreads) {
+							result[i] = search.search(startPoints[i], startCosts[i], targetLinks, targetsSize, progress);
+						}
+						return search.visitedVertices;
+					}
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				hctx.stats.visitedVertices += f.get();
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		hctx.stats.routingTime = (System.nanoTime() - time) / 1e6;
+
+		// source and target of the same cluster could be connected directly (without network points in between)
+		time = System.nanoTime();
+		for (int i = 0; i < sources.size(); i++) {
+			for (int j = 0; j < targets.size(); j++) {
+				if (sourceSegments[i] == null || targetSegments[j] == null
+						|| !shareCluster(sourceClusters[i], targetClusters[j])) {
+					continue;
+				}
+				double direct = calcMatrixDirectCost(hctx, sources.get(i), targets.get(j), sourceSegments[i],
+						targetSegments[j]);
+				res[i][j] = Math.min(res[i][j], direct);
+			}
+		}
+		hctx.stats.searchPointsTime += (System.nanoTime() - time) / 1e6;
+		printf(HHRoutingConfig.STATS_VERBOSE_LEVEL >= 0,
+				"Routing matrix %dx%d %.1f ms: load/filter points %.1f ms, load edges %.1f ms, last mile %.1f ms, routing %.1f ms (%d threads, visited %,d)\n",
+				sources.size(), targets.size(), (System.nanoTime() - startTime) / 1e6, hctx.stats.loadPointsTime,
+				hctx.stats.loadEdgesTime, hctx.stats.searchPointsTime, hctx.stats.routingTime, nthreads,
+				hctx.stats.visitedVertices);
+		return res;
+	}
+
+	private RouteSegmentPoint findMatrixSegment(HHRoutingContext<T> hctx, LatLon l) throws IOException, InterruptedException {
+		if (!hctx.config.ROUTE_LAST_MILE) {
+			return null;
+		}
+		return new RoutePlannerFrontEnd().findRouteSegment(l.getLatitude(), l.getLongitude(), hctx.rctx, null);
+	}
+
+	private TLongObjectHashMap<T> initMatrixPoint(HHRoutingContext<T> hctx, LatLon l, RouteSegmentPoint s, boolean reverse)
+			throws IOException, InterruptedException {
+		TLongObjectHashMap<T> pnts = new TLongObjectHashMap<>();
+		hctx.setStartEnd(l, l);
+		if (s != null || !hctx.config.ROUTE_LAST_MILE) {
+			initStart(hctx, s, reverse, pnts);
+		}
+		// short route to itself (no network point in between) is not a network point
+		pnts.remove(PNT_SHORT_ROUTE_START_END);
+		return pnts;
+	}
+
+	private TIntHashSet getClusters(TLongObjectHashMap<T> pnts) {
+		TIntHashSet clusters = new TIntHashSet();
+		for (T pnt : pnts.valueCollection()) {
+			clusters.add(pnt.clusterId);
+			if (pnt.dualPoint != null) {
+				clusters.add(pnt.dualPoint.clusterId);
+			}
+		}
+		return clusters;
+	}
+
+	private boolean shareCluster(TIntHashSet s, TIntHashSet e) {
+		TIntIterator it = s.iterator();
+		while (it.hasNext()) {
+			if (e.contains(it.next())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// last mile search from start limited by network points and end segment (same as in findFirstLastSegments)
+	private double calcMatrixDirectCost(HHRoutingContext<T> hctx, LatLon start, LatLon end, RouteSegmentPoint startP,
+			RouteSegmentPoint endP) throws IOException, InterruptedException {
+		TLongObjectHashMap<T> pnts = new TLongObjectHashMap<>();
+		hctx.setStartEnd(start, end);
+		long endPos = calcRPId(endP, endP.getSegmentEnd(), endP.getSegmentStart());
+		long endNeg = calcRPId(endP, endP.getSegmentStart(), endP.getSegmentEnd());
+		// end segment could be a network point itself, then it's already a boundary
+		boolean addPos = !hctx.boundaries.containsKey(endPos);
+		boolean addNeg = !hctx.boundaries.containsKey(endNeg);
+		if (addPos) {
+			hctx.boundaries.put(endPos, null);
+		}
+		if (addNeg) {
+			hctx.boundaries.put(endNeg, null);
+		}
+		try {
+			initStart(hctx, startP, false, pnts);
+		} finally {
+			if (addPos) {
+				hctx.boundaries.remove(endPos);
+			}
+			if (addNeg) {
+				hctx.boundaries.remove(endNeg);
+			}
+		}
+		T direct = pnts.get(PNT_SHORT_ROUTE_START_END);
+		double cost = direct == null ? Double.POSITIVE_INFINITY : direct.rt(false).rtDistanceFromStart;
+		for (T pnt : pnts.valueCollection()) {
+			pnt.clearRouting();
+		}
+		return cost;
+	}
+
 	public static TreeMap<String, String> getFilteredTags(GeneralRouter generalRouter) {
 		Map<String, RoutingParameter> parameters = generalRouter.getParameters();
 		TreeMap<String, String> tm = new TreeMap<String, String>();
@@ -452,6 +664,10 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 
 	private void calcAlternativeRoute(HHRoutingContext<T> hctx, HHNetworkRouteRes route, TLongObjectHashMap<T> stPoints,
 			TLongObjectHashMap<T> endPoints, RouteCalculationProgress progress) throws SQLException, IOException {
+		if (hctx.config.ALT_PLATEAU) {
+			calcAlternativeRoutePlateau(hctx, route, stPoints, endPoints, progress);
+			return;
+		}
 		List<NetworkDBPoint>  exclude = new ArrayList<>();
 		try {
 			HHNetworkRouteRes rt = route;
@@ -601,12 +817,106 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 				
 	}
 
+	// Alternatives from single forward and backward trees (see HHRoutePlateauSearch),
+	// trees are built in parallel when segments are in compact graph (otherwise they are loaded on demand)
+	private void calcAlternativeRoutePlateau(HHRoutingContext<T> hctx, HHNetworkRouteRes route, final TLongObjectHashMap<T> stPoints,
+			final TLongObjectHashMap<T> endPoints, final RouteCalculationProgress progress) throws SQLException, IOException {
+		final HHRoutePlateauSearch<T> search = new HHRoutePlateauSearch<T>(hctx, hctx.compactGraph == null);
+		double bestCost = route.getHHRoutingTime();
+		final double maxCost = bestCost * hctx.config.ALT_MAX_STRETCH;
+		HHRoutePlateauSearch.Tree fwd, bwd;
+		if (hctx.compactGraph != null) {
+			ExecutorService executor = Executors.newSingleThreadExecutor();
+			try {
+				Future<HHRoutePlateauSearch.Tree> rev = executor.submit(new Callable<HHRoutePlateauSearch.Tree>() {
+					@Override
+					public HHRoutePlateauSearch.Tree call() throws Exception {
+						return search.buildTree(endPoints, true, maxCost, progress);
+					}
+				});
+				fwd = search.buildTree(stPoints, false, maxCost, progress);
+				bwd = rev.get();
+			} catch (InterruptedException e) {
+				progress.isCancelled = true;
+				return;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		} else {
+			fwd = search.buildTree(stPoints, false, maxCost, progress);
+			bwd = search.buildTree(endPoints, true, maxCost, progress);
+		}
+		hctx.stats.visitedVertices += fwd.visitedVertices + bwd.visitedVertices;
+		if (progress.isCancelled) {
+			return;
+		}
+		for (TIntArrayList path : search.selectAlternatives(fwd, bwd, route, bestCost)) {
+			List<T> pnts = new ArrayList<>();
+			for (int i = 0; i < path.size(); i++) {
+				pnts.add(search.getPoint(path.get(i)));
+			}
+			HHNetworkRouteRes alt = createRouteFromPoints(hctx, pnts);
+			if (alt != null) {
+				route.altRoutes.add(alt);
+			}
+		}
+		if (route.altRoutes.size() > 0) {
+			printf(HHRoutingConfig.STATS_VERBOSE_LEVEL > 0, "Cost %.2f - %.2f [%d plateau]...", route.altRoutes.get(0).getHHRoutingTime(),
+					route.altRoutes.get(route.altRoutes.size() - 1).getHHRoutingTime(), route.altRoutes.size());
+		}
+	}
+
+	// route by network points from start point to end point (same structure as createRouteSegmentFromFinalPoint)
+	private HHNetworkRouteRes createRouteFromPoints(HHRoutingContext<T> hctx, List<T> pnts) throws SQLException, IOException {
+		HHNetworkRouteRes route = new HHNetworkRouteRes();
+		T first = pnts.get(0);
+		if (first.rt(false).rtDetailedRoute != null) {
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(null);
+			res.list = new RouteResultPreparation().convertFinalSegmentToResults(hctx.rctx, first.rt(false).rtDetailedRoute);
+			res.rtTimeDetailed = res.rtTimeHHSegments = first.rt(false).rtDetailedRoute.distanceFromStart;
+			route.segments.add(res);
+		}
+		route.uniquePoints.add(first.index);
+		for (int i = 1; i < pnts.size(); i++) {
+			T prev = pnts.get(i - 1);
+			T pnt = pnts.get(i);
+			hctx.loadNetworkSegmentPoint(prev, false);
+			NetworkDBSegment segment = prev.getSegment(pnt, true);
+			if (segment == null) {
+				return null;
+			}
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(segment);
+			res.rtTimeDetailed = res.rtTimeHHSegments = segment.dist;
+			route.segments.add(res);
+			route.uniquePoints.add(pnt.index);
+		}
+		T last = pnts.get(pnts.size() - 1);
+		if (last.rt(true).rtDetailedRoute != null) {
+			HHNetworkSegmentRes res = new HHNetworkSegmentRes(null);
+			res.list = new RouteResultPreparation().convertFinalSegmentToResults(hctx.rctx, last.rt(true).rtDetailedRoute);
+			res.rtTimeDetailed = res.rtTimeHHSegments = last.rt(true).rtDetailedRoute.distanceFromStart;
+			route.segments.add(res);
+		}
+		return route;
+	}
+
 	protected HHRoutingContext<T> initHCtx(HHRoutingConfig c, LatLon start, LatLon end) throws SQLException, IOException {
+		return initHCtx(c, start, end, Arrays.asList(start, end));
+	}
+
+	// files are selected to cover all points (start, end and for matrix all sources / targets)
+	private HHRoutingContext<T> initHCtx(HHRoutingConfig c, LatLon start, LatLon end, List<LatLon> points)
+			throws SQLException, IOException {
 		HHRoutingContext<T> hctx = this.currentCtx;
 		RouteCalculationProgress progress = hctx.rctx.calculationProgress;
 		if (predefinedRegions == null) {
 			progress.hhIteration(HHIteration.SELECT_REGIONS);
-			hctx = selectBestRoutingFiles(start, end, hctx);
+			hctx = selectBestRoutingFiles(points, hctx);
 		}
 		if (hctx == null) {
 			System.out.println("No files found for routing");
@@ -620,6 +930,11 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		hctx.setStartEnd(start, end);
 		hctx.clearVisited();
 		if (hctx.initialized) {
+			if (hctx.compactGraph != null) {
+				// previous search could be interrupted before clearAll
+				hctx.compactGraph.release();
+			}
+			initCompactGraph(hctx);
 			return hctx;
 		}
 		
@@ -660,9 +975,24 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		hctx.initialized = true;
 		hctx.stats.loadPointsTime = (System.nanoTime() - time) / 1e6;
 		printf(HHRoutingConfig.STATS_VERBOSE_LEVEL > 0, " %,d - %.2fms\n", hctx.pointsById.size(), hctx.stats.loadPointsTime);
+		initCompactGraph(hctx);
 		return hctx;
 	}
 
+	private void initCompactGraph(HHRoutingContext<T> hctx) throws SQLException, IOException {
+		if (!hctx.config.COMPACT_GRAPH || hctx.compactGraph != null) {
+			return;
+		}
+		long time = System.nanoTime();
+		printf(HHRoutingConfig.STATS_VERBOSE_LEVEL > 0, "Loading compact graph...");
+		hctx.compactGraph = HHNetworkCompactGraph.build(hctx, hctx.config.COMPACT_GRAPH_OFF_HEAP);
+		hctx.stats.loadEdgesTime += (System.nanoTime() - time) / 1e6;
+		hctx.stats.loadEdgesCnt += hctx.compactGraph.getEdgesCount();
+		printf(HHRoutingConfig.STATS_VERBOSE_LEVEL > 0, " %,d edges (%,d KB%s) - %.2fms\n",
+				hctx.compactGraph.getEdgesCount(), hctx.compactGraph.getEstimatedSize() >> 10,
+				hctx.config.COMPACT_GRAPH_OFF_HEAP ? " off-heap" : "", (System.nanoTime() - time) / 1e6);
+	}
+
 	private static class HHRouteRegionsGroup<T extends NetworkDBPoint> {
 		List<HHRouteRegion> regions = new ArrayList<>();
 		List<BinaryMapIndexReader> readers = new ArrayList<>();
@@ -720,17 +1050,21 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		}
 	}
 
-	private HHRoutingContext<T> selectBestRoutingFiles(LatLon start, LatLon end, HHRoutingContext<T> hctx) throws IOException {
+	private HHRoutingContext<T> selectBestRoutingFiles(List<LatLon> points, HHRoutingContext<T> hctx) throws IOException {
 		List<HHRouteRegionsGroup<T>> groups = new ArrayList<>();
 	
 		GeneralRouter router = hctx.rctx.config.router;
 //		String profile = router.getProfileName();
 		String profile = router.getProfile().toString().toLowerCase(); // use base profile
 		List<String> ls = router.serializeParameterValues(router.getParameterValues());
-		QuadRect qr = new QuadRect(Math.min(start.getLongitude(), end.getLongitude()),
-				Math.max(start.getLatitude(), end.getLatitude()),
-				Math.max(start.getLongitude(), end.getLongitude()),
-				Math.min(start.getLatitude(), end.getLatitude()));
+		QuadRect qr = new QuadRect(points.get(0).getLongitude(), points.get(0).getLatitude(),
+				points.get(0).getLongitude(), points.get(0).getLatitude());
+		for (LatLon l : points) {
+			qr.left = Math.min(qr.left, l.getLongitude());
+			qr.right = Math.max(qr.right, l.getLongitude());
+			qr.top = Math.max(qr.top, l.getLatitude());
+			qr.bottom = Math.min(qr.bottom, l.getLatitude());
+		}
 		
 		for (BinaryMapIndexReader r : hctx.rctx.map.keySet()) {
 			for (HHRouteRegion hhregion : r.getHHRoutingIndexes()) {
@@ -741,7 +1075,10 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			}
 		}
 		for (HHRouteRegionsGroup<T> g : groups) {
-			g.containsStartEnd = g.contains(start) && g.contains(end);
+			g.containsStartEnd = true;
+			for (LatLon l : points) {
+				g.containsStartEnd &= g.contains(l);
+			}
 			String[] params = g.profileParams.split(",");
 			for (String p : params) {
 				if (p.trim().length() == 0) {
@@ -1090,49 +1427,69 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 		if (hctx.config.MAX_DEPTH > 0 && depth >= hctx.config.MAX_DEPTH) {
 			return;
 		}
+		HHNetworkCompactGraph graph = hctx.compactGraph;
+		if (graph != null && point.connected(reverse) == null) {
+			// segment objects are created only for points of the final route
+			for (int e = graph.first(point.index, reverse), last = graph.last(point.index, reverse); e < last; e++) {
+				T nextPoint = (T) graph.getPoint(graph.target(e, reverse));
+				float dist = graph.dist(e, reverse);
+				double corrected = addSegmentToQueue(hctx, queue, point, nextPoint, reverse, depth, dist, graph.shortcut(e, reverse));
+				if (corrected != dist) {
+					graph.setDist(e, reverse, corrected);
+				}
+			}
+			return;
+		}
 		long tm = System.nanoTime();
 		int cnt = hctx.loadNetworkSegmentPoint(point, reverse);
 		hctx.stats.loadEdgesCnt += cnt;
 		hctx.stats.loadEdgesTime += (System.nanoTime() - tm) / 1e6;
 		for (NetworkDBSegment connected : point.connected(reverse)) {
 			T nextPoint = (T) (reverse ? connected.start : connected.end);
-			if (!hctx.config.USE_CH && !hctx.config.USE_CH_SHORTCUTS && connected.shortcut) {
-				continue;
-			}
-			if (nextPoint.rtExclude) {
-				continue;
-			}
-			// modify CH to not compute all top points
-			if (hctx.config.USE_CH && (nextPoint.chInd() > 0 && nextPoint.chInd() < point.chInd())) {
-				continue;
-			}
-			if (hctx.config.USE_MIDPOINT && Math.min(depth, hctx.config.MIDPOINT_MAX_DEPTH) > nextPoint.midPntDepth() + hctx.config.MIDPOINT_ERROR) {
-				continue;
-			}
-			if (connected.dist < 0) {
-				// disabled segment
-				continue;
-			}
-			if (ASSERT_AND_CORRECT_DIST_SMALLER && hctx.config.HEURISTIC_COEFFICIENT > 0
-					&& smallestSegmentCost(hctx, point, nextPoint) - connected.dist >  1) {
-				double smallestSegmentCost = smallestSegmentCost(hctx, point, nextPoint);
-				System.err.printf("Incorrect distance %s -> %s: db = %.2f > fastest %.2f \n", point, nextPoint, connected.dist, smallestSegmentCost);
-				connected.dist = smallestSegmentCost;
-			}
-			double cost = point.rt(reverse).rtDistanceFromStart  + connected.dist + hctx.distanceToEnd(reverse, nextPoint);
-			if (ASSERT_COST_INCREASING && point.rt(reverse).rtCost - cost > 1) {
-				String msg = String.format("%s (cost %.2f) -> %s (cost %.2f) st=%.2f-> + %.2f, toend=%.2f->%.2f: ",
-						point, point.rt(reverse).rtCost, nextPoint, cost, point.rt(reverse).rtDistanceFromStart,
-						connected.dist, point.rt(reverse).rtDistanceToEnd, hctx.distanceToEnd(reverse, nextPoint));
-				throw new IllegalStateException(msg);
-			}
-			double exCost = nextPoint.rt(reverse).rtCost;
-			if ((exCost == 0 && !nextPoint.rt(reverse).rtVisited) || cost < exCost) {
-				addPointToQueue(hctx, queue, reverse, nextPoint, point, connected.dist, cost);
-			}
+			connected.dist = addSegmentToQueue(hctx, queue, point, nextPoint, reverse, depth, connected.dist, connected.shortcut);
 		}
 	}
 
+	// returns segment distance (corrected if ASSERT_AND_CORRECT_DIST_SMALLER)
+	private double addSegmentToQueue(HHRoutingContext<T> hctx, Queue<NetworkDBPointCost<T>> queue, T point, T nextPoint,
+			boolean reverse, int depth, double dist, boolean shortcut) {
+		if (!hctx.config.USE_CH && !hctx.config.USE_CH_SHORTCUTS && shortcut) {
+			return dist;
+		}
+		if (nextPoint.rtExclude) {
+			return dist;
+		}
+		// modify CH to not compute all top points
+		if (hctx.config.USE_CH && (nextPoint.chInd() > 0 && nextPoint.chInd() < point.chInd())) {
+			return dist;
+		}
+		if (hctx.config.USE_MIDPOINT && Math.min(depth, hctx.config.MIDPOINT_MAX_DEPTH) > nextPoint.midPntDepth() + hctx.config.MIDPOINT_ERROR) {
+			return dist;
+		}
+		if (dist < 0) {
+			// disabled segment
+			return dist;
+		}
+		if (ASSERT_AND_CORRECT_DIST_SMALLER && hctx.config.HEURISTIC_COEFFICIENT > 0
+				&& smallestSegmentCost(hctx, point, nextPoint) - dist >  1) {
+			double smallestSegmentCost = smallestSegmentCost(hctx, point, nextPoint);
+			System.err.printf("Incorrect distance %s -> %s: db = %.2f > fastest %.2f \n", point, nextPoint, dist, smallestSegmentCost);
+			dist = smallestSegmentCost;
+		}
+		double cost = point.rt(reverse).rtDistanceFromStart  + dist + hctx.distanceToEnd(reverse, nextPoint);
+		if (ASSERT_COST_INCREASING && point.rt(reverse).rtCost - cost > 1) {
+			String msg = String.format("%s (cost %.2f) -> %s (cost %.2f) st=%.2f-> + %.2f, toend=%.2f->%.2f: ",
+					point, point.rt(reverse).rtCost, nextPoint, cost, point.rt(reverse).rtDistanceFromStart,
+					dist, point.rt(reverse).rtDistanceToEnd, hctx.distanceToEnd(reverse, nextPoint));
+			throw new IllegalStateException(msg);
+		}
+		double exCost = nextPoint.rt(reverse).rtCost;
+		if ((exCost == 0 && !nextPoint.rt(reverse).rtVisited) || cost < exCost) {
+			addPointToQueue(hctx, queue, reverse, nextPoint, point, dist, cost);
+		}
+		return dist;
+	}
+
 	private void addPointToQueue(HHRoutingContext<T> hctx, Queue<NetworkDBPointCost<T>> queue,
 			boolean reverse, T point, T parent, double segmentDist, double cost) {
 		long tm = System.nanoTime();
@@ -1392,6 +1749,9 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			route.uniquePoints.add(itPnt.index);
 			while (itPnt.rt(true).rtRouteToPoint != null) {
 				NetworkDBPoint nextPnt = itPnt.rt(true).rtRouteToPoint;
+				if (hctx.compactGraph != null) {
+					hctx.compactGraph.materialize(nextPnt);
+				}
 				NetworkDBSegment segment = nextPnt.getSegment(itPnt, false);
 				HHNetworkSegmentRes res = new HHNetworkSegmentRes(segment);
 				route.segments.add(res);
@@ -1409,6 +1769,9 @@ public class HHRoutePlanner<T extends NetworkDBPoint> {
 			itPnt = pnt;
 			while (itPnt.rt(false).rtRouteToPoint != null) {
 				NetworkDBPoint nextPnt = itPnt.rt(false).rtRouteToPoint;
+				if (hctx.compactGraph != null) {
+					hctx.compactGraph.materialize(nextPnt);
+				}
 				NetworkDBSegment segment = nextPnt.getSegment(itPnt, true);
 				HHNetworkSegmentRes res = new HHNetworkSegmentRes(segment);
 				route.segments.add(res);
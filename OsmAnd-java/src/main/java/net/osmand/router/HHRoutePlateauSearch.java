@@ -0,0 +1,244 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPointCost;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+// Alternative routes by plateau method used by HHRoutePlanner (HHRoutingConfig.ALT_PLATEAU):
+// forward tree from start points and backward tree from end points are built once up to ALT_MAX_STRETCH of best cost.
+// Plateau is a chain of points where both trees share segments, every plateau gives candidate route
+// (forward tree path to plateau, plateau, backward tree path to end). Candidates are ranked by
+// cost / best + ALT_OVERLAP_WEIGHT * overlap with already selected routes.
+// Tree state is kept in own arrays (not in NetworkDBPoint.rt), so both trees are built in parallel over compact graph.
+class HHRoutePlateauSearch<T extends NetworkDBPoint> {
+
+	// max candidates (longest plateaus) to rank
+	private static final int MAX_CANDIDATES = 50;
+
+	private final HHRoutingContext<T> hctx;
+	private final NetworkDBPoint[] points;
+	// segments could be loaded only when trees are built sequentially
+	private final boolean loadSegments;
+
+	static class Tree {
+		final double[] dist;
+		final int[] parent;
+		final boolean[] settled;
+		int visitedVertices;
+
+		Tree(int size) {
+			dist = new double[size];
+			parent = new int[size];
+			settled = new boolean[size];
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(parent, -1);
+		}
+	}
+
+	private static class Candidate {
+		final int point;
+		final double cost;
+		final double plateau;
+		TIntArrayList path;
+		double overlap;
+
+		Candidate(int point, double cost, double plateau) {
+			this.point = point;
+			this.cost = cost;
+			this.plateau = plateau;
+		}
+	}
+
+	HHRoutePlateauSearch(HHRoutingContext<T> hctx, boolean loadSegments) {
+		this.hctx = hctx;
+		this.loadSegments = loadSegments;
+		int maxIndex = 0;
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			maxIndex = Math.max(maxIndex, pnt.index);
+		}
+		points = new NetworkDBPoint[maxIndex + 1];
+		for (T pnt : hctx.pointsById.valueCollection()) {
+			points[pnt.index] = pnt;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	T getPoint(int index) {
+		return (T) points[index];
+	}
+
+	// roots are start (end) points with initial cost, tree contains all points with cost <= maxCost
+	@SuppressWarnings("unchecked")
+	Tree buildTree(TLongObjectHashMap<T> roots, boolean rev, double maxCost, RouteCalculationProgress progress)
+			throws SQLException, IOException {
+		Tree tree = new Tree(points.length);
+		PriorityQueue<NetworkDBPointCost<T>> queue = new PriorityQueue<>(new Comparator<NetworkDBPointCost<T>>() {
+			@Override
+			public int compare(NetworkDBPointCost<T> o1, NetworkDBPointCost<T> o2) {
+				return Double.compare(o1.cost, o2.cost);
+			}
+		});
+		for (T root : roots.valueCollection()) {
+			// root reached cheaper from other root is not a root
+			if (!root.rtExclude && root.rt(rev).rtRouteToPoint == null) {
+				relax(tree, queue, root, -1, root.rt(rev).rtDistanceFromStart, rev);
+			}
+		}
+		HHNetworkCompactGraph graph = hctx.compactGraph;
+		while (!queue.isEmpty()) {
+			NetworkDBPointCost<T> pc = queue.poll();
+			int ind = pc.point.index;
+			if (tree.settled[ind] || pc.cost > tree.dist[ind]) {
+				continue;
+			}
+			if (pc.cost > maxCost || (progress != null && progress.isCancelled)) {
+				break;
+			}
+			tree.settled[ind] = true;
+			tree.visitedVertices++;
+			List<NetworkDBSegment> connected = pc.point.connected(rev);
+			if (connected == null && graph != null) {
+				for (int e = graph.first(ind, rev), last = graph.last(ind, rev); e < last; e++) {
+					NetworkDBPoint next = points[graph.target(e, rev)];
+					if (acceptSegment(next, graph.dist(e, rev), graph.shortcut(e, rev))) {
+						relax(tree, queue, (T) next, ind, pc.cost + graph.dist(e, rev), rev);
+					}
+				}
+				continue;
+			}
+			if (connected == null && loadSegments) {
+				hctx.loadNetworkSegmentPoint(pc.point, rev);
+				connected = pc.point.connected(rev);
+			}
+			for (int i = 0; connected != null && i < connected.size(); i++) {
+				NetworkDBSegment segment = connected.get(i);
+				NetworkDBPoint next = rev ? segment.start : segment.end;
+				if (next != null && acceptSegment(next, segment.dist, segment.shortcut)) {
+					relax(tree, queue, (T) next, ind, pc.cost + segment.dist, rev);
+				}
+			}
+		}
+		return tree;
+	}
+
+	// same edges as in HHRoutePlanner.addConnectedToQueue (without CH / midpoint specifics)
+	private boolean acceptSegment(NetworkDBPoint end, double dist, boolean shortcut) {
+		if (!hctx.config.USE_CH && !hctx.config.USE_CH_SHORTCUTS && shortcut) {
+			return false;
+		}
+		return !end.rtExclude && dist >= 0;
+	}
+
+	private void relax(Tree tree, PriorityQueue<NetworkDBPointCost<T>> queue, T point, int parent, double cost, boolean rev) {
+		int ind = point.index;
+		if (!tree.settled[ind] && cost < tree.dist[ind]) {
+			tree.dist[ind] = cost;
+			tree.parent[ind] = parent;
+			queue.add(new NetworkDBPointCost<T>(point, cost, rev));
+		}
+	}
+
+	// paths (point indexes from start to end) of selected alternatives, best first
+	List<TIntArrayList> selectAlternatives(Tree fwd, Tree bwd, HHNetworkRouteRes route, double bestCost) {
+		HHRoutingConfig config = hctx.config;
+		double maxCost = bestCost * config.ALT_MAX_STRETCH;
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (int v = 0; v < points.length; v++) {
+			if (!fwd.settled[v] || !bwd.settled[v] || fwd.dist[v] + bwd.dist[v] > maxCost) {
+				continue;
+			}
+			int pf = fwd.parent[v];
+			if (pf >= 0 && bwd.parent[pf] == v) {
+				// not the first point of plateau
+				continue;
+			}
+			int end = v;
+			for (int steps = 0; steps < points.length; steps++) {
+				int next = bwd.parent[end];
+				if (next < 0 || fwd.parent[next] != end) {
+					break;
+				}
+				end = next;
+			}
+			double plateau = fwd.dist[end] - fwd.dist[v];
+			if (plateau >= config.ALT_MIN_PLATEAU * bestCost) {
+				candidates.add(new Candidate(v, fwd.dist[v] + bwd.dist[v], plateau));
+			}
+		}
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate o1, Candidate o2) {
+				return -Double.compare(o1.plateau, o2.plateau);
+			}
+		});
+		if (candidates.size() > MAX_CANDIDATES) {
+			candidates = new ArrayList<Candidate>(candidates.subList(0, MAX_CANDIDATES));
+		}
+		for (Candidate c : candidates) {
+			c.path = getPath(fwd, bwd, c.point);
+		}
+		List<TLongHashSet> selected = new ArrayList<TLongHashSet>();
+		selected.add(route.uniquePoints);
+		List<TIntArrayList> res = new ArrayList<TIntArrayList>();
+		while (res.size() < config.ALT_MAX_ROUTES && !candidates.isEmpty()) {
+			Candidate best = null;
+			double bestScore = Double.POSITIVE_INFINITY;
+			for (Candidate c : candidates) {
+				c.overlap = Math.max(c.overlap, overlap(c.path, selected.get(selected.size() - 1)));
+				double score = c.cost / bestCost + config.ALT_OVERLAP_WEIGHT * c.overlap;
+				if (c.overlap < config.ALT_NON_UNIQUENESS && score < bestScore) {
+					best = c;
+					bestScore = score;
+				}
+			}
+			if (best == null) {
+				break;
+			}
+			candidates.remove(best);
+			TLongHashSet pnts = new TLongHashSet();
+			for (int i = 0; i < best.path.size(); i++) {
+				pnts.add(best.path.get(i));
+			}
+			selected.add(pnts);
+			res.add(best.path);
+		}
+		return res;
+	}
+
+	private static double overlap(TIntArrayList path, TLongHashSet routePoints) {
+		int shared = 0;
+		for (int i = 0; i < path.size(); i++) {
+			if (routePoints.contains(path.get(i))) {
+				shared++;
+			}
+		}
+		return path.isEmpty() ? 1 : shared / (double) path.size();
+	}
+
+	private TIntArrayList getPath(Tree fwd, Tree bwd, int through) {
+		TIntArrayList path = new TIntArrayList();
+		for (int p = through; p >= 0 && path.size() < points.length; p = fwd.parent[p]) {
+			path.add(p);
+		}
+		path.reverse();
+		for (int p = bwd.parent[through]; p >= 0 && path.size() < 2 * points.length; p = bwd.parent[p]) {
+			path.add(p);
+		}
+		return path;
+	}
+}
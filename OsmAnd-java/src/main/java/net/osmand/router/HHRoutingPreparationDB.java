@@ -0,0 +1,144 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+import gnu.trove.set.hash.TIntHashSet;
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+// Writable (not compact) network db: points are inserted once, segments are inserted per cluster
+// in one transaction with processed mark, so preprocessing could be resumed after interruption.
+public class HHRoutingPreparationDB extends HHRoutingDB {
+
+	public HHRoutingPreparationDB(File f, Connection conn) throws SQLException {
+		super(f, conn);
+		if (compactDB) {
+			throw new IllegalArgumentException("Compact db can't be modified " + f.getName());
+		}
+		Statement st = conn.createStatement();
+		st.execute("CREATE TABLE IF NOT EXISTS processedClusters(clusterId, profile, PRIMARY KEY(clusterId, profile))");
+		st.close();
+	}
+
+	public int getPointsCount() throws SQLException {
+		Statement st = conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT count(*) FROM points");
+		int cnt = rs.next() ? rs.getInt(1) : 0;
+		rs.close();
+		st.close();
+		return cnt;
+	}
+
+	public void insertPoints(Collection<? extends NetworkDBPoint> points) throws SQLException {
+		conn.setAutoCommit(false);
+		PreparedStatement ps = conn.prepareStatement("INSERT INTO points(idPoint, pointGeoUniDir, pointGeoId, clusterId, fileDbId, "
+				+ "dualIdPoint, dualClusterId, chInd, roadId, start, end, sx31, sy31, ex31, ey31, tagValues) "
+				+ "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		try {
+			batchInsPoint = 0;
+			for (NetworkDBPoint p : points) {
+				int ind = 1;
+				ps.setInt(ind++, p.index);
+				ps.setLong(ind++, HHRoutePlanner.calculateRoutePointInternalId(p.roadId, Math.min(p.start, p.end),
+						Math.max(p.start, p.end)));
+				ps.setLong(ind++, p.getGeoPntId());
+				ps.setInt(ind++, p.clusterId);
+				ps.setInt(ind++, p.fileId);
+				ps.setInt(ind++, p.dualPoint.index);
+				ps.setInt(ind++, p.dualPoint.clusterId);
+				ps.setInt(ind++, 0);
+				ps.setLong(ind++, p.roadId);
+				ps.setInt(ind++, p.start);
+				ps.setInt(ind++, p.end);
+				ps.setInt(ind++, p.startX);
+				ps.setInt(ind++, p.startY);
+				ps.setInt(ind++, p.endX);
+				ps.setInt(ind++, p.endY);
+				ps.setString(ind++, null);
+				ps.addBatch();
+				if (++batchInsPoint >= BATCH_SIZE) {
+					ps.executeBatch();
+					batchInsPoint = 0;
+				}
+			}
+			ps.executeBatch();
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			batchInsPoint = 0;
+			ps.close();
+			conn.setAutoCommit(true);
+		}
+	}
+
+	public TIntHashSet loadProcessedClusters(int profile) throws SQLException {
+		TIntHashSet res = new TIntHashSet();
+		Statement st = conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT clusterId FROM processedClusters WHERE profile = " + profile);
+		while (rs.next()) {
+			res.add(rs.getInt(1));
+		}
+		rs.close();
+		st.close();
+		return res;
+	}
+
+	// segments geometry (if not empty) is stored as x31, y31 pairs
+	public void insertClusterSegments(int clusterId, int profile, List<NetworkDBSegment> segments) throws SQLException {
+		conn.setAutoCommit(false);
+		PreparedStatement insSegment = conn.prepareStatement(
+				"INSERT INTO segments(idPoint, idConnPoint, dist, shortcut, profile) VALUES(?, ?, ?, ?, ?)");
+		PreparedStatement insGeometry = conn.prepareStatement(
+				"INSERT INTO geometry(idPoint, idConnPoint, geometry, shortcut, profile) VALUES(?, ?, ?, ?, ?)");
+		try {
+			for (NetworkDBSegment s : segments) {
+				insSegment.setInt(1, s.start.index);
+				insSegment.setInt(2, s.end.index);
+				insSegment.setDouble(3, s.dist);
+				insSegment.setInt(4, s.shortcut ? 1 : 0);
+				insSegment.setInt(5, profile);
+				insSegment.addBatch();
+				List<LatLon> geometry = s.geom;
+				if (geometry != null && !geometry.isEmpty()) {
+					byte[] bytes = new byte[geometry.size() * 8];
+					for (int i = 0; i < geometry.size(); i++) {
+						LatLon l = geometry.get(i);
+						Algorithms.putIntToBytes(bytes, i * 8, MapUtils.get31TileNumberX(l.getLongitude()));
+						Algorithms.putIntToBytes(bytes, i * 8 + 4, MapUtils.get31TileNumberY(l.getLatitude()));
+					}
+					insGeometry.setInt(1, s.start.index);
+					insGeometry.setInt(2, s.end.index);
+					insGeometry.setBytes(3, bytes);
+					insGeometry.setInt(4, s.shortcut ? 1 : 0);
+					insGeometry.setInt(5, profile);
+					insGeometry.addBatch();
+				}
+			}
+			insSegment.executeBatch();
+			insGeometry.executeBatch();
+			Statement st = conn.createStatement();
+			st.execute(String.format("INSERT INTO processedClusters(clusterId, profile) VALUES(%d, %d)", clusterId, profile));
+			st.close();
+			conn.commit();
+		} catch (SQLException e) {
+			conn.rollback();
+			throw e;
+		} finally {
+			insSegment.close();
+			insGeometry.close();
+			conn.setAutoCommit(true);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.MultiFinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+// Builds HH network db for routing profile (with parameters) from route data of obf files:
+// 1. clusters are tiles of clusterZoom, network points are road segments with ends in different clusters
+//    (point for each direction: point belongs to cluster of its start, its dual point to cluster of its end);
+// 2. Dijkstra from every point entering cluster limited by boundaries of cluster finds segments to points leaving it.
+// Clusters are processed in parallel (own RoutingContext per task, decoded tiles are shared), db is written only
+// by calling thread: points once, segments of cluster in one transaction with processed mark, so interrupted
+// preprocessing is resumed from not processed clusters. Result is used as HHRoutePlanner.createDB(ctx, db).
+public class HHRoutingPreprocessor {
+
+	private static final Log LOG = PlatformUtil.getLog(HHRoutingPreprocessor.class);
+
+	public int threads = Runtime.getRuntime().availableProcessors();
+	// 10 - ~40 km tiles
+	public int clusterZoom = 10;
+	public int memoryLimitMb = RoutingConfiguration.DEFAULT_MEMORY_LIMIT;
+	// geometry is needed to show route without detailed (last mile) calculation
+	public boolean storeGeometry = true;
+
+	private final RoutePlannerFrontEnd frontEnd = new RoutePlannerFrontEnd();
+	private final BinaryMapIndexReader[] readers;
+	private final RoutingConfiguration.Builder configBuilder;
+	private final String profile;
+	private final Map<String, String> params;
+
+	private static class ClusterSegments {
+		final int clusterId;
+		final List<NetworkDBSegment> segments = new ArrayList<NetworkDBSegment>();
+		int notFound;
+
+		ClusterSegments(int clusterId) {
+			this.clusterId = clusterId;
+		}
+	}
+
+	public HHRoutingPreprocessor(BinaryMapIndexReader[] readers, RoutingConfiguration.Builder configBuilder,
+	                             String profile, Map<String, String> params) {
+		this.readers = readers;
+		this.configBuilder = configBuilder;
+		this.profile = profile;
+		this.params = params == null ? new LinkedHashMap<String, String>() : params;
+		frontEnd.setSharedTilesCache(new RoutingTilesCache(RoutingService.DEFAULT_SHARED_TILES_MB * (1l << 20)));
+	}
+
+	// bbox in 31 coordinates, the same bbox should be used to resume
+	public void run(HHRoutingPreparationDB db, int left31, int top31, int right31, int bottom31)
+			throws SQLException, IOException, InterruptedException {
+		if (clusterZoom <= 0 || clusterZoom > 15) {
+			throw new IllegalArgumentException("Unsupported cluster zoom " + clusterZoom);
+		}
+		long time = System.currentTimeMillis();
+		GeneralRouter router = createContext().config.router;
+		String routerProfile = router.getProfile().toString().toLowerCase();
+		StringBuilder routerParams = new StringBuilder();
+		for (String p : router.serializeParameterValues(router.getParameterValues())) {
+			if (routerParams.length() > 0) {
+				routerParams.append(',');
+			}
+			routerParams.append(p);
+		}
+		int profileId = db.insertRoutingProfile(routerProfile, routerParams.toString());
+		int shift = 31 - clusterZoom;
+		List<int[]> tiles = new ArrayList<int[]>();
+		for (int tx = left31 >>> shift; tx <= right31 >>> shift; tx++) {
+			for (int ty = top31 >>> shift; ty <= bottom31 >>> shift; ty++) {
+				tiles.add(new int[] { tx, ty });
+			}
+		}
+		TLongObjectHashMap<NetworkDBPoint> points;
+		if (db.getPointsCount() == 0) {
+			points = findNetworkPoints(tiles);
+			db.insertPoints(points.valueCollection());
+			LOG.info(String.format("Network points %,d of %d clusters are found in %d ms", points.size(), tiles.size(),
+					System.currentTimeMillis() - time));
+		} else {
+			points = db.loadNetworkPoints((short) 0, NetworkDBPoint.class);
+			LOG.info(String.format("Network points %,d are loaded (resume)", points.size()));
+		}
+		calculateSegments(db, profileId, points, tiles);
+		LOG.info(String.format("HH network %s [%s] is prepared in %d ms", routerProfile, routerParams,
+				System.currentTimeMillis() - time));
+	}
+
+	private RoutingContext createContext() {
+		RoutingConfiguration config;
+		// builder keeps shared attributes
+		synchronized (configBuilder) {
+			config = configBuilder.build(profile, new RoutingMemoryLimits(memoryLimitMb,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new LinkedHashMap<String, String>(params));
+		}
+		config.planRoadDirection = 1;
+		config.heuristicCoefficient = 0; // dijkstra
+		config.penaltyForReverseDirection = -1; // spread only in direction of network point
+		config.MAX_VISITED = HHRoutePlanner.MAX_POINTS_CLUSTER_ROUTING * 2;
+		RoutingContext ctx = frontEnd.buildRoutingContext(config, null, readers);
+		ctx.calculationProgress = new RouteCalculationProgress();
+		return ctx;
+	}
+
+	private int getCluster(int x31, int y31) {
+		int shift = 31 - clusterZoom;
+		return ((x31 >>> shift) << clusterZoom) + (y31 >>> shift);
+	}
+
+	private TLongObjectHashMap<NetworkDBPoint> findNetworkPoints(List<int[]> tiles) throws InterruptedException {
+		List<Callable<List<NetworkDBPoint>>> tasks = new ArrayList<Callable<List<NetworkDBPoint>>>();
+		for (final int[] tile : tiles) {
+			tasks.add(new Callable<List<NetworkDBPoint>>() {
+				@Override
+				public List<NetworkDBPoint> call() {
+					return findClusterPoints(createContext(), tile[0], tile[1]);
+				}
+			});
+		}
+		TLongObjectHashMap<NetworkDBPoint> byGeo = new TLongObjectHashMap<NetworkDBPoint>();
+		for (List<NetworkDBPoint> l : runParallel(tasks)) {
+			for (NetworkDBPoint p : l) {
+				// boundary segment is found by both clusters
+				if (!byGeo.containsKey(p.getGeoPntId())) {
+					byGeo.put(p.getGeoPntId(), p);
+				}
+			}
+		}
+		// stable ids (1 based as 0 is not dual point)
+		long[] geoIds = byGeo.keys();
+		Arrays.sort(geoIds);
+		TLongObjectHashMap<NetworkDBPoint> points = new TLongObjectHashMap<NetworkDBPoint>();
+		for (long geoId : geoIds) {
+			NetworkDBPoint p = byGeo.get(geoId);
+			p.index = points.size() + 1;
+			p.fileId = p.index;
+			points.put(p.index, p);
+		}
+		for (NetworkDBPoint p : points.valueCollection()) {
+			p.dualPoint = byGeo.get(HHRoutePlanner.calculateRoutePointInternalId(p.roadId, p.end, p.start));
+		}
+		return points;
+	}
+
+	// both directions of road segments crossing border of cluster
+	private List<NetworkDBPoint> findClusterPoints(RoutingContext ctx, int tx, int ty) {
+		int zoom = ctx.config.ZOOM_TO_LOAD_TILES;
+		if (clusterZoom >= zoom) {
+			throw new IllegalArgumentException("Cluster zoom should be less than " + zoom);
+		}
+		int clusterId = (tx << clusterZoom) + ty;
+		int shift = 31 - clusterZoom;
+		int tileSize = 1 << (31 - zoom);
+		int left = tx << shift, top = ty << shift;
+		long right = ((long) tx + 1) << shift, bottom = ((long) ty + 1) << shift;
+		// tile data is loaded in 3x3 routing tiles around point, so border tiles are covered with step of 3
+		List<RouteDataObject> roads = new ArrayList<RouteDataObject>();
+		for (long d = 0; d <= (1l << shift) + tileSize; d += 3l * tileSize) {
+			int x = (int) Math.min(Integer.MAX_VALUE, left + d);
+			int y = (int) Math.min(Integer.MAX_VALUE, top + d);
+			ctx.loadTileData(x, top, zoom, roads);
+			ctx.loadTileData(x, (int) Math.min(Integer.MAX_VALUE, bottom), zoom, roads);
+			ctx.loadTileData(left, y, zoom, roads);
+			ctx.loadTileData((int) Math.min(Integer.MAX_VALUE, right), y, zoom, roads);
+		}
+		TLongHashSet visitedRoads = new TLongHashSet();
+		List<NetworkDBPoint> res = new ArrayList<NetworkDBPoint>();
+		for (RouteDataObject road : roads) {
+			if (!visitedRoads.add(road.getId()) || road.getPointsLength() > (1 << HHRoutePlanner.ROUTE_POINTS)
+					|| !ctx.getRouter().acceptLine(road)) {
+				continue;
+			}
+			for (int i = 0; i < road.getPointsLength() - 1; i++) {
+				int sx = road.getPoint31XTile(i), sy = road.getPoint31YTile(i);
+				int ex = road.getPoint31XTile(i + 1), ey = road.getPoint31YTile(i + 1);
+				int sc = getCluster(sx, sy), ec = getCluster(ex, ey);
+				if (sc != ec && (sc == clusterId || ec == clusterId)) {
+					NetworkDBPoint p = createPoint(road, i, i + 1, sc);
+					NetworkDBPoint dual = createPoint(road, i + 1, i, ec);
+					p.dualPoint = dual;
+					dual.dualPoint = p;
+					res.add(p);
+					res.add(dual);
+				}
+			}
+		}
+		ctx.unloadAllData();
+		return res;
+	}
+
+	private NetworkDBPoint createPoint(RouteDataObject road, int start, int end, int clusterId) {
+		NetworkDBPoint p = new NetworkDBPoint();
+		p.roadId = road.getId();
+		p.start = (short) start;
+		p.end = (short) end;
+		p.startX = road.getPoint31XTile(start);
+		p.startY = road.getPoint31YTile(start);
+		p.endX = road.getPoint31XTile(end);
+		p.endY = road.getPoint31YTile(end);
+		p.clusterId = clusterId;
+		return p;
+	}
+
+	private void calculateSegments(HHRoutingPreparationDB db, int profileId, TLongObjectHashMap<NetworkDBPoint> points,
+	                               List<int[]> tiles) throws SQLException, InterruptedException {
+		final TLongObjectHashMap<NetworkDBPoint> pointsByGeo = new TLongObjectHashMap<NetworkDBPoint>();
+		// points entering cluster (dual point belongs to cluster) and leaving it
+		final TIntObjectHashMap<List<NetworkDBPoint>> inPoints = HHRoutePlanner.groupByClusters(points, false);
+		final TIntObjectHashMap<List<NetworkDBPoint>> outPoints = HHRoutePlanner.groupByClusters(points, true);
+		for (NetworkDBPoint p : points.valueCollection()) {
+			pointsByGeo.put(p.getGeoPntId(), p);
+		}
+		TIntHashSet processed = db.loadProcessedClusters(profileId);
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		ExecutorCompletionService<ClusterSegments> completion = new ExecutorCompletionService<ClusterSegments>(executor);
+		int submitted = 0;
+		try {
+			for (int[] tile : tiles) {
+				final int clusterId = (tile[0] << clusterZoom) + tile[1];
+				if (processed.contains(clusterId) || !inPoints.containsKey(clusterId)) {
+					continue;
+				}
+				completion.submit(new Callable<ClusterSegments>() {
+					@Override
+					public ClusterSegments call() throws Exception {
+						return calculateClusterSegments(createContext(), clusterId, inPoints.get(clusterId),
+								outPoints.get(clusterId), pointsByGeo);
+					}
+				});
+				submitted++;
+			}
+			LOG.info(String.format("Clusters to process %d (processed before %d)", submitted, processed.size()));
+			long time = System.currentTimeMillis();
+			int segments = 0;
+			for (int i = 1; i <= submitted; i++) {
+				ClusterSegments res = completion.take().get();
+				// checkpoint
+				db.insertClusterSegments(res.clusterId, profileId, res.segments);
+				segments += res.segments.size();
+				if (res.notFound > 0) {
+					LOG.warn(String.format("Cluster %d: %d points are not found in maps", res.clusterId, res.notFound));
+				}
+				if (i % 100 == 0 || i == submitted) {
+					LOG.info(String.format("Processed %d / %d clusters: %,d segments, %d ms", i, submitted, segments,
+							System.currentTimeMillis() - time));
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private ClusterSegments calculateClusterSegments(RoutingContext ctx, int clusterId, List<NetworkDBPoint> in,
+	                                                 List<NetworkDBPoint> out, TLongObjectHashMap<NetworkDBPoint> pointsByGeo)
+			throws InterruptedException, IOException {
+		ClusterSegments res = new ClusterSegments(clusterId);
+		TLongObjectHashMap<RouteSegment> boundaries = new TLongObjectHashMap<RouteSegment>();
+		for (List<NetworkDBPoint> l : Arrays.asList(in, out)) {
+			for (int i = 0; l != null && i < l.size(); i++) {
+				boundaries.put(l.get(i).getGeoPntId(), null);
+				boundaries.put(l.get(i).dualPoint.getGeoPntId(), null);
+			}
+		}
+		BinaryRoutePlanner planner = new BinaryRoutePlanner();
+		for (NetworkDBPoint start : in) {
+			// SPEEDUP: Speed up by just clearing visited
+			ctx.unloadAllData(); // needed for proper multidijsktra work
+			RouteSegmentPoint s = HHRoutePlanner.loadPoint(ctx, start);
+			if (s == null) {
+				res.notFound++;
+				continue;
+			}
+			long ps = start.getGeoPntId();
+			long psDual = start.dualPoint.getGeoPntId();
+			boundaries.remove(ps);
+			boundaries.remove(psDual);
+			MultiFinalRouteSegment frs;
+			try {
+				frs = (MultiFinalRouteSegment) planner.searchRouteInternal(ctx, s, null, boundaries);
+			} finally {
+				boundaries.put(ps, null);
+				boundaries.put(psDual, null);
+			}
+			if (frs == null) {
+				continue;
+			}
+			TIntObjectHashMap<NetworkDBSegment> segments = new TIntObjectHashMap<NetworkDBSegment>();
+			for (FinalRouteSegment o : frs.all) {
+				NetworkDBPoint end = pointsByGeo.get(HHRoutePlanner.calculateRoutePointInternalId(o.getRoad().getId(),
+						o.getSegmentStart(), o.getSegmentEnd()));
+				if (end == null || end == start || end.clusterId != clusterId) {
+					continue;
+				}
+				// same cost as HHRoutePlanner.recalculateNetworkCluster
+				double routeTime = o.getDistanceFromStart() + planner.calcRoutingSegmentTimeOnlyDist(ctx.getRouter(), o) / 2 + 1;
+				NetworkDBSegment ex = segments.get(end.index);
+				if (ex != null && ex.dist <= routeTime) {
+					continue;
+				}
+				NetworkDBSegment segment = new NetworkDBSegment(start, end, routeTime, true, false);
+				if (storeGeometry) {
+					addGeometry(segment.getGeometry(), o);
+				}
+				segments.put(end.index, segment);
+			}
+			res.segments.addAll(segments.valueCollection());
+		}
+		ctx.unloadAllData();
+		return res;
+	}
+
+	private static void addGeometry(List<LatLon> geometry, RouteSegment last) {
+		geometry.add(getLatLon(last.getRoad(), last.getSegmentEnd()));
+		RouteSegment s = last;
+		while (s != null) {
+			geometry.add(getLatLon(s.getRoad(), s.getSegmentStart()));
+			s = s.getParentRoute();
+		}
+		Collections.reverse(geometry);
+	}
+
+	private static LatLon getLatLon(RouteDataObject road, int ind) {
+		return new LatLon(MapUtils.get31LatitudeY(road.getPoint31YTile(ind)), MapUtils.get31LongitudeX(road.getPoint31XTile(ind)));
+	}
+
+	private <T> List<T> runParallel(List<Callable<T>> tasks) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<T> res = new ArrayList<T>();
+			for (Future<T> f : executor.invokeAll(tasks)) {
+				res.add(f.get());
+			}
+			return res;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+
+// Visited segments of reverse (target rooted) search kept after route calculation for incremental recalculation:
+// distanceFromStart of segment is time to target and parents lead to target, so forward search from new start
+// could stop at first segment of the tree. Tree is valid only for same target, profile, calculation mode and maps (key).
+public class ReverseSearchTree {
+
+	final TLongObjectHashMap<RouteSegment> segments;
+	String key;
+	String routingKey;
+	int targetX;
+	int targetY;
+
+	ReverseSearchTree(TLongObjectHashMap<RouteSegment> segments) {
+		this.segments = segments;
+	}
+
+	static String createKey(RoutingContext ctx, RouteSegmentPoint end) {
+		StringBuilder key = new StringBuilder(createRoutingKey(ctx));
+		key.append('|');
+		RouteResultCache.appendPointKey(key, end);
+		return key.toString();
+	}
+
+	// key without target: calculation mode, time, profile with parameters and maps
+	static String createRoutingKey(RoutingContext ctx) {
+		StringBuilder key = new StringBuilder();
+		key.append(ctx.calculationMode).append('|').append(ctx.config.routeCalculationTime).append('|');
+		RouteResultCache.appendRouterKey(key, ctx);
+		key.append('|');
+		RouteResultCache.appendMapsKey(key, ctx);
+		return key.toString();
+	}
+
+	public int size() {
+		return segments.size();
+	}
+
+	// keeps segments closest to target (parent of segment is closer to target, so tree stays connected)
+	// within memory limit: visited segment overhead plus road objects of old context pinned by kept segments
+	void prune(long maxBytes) {
+		RouteSegment[] sorted = segments.values(new RouteSegment[segments.size()]);
+		Arrays.sort(sorted, new Comparator<RouteSegment>() {
+			@Override
+			public int compare(RouteSegment o1, RouteSegment o2) {
+				return Float.compare(o1.distanceFromStart, o2.distanceFromStart);
+			}
+		});
+		Set<RouteDataObject> roads = Collections.newSetFromMap(new IdentityHashMap<RouteDataObject, Boolean>());
+		long bytes = 0;
+		int kept = 0;
+		for (; kept < sorted.length; kept++) {
+			RouteDataObject road = sorted[kept].getRoad();
+			long sz = BinaryRoutePlanner.STANDARD_ROAD_VISITED_OVERHEAD
+					+ (roads.add(road) ? RoutingContext.getEstimatedSize(road) : 0);
+			if (bytes + sz > maxBytes) {
+				break;
+			}
+			bytes += sz;
+		}
+		if (kept == sorted.length) {
+			return;
+		} else if (kept == 0) {
+			segments.clear();
+			return;
+		}
+		float threshold = sorted[kept - 1].distanceFromStart;
+		TLongObjectIterator<RouteSegment> it = segments.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			if (it.value().distanceFromStart > threshold) {
+				it.remove();
+			}
+		}
+		segments.compact();
+	}
+}
@@ -41,6 +41,8 @@ public class RouteCalculationProgress {
 	public int loadedPrevUnloadedTiles = 0;
 	public int unloadedTiles = 0;
 	public int loadedTiles = 0;
+	public int tileHits = 0;
+	public long maxLoadedTilesSize = 0;
 	
 	public boolean isCancelled;
 	public boolean requestPrivateAccessRouting;
@@ -74,11 +76,30 @@ public class RouteCalculationProgress {
 		p.distinctLoadedTiles = cp.distinctLoadedTiles;
 		p.maxLoadedTiles = cp.maxLoadedTiles;
 		p.loadedPrevUnloadedTiles = cp.loadedPrevUnloadedTiles;
+		p.unloadedTiles = cp.unloadedTiles;
+		p.tileHits = cp.tileHits;
+		p.maxLoadedTilesSize = cp.maxLoadedTilesSize;
 		
 		cp.maxLoadedTiles = 0;
+		cp.maxLoadedTilesSize = 0;
 		return p;
 	}
 	
+	// counters collected by the second thread of parallel bidirectional search
+	public void addCounters(RouteCalculationProgress p) {
+		visitedSegments += p.visitedSegments;
+		finalSegmentsFound += p.finalSegmentsFound;
+		timeToLoad += p.timeToLoad;
+		timeToLoadHeaders += p.timeToLoadHeaders;
+		loadedTiles += p.loadedTiles;
+		distinctLoadedTiles += p.distinctLoadedTiles;
+		loadedPrevUnloadedTiles += p.loadedPrevUnloadedTiles;
+		unloadedTiles += p.unloadedTiles;
+		tileHits += p.tileHits;
+		maxLoadedTiles = Math.max(maxLoadedTiles, p.maxLoadedTiles);
+		maxLoadedTilesSize = Math.max(maxLoadedTilesSize, p.maxLoadedTilesSize);
+	}
+	
 	public Map<String, Object> getInfo(RouteCalculationProgress firstPhase) {
 		TreeMap<String, Object> map = new TreeMap<String, Object>();
 		TreeMap<String, Object> tiles = new TreeMap<String, Object>();
@@ -91,6 +112,8 @@ public class RouteCalculationProgress {
 		tiles.put("loadedTilesPrevUnloaded", this.loadedPrevUnloadedTiles - firstPhase.loadedPrevUnloadedTiles);
 		tiles.put("loadedTilesMax", Math.max(this.maxLoadedTiles, this.distinctLoadedTiles));
 		tiles.put("unloadedTiles", this.unloadedTiles - firstPhase.unloadedTiles);
+		tiles.put("tileHits", this.tileHits - firstPhase.tileHits);
+		tiles.put("loadedTilesMaxSizeMb", Math.max(this.maxLoadedTilesSize, firstPhase.maxLoadedTilesSize) / (float) (1 << 20));
 		Map<String, Object> segms = new LinkedHashMap<String, Object>();
 		map.put("segments", segms);
 		segms.put("visited", this.visitedSegments - firstPhase.visitedSegments);
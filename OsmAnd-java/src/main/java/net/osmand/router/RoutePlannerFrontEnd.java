@@ -4,6 +4,11 @@ package net.osmand.router;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 
@@ -17,6 +22,7 @@ import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
 import net.osmand.binary.RouteDataObject;
 import net.osmand.data.LatLon;
 import net.osmand.data.QuadPointDouble;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegment;
 import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
 import net.osmand.router.GeneralRouter.GeneralRouterProfile;
@@ -39,9 +45,17 @@ public class RoutePlannerFrontEnd {
 	private boolean useSmartRouteRecalculation = true;
 	private boolean useGeometryBasedApproximation = false;
 	private boolean useNativeApproximation = true;
+	private int gpxApproximationThreads = 1;
+	private double gpxApproximationMinChunkDistance = GpxRouteApproximation.PARALLEL_MIN_CHUNK_DISTANCE;
+	private ExecutorService gpxApproximationExecutor = null;
+	private boolean ownGpxApproximationExecutor = false;
 	private boolean useOnlyHHRouting = false;
 	private HHRoutingConfig hhRoutingConfig = null;
 	private HHRoutingType hhRoutingType = HHRoutingType.JAVA;
+	private RoutingTilesCache sharedTilesCache = null;
+	private RouteResultCache routeResultCache = null;
+	private boolean useIncrementalRecalculation = false;
+	private ReverseSearchTree reverseSearchTree = null;
 
 
 	public RoutePlannerFrontEnd() {
@@ -111,7 +125,9 @@ public class RoutePlannerFrontEnd {
 			rm = config.router.getProfile() == GeneralRouterProfile.CAR ? RouteCalculationMode.COMPLEX
 					: RouteCalculationMode.NORMAL;
 		}
-		return new RoutingContext(config, nativeLibrary, map, rm);
+		RoutingContext ctx = new RoutingContext(config, nativeLibrary, map, rm);
+		ctx.sharedTiles = sharedTilesCache;
+		return ctx;
 	}
 
 	public RoutingContext buildRoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] map) {
@@ -223,6 +239,20 @@ public class RoutePlannerFrontEnd {
 		return this;
 	}
 	
+	// keep reverse search tree of last calculation, recalculation to the same target stops at it
+	// (replaces smart recalculation by previouslyCalculatedRoute).
+	// Calculation without tree runs only reverse search (from target) to build it, that is slower than
+	// search in 2 directions, so it should be enabled only for navigation with expected recalculations.
+	public RoutePlannerFrontEnd setUseIncrementalRecalculation(boolean use) {
+		this.useIncrementalRecalculation = use;
+		if (!use) {
+			synchronized (this) {
+				reverseSearchTree = null;
+			}
+		}
+		return this;
+	}
+
 	public RoutePlannerFrontEnd setHHRoutingConfig(HHRoutingConfig hhRoutingConfig) {
 		// null means don't use hh 
 		this.hhRoutingConfig = hhRoutingConfig;
@@ -238,6 +268,24 @@ public class RoutePlannerFrontEnd {
 		return this.hhRoutingConfig != null;
 	}
 
+	public RoutePlannerFrontEnd setSharedTilesCache(RoutingTilesCache sharedTilesCache) {
+		this.sharedTilesCache = sharedTilesCache;
+		return this;
+	}
+
+	public RoutingTilesCache getSharedTilesCache() {
+		return sharedTilesCache;
+	}
+
+	public RoutePlannerFrontEnd setRouteResultCache(RouteResultCache routeResultCache) {
+		this.routeResultCache = routeResultCache;
+		return this;
+	}
+
+	public RouteResultCache getRouteResultCache() {
+		return routeResultCache;
+	}
+
 	public void setDefaultHHRoutingConfig() {
 		this.hhRoutingConfig = defaultHHConfig();
 	}
@@ -260,6 +308,61 @@ public class RoutePlannerFrontEnd {
 		return this;
 	}
 
+	// > 1 - approximation by routing splits long tracks into chunks calculated in parallel
+	public synchronized RoutePlannerFrontEnd setGpxApproximationThreads(int gpxApproximationThreads) {
+		if (this.gpxApproximationThreads != gpxApproximationThreads && ownGpxApproximationExecutor) {
+			gpxApproximationExecutor.shutdown();
+			gpxApproximationExecutor = null;
+			ownGpxApproximationExecutor = false;
+		}
+		this.gpxApproximationThreads = gpxApproximationThreads;
+		return this;
+	}
+
+	public int getGpxApproximationThreads() {
+		return gpxApproximationThreads;
+	}
+
+	// minimal length (meters) of chunk of parallel approximation
+	public RoutePlannerFrontEnd setGpxApproximationMinChunkDistance(double gpxApproximationMinChunkDistance) {
+		this.gpxApproximationMinChunkDistance = gpxApproximationMinChunkDistance;
+		return this;
+	}
+
+	public double getGpxApproximationMinChunkDistance() {
+		return gpxApproximationMinChunkDistance;
+	}
+
+	// executor of parallel approximation chunks (not shut down by front end),
+	// by default pool of gpxApproximationThreads daemon threads is created on first use and reused
+	public synchronized RoutePlannerFrontEnd setGpxApproximationExecutor(ExecutorService executor) {
+		if (ownGpxApproximationExecutor) {
+			gpxApproximationExecutor.shutdown();
+		}
+		this.gpxApproximationExecutor = executor;
+		this.ownGpxApproximationExecutor = false;
+		return this;
+	}
+
+	public synchronized ExecutorService getGpxApproximationExecutor() {
+		if (gpxApproximationExecutor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(gpxApproximationThreads, gpxApproximationThreads,
+					60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "gpx-approximation");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			// idle threads are stopped, front end doesn't need to be closed
+			pool.allowCoreThreadTimeOut(true);
+			gpxApproximationExecutor = pool;
+			ownGpxApproximationExecutor = true;
+		}
+		return gpxApproximationExecutor;
+	}
+
 	public boolean isUseNativeApproximation() {
 		return useNativeApproximation;
 	}
@@ -393,10 +496,25 @@ public class RoutePlannerFrontEnd {
 		if (needRequestPrivateAccessRouting(ctx, targets)) {
 			ctx.calculationProgress.requestPrivateAccessRouting = true;
 		}
+		List<RouteSegmentPoint> points = null;
+		String cacheKey = null;
+		if (routeResultCache != null && ctx.nativeLib == null && !isAlternativesCalculated(ctx)) {
+			// snapped points are part of the key and reused by A* below
+			points = findRouteSegments(ctx, start, intermediates, end);
+			cacheKey = points == null ? null : routeResultCache.createKey(ctx, points, getCacheMode(ctx));
+			RouteCalcResult cached = routeResultCache.get(cacheKey, ctx);
+			if (cached != null) {
+				ctx.calculationProgress.timeToCalculate = (System.nanoTime() - timeToCalculate);
+				return cached;
+			}
+		}
 		if (hhRoutingConfig != null && ctx.calculationMode != RouteCalculationMode.BASE) {
 			if (ctx.nativeLib == null || hhRoutingType == HHRoutingType.JAVA) {
 				HHNetworkRouteRes r = runHHRoute(ctx, start, targets);
 				if ((r != null && r.isCorrect()) || useOnlyHHRouting) {
+					if (routeResultCache != null) {
+						routeResultCache.put(cacheKey, r, ctx.routingTime);
+					}
 					return r;
 				}
 			} else {
@@ -421,7 +539,7 @@ public class RoutePlannerFrontEnd {
 			}
 		}
 		if (ctx.calculationMode == RouteCalculationMode.COMPLEX && routeDirection == null
-				&& maxDistance > RoutingConfiguration.DEVIATION_RADIUS * 6) {
+				&& maxDistance > RoutingConfiguration.DEVIATION_RADIUS * 6 && !hasReverseSearchTree(ctx, end)) {
 			ctx.calculationProgress.totalIterations++;
 			RoutingContext nctx = buildRoutingContext(ctx.config, ctx.nativeLib, ctx.getMaps(), RouteCalculationMode.BASE);
 			nctx.calculationProgress = ctx.calculationProgress;
@@ -445,9 +563,15 @@ public class RoutePlannerFrontEnd {
 			ctx.calculationProgress.nextIteration();
 			res = runNativeRouting(ctx, recalculationEnd, null);
 			makeStartEndPointsPrecise(ctx, res, start, end, intermediates);
+		} else if (points != null) {
+			ctx.calculationProgress.nextIteration();
+			res = searchRouteImpl(ctx, points, routeDirection);
+			if (routeResultCache != null) {
+				routeResultCache.put(cacheKey, res, ctx.routingTime);
+			}
 		} else {
 			int indexNotFound = 0;
-			List<RouteSegmentPoint> points = new ArrayList<RouteSegmentPoint>();
+			points = new ArrayList<RouteSegmentPoint>();
 			if (!addSegment(start, ctx, indexNotFound++, points, ctx.startTransportStop)) {
 				return new RouteCalcResult("Start point is not located");
 			}
@@ -629,6 +753,40 @@ public class RoutePlannerFrontEnd {
 		}
 	}
 
+	// null if any point is not located
+	private List<RouteSegmentPoint> findRouteSegments(RoutingContext ctx, LatLon start, List<LatLon> intermediates,
+			LatLon end) throws IOException {
+		int indexNotFound = 0;
+		List<RouteSegmentPoint> points = new ArrayList<RouteSegmentPoint>();
+		if (!addSegment(start, ctx, indexNotFound++, points, ctx.startTransportStop)) {
+			return null;
+		}
+		if (intermediates != null) {
+			for (LatLon l : intermediates) {
+				if (!addSegment(l, ctx, indexNotFound++, points, false)) {
+					return null;
+				}
+			}
+		}
+		if (!addSegment(end, ctx, indexNotFound++, points, ctx.targetTransportStop)) {
+			return null;
+		}
+		return points;
+	}
+
+	// alternative routes are not cached (see RouteResultCache)
+	private boolean isAlternativesCalculated(RoutingContext ctx) {
+		return hhRoutingConfig != null && hhRoutingConfig.CALC_ALTERNATIVES && ctx.calculationMode != RouteCalculationMode.BASE;
+	}
+
+	private String getCacheMode(RoutingContext ctx) {
+		String mode = ctx.calculationMode.name();
+		if (hhRoutingConfig != null && ctx.calculationMode != RouteCalculationMode.BASE) {
+			mode += useOnlyHHRouting ? "-hh-only" : "-hh";
+		}
+		return mode;
+	}
+
 	private boolean addSegment(LatLon s, RoutingContext ctx, int indexNotFound, List<RouteSegmentPoint> res, boolean transportStop) throws IOException {
 		RouteSegmentPoint f = findRouteSegment(s.getLatitude(), s.getLongitude(), ctx, null, transportStop);
 		if (f == null) {
@@ -643,7 +801,13 @@ public class RoutePlannerFrontEnd {
 
 	public RouteCalcResult searchRouteInternalPrepare(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
 	                                                  PrecalculatedRouteDirection routeDirection) throws IOException, InterruptedException {
-		RouteSegmentPoint recalculationEnd = getRecalculationEnd(ctx);
+		return searchRouteInternalPrepare(ctx, start, end, routeDirection, false);
+	}
+
+	private RouteCalcResult searchRouteInternalPrepare(final RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end,
+	                                                   PrecalculatedRouteDirection routeDirection, boolean incremental) throws IOException, InterruptedException {
+		incremental &= ctx.nativeLib == null && ctx.config.speedProfiles == null;
+		RouteSegmentPoint recalculationEnd = incremental ? null : getRecalculationEnd(ctx);
 		if (recalculationEnd != null) {
 			ctx.initStartAndTargetPoints(start, recalculationEnd);
 		} else {
@@ -665,7 +829,20 @@ public class RoutePlannerFrontEnd {
 		} else {
 			refreshProgressDistance(ctx);
 			// Split into 2 methods to let GC work in between
-			ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, recalculationEnd != null ? recalculationEnd : end, null);
+			if (incremental) {
+				ctx.finalRouteSegment = searchRouteIncremental(ctx, start, end);
+			} else {
+				Integer planRoadDirection = ctx.planRoadDirection;
+				if (ctx.config.speedProfiles != null) {
+					// time dependent speed is known only from start (departure time plus cost)
+					ctx.planRoadDirection = 1;
+				}
+				try {
+					ctx.finalRouteSegment = new BinaryRoutePlanner().searchRouteInternal(ctx, start, recalculationEnd != null ? recalculationEnd : end, null);
+				} finally {
+					ctx.planRoadDirection = planRoadDirection;
+				}
+			}
 			RouteResultPreparation rrp = new RouteResultPreparation();
 			// 4. Route is found : collect all segments and prepare result
 			List<RouteSegmentResult> result  = rrp.convertFinalSegmentToResults(ctx, ctx.finalRouteSegment);
@@ -674,6 +851,75 @@ public class RoutePlannerFrontEnd {
 		}
 	}
 
+	// base route (route direction) is not needed when target is reached from reverse tree
+	private boolean hasReverseSearchTree(RoutingContext ctx, LatLon end) {
+		ReverseSearchTree tree;
+		synchronized (this) {
+			tree = useIncrementalRecalculation ? reverseSearchTree : null;
+		}
+		return tree != null && tree.routingKey.equals(ReverseSearchTree.createRoutingKey(ctx))
+				&& MapUtils.getDistance(end, MapUtils.get31LatitudeY(tree.targetY),
+						MapUtils.get31LongitudeX(tree.targetX)) < RoutingConfiguration.DEVIATION_RADIUS;
+	}
+
+	// Forward search from start stops at reverse tree of previous calculation to the same target.
+	// Without tree (or if it isn't reached) only reverse search is run from target to start
+	// and its visited segments are kept (limited by third of memory limit) for next recalculation.
+	// Kept segments refer to road objects of this context, they are counted in the limit as well.
+	private FinalRouteSegment searchRouteIncremental(RoutingContext ctx, RouteSegmentPoint start, RouteSegmentPoint end)
+			throws InterruptedException, IOException {
+		String key = ReverseSearchTree.createKey(ctx, end);
+		ReverseSearchTree tree;
+		synchronized (this) {
+			tree = reverseSearchTree;
+		}
+		if (tree != null && tree.key.equals(key)) {
+			ctx.reverseSearchTree = tree;
+			try {
+				FinalRouteSegment fs = new BinaryRoutePlanner().searchRouteInternal(ctx, copyPoint(start), copyPoint(end), null);
+				if (fs != null) {
+					return fs;
+				}
+			} catch (IllegalArgumentException e) {
+				// start is not connected with tree
+			} finally {
+				ctx.reverseSearchTree = null;
+			}
+			log.info("Incremental recalculation hasn't reached previous search tree");
+			ctx.initStartAndTargetPoints(start, end);
+		}
+		Integer planRoadDirection = ctx.planRoadDirection;
+		ctx.planRoadDirection = -1;
+		ctx.keepReverseSearchTree = true;
+		try {
+			FinalRouteSegment fs = new BinaryRoutePlanner().searchRouteInternal(ctx, start, end, null);
+			tree = ctx.reverseSearchTree;
+			if (tree != null) {
+				tree.key = key;
+				tree.routingKey = ReverseSearchTree.createRoutingKey(ctx);
+				tree.targetX = end.preciseX;
+				tree.targetY = end.preciseY;
+				tree.prune(ctx.config.memoryLimitation / 3);
+				synchronized (this) {
+					reverseSearchTree = tree;
+				}
+			}
+			return fs;
+		} finally {
+			ctx.planRoadDirection = planRoadDirection;
+			ctx.keepReverseSearchTree = false;
+			ctx.reverseSearchTree = null;
+		}
+	}
+
+	private static RouteSegmentPoint copyPoint(RouteSegmentPoint p) {
+		RouteSegmentPoint c = new RouteSegmentPoint(p);
+		if (p.others != null) {
+			c.others = new ArrayList<RouteSegmentPoint>(p.others);
+		}
+		return c;
+	}
+
 	public RouteSegmentPoint getRecalculationEnd(final RoutingContext ctx) {
 		RouteSegmentPoint recalculationEnd = null;
 		boolean runRecalculation = ctx.previouslyCalculatedRoute != null && !ctx.previouslyCalculatedRoute.isEmpty()
@@ -796,7 +1042,8 @@ public class RoutePlannerFrontEnd {
 				ctx.previouslyCalculatedRoute = null;
 			}
 			pringGC(ctx, true);
-			RouteCalcResult res = searchRouteInternalPrepare(ctx, points.get(0), points.get(1), routeDirection);
+			RouteCalcResult res = searchRouteInternalPrepare(ctx, points.get(0), points.get(1), routeDirection,
+					useIncrementalRecalculation);
 			pringGC(ctx, false);
 			makeStartEndPointsPrecise(ctx, res, points.get(0).getPreciseLatLon(), points.get(1).getPreciseLatLon(), null);
 			return res;
@@ -858,7 +1105,7 @@ public class RoutePlannerFrontEnd {
 			float mb = (1 << 20);
 			log.warn("Used before routing " + h1 / mb + " actual");
 		} else if (RoutingContext.SHOW_GC_SIZE && !before) {
-			int sz = ctx.global.size;
+			long sz = ctx.global.size;
 			log.warn("Subregion size " + ctx.subregionTiles.size() + " " + " tiles " + ctx.indexedSubregions.size());
 			long h1 = RoutingContext.runGCUsedMemory();
 			ctx.unloadAllData();
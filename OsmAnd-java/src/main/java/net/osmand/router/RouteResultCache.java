@@ -0,0 +1,277 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.Location;
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.gpx.GPXFile;
+import net.osmand.gpx.GPXUtilities;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.util.Algorithms;
+import net.osmand.util.MapUtils;
+
+// Cache of calculated routes keyed by snapped start / intermediate / end points, routing profile with parameters,
+// driving side and editions of map files (so route is recalculated automatically when maps are updated).
+// Routes are kept in memory (LRU) and optionally stored in directory in RouteExporter format (gpx).
+// Segments are copied on put and get (see RouteSegmentResult.copy), so returned route could be modified by caller.
+// Routing time is restored to context on hit, final segment of A* is not kept (ctx.finalRouteSegment is null as after
+// HH routing). Routes with alternatives are not cached (alternatives refer to HH network of calculation).
+public class RouteResultCache {
+
+	private final static Log log = PlatformUtil.getLog(RouteResultCache.class);
+	private static final String FILE_EXT = ".gpx";
+
+	private final int maxRoutes;
+	private final File dir;
+	private final LinkedHashMap<String, CachedRoute> routes = new LinkedHashMap<String, CachedRoute>(16, 0.75f, true);
+	private long hits;
+	private long diskHits;
+	private long misses;
+
+	private static class CachedRoute {
+		final List<RouteSegmentResult> list;
+		final float routingTime;
+
+		CachedRoute(List<RouteSegmentResult> list, float routingTime) {
+			this.list = list;
+			this.routingTime = routingTime;
+		}
+	}
+
+	public RouteResultCache(int maxRoutes) {
+		this(maxRoutes, null);
+	}
+
+	public RouteResultCache(int maxRoutes, File dir) {
+		this.maxRoutes = maxRoutes;
+		this.dir = dir;
+		if (dir != null) {
+			dir.mkdirs();
+		}
+	}
+
+	// returns null if route depends on parameters which are not part of key (time, speed profiles by departure time,
+	// direction points, heading)
+	public String createKey(RoutingContext ctx, List<RouteSegmentPoint> points, String mode) {
+		if (ctx.config.routeCalculationTime != 0 || ctx.config.speedProfiles != null || ctx.config.initialDirection != null
+				|| ctx.config.getDirectionPoints() != null || ctx.previouslyCalculatedRoute != null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		key.append(mode).append('|');
+		// turns are prepared for driving side
+		key.append(ctx.leftSideNavigation ? "left" : "right").append('|');
+		appendRouterKey(key, ctx);
+		key.append('|');
+		for (RouteSegmentPoint p : points) {
+			appendPointKey(key, p);
+		}
+		key.append('|');
+		appendMapsKey(key, ctx);
+		return key.toString();
+	}
+
+	static void appendRouterKey(StringBuilder key, RoutingContext ctx) {
+		GeneralRouter router = ctx.config.router;
+		key.append(router.getProfileName()).append(new TreeMap<String, String>(router.getParameterValues()));
+		long[] impassable = router.getImpassableRoadIds();
+		if (impassable.length > 0) {
+			key.append(impassable.length).append('x').append(Arrays.hashCode(impassable));
+		}
+	}
+
+	static void appendPointKey(StringBuilder key, RouteSegmentPoint p) {
+		key.append(p.getRoad().getId()).append(':').append(p.getSegmentStart()).append(':')
+				.append(p.getSegmentEnd()).append(':').append(p.preciseX).append(':').append(p.preciseY).append(';');
+	}
+
+	// rebuilt or replaced file could have the same date of creation
+	static void appendMapsKey(StringBuilder key, RoutingContext ctx) {
+		for (BinaryMapIndexReader r : ctx.getMaps()) {
+			File f = r.getFile();
+			if (f != null) {
+				key.append(f.getName()).append(':').append(f.length()).append(':').append(f.lastModified()).append(':');
+			}
+			key.append(r.getDateCreated()).append(';');
+		}
+	}
+
+	// cached route as it is returned by calculation for context (routing time is set)
+	public RouteCalcResult get(String key, RoutingContext ctx) {
+		CachedRoute res = getCached(key, ctx.leftSideNavigation);
+		if (res == null) {
+			return null;
+		}
+		ctx.routingTime = res.routingTime;
+		ctx.finalRouteSegment = null;
+		return new RouteCalcResult(copy(res.list));
+	}
+
+	public RouteCalcResult get(String key, boolean leftSide) {
+		CachedRoute res = getCached(key, leftSide);
+		return res == null ? null : new RouteCalcResult(copy(res.list));
+	}
+
+	private CachedRoute getCached(String key, boolean leftSide) {
+		if (key == null) {
+			return null;
+		}
+		CachedRoute res;
+		synchronized (this) {
+			res = routes.get(key);
+			if (res != null) {
+				hits++;
+				return res;
+			}
+		}
+		res = readRoute(key, leftSide);
+		synchronized (this) {
+			if (res == null) {
+				misses++;
+				return null;
+			}
+			diskHits++;
+			putInMemory(key, res);
+		}
+		return res;
+	}
+
+	public void put(String key, RouteCalcResult res) {
+		put(key, res, 0);
+	}
+
+	public void put(String key, RouteCalcResult res, float routingTime) {
+		if (key == null || res == null || !res.isCorrect() || hasAlternatives(res)) {
+			return;
+		}
+		CachedRoute route = new CachedRoute(copy(res.getList()), routingTime);
+		synchronized (this) {
+			putInMemory(key, route);
+		}
+		writeRoute(key, route);
+	}
+
+	private static boolean hasAlternatives(RouteCalcResult res) {
+		return res instanceof HHNetworkRouteRes && !((HHNetworkRouteRes) res).altRoutes.isEmpty();
+	}
+
+	private static List<RouteSegmentResult> copy(List<RouteSegmentResult> list) {
+		List<RouteSegmentResult> res = new ArrayList<RouteSegmentResult>(list.size());
+		for (RouteSegmentResult s : list) {
+			res.add(s.copy());
+		}
+		return res;
+	}
+
+	private void putInMemory(String key, CachedRoute route) {
+		routes.put(key, route);
+		Iterator<Entry<String, CachedRoute>> it = routes.entrySet().iterator();
+		while (routes.size() > maxRoutes && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(dir, Integer.toHexString(key.hashCode()) + "_" + key.length() + FILE_EXT);
+	}
+
+	private CachedRoute readRoute(String key, boolean leftSide) {
+		if (dir == null) {
+			return null;
+		}
+		File f = getFile(key);
+		if (!f.exists()) {
+			return null;
+		}
+		GPXFile gpx = GPXUtilities.loadGPXFile(f);
+		// file name is a hash, full key is stored as track name
+		if (gpx.error != null || gpx.tracks.isEmpty() || !key.equals(gpx.tracks.get(0).name)) {
+			return null;
+		}
+		List<RouteSegmentResult> res = new RouteImporter(gpx, leftSide).importRoute();
+		if (res == null || res.isEmpty()) {
+			return null;
+		}
+		// routing time is stored as track description
+		return new CachedRoute(res, Algorithms.parseFloatSilently(gpx.tracks.get(0).desc, 0));
+	}
+
+	private void writeRoute(String key, CachedRoute route) {
+		if (dir == null) {
+			return;
+		}
+		GPXFile gpx = new RouteExporter(key, route.list, collectLocations(route.list), null, null).exportRoute();
+		gpx.tracks.get(0).desc = Float.toString(route.routingTime);
+		Exception e = GPXUtilities.writeGpxFile(getFile(key), gpx);
+		if (e != null) {
+			log.error("Error writing route to cache " + getFile(key), e);
+		}
+	}
+
+	// route points as expected by RouteExporter: last point of segment is first point of next segment
+	private static List<Location> collectLocations(List<RouteSegmentResult> list) {
+		List<Location> locations = new ArrayList<Location>();
+		for (int k = 0; k < list.size(); k++) {
+			RouteSegmentResult s = list.get(k);
+			RouteDataObject o = s.getObject();
+			int inc = s.isForwardDirection() ? 1 : -1;
+			for (int i = s.getStartPointIndex(); ; i += inc) {
+				if (i != s.getStartPointIndex() || k == 0) {
+					locations.add(new Location("", MapUtils.get31LatitudeY(o.getPoint31YTile(i)),
+							MapUtils.get31LongitudeX(o.getPoint31XTile(i))));
+				}
+				if (i == s.getEndPointIndex()) {
+					break;
+				}
+			}
+		}
+		return locations;
+	}
+
+	public synchronized void clear() {
+		routes.clear();
+		if (dir != null) {
+			File[] files = dir.listFiles();
+			for (int i = 0; files != null && i < files.length; i++) {
+				if (files[i].getName().endsWith(FILE_EXT)) {
+					files[i].delete();
+				}
+			}
+		}
+	}
+
+	public synchronized int size() {
+		return routes.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized void printStatistics() {
+		log.info(String.format("Route result cache: %d routes, hits %d (disk %d), misses %d", routes.size(), hits,
+				diskHits, misses));
+	}
+}
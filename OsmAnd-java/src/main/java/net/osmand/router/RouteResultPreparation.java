@@ -242,7 +242,10 @@ public class RouteResultPreparation {
 					int attStopPriority = highwaySpeakPriority(attached.getObject().getHighway());
 					int segStopPriority = highwaySpeakPriority(seg.getObject().getHighway());
 					if (segStopPriority < attStopPriority) {
-						seg.getObject().removePointType(stop, seg.getObject().region.stopSign);
+						// object could be shared by other requests (see RoutingTilesCache), so it's changed in a copy
+						RouteDataObject obj = RoutingTilesCache.copyForModification(seg.getObject());
+						obj.removePointType(stop, obj.region.stopSign);
+						seg.setObject(obj);
 						break;
 					}
 				}
@@ -318,9 +321,19 @@ public class RouteResultPreparation {
 	private static final double SLOW_DOWN_SPEED = 2;
 	
 	public static void calculateTimeSpeed(RoutingContext ctx, List<RouteSegmentResult> result) {
+		TrafficSpeedProfiles profiles = ctx.config.speedProfiles;
+		double time = 0;
 		for (int i = 0; i < result.size(); i++) {
 			RouteSegmentResult rr = result.get(i);
 			calculateTimeSpeed(ctx, rr);
+			if (profiles != null) {
+				float factor = profiles.getSpeedFactor(rr.getObject().getId(), ctx.getDepartureSecondOfWeek() + (int) time);
+				if (factor > 0 && factor < 1) {
+					rr.setSegmentTime(rr.getSegmentTime() / factor);
+					rr.setSegmentSpeed(rr.getSegmentSpeed() * factor);
+				}
+				time += rr.getSegmentTime();
+			}
 		}
 	}
 
@@ -0,0 +1,238 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+// Binary min-heap without wrapper objects: costs are stored in primitive array parallel to segments.
+// Heap position of each segment is indexed by route point id (road id + segment + direction),
+// so adding segment which is already in queue decreases its key instead of creating a duplicate entry.
+// Final segments are never merged (they share point id with the segment where searches met).
+class RouteSegmentHeap implements RouteSegmentQueue {
+
+	private static final long NO_KEY = Long.MIN_VALUE;
+	private static final int INITIAL_CAPACITY = 64;
+
+	// # Heap arrays (parallel)
+	private float[] costs = new float[INITIAL_CAPACITY];
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private RouteSegment[] segments = new RouteSegment[INITIAL_CAPACITY];
+	private int size;
+
+	// # Index key -> heap position (open addressing, linear probing)
+	private long[] indexKeys;
+	private int[] indexPositions;
+	private int indexMask;
+	private int indexSize;
+
+	public RouteSegmentHeap() {
+		initIndex(INITIAL_CAPACITY * 2);
+	}
+
+	@Override
+	public void add(RouteSegment segment, float cost) {
+		long key = segment instanceof FinalRouteSegment ? NO_KEY : BinaryRoutePlanner.calculateRoutePointId(segment);
+		if (key != NO_KEY) {
+			int pos = indexGet(key);
+			if (pos >= 0) {
+				// decrease key (same segment with bigger cost will be skipped as visited anyway)
+				if (cost < costs[pos]) {
+					costs[pos] = cost;
+					segments[pos] = segment;
+					siftUp(pos);
+				}
+				return;
+			}
+		}
+		if (size == costs.length) {
+			int newCapacity = costs.length * 2;
+			costs = Arrays.copyOf(costs, newCapacity);
+			keys = Arrays.copyOf(keys, newCapacity);
+			segments = Arrays.copyOf(segments, newCapacity);
+		}
+		int pos = size++;
+		costs[pos] = cost;
+		keys[pos] = key;
+		segments[pos] = segment;
+		if (key != NO_KEY) {
+			indexPut(key, pos);
+		}
+		siftUp(pos);
+	}
+
+	@Override
+	public RouteSegment peek() {
+		return size == 0 ? null : segments[0];
+	}
+
+	@Override
+	public float peekCost() {
+		return size == 0 ? Float.NaN : costs[0];
+	}
+
+	@Override
+	public RouteSegment poll() {
+		if (size == 0) {
+			return null;
+		}
+		RouteSegment result = segments[0];
+		if (keys[0] != NO_KEY) {
+			indexRemove(keys[0]);
+		}
+		size--;
+		if (size > 0) {
+			move(size, 0);
+			siftDown(0);
+		}
+		segments[size] = null;
+		return result;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(segments, 0, size, null);
+		size = 0;
+		Arrays.fill(indexKeys, NO_KEY);
+		indexSize = 0;
+	}
+
+	private void siftUp(int pos) {
+		float cost = costs[pos];
+		long key = keys[pos];
+		RouteSegment segment = segments[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (costs[parent] <= cost) {
+				break;
+			}
+			move(parent, pos);
+			pos = parent;
+		}
+		set(pos, cost, key, segment);
+	}
+
+	private void siftDown(int pos) {
+		float cost = costs[pos];
+		long key = keys[pos];
+		RouteSegment segment = segments[pos];
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < size && costs[right] < costs[child]) {
+				child = right;
+			}
+			if (cost <= costs[child]) {
+				break;
+			}
+			move(child, pos);
+			pos = child;
+		}
+		set(pos, cost, key, segment);
+	}
+
+	private void move(int from, int to) {
+		set(to, costs[from], keys[from], segments[from]);
+	}
+
+	private void set(int pos, float cost, long key, RouteSegment segment) {
+		costs[pos] = cost;
+		keys[pos] = key;
+		segments[pos] = segment;
+		if (key != NO_KEY) {
+			indexPut(key, pos);
+		}
+	}
+
+	private void initIndex(int capacity) {
+		indexKeys = new long[capacity];
+		indexPositions = new int[capacity];
+		Arrays.fill(indexKeys, NO_KEY);
+		indexMask = capacity - 1;
+		indexSize = 0;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & indexMask;
+	}
+
+	private int indexGet(long key) {
+		int i = slot(key);
+		while (indexKeys[i] != NO_KEY) {
+			if (indexKeys[i] == key) {
+				return indexPositions[i];
+			}
+			i = (i + 1) & indexMask;
+		}
+		return -1;
+	}
+
+	private void indexPut(long key, int pos) {
+		int i = slot(key);
+		while (indexKeys[i] != NO_KEY) {
+			if (indexKeys[i] == key) {
+				indexPositions[i] = pos;
+				return;
+			}
+			i = (i + 1) & indexMask;
+		}
+		indexKeys[i] = key;
+		indexPositions[i] = pos;
+		indexSize++;
+		if (indexSize * 2 > indexKeys.length) {
+			rehash(indexKeys.length * 2);
+		}
+	}
+
+	private void indexRemove(long key) {
+		int i = slot(key);
+		while (indexKeys[i] != key) {
+			if (indexKeys[i] == NO_KEY) {
+				return;
+			}
+			i = (i + 1) & indexMask;
+		}
+		indexKeys[i] = NO_KEY;
+		indexSize--;
+		// backward shift deletion to keep probe chains valid
+		int j = i;
+		while (true) {
+			j = (j + 1) & indexMask;
+			if (indexKeys[j] == NO_KEY) {
+				return;
+			}
+			int home = slot(indexKeys[j]);
+			boolean between = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!between) {
+				indexKeys[i] = indexKeys[j];
+				indexPositions[i] = indexPositions[j];
+				indexKeys[j] = NO_KEY;
+				i = j;
+			}
+		}
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = indexKeys;
+		int[] oldPositions = indexPositions;
+		initIndex(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != NO_KEY) {
+				indexPut(oldKeys[i], oldPositions[i]);
+			}
+		}
+	}
+
+}
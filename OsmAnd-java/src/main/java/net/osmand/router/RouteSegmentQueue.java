@@ -0,0 +1,23 @@
+package net.osmand.router;
+
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+// Frontier (open set) of A* in BinaryRoutePlanner, segments are polled by minimal cost f(x) = g(x) + h(x)
+// Implementation is selected by RoutingConfiguration.primitiveHeapQueue
+interface RouteSegmentQueue {
+
+	void add(RouteSegment segment, float cost);
+
+	RouteSegment peek();
+
+	float peekCost();
+
+	RouteSegment poll();
+
+	int size();
+
+	boolean isEmpty();
+
+	void clear();
+
+}
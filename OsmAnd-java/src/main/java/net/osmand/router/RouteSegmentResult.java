@@ -459,6 +459,47 @@ public class RouteSegmentResult implements StringExternalizable<RouteDataBundle>
 		attachedRoutes[st].add(r);
 	}
 
+	// copy which could be modified independently (road, attached routes and turn type are copied as well)
+	public RouteSegmentResult copy() {
+		RouteSegmentResult r = new RouteSegmentResult(RoutingTilesCache.copyForModification(object), leftside);
+		r.startPointIndex = startPointIndex;
+		r.endPointIndex = endPointIndex;
+		r.segmentTime = segmentTime;
+		r.routingTime = routingTime;
+		r.speed = speed;
+		r.distance = distance;
+		r.gpxPointIndex = gpxPointIndex;
+		r.description = description == null ? null : description.clone();
+		if (turnType != null) {
+			r.turnType = new TurnType(turnType.getValue(), turnType.getExitOut(), turnType.getTurnAngle(),
+					turnType.isSkipToSpeak(), turnType.getLanes() == null ? null : turnType.getLanes().clone(),
+					turnType.isPossibleLeftTurn(), turnType.isPossibleRightTurn());
+		}
+		if (attachedRoutes != null) {
+			r.attachedRoutes = attachedRoutes.clone();
+			for (int i = 0; i < attachedRoutes.length; i++) {
+				if (attachedRoutes[i] != null) {
+					r.attachedRoutes[i] = new ArrayList<RouteSegmentResult>(attachedRoutes[i].size());
+					for (RouteSegmentResult a : attachedRoutes[i]) {
+						r.attachedRoutes[i].add(a.copy());
+					}
+				}
+			}
+		}
+		if (preAttachedRoutes != null) {
+			r.preAttachedRoutes = new RouteSegmentResult[preAttachedRoutes.length][];
+			for (int i = 0; i < preAttachedRoutes.length; i++) {
+				if (preAttachedRoutes[i] != null) {
+					r.preAttachedRoutes[i] = new RouteSegmentResult[preAttachedRoutes[i].length];
+					for (int k = 0; k < preAttachedRoutes[i].length; k++) {
+						r.preAttachedRoutes[i][k] = preAttachedRoutes[i][k] == null ? null : preAttachedRoutes[i][k].copy();
+					}
+				}
+			}
+		}
+		return r;
+	}
+
 	public void copyPreattachedRoutes(RouteSegmentResult toCopy, int shift) {
 		if (toCopy.preAttachedRoutes != null) {
 			int l = toCopy.preAttachedRoutes.length - shift;
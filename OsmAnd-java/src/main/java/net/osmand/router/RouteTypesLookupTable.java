@@ -0,0 +1,104 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+// Evaluated router attributes of one region: each distinct types[] combination gets a row,
+// values of all attributes are stored in primitive lanes (NaN - not evaluated yet).
+// Open addressing without allocation on lookup, readers are lock-free (row / value published
+// after types are stored, stale read is a miss and value is evaluated again).
+class RouteTypesLookupTable {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	final RouteRegion region;
+	private final int lanes;
+	private volatile Rows rows;
+
+	RouteTypesLookupTable(RouteRegion region, int lanes) {
+		this.region = region;
+		this.lanes = lanes;
+		this.rows = new Rows(INITIAL_CAPACITY, lanes);
+	}
+
+	float get(int[] types, int lane) {
+		Rows r = rows;
+		int row = r.find(types);
+		return row < 0 ? Float.NaN : r.values[row * lanes + lane];
+	}
+
+	void put(int[] types, int lane, float value) {
+		Rows r = rows;
+		int row = r.find(types);
+		if (row < 0) {
+			synchronized (this) {
+				r = rows;
+				row = r.find(types);
+				if (row < 0) {
+					if (r.size == r.types.length) {
+						r = r.grow();
+					}
+					row = r.insert(types);
+					rows = r;
+				}
+			}
+		}
+		r.values[row * lanes + lane] = value;
+	}
+
+	int size() {
+		return rows.size;
+	}
+
+	private static class Rows {
+		final int[] table; // row + 1, 0 - empty
+		final int[][] types;
+		final float[] values;
+		final int lanes;
+		int size;
+
+		Rows(int capacity, int lanes) {
+			this.lanes = lanes;
+			this.table = new int[capacity * 2];
+			this.types = new int[capacity][];
+			this.values = new float[capacity * lanes];
+			Arrays.fill(values, Float.NaN);
+		}
+
+		int find(int[] ts) {
+			int mask = table.length - 1;
+			for (int i = Arrays.hashCode(ts) & mask; ; i = (i + 1) & mask) {
+				int row = table[i] - 1;
+				if (row < 0) {
+					return -1;
+				}
+				int[] t = types[row];
+				if (t == ts || (t != null && Arrays.equals(t, ts))) {
+					return row;
+				}
+			}
+		}
+
+		int insert(int[] ts) {
+			int row = size++;
+			types[row] = ts.clone();
+			int mask = table.length - 1;
+			int i = Arrays.hashCode(ts) & mask;
+			while (table[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			table[i] = row + 1;
+			return row;
+		}
+
+		Rows grow() {
+			Rows n = new Rows(types.length * 2, lanes);
+			for (int row = 0; row < size; row++) {
+				n.insert(types[row]);
+			}
+			System.arraycopy(values, 0, n.values, 0, size * lanes);
+			return n;
+		}
+	}
+}
@@ -27,7 +27,7 @@ import java.util.Stack;
 
 import gnu.trove.list.array.TIntArrayList;
 
-public class RoutingConfiguration {
+public class RoutingConfiguration implements Cloneable {
 
 	public static final int DEFAULT_MEMORY_LIMIT = 30;
 	public static final int DEFAULT_NATIVE_MEMORY_LIMIT = 256;
@@ -67,6 +67,19 @@ public class RoutingConfiguration {
 	// 1.7 Maximum visited segments
 	public int MAX_VISITED = -1;
 
+	// 1.8 A* frontier implementation (should not affect routing):
+	// false - PriorityQueue of wrapper objects, true - primitive indexed binary heap with decrease-key
+	public boolean primitiveHeapQueue = false;
+
+	// 1.9 Run forward and reverse A* on 2 threads (only for 2 directions search without precalculated route)
+	public boolean parallelBidirectional = false;
+
+	// 1.10 Time dependent speeds of roads at routeCalculationTime (current time if 0) plus travel time,
+	// route is searched only in forward direction
+	public TrafficSpeedProfiles speedProfiles;
+
+	// 1.11 Load headers and data of next tile in direction of target together with requested tile (sorted by file pointer)
+	public boolean prefetchTilesAlongDirection = false;
 
 	// extra points to be inserted in ways (quad tree is based on 31 coords)
 	private QuadTree<DirectionPoint> directionPoints;
@@ -89,6 +102,15 @@ public class RoutingConfiguration {
 		return directionPoints;
 	}
 
+	// shallow copy (router, direction points and speed profiles are shared) to change limits of one context
+	public RoutingConfiguration copy() {
+		try {
+			return (RoutingConfiguration) this.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	public static class DirectionPoint extends Node {
 		private static final long serialVersionUID = -7496599771204656505L;
 		public double distance = Double.MAX_VALUE;
@@ -142,6 +164,7 @@ public class RoutingConfiguration {
 		private Map<String, String> attributes = new LinkedHashMap<>();
 		private Set<Long> impassableRoadLocations = new HashSet<>();
 		private QuadTree<Node> directionPointsBuilder;
+		private TrafficSpeedProfiles speedProfiles;
 
 		public Builder() {
 		}
@@ -224,6 +247,10 @@ public class RoutingConfiguration {
 				i.nativeMemoryLimitation = memoryLimits.nativeMemoryLimitMb * (1l << 20);
 			}
 			i.planRoadDirection = parseSilentInt(getAttribute(i.router, "planRoadDirection"), i.planRoadDirection);
+			i.primitiveHeapQueue = parseSilentBoolean(getAttribute(i.router, "primitiveHeapQueue"), i.primitiveHeapQueue);
+			i.parallelBidirectional = parseSilentBoolean(getAttribute(i.router, "parallelBidirectional"), i.parallelBidirectional);
+			i.prefetchTilesAlongDirection = parseSilentBoolean(getAttribute(i.router, "prefetchTilesAlongDirection"),
+					i.prefetchTilesAlongDirection);
 			if (directionPointsBuilder != null) {
 				QuadRect rect = new QuadRect(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
 				List<net.osmand.osm.edit.Node> lst = directionPointsBuilder.queryInBox(rect, new ArrayList<Node>());
@@ -235,10 +262,16 @@ public class RoutingConfiguration {
 					i.directionPoints.insert(dp, new QuadRect(x, y, x, y));
 				}
 			}
+			i.speedProfiles = speedProfiles;
 //			i.planRoadDirection = 1;
 			return i;
 		}
 		
+		public Builder setSpeedProfiles(TrafficSpeedProfiles speedProfiles) {
+			this.speedProfiles = speedProfiles;
+			return this;
+		}
+
 		public Builder setDirectionPoints(QuadTree<Node> directionPoints) {
 			this.directionPointsBuilder = directionPoints;
 			return this;
@@ -313,6 +346,13 @@ public class RoutingConfiguration {
 		return Float.parseFloat(t);
 	}
 
+	public static boolean parseSilentBoolean(String t, boolean v) {
+		if (t == null || t.length() == 0) {
+			return v;
+		}
+		return Boolean.parseBoolean(t);
+	}
+
 	
 	private static RoutingConfiguration.Builder DEFAULT;
 
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -42,6 +43,9 @@ import net.osmand.util.MapUtils;
 public class RoutingContext {
 
 	public static boolean SHOW_GC_SIZE = false;
+	// weight of tile access for CLOCK eviction, halved on every pass
+	private static final int CLOCK_MAX_ACCESS = 15;
+	private static final int CLOCK_MAX_PASSES = 5;
 	public static boolean PRINT_ROUTING_ALERTS = false;
 	 
 	
@@ -79,6 +83,13 @@ public class RoutingContext {
 	public RouteCalculationProgress calculationProgressFirstPhase;
 	public boolean leftSideNavigation;
 	public List<RouteSegmentResult> previouslyCalculatedRoute;
+	// incremental recalculation: forward search stops at reverse tree of previous calculation (if set),
+	// otherwise visited segments of reverse search are stored here when keepReverseSearchTree
+	public ReverseSearchTree reverseSearchTree;
+	boolean keepReverseSearchTree;
+	// direction of this calculation (null - config.planRoadDirection), config could be shared between contexts
+	Integer planRoadDirection;
+	private int departureSecondOfWeek = -1;
 	public PrecalculatedRouteDirection precalculatedRouteDirection;
 	
 	
@@ -88,6 +99,14 @@ public class RoutingContext {
 	// Needs to be a sorted array list . Another option to use hashmap but it will be more memory expensive
 	List<RoutingSubregionTile> subregionTiles = new ArrayList<RoutingSubregionTile>();
 	
+	// not null when tiles are shared with parallel search context (see createParallelSearchContext)
+	Object tilesLock = null;
+	// final segments of parallel bidirectional search are registered there
+	BinaryRoutePlanner.ParallelSearchState parallelSearchState = null;
+	
+	// decoded tiles shared between contexts (null - tiles are decoded by each context)
+	public RoutingTilesCache sharedTiles = null;
+	
 	// 3. Warm object caches
 	ArrayList<RouteSegment> segmentsToVisitPrescripted = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
 	ArrayList<RouteSegment> segmentsToVisitNotForbidden = new ArrayList<BinaryRoutePlanner.RouteSegment>(5);
@@ -97,6 +116,7 @@ public class RoutingContext {
 	public TileStatistics global = new TileStatistics();
 	// updated by route planner in bytes
 	public int memoryOverhead = 0;
+	private int clockHand = 0;
 	public float routingTime = 0;
 
 	// callback of processing segments
@@ -118,6 +138,8 @@ public class RoutingContext {
 		this.nativeLib = cp.nativeLib;
 		this.visitor = cp.visitor;
 		this.calculationProgress = cp.calculationProgress;
+		this.sharedTiles = cp.sharedTiles;
+		this.planRoadDirection = cp.planRoadDirection;
 	}
 	
 	RoutingContext(RoutingConfiguration config, NativeLibrary nativeLibrary, BinaryMapIndexReader[] list, RouteCalculationMode calcMode) {
@@ -142,6 +164,28 @@ public class RoutingContext {
 	}
 	
 	
+	// Context for the second thread of parallel bidirectional search:
+	// loaded tiles are shared (guarded by tilesLock), warm caches and memory overhead are own
+	RoutingContext createParallelSearchContext() {
+		RoutingContext c = new RoutingContext(this);
+		tilesLock = new Object();
+		c.tilesLock = tilesLock;
+		c.indexedSubregions = indexedSubregions;
+		c.subregionTiles = subregionTiles;
+		c.global = global;
+		c.startX = startX;
+		c.startY = startY;
+		c.targetX = targetX;
+		c.targetY = targetY;
+		c.dijkstraMode = dijkstraMode;
+		c.publicTransport = publicTransport;
+		// visitor is not expected to be thread-safe
+		c.visitor = null;
+		// own counters, added to this context progress after search (cancel is checked by shared progress)
+		c.calculationProgress = calculationProgress == null ? null : new RouteCalculationProgress();
+		return c;
+	}
+	
 	public RouteSegmentVisitor getVisitor() {
 		return visitor;
 	}
@@ -156,7 +200,7 @@ public class RoutingContext {
 		return cnt;
 	}
 	
-	public int getCurrentEstimatedSize(){
+	public long getCurrentEstimatedSize(){
 		return global.size;
 	}
 	
@@ -178,11 +222,20 @@ public class RoutingContext {
 	}
 
 	public boolean planRouteIn2Directions() {
-		return config.planRoadDirection == 0;
+		return getPlanRoadDirection() == 0;
 	}
 
 	public int getPlanRoadDirection() {
-		return config.planRoadDirection;
+		return planRoadDirection != null ? planRoadDirection : config.planRoadDirection;
+	}
+
+	// departure time for speed profiles
+	public int getDepartureSecondOfWeek() {
+		if (departureSecondOfWeek < 0) {
+			departureSecondOfWeek = TrafficSpeedProfiles.getSecondOfWeek(
+					config.routeCalculationTime != 0 ? config.routeCalculationTime : System.currentTimeMillis());
+		}
+		return departureSecondOfWeek;
 	}
 
 	public void initStartAndTargetPoints(RouteSegmentPoint start, RouteSegmentPoint end) {
@@ -250,7 +303,17 @@ public class RoutingContext {
 	}
 	
 	public RouteSegment loadRouteSegment(int x31, int y31, long memoryLimit, boolean reverseWaySearch) {
-		long tileId = getRoutingTile(x31, y31, memoryLimit);
+		Object lock = tilesLock;
+		if (lock != null) {
+			synchronized (lock) {
+				return loadRouteSegmentInternal(x31, y31, memoryLimit, reverseWaySearch);
+			}
+		}
+		return loadRouteSegmentInternal(x31, y31, memoryLimit, reverseWaySearch);
+	}
+	
+	private RouteSegment loadRouteSegmentInternal(int x31, int y31, long memoryLimit, boolean reverseWaySearch) {
+		long tileId = getRoutingTile(x31, y31, memoryLimit, config.prefetchTilesAlongDirection, reverseWaySearch);
 		TLongObjectHashMap<RouteDataObject> excludeDuplications = new TLongObjectHashMap<RouteDataObject>();
 		RouteSegment original = null;
 		List<RoutingSubregionTile> subregions = indexedSubregions.get(tileId);
@@ -264,6 +327,12 @@ public class RoutingContext {
 	}
 	
 	public void loadSubregionTile(final RoutingSubregionTile ts, boolean loadObjectsInMemory, List<RouteDataObject> toLoad, TLongHashSet excludeNotAllowed) {
+		loadSubregionTile(ts, loadObjectsInMemory, toLoad, excludeNotAllowed, null);
+	}
+
+	// loaded - objects of subregion already read by batch (see loadSubregionsData)
+	private void loadSubregionTile(final RoutingSubregionTile ts, boolean loadObjectsInMemory, List<RouteDataObject> toLoad,
+			TLongHashSet excludeNotAllowed, List<RouteDataObject> loaded) {
 		long now = System.nanoTime();
 		boolean wasUnloaded = ts.isUnloaded();
 		int ucount = ts.getUnloadCont();
@@ -274,29 +343,31 @@ public class RoutingContext {
 				//retrieve direction points for attach to routing
 				points = config.getDirectionPoints().queryInBox(
 						new QuadRect(ts.subregion.left, ts.subregion.top, ts.subregion.right, ts.subregion.bottom), new ArrayList<DirectionPoint>());
-				int createType = ts.subregion.routeReg.findOrCreateRouteType(DirectionPoint.TAG, DirectionPoint.CREATE_TYPE);
-				for (DirectionPoint d : points) {
-					d.types.clear();
-					for (Entry<String, String> e : d.getTags().entrySet()) {
-						int type = ts.subregion.routeReg.searchRouteEncodingRule(e.getKey(), e.getValue());
-						if (type != -1) {
-							d.types.add(type);
-						}
-					}
-					d.types.add(createType);
-				}
 			}
 
 			try {
 				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
 				ts.setLoadedNonNative();
-				List<RouteDataObject> res = reader.loadRouteIndexData(ts.subregion);
+				List<RouteDataObject> res = loaded;
+				if (res == null) {
+					res = sharedTiles != null ? sharedTiles.loadRouteIndexData(reader, ts.subregion)
+							: reader.loadRouteIndexData(ts.subregion);
+				}
+				if (!points.isEmpty()) {
+					// shared objects could be decoded by other reader of the same file (types of its region)
+					initDirectionPointTypes(points, getRegion(res, ts.subregion.routeReg));
+				}
+				// shared objects are copied before modification
+				boolean copyShared = sharedTiles != null && (config.routeCalculationTime != 0 || !points.isEmpty());
 				
 				if (toLoad != null) {
 					toLoad.addAll(res);
 				} else {
 					for (RouteDataObject ro : res) {
 						if (ro != null) {
+							if (copyShared) {
+								ro = RoutingTilesCache.copyForModification(ro);
+							}
 							if (config.routeCalculationTime != 0) {
 								ro.processConditionalTags(config.routeCalculationTime);
 							}
@@ -306,7 +377,8 @@ public class RoutingContext {
 									if (!config.router.attributes.containsKey(GeneralRouter.CHECK_ALLOW_PRIVATE_NEEDED)) {
 										connectPoint(ts, ro, points);
 									}
-									ts.add(ro);
+									// object of shared tiles cache is counted by cache
+									ts.add(ro, sharedTiles != null && !copyShared);
 								}
 							}
 							if (excludeNotAllowed != null && ro.getId() > 0) {
@@ -348,7 +420,12 @@ public class RoutingContext {
 			}
 		}
 		global.size += ts.tileStatistics.size;
+		if (wasUnloaded) {
+			// tile evicted too early gets additional chance on next clock pass
+			ts.access += ucount;
+		}
 		if (calculationProgress != null) {
+			calculationProgress.maxLoadedTilesSize = Math.max(calculationProgress.maxLoadedTilesSize, global.size);
 			calculationProgress.timeToLoad += (System.nanoTime() - now);
 		}
 	}
@@ -387,7 +464,11 @@ public class RoutingContext {
 //					long now = System.nanoTime();
 					// int rg = r.getValue().get(0).routeReg.regionsRead;
 					
-					List<RouteSubregion> subregs = r.getKey().searchRouteIndexTree(request, r.getValue());
+					List<RouteSubregion> subregs;
+					// reader could be shared with contexts of other threads (see RoutingTilesCache)
+					synchronized (r.getKey()) {
+						subregs = r.getKey().searchRouteIndexTree(request, r.getValue());
+					}
 //					if (calculationProgress != null) {
 //						calculationProgress.timeToLoadHeaders += (System.nanoTime() - now);
 //					}
@@ -449,8 +530,12 @@ public class RoutingContext {
 		}
 	}
 	
-	@SuppressWarnings("unused")
 	private long getRoutingTile(int x31, int y31, long memoryLimit) {
+		return getRoutingTile(x31, y31, memoryLimit, false, false);
+	}
+
+	@SuppressWarnings("unused")
+	private long getRoutingTile(int x31, int y31, long memoryLimit, boolean prefetch, boolean reverseWaySearch) {
 		// long now = System.nanoTime();
 		int zmShift = 31 - config.ZOOM_TO_LOAD_TILES;
 		long xloc = x31 >> zmShift;
@@ -459,34 +544,35 @@ public class RoutingContext {
 		if (memoryLimit == 0) {
 			memoryLimit = config.memoryLimitation;
 		}
-		if (getCurrentEstimatedSize() > 0.9 * memoryLimit) {
-			int sz1 = getCurrentEstimatedSize();
+		if (checkIfMemoryLimitCritical(memoryLimit)) {
+			long sz1 = getCurrentEstimatedSize();
 			long h1 = 0;
 			if (SHOW_GC_SIZE && sz1 > 0.7 * memoryLimit) {
 				runGCUsedMemory();
 				h1 = runGCUsedMemory();
 			}
 			int clt = getCurrentlyLoadedTiles();
-			long us1 = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
 			unloadUnusedTiles(memoryLimit);
+			float mb = (1 << 20);
 			if (h1 != 0 && getCurrentlyLoadedTiles() != clt) {
-				int sz2 = getCurrentEstimatedSize();
+				long sz2 = getCurrentEstimatedSize();
 				long h2 = runGCUsedMemory();
-				float mb = (1 << 20);
 				log.warn("Unload tiles :  estimated " + (sz1 - sz2) / mb + " ?= " + (h1 - h2) / mb + " actual");
 				log.warn("Used after " + h2 / mb + " of " + Runtime.getRuntime().totalMemory() / mb );
-			} else {
-				float mb = (1 << 20);
-				int sz2 = getCurrentEstimatedSize();
-				log.warn("Unload tiles :  occupied before " + sz1 / mb + " Mb - now  " + sz2 / mb + "MB "
-						+ memoryLimit / mb + " limit MB " + config.memoryLimitation / mb);
-				long us2 = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
-				log.warn("Used memory before " + us1 / mb + " after " + us1 / mb );
+			} else if (log.isDebugEnabled()) {
+				long sz2 = getCurrentEstimatedSize();
+				log.debug("Unload tiles :  occupied before " + sz1 / mb + " Mb - now  " + sz2 / mb + "MB "
+						+ memoryLimit / mb + " limit MB " + config.memoryLimitation / mb + " tiles " + clt + " -> "
+						+ getCurrentlyLoadedTiles());
 			}
 		}
+		List<RoutingSubregionTile> prefetched = null;
 		if (!indexedSubregions.containsKey(tileId)) {
 			List<RoutingSubregionTile> collection = loadTileHeaders(x31, y31);
 			indexedSubregions.put(tileId, collection);
+			if (prefetch) {
+				prefetched = loadNextTileHeaders(x31, y31, reverseWaySearch);
+			}
 		}
 		List<RoutingSubregionTile> subregions = indexedSubregions.get(tileId);
 		if (subregions != null) {
@@ -494,18 +580,15 @@ public class RoutingContext {
 			for (RoutingSubregionTile ts : subregions) {
 				if (!ts.isLoaded()) {
 					load = true;
+				} else if (calculationProgress != null) {
+					calculationProgress.tileHits++;
 				}
 			}
 			if (load) {
-				TLongHashSet excludeIds = new TLongHashSet();
-				for (RoutingSubregionTile ts : subregions) {
-					if (!ts.isLoaded()) {
-						loadSubregionTile(ts, true, null, excludeIds);
-					} else {
-						if (ts.excludedIds != null) {
-							excludeIds.addAll(ts.excludedIds);
-						}
-					}
+				Map<RouteSubregion, List<RouteDataObject>> loaded = loadSubregionsData(subregions, prefetched);
+				loadTileSubregions(subregions, loaded);
+				if (prefetched != null) {
+					loadTileSubregions(prefetched, loaded);
 				}
 			}
 		}
@@ -513,7 +596,121 @@ public class RoutingContext {
 		return tileId;
 	}
 
+	private void loadTileSubregions(List<RoutingSubregionTile> subregions, Map<RouteSubregion, List<RouteDataObject>> loaded) {
+		TLongHashSet excludeIds = new TLongHashSet();
+		for (RoutingSubregionTile ts : subregions) {
+			if (!ts.isLoaded()) {
+				loadSubregionTile(ts, true, null, excludeIds, loaded == null ? null : loaded.get(ts.subregion));
+			} else {
+				if (ts.excludedIds != null) {
+					excludeIds.addAll(ts.excludedIds);
+				}
+			}
+		}
+	}
+
+	// headers of neighbour tile in direction of heuristic target (end for forward search, start for reverse)
+	private List<RoutingSubregionTile> loadNextTileHeaders(int x31, int y31, boolean reverseWaySearch) {
+		int tx = reverseWaySearch ? startX : targetX;
+		int ty = reverseWaySearch ? startY : targetY;
+		int tileSize = 1 << (31 - config.ZOOM_TO_LOAD_TILES);
+		int dx = tx - x31;
+		int dy = ty - y31;
+		if ((tx == 0 && ty == 0) || (Math.abs(dx) < tileSize && Math.abs(dy) < tileSize)) {
+			return null;
+		}
+		int nx = x31;
+		int ny = y31;
+		if (Math.abs(dx) >= Math.abs(dy)) {
+			nx += Integer.signum(dx) * tileSize;
+		} else {
+			ny += Integer.signum(dy) * tileSize;
+		}
+		int zmShift = 31 - config.ZOOM_TO_LOAD_TILES;
+		long nTileId = (((long) (nx >> zmShift)) << config.ZOOM_TO_LOAD_TILES) + (ny >> zmShift);
+		if (nx < 0 || ny < 0 || indexedSubregions.containsKey(nTileId)) {
+			return null;
+		}
+		List<RoutingSubregionTile> collection = loadTileHeaders(nx, ny);
+		indexedSubregions.put(nTileId, collection);
+		return collection;
+	}
+
+	// Reads data of not loaded subregions of tiles in one pass per file sorted by file pointer (instead of seek per subregion)
+	private Map<RouteSubregion, List<RouteDataObject>> loadSubregionsData(List<RoutingSubregionTile> subregions,
+			List<RoutingSubregionTile> prefetched) {
+		if (nativeLib != null) {
+			return null;
+		}
+		Map<BinaryMapIndexReader, List<RouteSubregion>> toLoad = new LinkedHashMap<BinaryMapIndexReader, List<RouteSubregion>>();
+		int cnt = collectNotLoaded(subregions, toLoad) + collectNotLoaded(prefetched, toLoad);
+		if (cnt <= 1) {
+			return null;
+		}
+		long now = System.nanoTime();
+		Map<RouteSubregion, List<RouteDataObject>> loaded = new IdentityHashMap<RouteSubregion, List<RouteDataObject>>();
+		try {
+			for (Entry<BinaryMapIndexReader, List<RouteSubregion>> e : toLoad.entrySet()) {
+				BinaryMapIndexReader reader = e.getKey();
+				List<List<RouteDataObject>> res = sharedTiles != null ? sharedTiles.loadRouteIndexData(reader, e.getValue())
+						: reader.loadRouteIndexData(e.getValue());
+				for (int i = 0; i < res.size(); i++) {
+					if (res.get(i) != null) {
+						loaded.put(e.getValue().get(i), res.get(i));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Loading data exception", e);
+		}
+		if (calculationProgress != null) {
+			calculationProgress.timeToLoad += (System.nanoTime() - now);
+		}
+		return loaded;
+	}
+
+	private int collectNotLoaded(List<RoutingSubregionTile> subregions, Map<BinaryMapIndexReader, List<RouteSubregion>> toLoad) {
+		int cnt = 0;
+		for (int i = 0; subregions != null && i < subregions.size(); i++) {
+			RoutingSubregionTile ts = subregions.get(i);
+			if (!ts.isLoaded()) {
+				BinaryMapIndexReader reader = reverseMap.get(ts.subregion.routeReg);
+				List<RouteSubregion> list = toLoad.get(reader);
+				if (list == null) {
+					list = new ArrayList<RouteSubregion>();
+					toLoad.put(reader, list);
+				}
+				list.add(ts.subregion);
+				cnt++;
+			}
+		}
+		return cnt;
+	}
+
 	
+	private static RouteRegion getRegion(List<RouteDataObject> objects, RouteRegion def) {
+		for (RouteDataObject ro : objects) {
+			if (ro != null) {
+				return ro.region;
+			}
+		}
+		return def;
+	}
+
+	private static void initDirectionPointTypes(List<DirectionPoint> points, RouteRegion region) {
+		int createType = region.findOrCreateRouteType(DirectionPoint.TAG, DirectionPoint.CREATE_TYPE);
+		for (DirectionPoint d : points) {
+			d.types.clear();
+			for (Entry<String, String> e : d.getTags().entrySet()) {
+				int type = region.searchRouteEncodingRule(e.getKey(), e.getValue());
+				if (type != -1) {
+					d.types.add(type);
+				}
+			}
+			d.types.add(createType);
+		}
+	}
+
 	private void connectPoint(final RoutingSubregionTile ts, RouteDataObject ro, List<DirectionPoint> points) {
 		int createType = ro.region.findOrCreateRouteType(DirectionPoint.TAG, DirectionPoint.CREATE_TYPE);
 		int deleteType = ro.region.findOrCreateRouteType(DirectionPoint.TAG, DirectionPoint.DELETE_TYPE);
@@ -642,52 +839,52 @@ public class RoutingContext {
 
 
 	public boolean checkIfMemoryLimitCritical(long memoryLimit) {
-		return getCurrentEstimatedSize() > 0.9 * memoryLimit;
+		return getCurrentEstimatedSize() > 0.9 * getTilesMemoryLimit(memoryLimit);
+	}
+
+	// hard budget of request: tiles together with memory overhead of search (visited segments, queue)
+	// don't exceed config.memoryLimitation
+	long getTilesMemoryLimit(long memoryLimit) {
+		return Math.max(0, Math.min(memoryLimit, config.memoryLimitation - memoryOverhead));
 	}
 	
+	// CLOCK (second chance) eviction: access counter of tile is used as reference bit with weight,
+	// each pass of the hand halves it and only tiles not accessed since previous pass are unloaded.
+	// Tiles are unloaded until estimated size is below 70% of the limit. At least 20% of loaded tiles
+	// (working set of search) are kept as before, unless the hard limit is still exceeded.
 	public void unloadUnusedTiles(long memoryLimit) {
-		float desirableSize = memoryLimit * 0.7f;
-		List<RoutingSubregionTile> list = new ArrayList<RoutingSubregionTile>(subregionTiles.size() / 2);
-		int loaded = 0;
-		for(RoutingSubregionTile t : subregionTiles) {
-			if(t.isLoaded()) {
-				list.add(t);
-				loaded++;
-			}
-		}
-		if(calculationProgress != null) {
-			calculationProgress.maxLoadedTiles = Math.max(calculationProgress.maxLoadedTiles, getCurrentlyLoadedTiles());
+		long limit = getTilesMemoryLimit(memoryLimit);
+		long desirableSize = (long) (limit * 0.7);
+		int loaded = getCurrentlyLoadedTiles();
+		if (calculationProgress != null) {
+			calculationProgress.maxLoadedTiles = Math.max(calculationProgress.maxLoadedTiles, loaded);
 		}
-		Collections.sort(list, new Comparator<RoutingSubregionTile>() {
-			private int pow(int base, int pw) {
-				int r = 1;
-				for (int i = 0; i < pw; i++) {
-					r *= base;
-				}
-				return r;
+		int minLoaded = loaded / 5;
+		int n = subregionTiles.size();
+		// access is limited by CLOCK_MAX_ACCESS, so every tile is unloaded after limited number of passes
+		int maxSteps = n * (CLOCK_MAX_PASSES + 1);
+		for (int step = 0; step < maxSteps; step++) {
+			long size = getCurrentEstimatedSize();
+			if (size < desirableSize || (loaded <= minLoaded && size <= limit)) {
+				break;
 			}
-			@Override
-			public int compare(RoutingSubregionTile o1, RoutingSubregionTile o2) {
-				int v1 = (o1.access + 1) * pow(10, o1.getUnloadCont() -1);
-				int v2 = (o2.access + 1) * pow(10, o2.getUnloadCont() -1);
-				return v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+			if (clockHand >= n) {
+				clockHand = 0;
 			}
-		});
-		int i = 0;
-		while(getCurrentEstimatedSize() >= desirableSize && (list.size() - i) > loaded / 5 && i < list.size()) {
-			RoutingSubregionTile unload = list.get(i);
-			i++;
-//			System.out.println("Unload " + unload);
-			unload.unload();
-			if(calculationProgress != null) {
-				calculationProgress.unloadedTiles ++;
-			}
-			global.size -= unload.tileStatistics.size;
-			// tile could be cleaned from routing tiles and deleted from whole list
-			
-		}
-		for(RoutingSubregionTile t : subregionTiles) {
-			t.access /= 3;
+			RoutingSubregionTile t = subregionTiles.get(clockHand++);
+			if (!t.isLoaded()) {
+				continue;
+			}
+			if (t.access > 0) {
+				t.access = Math.min(t.access, CLOCK_MAX_ACCESS) >> 1;
+				continue;
+			}
+			t.unload();
+			loaded--;
+			if (calculationProgress != null) {
+				calculationProgress.unloadedTiles++;
+			}
+			global.size -= t.tileStatistics.size;
 		}
 	}
 	
@@ -844,7 +1041,11 @@ public class RoutingContext {
 		}
 		
 		public void add(RouteDataObject ro) {
-			tileStatistics.addObject(ro);
+			add(ro, false);
+		}
+
+		public void add(RouteDataObject ro, boolean shared) {
+			tileStatistics.addObject(ro, shared);
 			for (int i = 0; i < ro.pointsX.length; i++) {
 				int x31 = ro.getPoint31XTile(i);
 				int y31 = ro.getPoint31YTile(i);
@@ -880,41 +1081,74 @@ public class RoutingContext {
 		}
 	}
 	
+	// JVM layout with compressed references: object header 12 bytes, array header 16 bytes, 8 bytes alignment
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REF = 4;
+	// RouteSegment (~56 bytes) + entry of TLongObjectHashMap (key, value, state with load factor 0.5)
+	private static final int ROUTE_SEGMENT_SIZE = 56 + 2 * (8 + REF + 1);
+	
+	private static int align(int sz) {
+		return (sz + 7) & ~7;
+	}
+	
+	private static int arraySize(int length, int elementSize) {
+		return align(ARRAY_HEADER + length * elementSize);
+	}
+	
+	private static int stringSize(String s) {
+		// String + byte[] (compact strings)
+		return align(OBJECT_HEADER + 4 + 4 + REF + 1) + arraySize(s.length(), 1);
+	}
+	
 	static int getEstimatedSize(RouteDataObject o) {
-		// calculate size
-		int sz = 0;
-		sz += 8 + 4; // overhead
-		if (o.names != null) {
-			sz += 12;
-			TIntObjectIterator<String> it = o.names.iterator();
-			while(it.hasNext()) {
-				it.advance();
-				String vl = it.value();
-				sz += 12 + vl.length();
-			}
-			sz += 12 + o.names.size() * 25;
-		}
-		sz += 8; // id
-		// coordinates
-		sz += (8 + 4 + 4 * o.getPointsLength()) * 4;
-		sz += o.types == null ? 4 : (8 + 4 + 4 * o.types.length);
-		sz += o.restrictions == null ? 4 : (8 + 4 + 8 * o.restrictions.length);
-		sz += 4;
+		// region, 10 arrays, names, id, 2 floats
+		int sz = align(OBJECT_HEADER + 12 * REF + 8 + 4 + 4);
+		sz += o.pointsX == null ? 0 : arraySize(o.pointsX.length, 4);
+		sz += o.pointsY == null ? 0 : arraySize(o.pointsY.length, 4);
+		sz += o.types == null ? 0 : arraySize(o.types.length, 4);
+		sz += o.restrictions == null ? 0 : arraySize(o.restrictions.length, 8);
+		sz += o.restrictionsVia == null ? 0 : arraySize(o.restrictionsVia.length, 8);
+		sz += o.nameIds == null ? 0 : arraySize(o.nameIds.length, 4);
+		sz += o.heightDistanceArray == null ? 0 : arraySize(o.heightDistanceArray.length, 4);
 		if (o.pointTypes != null) {
-			sz += 8 + 4 * o.pointTypes.length;
+			sz += arraySize(o.pointTypes.length, REF);
 			for (int i = 0; i < o.pointTypes.length; i++) {
-				sz += 4;
-				if (o.pointTypes[i] != null) {
-					sz += 8 + 8 * o.pointTypes[i].length;
+				sz += o.pointTypes[i] == null ? 0 : arraySize(o.pointTypes[i].length, 4);
+			}
+		}
+		if (o.pointNameTypes != null) {
+			sz += arraySize(o.pointNameTypes.length, REF);
+			for (int i = 0; i < o.pointNameTypes.length; i++) {
+				sz += o.pointNameTypes[i] == null ? 0 : arraySize(o.pointNameTypes[i].length, 4);
+			}
+		}
+		if (o.pointNames != null) {
+			sz += arraySize(o.pointNames.length, REF);
+			for (int i = 0; i < o.pointNames.length; i++) {
+				if (o.pointNames[i] != null) {
+					sz += arraySize(o.pointNames[i].length, REF);
+					for (String s : o.pointNames[i]) {
+						sz += s == null ? 0 : stringSize(s);
+					}
 				}
 			}
 		}
-		// Standard overhead?
-		return  (int) (sz * 3.5);
+		if (o.names != null) {
+			// TIntObjectHashMap: object + int[] keys, Object[] values, byte[] states
+			int capacity = o.names.capacity();
+			sz += align(OBJECT_HEADER + 40) + arraySize(capacity, 4) + arraySize(capacity, REF) + arraySize(capacity, 1);
+			TIntObjectIterator<String> it = o.names.iterator();
+			while (it.hasNext()) {
+				it.advance();
+				sz += stringSize(it.value());
+			}
+		}
+		return sz;
 	}
 	
 	protected static class TileStatistics {
-		public int size = 0;
+		public long size = 0;
 		public int allRoutes = 0;
 		public int coordinates = 0;
 		
@@ -926,9 +1160,14 @@ public class RoutingContext {
 		}
 
 		public void addObject(RouteDataObject o) {
+			addObject(o, false);
+		}
+
+		// shared object is owned by RoutingTilesCache, only route segments of context are counted
+		public void addObject(RouteDataObject o, boolean shared) {
 			allRoutes++;
 			coordinates += o.getPointsLength() * 2;
-			size += getEstimatedSize(o);
+			size += (shared ? 0 : getEstimatedSize(o)) + o.getPointsLength() * ROUTE_SEGMENT_SIZE;
 		}
 
 		
@@ -0,0 +1,399 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+
+// Entry point to calculate routes for many clients concurrently (server side):
+// - fixed pool of workers, requests above queue capacity are rejected (RejectedExecutionException);
+// - every request has own RoutingContext with memoryLimitMb budget, decoded map tiles are shared (RoutingTilesCache);
+// - readers are shared by workers: reading is synchronized on reader, new route types are added to region under its lock;
+// - request is cancelled on deadline (or by RouteTask.cancel) through RouteCalculationProgress.isCancelled;
+// - latency of calculated routes is collected in lock-free histogram.
+// Threads are created by given ThreadFactory, so virtual threads could be used where runtime supports them.
+public class RoutingService {
+
+	private static final Log log = PlatformUtil.getLog(RoutingService.class);
+
+	public static final int DEFAULT_SHARED_TILES_MB = 256;
+
+	// per request
+	public int memoryLimitMb = RoutingConfiguration.DEFAULT_MEMORY_LIMIT;
+	public long defaultTimeoutMillis = 60000;
+
+	private final RoutePlannerFrontEnd frontEnd;
+	private final RoutingConfiguration.Builder configBuilder;
+	private final BinaryMapIndexReader[] readers;
+	private final ThreadPoolExecutor executor;
+	private final ScheduledThreadPoolExecutor watchdog;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	// queued and running tasks
+	private final Set<RouteTask> tasks = Collections.newSetFromMap(new ConcurrentHashMap<RouteTask, Boolean>());
+
+	public static class RouteRequest {
+		public final LatLon start;
+		public final LatLon end;
+		public final String profile;
+		public List<LatLon> intermediates;
+		public Map<String, String> params = new LinkedHashMap<String, String>();
+		// 0 - defaultTimeoutMillis of service (time in queue is included)
+		public long timeoutMillis;
+
+		public RouteRequest(LatLon start, LatLon end, String profile) {
+			this.start = start;
+			this.end = end;
+			this.profile = profile;
+		}
+	}
+
+	public static class RouteTask extends FutureTask<RouteCalcResult> {
+		private final RouteCalculationProgress progress;
+		private final RoutingService service;
+		private final long submitTime = System.nanoTime();
+		private final long deadline;
+		private volatile boolean timeout;
+		private volatile ScheduledFuture<?> timer;
+
+		RouteTask(RoutingService service, Callable<RouteCalcResult> callable, RouteCalculationProgress progress, long deadline) {
+			super(callable);
+			this.service = service;
+			this.progress = progress;
+			this.deadline = deadline;
+		}
+
+		public RouteCalculationProgress getProgress() {
+			return progress;
+		}
+
+		// deadline in System.currentTimeMillis()
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public boolean isTimedOut() {
+			return timeout;
+		}
+
+		// Future is cancelled immediately (get() throws CancellationException), but running calculation stops
+		// later by progress flag (thread is not interrupted), so worker stays busy till then.
+		// Counters of service are updated when worker exits the task.
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			progress.isCancelled = true;
+			return super.cancel(false);
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				exited();
+			}
+		}
+
+		private void exited() {
+			service.taskDone(this, System.nanoTime() - submitTime);
+		}
+
+		private void expire() {
+			timeout = true;
+			cancel(false);
+		}
+
+		@Override
+		protected void done() {
+			ScheduledFuture<?> t = timer;
+			if (t != null) {
+				t.cancel(false);
+			}
+		}
+	}
+
+	public RoutingService(RoutePlannerFrontEnd frontEnd, BinaryMapIndexReader[] readers, int threads, int queueCapacity) {
+		this(frontEnd, RoutingConfiguration.getDefault(), readers, threads, queueCapacity, new ThreadFactory() {
+			private final AtomicInteger counter = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "RoutingService-" + counter.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public RoutingService(RoutePlannerFrontEnd frontEnd, RoutingConfiguration.Builder configBuilder,
+	                      BinaryMapIndexReader[] readers, int threads, int queueCapacity, ThreadFactory threadFactory) {
+		this.frontEnd = frontEnd;
+		this.configBuilder = configBuilder;
+		this.readers = readers;
+		if (frontEnd.getSharedTilesCache() == null) {
+			frontEnd.setSharedTilesCache(new RoutingTilesCache(DEFAULT_SHARED_TILES_MB * (1l << 20)));
+		}
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, queueCapacity)), threadFactory);
+		watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "RoutingServiceWatchdog");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		watchdog.setRemoveOnCancelPolicy(true);
+	}
+
+	public RouteTask submit(final RouteRequest request) throws RejectedExecutionException {
+		long timeoutMillis = request.timeoutMillis > 0 ? request.timeoutMillis : defaultTimeoutMillis;
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		final RouteCalculationProgress progress = new RouteCalculationProgress();
+		final RouteTask task = new RouteTask(this, new Callable<RouteCalcResult>() {
+			@Override
+			public RouteCalcResult call() throws Exception {
+				return calculate(request, progress, deadline);
+			}
+		}, progress, deadline);
+		tasks.add(task);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			tasks.remove(task);
+			rejected.incrementAndGet();
+			throw e;
+		}
+		task.timer = watchdog.schedule(new Runnable() {
+			@Override
+			public void run() {
+				task.expire();
+			}
+		}, timeoutMillis, TimeUnit.MILLISECONDS);
+		if (task.isDone()) {
+			task.timer.cancel(false);
+		}
+		return task;
+	}
+
+	// blocking calculation, throws CancellationException on deadline
+	public RouteCalcResult route(RouteRequest request) throws IOException, InterruptedException {
+		RouteTask task = submit(request);
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			task.cancel(false);
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private RouteCalcResult calculate(RouteRequest request, RouteCalculationProgress progress, long deadline)
+			throws IOException, InterruptedException {
+		if (progress.isCancelled || System.currentTimeMillis() > deadline) {
+			// deadline passed in queue
+			throw new CancellationException("Route request expired in queue");
+		}
+		return calculateRoute(request, progress);
+	}
+
+	protected RouteCalcResult calculateRoute(RouteRequest request, RouteCalculationProgress progress)
+			throws IOException, InterruptedException {
+		RoutingConfiguration config;
+		// builder keeps shared attributes
+		synchronized (configBuilder) {
+			config = configBuilder.build(request.profile, new RoutingMemoryLimits(memoryLimitMb,
+					RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT), new LinkedHashMap<String, String>(request.params));
+		}
+		RoutingContext ctx = frontEnd.buildRoutingContext(config, null, readers);
+		ctx.calculationProgress = progress;
+		return frontEnd.searchRoute(ctx, request.start, request.end, request.intermediates);
+	}
+
+	private void taskDone(RouteTask task, long nanos) {
+		tasks.remove(task);
+		if (task.isCancelled()) {
+			if (task.isTimedOut()) {
+				timedOut.incrementAndGet();
+			} else {
+				cancelled.incrementAndGet();
+			}
+			return;
+		}
+		try {
+			RouteCalcResult res = task.get();
+			if (res == null || !res.isCorrect()) {
+				failed.incrementAndGet();
+			} else {
+				latency.record(TimeUnit.NANOSECONDS.toMillis(nanos));
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				// deadline passed in queue before watchdog
+				timedOut.incrementAndGet();
+			} else {
+				failed.incrementAndGet();
+				log.warn("Route calculation failed: " + e.getCause(), e.getCause());
+			}
+		} catch (Exception e) {
+			failed.incrementAndGet();
+			log.warn("Route calculation failed: " + e, e);
+		}
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	public long getTimedOutCount() {
+		return timedOut.get();
+	}
+
+	public long getCancelledCount() {
+		return cancelled.get();
+	}
+
+	public Map<String, Object> getInfo() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("completed", latency.getCount());
+		map.put("failed", failed.get());
+		map.put("rejected", rejected.get());
+		map.put("timedOut", timedOut.get());
+		map.put("cancelled", cancelled.get());
+		map.put("queue", getQueueSize());
+		map.put("active", getActiveCount());
+		map.put("p50Ms", latency.getPercentile(0.5));
+		map.put("p90Ms", latency.getPercentile(0.9));
+		map.put("p99Ms", latency.getPercentile(0.99));
+		map.put("maxMs", latency.getMax());
+		return map;
+	}
+
+	public void shutdown() {
+		shutdown(defaultTimeoutMillis);
+	}
+
+	// Queued and running requests are cancelled by flag (worker threads are not interrupted),
+	// returns false if calculations haven't stopped within timeout
+	public boolean shutdown(long timeoutMillis) {
+		executor.shutdown();
+		for (RouteTask t : tasks) {
+			// queued task is taken by worker and exits immediately
+			t.cancel(false);
+		}
+		watchdog.shutdownNow();
+		try {
+			if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		log.warn("Route calculations haven't stopped on shutdown: " + executor.getActiveCount());
+		return false;
+	}
+
+	// Latency histogram with power of 2 milliseconds buckets: bucket i counts values in [2^(i-1), 2^i) (0 - zero)
+	public static class LatencyHistogram {
+		private static final int BUCKETS = 64;
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong sum = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		public void record(long millis) {
+			long v = Math.max(0, millis);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+			count.incrementAndGet();
+			sum.addAndGet(v);
+			long m;
+			while ((m = max.get()) < v && !max.compareAndSet(m, v)) {
+				// retry
+			}
+		}
+
+		public long getCount() {
+			return count.get();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		public double getMean() {
+			long c = count.get();
+			return c == 0 ? 0 : sum.get() / (double) c;
+		}
+
+		// upper bound of bucket containing percentile (0..1), not greater than max
+		public long getPercentile(double p) {
+			long total = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				total += buckets.get(i);
+			}
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(p * total);
+			long cnt = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				cnt += buckets.get(i);
+				if (cnt >= rank && cnt > 0) {
+					long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1l << i) - 1);
+					return Math.min(upper, max.get());
+				}
+			}
+			return max.get();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+// Process-wide cache of decoded route tiles (RouteDataObject lists) shared by many RoutingContext,
+// tiles are keyed by (file, subregion file pointer) and evicted in LRU order when size limit is exceeded.
+// Tile decoded by one reader is returned to any reader of the same file: objects keep RouteRegion of the decoding
+// reader, rules of the file are the same in every reader and types added later are created in region of object.
+// Cached objects are read-only: context and result preparation copy object (see copyForModification) before
+// changing it, per request state (loaded segments, excluded ids, visited segments) stays in RoutingContext.
+public class RoutingTilesCache {
+
+	private final static Log log = PlatformUtil.getLog(RoutingTilesCache.class);
+
+	private final long maxSizeBytes;
+	private final LinkedHashMap<TileKey, CachedTile> tiles = new LinkedHashMap<TileKey, CachedTile>(16, 0.75f, true);
+	private long sizeBytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public RoutingTilesCache(long maxSizeBytes) {
+		this.maxSizeBytes = maxSizeBytes;
+	}
+
+	public List<RouteDataObject> loadRouteIndexData(BinaryMapIndexReader reader, RouteSubregion subregion) throws IOException {
+		TileKey key = new TileKey(getFileKey(reader), subregion.filePointer);
+		synchronized (this) {
+			CachedTile tile = tiles.get(key);
+			if (tile != null) {
+				hits++;
+				return tile.objects;
+			}
+			misses++;
+		}
+		List<RouteDataObject> res;
+		// decode outside of cache lock, reader itself is not thread-safe
+		synchronized (reader) {
+			res = reader.loadRouteIndexData(subregion);
+		}
+		CachedTile tile = new CachedTile(Collections.unmodifiableList(new ArrayList<RouteDataObject>(res)));
+		synchronized (this) {
+			CachedTile prev = tiles.put(key, tile);
+			if (prev != null) {
+				sizeBytes -= prev.size;
+			}
+			sizeBytes += tile.size;
+			evict();
+		}
+		return tile.objects;
+	}
+
+	// batch of subregions of one reader: missing tiles are read in one pass sorted by file pointer
+	public List<List<RouteDataObject>> loadRouteIndexData(BinaryMapIndexReader reader, List<RouteSubregion> subregions) throws IOException {
+		Object file = getFileKey(reader);
+		List<List<RouteDataObject>> res = new ArrayList<List<RouteDataObject>>(subregions.size());
+		List<RouteSubregion> missing = new ArrayList<RouteSubregion>();
+		synchronized (this) {
+			for (RouteSubregion subregion : subregions) {
+				CachedTile tile = tiles.get(new TileKey(file, subregion.filePointer));
+				if (tile != null) {
+					hits++;
+					res.add(tile.objects);
+				} else {
+					misses++;
+					res.add(null);
+					missing.add(subregion);
+				}
+			}
+		}
+		if (missing.isEmpty()) {
+			return res;
+		}
+		List<List<RouteDataObject>> loaded;
+		synchronized (reader) {
+			loaded = reader.loadRouteIndexData(missing);
+		}
+		synchronized (this) {
+			int j = 0;
+			for (int i = 0; i < res.size(); i++) {
+				if (res.get(i) == null) {
+					List<RouteDataObject> objects = loaded.get(j++);
+					CachedTile tile = new CachedTile(Collections.unmodifiableList(
+							objects == null ? new ArrayList<RouteDataObject>() : new ArrayList<RouteDataObject>(objects)));
+					CachedTile prev = tiles.put(new TileKey(file, subregions.get(i).filePointer), tile);
+					if (prev != null) {
+						sizeBytes -= prev.size;
+					}
+					sizeBytes += tile.size;
+					res.set(i, tile.objects);
+				}
+			}
+			evict();
+		}
+		return res;
+	}
+
+	// readers of the same file share tiles
+	private static Object getFileKey(BinaryMapIndexReader reader) {
+		return reader.getFile() != null ? reader.getFile().getAbsoluteFile() : reader;
+	}
+
+	private void evict() {
+		Iterator<Entry<TileKey, CachedTile>> it = tiles.entrySet().iterator();
+		while (sizeBytes > maxSizeBytes && it.hasNext()) {
+			CachedTile t = it.next().getValue();
+			it.remove();
+			sizeBytes -= t.size;
+			evictions++;
+		}
+	}
+
+	// Shallow copy with own arrays that are modified by routing (conditional tags, attached direction points)
+	public static RouteDataObject copyForModification(RouteDataObject ro) {
+		RouteDataObject copy = new RouteDataObject(ro);
+		if (ro.types != null) {
+			copy.types = ro.types.clone();
+		}
+		if (ro.pointTypes != null) {
+			copy.pointTypes = new int[ro.pointTypes.length][];
+			for (int i = 0; i < ro.pointTypes.length; i++) {
+				copy.pointTypes[i] = ro.pointTypes[i] == null ? null : ro.pointTypes[i].clone();
+			}
+		}
+		return copy;
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		sizeBytes = 0;
+	}
+
+	public synchronized int getTilesCount() {
+		return tiles.size();
+	}
+
+	public synchronized long getSizeBytes() {
+		return sizeBytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized void printStatistics() {
+		log.info(String.format("Routing tiles cache: %d tiles, %d / %d KB, hits %d, misses %d, evictions %d",
+				tiles.size(), sizeBytes >> 10, maxSizeBytes >> 10, hits, misses, evictions));
+	}
+
+	private static class CachedTile {
+		final List<RouteDataObject> objects;
+		final long size;
+
+		CachedTile(List<RouteDataObject> objects) {
+			this.objects = objects;
+			long sz = 0;
+			for (RouteDataObject o : objects) {
+				if (o != null) {
+					sz += RoutingContext.getEstimatedSize(o);
+				}
+			}
+			this.size = sz;
+		}
+	}
+
+	private static class TileKey {
+		final Object file;
+		final long filePointer;
+
+		TileKey(Object file, long filePointer) {
+			this.file = file;
+			this.filePointer = filePointer;
+		}
+
+		@Override
+		public int hashCode() {
+			return file.hashCode() * 31 + Long.hashCode(filePointer);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof TileKey)) {
+				return false;
+			}
+			TileKey other = (TileKey) obj;
+			return filePointer == other.filePointer && file.equals(other.file);
+		}
+	}
+}
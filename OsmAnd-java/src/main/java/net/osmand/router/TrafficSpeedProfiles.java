@@ -0,0 +1,160 @@
+package net.osmand.router;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+// Time dependent speeds of roads: weekly profile is 168 hourly values (Monday 00:00 first) of percent of router speed,
+// speed between hours is interpolated linearly. Roads are keyed by RouteDataObject id, equal profiles are stored once.
+// Lookup is allocation free (open addressing road id -> profile offset), so it is used in A* inner loop.
+// File: int version, int profiles, byte[profiles * 168], int roads, (long road id, int profile) * roads.
+public class TrafficSpeedProfiles {
+
+	public static final int HOURS_IN_WEEK = 7 * 24;
+	public static final int SECONDS_IN_WEEK = HOURS_IN_WEEK * 3600;
+	private static final int VERSION = 1;
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private final byte[] profiles;
+	private final long[] keys;
+	private final int[] offsets;
+	private final int mask;
+
+	private TrafficSpeedProfiles(byte[] profiles, long[] roads, int[] roadProfiles) {
+		this.profiles = profiles;
+		int capacity = Integer.highestOneBit(Math.max(4, roads.length * 2 - 1)) << 1;
+		keys = new long[capacity];
+		offsets = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, EMPTY);
+		for (int i = 0; i < roads.length; i++) {
+			int p = slot(roads[i]);
+			keys[p] = roads[i];
+			offsets[p] = roadProfiles[i] * HOURS_IN_WEEK;
+		}
+	}
+
+	private int slot(long roadId) {
+		int p = (int) ((roadId * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (keys[p] != EMPTY && keys[p] != roadId) {
+			p = (p + 1) & mask;
+		}
+		return p;
+	}
+
+	public int size() {
+		int s = 0;
+		for (long k : keys) {
+			if (k != EMPTY) {
+				s++;
+			}
+		}
+		return s;
+	}
+
+	public boolean contains(long roadId) {
+		return keys[slot(roadId)] == roadId;
+	}
+
+	// factor of router speed (1 - road without profile), second of week is wrapped
+	public float getSpeedFactor(long roadId, int secondOfWeek) {
+		int p = slot(roadId);
+		if (keys[p] != roadId) {
+			return 1;
+		}
+		int s = secondOfWeek % SECONDS_IN_WEEK;
+		if (s < 0) {
+			s += SECONDS_IN_WEEK;
+		}
+		int hour = s / 3600;
+		int o = offsets[p];
+		int v1 = profiles[o + hour] & 0xff;
+		int v2 = profiles[o + (hour + 1) % HOURS_IN_WEEK] & 0xff;
+		return (v1 + (v2 - v1) * ((s % 3600) / 3600f)) / 100f;
+	}
+
+	// second of week (Monday 00:00 local time)
+	public static int getSecondOfWeek(long timeMillis) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(timeMillis);
+		int day = (c.get(Calendar.DAY_OF_WEEK) + 5) % 7; // Monday - 0
+		return day * 24 * 3600 + c.get(Calendar.HOUR_OF_DAY) * 3600 + c.get(Calendar.MINUTE) * 60 + c.get(Calendar.SECOND);
+	}
+
+	public static TrafficSpeedProfiles load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported speed profiles version " + version);
+			}
+			byte[] profiles = new byte[in.readInt() * HOURS_IN_WEEK];
+			in.readFully(profiles);
+			int count = in.readInt();
+			long[] roads = new long[count];
+			int[] roadProfiles = new int[count];
+			for (int i = 0; i < count; i++) {
+				roads[i] = in.readLong();
+				roadProfiles[i] = in.readInt();
+				if (roadProfiles[i] < 0 || (roadProfiles[i] + 1) * HOURS_IN_WEEK > profiles.length) {
+					throw new IOException("Wrong profile of road " + roads[i]);
+				}
+			}
+			return new TrafficSpeedProfiles(profiles, roads, roadProfiles);
+		} finally {
+			in.close();
+		}
+	}
+
+	// road id -> 168 hourly percents of speed
+	public static void write(File file, TLongObjectHashMap<byte[]> roadProfiles) throws IOException {
+		Map<String, Integer> unique = new HashMap<String, Integer>();
+		byte[] profiles = new byte[roadProfiles.size() * HOURS_IN_WEEK];
+		long[] roads = new long[roadProfiles.size()];
+		int[] indexes = new int[roadProfiles.size()];
+		int i = 0;
+		TLongObjectIterator<byte[]> it = roadProfiles.iterator();
+		while (it.hasNext()) {
+			it.advance();
+			byte[] p = it.value();
+			if (p.length != HOURS_IN_WEEK) {
+				throw new IllegalArgumentException("Profile of road " + it.key() + " should have " + HOURS_IN_WEEK + " values");
+			}
+			String key = new String(p, StandardCharsets.ISO_8859_1);
+			Integer ind = unique.get(key);
+			if (ind == null) {
+				ind = unique.size();
+				unique.put(key, ind);
+				System.arraycopy(p, 0, profiles, ind * HOURS_IN_WEEK, HOURS_IN_WEEK);
+			}
+			roads[i] = it.key();
+			indexes[i++] = ind;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(VERSION);
+			out.writeInt(unique.size());
+			out.write(profiles, 0, unique.size() * HOURS_IN_WEEK);
+			out.writeInt(roads.length);
+			for (int k = 0; k < roads.length; k++) {
+				out.writeLong(roads[k]);
+				out.writeInt(indexes[k]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,244 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+// Flat representation of public transport routes of loaded region for TransportRaptorPlanner.
+// Stops and routes are indexed by position in arrays, CSR layout (offsets[i]..offsets[i + 1]) is used for
+// stops of route, routes of stop, trips of route and walking transfers of stop. Times are in seconds.
+class TransportRaptorNetwork {
+
+	final int left31, top31, right31, bottom31;
+
+	final TransportRoute[] routes;
+	final TransportStop[] stops;
+	final int[] stopX31;
+	final int[] stopY31;
+
+	// route r: stops routeStops[routeStopsOffsets[r]..routeStopsOffsets[r + 1])
+	final int[] routeStopsOffsets;
+	final int[] routeStops;
+	// time from the first stop of route (without schedule - by speed and stop time, with schedule - avg stop intervals)
+	final int[] routeStopTime;
+	// distance from the first stop of route
+	final float[] routeStopDist;
+	// route r: departures from the first stop (seconds of day, ascending) tripDepartures[tripOffsets[r]..tripOffsets[r + 1])
+	final int[] tripOffsets;
+	final int[] tripDepartures;
+
+	// stop s: (route, position in route) pairs stopRoutes[stopRoutesOffsets[s]..stopRoutesOffsets[s + 1])
+	final int[] stopRoutesOffsets;
+	final int[] stopRoutes;
+	final int[] stopRoutePositions;
+
+	// stop s: stops in walkChangeRadius transferStops[transferOffsets[s]..transferOffsets[s + 1]) with distance in meters
+	final int[] transferOffsets;
+	final int[] transferStops;
+	final float[] transferDist;
+
+	private final int gridShift;
+	private final TLongObjectHashMap<TIntArrayList> grid = new TLongObjectHashMap<TIntArrayList>();
+
+	TransportRaptorNetwork(TransportRoutingConfiguration cfg, Collection<TransportRoute> loadedRoutes,
+	                       int left31, int top31, int right31, int bottom31) {
+		this.left31 = left31;
+		this.top31 = top31;
+		this.right31 = right31;
+		this.bottom31 = bottom31;
+		TLongObjectHashMap<Integer> stopsById = new TLongObjectHashMap<Integer>();
+		List<TransportStop> stopsList = new ArrayList<TransportStop>();
+		List<TransportRoute> routesList = new ArrayList<TransportRoute>();
+		TIntArrayList rOffsets = new TIntArrayList();
+		TIntArrayList rStops = new TIntArrayList();
+		TIntArrayList rTime = new TIntArrayList();
+		TIntArrayList rDist = new TIntArrayList(); // float bits
+		TIntArrayList tOffsets = new TIntArrayList();
+		TIntArrayList tDepartures = new TIntArrayList();
+		rOffsets.add(0);
+		tOffsets.add(0);
+		for (TransportRoute route : loadedRoutes) {
+			List<TransportStop> fs = route.getForwardStops();
+			TransportSchedule schedule = route.getSchedule();
+			boolean scheduled = schedule != null && schedule.tripIntervals.size() > 0;
+			float speed = cfg.router == null ? cfg.defaultTravelSpeed : cfg.getSpeedByRouteType(route.getType());
+			if (fs.size() < 2 || speed == 0 || (cfg.useSchedule && !scheduled)) {
+				continue;
+			}
+			routesList.add(route);
+			int time = 0;
+			float dist = 0;
+			for (int i = 0; i < fs.size(); i++) {
+				TransportStop st = fs.get(i);
+				Integer ind = stopsById.get(st.getId());
+				if (ind == null) {
+					ind = stopsList.size();
+					stopsById.put(st.getId(), ind);
+					stopsList.add(st);
+				}
+				if (i > 0) {
+					double d = MapUtils.getDistance(fs.get(i - 1).getLocation(), st.getLocation());
+					dist += d;
+					if (cfg.useSchedule && schedule.avgStopIntervals.size() >= i) {
+						time += schedule.avgStopIntervals.get(i - 1) * 10;
+					} else {
+						time += cfg.stopTime + (int) (d / speed);
+					}
+				}
+				rStops.add(ind);
+				rTime.add(time);
+				rDist.add(Float.floatToRawIntBits(dist));
+			}
+			rOffsets.add(rStops.size());
+			if (cfg.useSchedule) {
+				int t = 0;
+				for (int i = 0; i < schedule.tripIntervals.size(); i++) {
+					t += schedule.tripIntervals.getQuick(i);
+					tDepartures.add(t * 10);
+				}
+			}
+			tOffsets.add(tDepartures.size());
+		}
+		routes = routesList.toArray(new TransportRoute[0]);
+		stops = stopsList.toArray(new TransportStop[0]);
+		routeStopsOffsets = rOffsets.toArray();
+		routeStops = rStops.toArray();
+		routeStopTime = rTime.toArray();
+		routeStopDist = new float[rDist.size()];
+		for (int i = 0; i < routeStopDist.length; i++) {
+			routeStopDist[i] = Float.intBitsToFloat(rDist.getQuick(i));
+		}
+		tripOffsets = tOffsets.toArray();
+		tripDepartures = tDepartures.toArray();
+
+		stopX31 = new int[stops.length];
+		stopY31 = new int[stops.length];
+		for (int s = 0; s < stops.length; s++) {
+			LatLon l = stops[s].getLocation();
+			stopX31[s] = MapUtils.get31TileNumberX(l.getLongitude());
+			stopY31[s] = MapUtils.get31TileNumberY(l.getLatitude());
+		}
+
+		// routes of stops (counting sort by stop)
+		stopRoutesOffsets = new int[stops.length + 1];
+		for (int i = 0; i < routeStops.length; i++) {
+			stopRoutesOffsets[routeStops[i] + 1]++;
+		}
+		for (int s = 0; s < stops.length; s++) {
+			stopRoutesOffsets[s + 1] += stopRoutesOffsets[s];
+		}
+		stopRoutes = new int[routeStops.length];
+		stopRoutePositions = new int[routeStops.length];
+		int[] fill = new int[stops.length];
+		for (int r = 0; r < routes.length; r++) {
+			for (int i = routeStopsOffsets[r]; i < routeStopsOffsets[r + 1]; i++) {
+				int s = routeStops[i];
+				int pos = stopRoutesOffsets[s] + fill[s]++;
+				stopRoutes[pos] = r;
+				stopRoutePositions[pos] = i - routeStopsOffsets[r];
+			}
+		}
+
+		// walking transfers found with grid of walkChangeRadius cells
+		double cellSize = Math.max(cfg.walkChangeRadius, 1) / MapUtils.getTileDistanceWidth(31);
+		gridShift = Math.max(1, 31 - Integer.numberOfLeadingZeros((int) Math.min(Integer.MAX_VALUE, cellSize)));
+		for (int s = 0; s < stops.length; s++) {
+			long key = gridKey(stopX31[s] >> gridShift, stopY31[s] >> gridShift);
+			TIntArrayList cell = grid.get(key);
+			if (cell == null) {
+				cell = new TIntArrayList(4);
+				grid.put(key, cell);
+			}
+			cell.add(s);
+		}
+		transferOffsets = new int[stops.length + 1];
+		TIntArrayList tStops = new TIntArrayList();
+		TIntArrayList tDist = new TIntArrayList(); // float bits
+		TIntArrayList nearby = new TIntArrayList();
+		for (int s = 0; s < stops.length; s++) {
+			nearby.clear();
+			findStops(stopX31[s], stopY31[s], cfg.walkChangeRadius, nearby);
+			for (int i = 0; i < nearby.size(); i++) {
+				int n = nearby.getQuick(i);
+				if (n != s) {
+					tStops.add(n);
+					tDist.add(Float.floatToRawIntBits((float) distance(s, stopX31[n], stopY31[n])));
+				}
+			}
+			transferOffsets[s + 1] = tStops.size();
+		}
+		transferStops = tStops.toArray();
+		transferDist = new float[tDist.size()];
+		for (int i = 0; i < transferDist.length; i++) {
+			transferDist[i] = Float.intBitsToFloat(tDist.getQuick(i));
+		}
+	}
+
+	private static long gridKey(int x, int y) {
+		return (((long) x) << 32) | (y & 0xffffffffL);
+	}
+
+	double distance(int stop, int x31, int y31) {
+		return MapUtils.squareRootDist31(stopX31[stop], stopY31[stop], x31, y31);
+	}
+
+	// stops within radius (meters)
+	TIntArrayList findStops(int x31, int y31, double radius, TIntArrayList res) {
+		// 31 tile gets narrower away from the equator
+		double unit = MapUtils.getTileDistanceWidth(MapUtils.get31LatitudeY(y31), 31);
+		int d = (int) Math.min(Integer.MAX_VALUE, radius / unit);
+		int lx = Math.max(0, x31 - d) >> gridShift, rx = (int) Math.min(Integer.MAX_VALUE, (long) x31 + d) >> gridShift;
+		int ty = Math.max(0, y31 - d) >> gridShift, by = (int) Math.min(Integer.MAX_VALUE, (long) y31 + d) >> gridShift;
+		for (int x = lx; x <= rx; x++) {
+			for (int y = ty; y <= by; y++) {
+				TIntArrayList cell = grid.get(gridKey(x, y));
+				for (int i = 0; cell != null && i < cell.size(); i++) {
+					int s = cell.getQuick(i);
+					if (distance(s, x31, y31) <= radius) {
+						res.add(s);
+					}
+				}
+			}
+		}
+		return res;
+	}
+
+	boolean contains(int left31, int top31, int right31, int bottom31) {
+		return this.left31 <= left31 && this.top31 <= top31 && this.right31 >= right31 && this.bottom31 >= bottom31;
+	}
+
+	int getRouteStop(int route, int position) {
+		return routeStops[routeStopsOffsets[route] + position];
+	}
+
+	int getRouteLength(int route) {
+		return routeStopsOffsets[route + 1] - routeStopsOffsets[route];
+	}
+
+	boolean hasTrips(int route) {
+		return tripOffsets[route + 1] > tripOffsets[route];
+	}
+
+	// first trip departing from position of route not earlier than time (-1 if none), trips are sorted
+	int findTrip(int route, int position, int time) {
+		int t = time - routeStopTime[routeStopsOffsets[route] + position];
+		int lo = tripOffsets[route], hi = tripOffsets[route + 1];
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (tripDepartures[mid] < t) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo < tripOffsets[route + 1] ? lo : -1;
+	}
+}
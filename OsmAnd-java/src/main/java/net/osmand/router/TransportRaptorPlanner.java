@@ -0,0 +1,287 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.data.LatLon;
+import net.osmand.router.TransportRoutePlanner.TransportRouteResultSegment;
+import net.osmand.util.MapUtils;
+
+// Round based public transport search (RAPTOR) over TransportRaptorNetwork, alternative to Dijkstra of TransportRoutePlanner.
+// Round k finds the earliest arrival to every stop with k rides: routes of stops improved in previous round are scanned
+// once (boarding the earliest reachable trip, or by frequency if schedule is not used), then walking transfers are relaxed.
+// Result contains pareto optimal routes by arrival time and number of changes (route is added if it is faster than
+// all routes with fewer changes).
+public class TransportRaptorPlanner {
+
+	private static final int INF = Integer.MAX_VALUE;
+
+	private int[][] arrival;
+	// ride label of stop in round: route, board / alight position, trip (-1 frequency based)
+	private int[][] rideRoute;
+	private int[][] rideBoard;
+	private int[][] rideAlight;
+	private int[][] rideTrip;
+	// walk label of stop in round: stop where ride was finished
+	private int[][] walkFrom;
+
+	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end) throws IOException, InterruptedException {
+		ctx.startCalcTime = System.currentTimeMillis();
+		TransportRaptorNetwork network = ctx.getRaptorNetwork(start, end);
+		long loadTime = System.currentTimeMillis() - ctx.startCalcTime;
+		List<TransportRouteResult> res = search(ctx, network, start, end);
+		if (res != null) {
+			System.out.println(String.format(Locale.US, "Calculated (RAPTOR) %.1f seconds (%d ms network), found %d results, " +
+					"%d routes / %d stops in network, visited %d routes / %d stops",
+					(System.currentTimeMillis() - ctx.startCalcTime) / 1000.0, loadTime, res.size(),
+					network.routes.length, network.stops.length, ctx.visitedRoutesCount, ctx.visitedStops));
+		}
+		return res;
+	}
+
+	List<TransportRouteResult> search(TransportRoutingContext ctx, TransportRaptorNetwork network, LatLon start, LatLon end)
+			throws InterruptedException {
+		TransportRoutingConfiguration cfg = ctx.cfg;
+		int stops = network.stops.length;
+		int rounds = cfg.maxNumberOfChanges + 2; // round 0 - walk from start
+		arrival = new int[rounds][stops];
+		rideRoute = new int[rounds][stops];
+		rideBoard = new int[rounds][stops];
+		rideAlight = new int[rounds][stops];
+		rideTrip = new int[rounds][stops];
+		walkFrom = new int[rounds][stops];
+		int[] best = new int[stops];
+		Arrays.fill(best, INF);
+
+		double totalDistance = MapUtils.getDistance(start, end);
+		int startTime = cfg.useSchedule ? cfg.scheduleTimeOfDay * 10 : 0;
+		int finishTime = cfg.maxRouteTime;
+		if (totalDistance > cfg.maxRouteDistance && cfg.maxRouteIncreaseSpeed > 0) {
+			finishTime += (int) ((totalDistance - cfg.maxRouteDistance) * 3.6 / cfg.maxRouteIncreaseSpeed);
+		}
+		int maxArrival = startTime + finishTime;
+		double walkOnlyTime = totalDistance / cfg.walkSpeed;
+
+		TIntArrayList marked = new TIntArrayList();
+		boolean[] isMarked = new boolean[stops];
+		int sx = MapUtils.get31TileNumberX(start.getLongitude());
+		int sy = MapUtils.get31TileNumberY(start.getLatitude());
+		int ex = MapUtils.get31TileNumberX(end.getLongitude());
+		int ey = MapUtils.get31TileNumberY(end.getLatitude());
+		initRound(0);
+		TIntArrayList startStops = network.findStops(sx, sy, cfg.walkRadius, new TIntArrayList());
+		for (int i = 0; i < startStops.size(); i++) {
+			int s = startStops.getQuick(i);
+			int t = startTime + (int) (network.distance(s, sx, sy) / cfg.walkSpeed);
+			arrival[0][s] = t;
+			best[s] = t;
+			mark(s, marked, isMarked);
+		}
+		TIntArrayList endStops = network.findStops(ex, ey, cfg.walkRadius, new TIntArrayList());
+		int[] endWalkTime = new int[endStops.size()];
+		for (int i = 0; i < endStops.size(); i++) {
+			endWalkTime[i] = (int) (network.distance(endStops.getQuick(i), ex, ey) / cfg.walkSpeed);
+		}
+
+		int bestTarget = INF;
+		List<TransportRouteResult> results = new ArrayList<TransportRouteResult>();
+		int[] routeQueue = new int[network.routes.length];
+		Arrays.fill(routeQueue, -1);
+		TIntArrayList queuedRoutes = new TIntArrayList();
+		TIntArrayList rideMarked = new TIntArrayList();
+		for (int k = 1; k < rounds && !marked.isEmpty(); k++) {
+			initRound(k);
+			// routes to scan from the first improved stop
+			for (int i = 0; i < marked.size(); i++) {
+				int s = marked.getQuick(i);
+				isMarked[s] = false;
+				for (int j = network.stopRoutesOffsets[s]; j < network.stopRoutesOffsets[s + 1]; j++) {
+					int r = network.stopRoutes[j];
+					int pos = network.stopRoutePositions[j];
+					if (routeQueue[r] == -1) {
+						queuedRoutes.add(r);
+						routeQueue[r] = pos;
+					} else if (pos < routeQueue[r]) {
+						routeQueue[r] = pos;
+					}
+				}
+			}
+			marked.clear();
+			int changeTime = k > 1 ? cfg.getChangeTime() + cfg.getBoardingTime() : 0;
+			for (int i = 0; i < queuedRoutes.size(); i++) {
+				if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+					return null;
+				}
+				int r = queuedRoutes.getQuick(i);
+				int bound = Math.min(bestTarget, maxArrival);
+				scanRoute(network, k, r, routeQueue[r], changeTime, bound, best, rideMarked, isMarked);
+				routeQueue[r] = -1;
+				ctx.visitedRoutesCount++;
+			}
+			queuedRoutes.clear();
+			// walking transfers after rides (not chained): stops ridden to in this round keep ride label,
+			// so transfers are relaxed from ride arrivals only
+			for (int i = 0; i < rideMarked.size(); i++) {
+				int s = rideMarked.getQuick(i);
+				marked.add(s);
+				for (int j = network.transferOffsets[s]; j < network.transferOffsets[s + 1]; j++) {
+					int n = network.transferStops[j];
+					if (rideRoute[k][n] >= 0) {
+						continue;
+					}
+					int t = arrival[k][s] + (int) (network.transferDist[j] / cfg.walkSpeed);
+					if (t < best[n] && t < bestTarget && t <= maxArrival) {
+						arrival[k][n] = t;
+						best[n] = t;
+						walkFrom[k][n] = s;
+						rideRoute[k][n] = -1;
+						mark(n, marked, isMarked);
+					}
+				}
+			}
+			rideMarked.clear();
+			ctx.visitedStops += marked.size();
+			// target
+			int targetStop = -1;
+			for (int i = 0; i < endStops.size(); i++) {
+				int s = endStops.getQuick(i);
+				if (arrival[k][s] != INF && arrival[k][s] + endWalkTime[i] < bestTarget) {
+					bestTarget = arrival[k][s] + endWalkTime[i];
+					targetStop = s;
+				}
+			}
+			if (targetStop >= 0 && (bestTarget - startTime < walkOnlyTime || results.isEmpty())) {
+				results.add(createResult(ctx, network, k, targetStop, start, end, bestTarget - startTime, startTime));
+			}
+			if (ctx.calculationProgress != null) {
+				ctx.calculationProgress.distanceFromBegin = Math.max(ctx.calculationProgress.distanceFromBegin, k);
+			}
+		}
+		if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
+			throw new InterruptedException("Route calculation interrupted");
+		}
+		// the fastest route first
+		Collections.reverse(results);
+		return results;
+	}
+
+	private void initRound(int k) {
+		if (k > 0) {
+			// earlier arrivals are kept in round (labels without ride / walk are taken from previous rounds)
+			System.arraycopy(arrival[k - 1], 0, arrival[k], 0, arrival[k].length);
+		} else {
+			Arrays.fill(arrival[k], INF);
+		}
+		Arrays.fill(rideRoute[k], -1);
+		Arrays.fill(walkFrom[k], -1);
+	}
+
+	private static void mark(int s, TIntArrayList marked, boolean[] isMarked) {
+		if (!isMarked[s]) {
+			isMarked[s] = true;
+			marked.add(s);
+		}
+	}
+
+	private void scanRoute(TransportRaptorNetwork network, int k, int r, int fromPos, int changeTime, int bound,
+	                       int[] best, TIntArrayList rideMarked, boolean[] isMarked) {
+		int offset = network.routeStopsOffsets[r];
+		int length = network.getRouteLength(r);
+		boolean trips = network.hasTrips(r);
+		int trip = -1;
+		int boardPos = -1;
+		// arrival at position p is base + routeStopTime[offset + p] (base - trip departure or boarding time for frequency)
+		long base = 0;
+		for (int p = fromPos; p < length; p++) {
+			int s = network.routeStops[offset + p];
+			int time = network.routeStopTime[offset + p];
+			if (boardPos >= 0) {
+				long arr = base + time;
+				if (arr < best[s] && arr < bound) {
+					arrival[k][s] = (int) arr;
+					best[s] = (int) arr;
+					rideRoute[k][s] = r;
+					rideBoard[k][s] = boardPos;
+					rideAlight[k][s] = p;
+					rideTrip[k][s] = trip;
+					walkFrom[k][s] = -1;
+					if (!isMarked[s]) {
+						isMarked[s] = true;
+						rideMarked.add(s);
+					}
+				}
+			}
+			int prev = arrival[k - 1][s];
+			if (prev == INF) {
+				continue;
+			}
+			int ready = prev + changeTime;
+			if (trips) {
+				int t = network.findTrip(r, p, ready);
+				if (t >= 0 && (boardPos < 0 || t < trip)) {
+					trip = t;
+					boardPos = p;
+					base = network.tripDepartures[t];
+				}
+			} else if (boardPos < 0 || (long) ready - time < base) {
+				boardPos = p;
+				base = (long) ready - time;
+			}
+		}
+	}
+
+	private TransportRouteResult createResult(TransportRoutingContext ctx, TransportRaptorNetwork network, int k, int s,
+	                                          LatLon start, LatLon end, int routeTime, int startTime) {
+		List<TransportRouteResultSegment> segments = new ArrayList<TransportRouteResultSegment>();
+		TIntArrayList boardStops = new TIntArrayList();
+		TIntArrayList alightStops = new TIntArrayList();
+		int round = k;
+		int stop = s;
+		while (true) {
+			// labels copied from previous rounds
+			while (round > 0 && rideRoute[round][stop] < 0 && walkFrom[round][stop] < 0) {
+				round--;
+			}
+			if (round == 0) {
+				break;
+			}
+			if (walkFrom[round][stop] >= 0) {
+				stop = walkFrom[round][stop];
+			}
+			int r = rideRoute[round][stop];
+			int board = rideBoard[round][stop];
+			int alight = rideAlight[round][stop];
+			int trip = rideTrip[round][stop];
+			int offset = network.routeStopsOffsets[r];
+			TransportRouteResultSegment sg = new TransportRouteResultSegment();
+			sg.route = network.routes[r];
+			sg.start = board;
+			sg.end = alight;
+			sg.travelTime = network.routeStopTime[offset + alight] - network.routeStopTime[offset + board];
+			sg.travelDistApproximate = network.routeStopDist[offset + alight] - network.routeStopDist[offset + board];
+			sg.depTime = trip >= 0 ? (network.tripDepartures[trip] + network.routeStopTime[offset + board]) / 10 : -1;
+			segments.add(0, sg);
+			alightStops.insert(0, stop);
+			stop = network.routeStops[offset + board];
+			boardStops.insert(0, stop);
+			round--;
+		}
+		TransportRouteResult route = new TransportRouteResult(ctx);
+		LatLon prev = start;
+		for (int i = 0; i < segments.size(); i++) {
+			TransportRouteResultSegment sg = segments.get(i);
+			sg.walkDist = MapUtils.getDistance(prev, network.stops[boardStops.get(i)].getLocation());
+			sg.walkTime = sg.walkDist / ctx.cfg.walkSpeed;
+			prev = network.stops[alightStops.get(i)].getLocation();
+			route.addSegment(sg);
+		}
+		route.setFinishWalkDist(MapUtils.getDistance(prev, end));
+		route.setRouteTime(routeTime);
+		return route;
+	}
+}
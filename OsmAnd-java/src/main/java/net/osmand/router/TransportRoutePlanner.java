@@ -31,6 +31,9 @@ public class TransportRoutePlanner {
 	public static final long STOPS_WAY_ID = -2;
 
 	public List<TransportRouteResult> buildRoute(TransportRoutingContext ctx, LatLon start, LatLon end) throws IOException, InterruptedException {
+		if (ctx.cfg.useRaptor) {
+			return new TransportRaptorPlanner().buildRoute(ctx, start, end);
+		}
 		ctx.startCalcTime = System.currentTimeMillis();
 		double totalDistance = MapUtils.getDistance(start, end);
 		List<TransportRouteSegment> startStops = ctx.getTransportStops(start);
@@ -114,7 +117,7 @@ public class TransportRoutePlanner {
 				}
 				sgms.clear();
 				if (segment.getDepth() < ctx.cfg.maxNumberOfChanges + 1) {
-					sgms = ctx.getTransportStops(stop.x31, stop.y31, true, sgms);
+					sgms = ctx.getTransferStops(stop, sgms);
 					ctx.visitedStops++;
 					for (TransportRouteSegment sgm : sgms) {
 						if (ctx.calculationProgress != null && ctx.calculationProgress.isCancelled) {
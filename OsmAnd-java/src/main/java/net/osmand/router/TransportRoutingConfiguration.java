@@ -40,6 +40,8 @@ public class TransportRoutingConfiguration {
 	public int scheduleMaxTime = 50 * 6; // not appropriate variable, should be dynamic
 	// day since 2000
 	public int scheduleDayNumber;
+	// round based search (TransportRaptorPlanner) instead of segments Dijkstra
+	public boolean useRaptor;
 
 	private Map<String, Integer> rawTypes = new HashMap<String, Integer>();
 	private Map<String, Float> speed = new TreeMap<String, Float>();
@@ -106,6 +108,9 @@ public class TransportRoutingConfiguration {
 			
 			
 		}
+		if (params != null && params.get("use_raptor") != null) {
+			useRaptor = Boolean.parseBoolean(params.get("use_raptor"));
+		}
 	}
 	
 }
@@ -2,12 +2,14 @@ package net.osmand.router;
 
 import net.osmand.NativeLibrary;
 import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
 import net.osmand.data.LatLon;
 import net.osmand.data.TransportRoute;
 import net.osmand.data.TransportStop;
 import net.osmand.router.TransportRoutePlanner.TransportRouteSegment;
 import net.osmand.util.MapUtils;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +21,7 @@ import java.util.Map;
 
 import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.hash.TLongHashSet;
 
 public class TransportRoutingContext {
 
@@ -35,6 +38,10 @@ public class TransportRoutingContext {
 	// so here an improvement could be introduced
 	final TransportStopsRouteReader transportStopsReader;
 	public int finishTimeSeconds;
+	// directory of precomputed walking transfers (TransportTransferIndex), transfers are searched spatially if not set
+	public File transferIndexDir;
+	// flat network of loaded bbox for TransportRaptorPlanner (reused while route fits into it)
+	TransportRaptorNetwork raptorNetwork;
 
 	// stats
 	public long startCalcTime;
@@ -47,6 +54,11 @@ public class TransportRoutingContext {
 
 	private final int walkRadiusIn31;
 	private final int walkChangeRadiusIn31;
+	// segments of loaded tiles by stop id
+	private final TLongObjectHashMap<List<TransportRouteSegment>> stopSegments = new TLongObjectHashMap<List<TransportRouteSegment>>();
+	private List<BinaryMapIndexReader> transferReaders;
+	private List<TransportIndex> transferParts;
+	private TransportTransferIndex[] transferIndexes;
 
 	public TransportRoutingContext(TransportRoutingConfiguration cfg, NativeLibrary library, BinaryMapIndexReader... readers) {
 		this.cfg = cfg;
@@ -67,6 +79,81 @@ public class TransportRoutingContext {
 		return loadNativeTransportStops(x, y, change, res);
 	}
 
+	// segments to change from stop: precomputed transfers if available, otherwise spatial search
+	public List<TransportRouteSegment> getTransferStops(TransportStop stop, List<TransportRouteSegment> res) throws IOException {
+		if (transferIndexDir == null || !loadTransfers(stop, res)) {
+			return getTransportStops(stop.x31, stop.y31, true, res);
+		}
+		return res;
+	}
+
+	private boolean loadTransfers(TransportStop stop, List<TransportRouteSegment> res) throws IOException {
+		long nanoTime = System.nanoTime();
+		if (transferIndexes == null) {
+			transferReaders = new ArrayList<BinaryMapIndexReader>();
+			transferParts = new ArrayList<TransportIndex>();
+			for (BinaryMapIndexReader r : transportStopsReader.routesFilesCache.keySet()) {
+				for (TransportIndex ind : r.getTransportIndexes()) {
+					transferReaders.add(r);
+					transferParts.add(ind);
+				}
+			}
+			transferIndexes = new TransportTransferIndex[transferParts.size()];
+		}
+		// 31 tile is smaller than on equator
+		double unit = MapUtils.squareRootDist31(0, stop.y31, 1 << 20, stop.y31) / (1 << 20);
+		int d = (int) (cfg.walkChangeRadius / Math.max(unit, 1e-3)) + 1;
+		int pz = 31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM;
+		int size = res.size();
+		TLongHashSet added = new TLongHashSet();
+		boolean found = false;
+		for (int i = 0; i < transferParts.size(); i++) {
+			TransportIndex ind = transferParts.get(i);
+			if (((long) ind.getLeft() << pz) - d > stop.x31 || ((long) ind.getRight() + 1 << pz) + d < stop.x31
+					|| ((long) ind.getTop() << pz) - d > stop.y31 || ((long) ind.getBottom() + 1 << pz) + d < stop.y31) {
+				continue;
+			}
+			if (transferIndexes[i] == null) {
+				transferIndexes[i] = TransportTransferIndex.getIndex(transferIndexDir, transferReaders.get(i), ind,
+						cfg.walkChangeRadius);
+			}
+			TransportTransferIndex ti = transferIndexes[i];
+			int pos = ti.findStop(stop.getId());
+			// stops of other index could be in radius
+			if (pos < 0 || !ti.covers(stop.x31, stop.y31, d)) {
+				res.subList(size, res.size()).clear();
+				return false;
+			}
+			for (int j = ti.getTransfersStart(pos); j < ti.getTransfersEnd(pos); j++) {
+				long id = ti.getTransferStopId(j);
+				if (ti.getTransferDist(j) > cfg.walkChangeRadius || !added.add(id)) {
+					continue;
+				}
+				int x = ti.getTransferX31(j) >> (31 - cfg.ZOOM_TO_LOAD_TILES);
+				int y = ti.getTransferY31(j) >> (31 - cfg.ZOOM_TO_LOAD_TILES);
+				getTile(x, y);
+				List<TransportRouteSegment> list = stopSegments.get(id);
+				if (list != null) {
+					loadedWays += list.size();
+					res.addAll(list);
+				}
+			}
+			found = true;
+		}
+		loadTime += System.nanoTime() - nanoTime;
+		return found;
+	}
+
+	private List<TransportRouteSegment> getTile(int x, int y) throws IOException {
+		long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
+		List<TransportRouteSegment> list = quadTree.get(tileId);
+		if(list == null) {
+			list = loadTile(x, y);
+			quadTree.put(tileId, list);
+		}
+		return list;
+	}
+
 	private List<TransportRouteSegment> loadNativeTransportStops(int sx, int sy, boolean change, List<TransportRouteSegment> res) throws IOException {
 		long nanoTime = System.nanoTime();
 		int d = change ? walkChangeRadiusIn31 : walkRadiusIn31;
@@ -76,12 +163,7 @@ public class TransportRoutingContext {
 		int by = (sy + d ) >> (31 - cfg.ZOOM_TO_LOAD_TILES);
 		for(int x = lx; x <= rx; x++) {
 			for(int y = ty; y <= by; y++) {
-				long tileId = (((long)x) << (cfg.ZOOM_TO_LOAD_TILES + 1)) + y;
-				List<TransportRouteSegment> list = quadTree.get(tileId);
-				if(list == null) {
-					list = loadTile(x, y);
-					quadTree.put(tileId, list);
-				}
+				List<TransportRouteSegment> list = getTile(x, y);
 				for(TransportRouteSegment r : list) {
 					TransportStop st = r.getStop(r.segStart);
 					if (Math.abs(st.x31 - sx) > walkRadiusIn31 || Math.abs(st.y31 - sy) > walkRadiusIn31) {
@@ -97,6 +179,33 @@ public class TransportRoutingContext {
 		return res;
 	}
 
+	TransportRaptorNetwork getRaptorNetwork(LatLon start, LatLon end) throws IOException {
+		int sx = MapUtils.get31TileNumberX(start.getLongitude()), sy = MapUtils.get31TileNumberY(start.getLatitude());
+		int ex = MapUtils.get31TileNumberX(end.getLongitude()), ey = MapUtils.get31TileNumberY(end.getLatitude());
+		// routes could deviate from straight line, so bbox is extended by quarter of distance
+		int d = walkRadiusIn31 + (int) (MapUtils.squareRootDist31(sx, sy, ex, ey) / 4 / MapUtils.getTileDistanceWidth(31));
+		int left = Math.max(0, Math.min(sx, ex) - d), right = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(sx, ex) + d);
+		int top = Math.max(0, Math.min(sy, ey) - d), bottom = (int) Math.min(Integer.MAX_VALUE, (long) Math.max(sy, ey) + d);
+		if (raptorNetwork == null || !raptorNetwork.contains(left, top, right, bottom)) {
+			long nanoTime = System.nanoTime();
+			BinaryMapIndexReader.SearchRequest<TransportStop> sr = BinaryMapIndexReader.buildSearchTransportRequest(left, right,
+					top, bottom, -1, null);
+			Collection<TransportStop> stops = transportStopsReader.readMergedTransportStops(sr);
+			TLongObjectHashMap<TransportRoute> routes = new TLongObjectHashMap<TransportRoute>();
+			for (TransportStop s : stops) {
+				if (s.isDeleted() || s.getRoutes() == null) {
+					continue;
+				}
+				for (TransportRoute route : s.getRoutes()) {
+					routes.put(route.getId(), route);
+				}
+			}
+			readTime += System.nanoTime() - nanoTime;
+			raptorNetwork = new TransportRaptorNetwork(cfg, routes.valueCollection(), left, top, right, bottom);
+			loadTime += System.nanoTime() - nanoTime;
+		}
+		return raptorNetwork;
+	}
 
 	private List<TransportRouteSegment> loadTile(int x, int y) throws IOException {
 		long nanoTime = System.nanoTime();
@@ -115,6 +224,7 @@ public class TransportRoutingContext {
 			if (s.isDeleted() || s.getRoutes() == null) {
 				continue;
 			}
+			int size = lst.size();
 			for (TransportRoute route : s.getRoutes()) {
 				int stopIndex = -1;
 				double dist = TransportRoute.SAME_STOP;
@@ -142,6 +252,9 @@ public class TransportRoutingContext {
 							s.toString(), route.getRef(), route.getId() / 2));
 				}
 			}
+			if (lst.size() > size) {
+				stopSegments.put(s.getId(), new ArrayList<TransportRouteSegment>(lst.subList(size, lst.size())));
+			}
 		}
 	}
 
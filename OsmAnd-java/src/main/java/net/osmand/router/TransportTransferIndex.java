@@ -0,0 +1,298 @@
+package net.osmand.router;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.PlatformUtil;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+// Precomputed walking transfers of one TransportIndex: for every stop (sorted by id) the stops within radius
+// (including itself) with location and distance. Built once by reading all stops of index, stored as a sidecar
+// file <obf name>.<index pointer>.transfers in cache directory and memory mapped on next runs.
+// File is rebuilt when obf size / date is changed or bigger radius is requested.
+// Loaded indexes are cached in memory by file (see clearCache).
+public class TransportTransferIndex {
+
+	private static final Log LOG = PlatformUtil.getLog(TransportTransferIndex.class);
+
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 8 + 8 + 8 + 4 + 4 + 4 + 4 * 4;
+	private static final String EXT = ".transfers";
+
+	private static final Map<String, TransportTransferIndex> indexes = new HashMap<String, TransportTransferIndex>();
+
+	private final ByteBuffer buf;
+	private final long obfLength;
+	private final long obfModified;
+	private final int radius;
+	private final int stops;
+	private final int transfers;
+	// bbox of index in 31 coordinates
+	private final int left31, top31, right31, bottom31;
+	private final int offsetsPos, idsPos, xPos, yPos, distPos;
+
+	private TransportTransferIndex(ByteBuffer buf) {
+		this.buf = buf;
+		int version = buf.getInt(0);
+		obfLength = buf.getLong(4);
+		obfModified = buf.getLong(12);
+		// 20 - index file pointer
+		radius = buf.getInt(28);
+		stops = buf.getInt(32);
+		transfers = buf.getInt(36);
+		left31 = buf.getInt(40);
+		top31 = buf.getInt(44);
+		right31 = buf.getInt(48);
+		bottom31 = buf.getInt(52);
+		offsetsPos = HEADER_SIZE + stops * 8;
+		idsPos = offsetsPos + (stops + 1) * 4;
+		xPos = idsPos + transfers * 8;
+		yPos = xPos + transfers * 4;
+		distPos = yPos + transfers * 4;
+		if (version != VERSION || buf.capacity() < distPos + transfers * 4) {
+			throw new IllegalArgumentException("Wrong transfers index");
+		}
+	}
+
+	public static TransportTransferIndex getIndex(File cacheDir, BinaryMapIndexReader reader, TransportIndex ind,
+	                                              int radius) throws IOException {
+		File obf = reader.getFile();
+		File file = new File(cacheDir, obf.getName() + "." + ind.getFilePointer() + EXT);
+		String key = file.getAbsolutePath();
+		synchronized (indexes) {
+			TransportTransferIndex index = indexes.get(key);
+			if (index != null && index.isValid(obf, radius)) {
+				return index;
+			}
+			index = null;
+			if (file.exists()) {
+				try {
+					index = new TransportTransferIndex(map(file));
+				} catch (IllegalArgumentException e) {
+					LOG.warn("Rebuild transfers index " + file.getName() + ": " + e.getMessage());
+				}
+			}
+			if (index == null || !index.isValid(obf, radius)) {
+				long time = System.currentTimeMillis();
+				byte[] data = build(reader, ind, Math.max(radius, index == null ? 0 : index.radius));
+				index = new TransportTransferIndex(ByteBuffer.wrap(data));
+				try {
+					write(file, data);
+					index = new TransportTransferIndex(map(file));
+				} catch (IOException e) {
+					// keep in memory
+					LOG.warn("Transfers index can't be stored " + file.getAbsolutePath() + ": " + e.getMessage());
+				}
+				LOG.info(String.format("Transfers index %s: %d stops, %d transfers, built in %d ms", file.getName(),
+						index.stops, index.transfers, System.currentTimeMillis() - time));
+			}
+			indexes.put(key, index);
+			return index;
+		}
+	}
+
+	// loaded indexes are kept between routing contexts, should be cleared when maps are reloaded / removed
+	public static void clearCache() {
+		synchronized (indexes) {
+			indexes.clear();
+		}
+	}
+
+	private boolean isValid(File obf, int radius) {
+		return obfLength == obf.length() && obfModified == obf.lastModified() && this.radius >= radius;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// mapping stays valid after channel is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void write(File file, byte[] data) throws IOException {
+		File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+		FileOutputStream fous = new FileOutputStream(tmp);
+		try {
+			fous.write(data);
+		} finally {
+			fous.close();
+		}
+		file.delete();
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+			throw new IOException("File can't be renamed");
+		}
+	}
+
+	private static byte[] build(BinaryMapIndexReader reader, TransportIndex ind, int radius) throws IOException {
+		int pz = 31 - BinaryMapIndexReader.TRANSPORT_STOP_ZOOM;
+		int left = ind.getLeft() << pz, top = ind.getTop() << pz;
+		int right = (int) Math.min(Integer.MAX_VALUE, ((long) ind.getRight() + 1) << pz);
+		int bottom = (int) Math.min(Integer.MAX_VALUE, ((long) ind.getBottom() + 1) << pz);
+		List<TransportStop> loaded;
+		synchronized (reader) {
+			loaded = reader.searchTransportIndex(ind,
+					BinaryMapIndexReader.buildSearchTransportRequest(left, right, top, bottom, -1, null));
+		}
+		TLongObjectHashMap<TransportStop> unique = new TLongObjectHashMap<TransportStop>();
+		for (TransportStop s : loaded) {
+			if (!s.isMissingStop()) {
+				unique.put(s.getId(), s);
+			}
+		}
+		long[] ids = unique.keys();
+		Arrays.sort(ids);
+		int[] x = new int[ids.length];
+		int[] y = new int[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			TransportStop s = unique.get(ids[i]);
+			x[i] = s.x31;
+			y[i] = s.y31;
+		}
+		// grid of radius cells (31 tile is smaller than on equator)
+		double unit = Math.min(MapUtils.squareRootDist31(0, top, 1 << 20, top), MapUtils.squareRootDist31(0, bottom, 1 << 20, bottom)) / (1 << 20);
+		int d = (int) Math.min(1 << 30, Math.max(1, radius / Math.max(unit, 1e-3)));
+		int shift = 32 - Integer.numberOfLeadingZeros(d);
+		TLongObjectHashMap<TIntArrayList> grid = new TLongObjectHashMap<TIntArrayList>();
+		for (int i = 0; i < ids.length; i++) {
+			long k = gridKey(x[i] >> shift, y[i] >> shift);
+			TIntArrayList cell = grid.get(k);
+			if (cell == null) {
+				cell = new TIntArrayList(4);
+				grid.put(k, cell);
+			}
+			cell.add(i);
+		}
+		int[] offsets = new int[ids.length + 1];
+		TIntArrayList transfers = new TIntArrayList();
+		// float bits (no boxing)
+		TIntArrayList dists = new TIntArrayList();
+		for (int i = 0; i < ids.length; i++) {
+			int cx = x[i] >> shift, cy = y[i] >> shift;
+			for (int gx = cx - 1; gx <= cx + 1; gx++) {
+				for (int gy = cy - 1; gy <= cy + 1; gy++) {
+					TIntArrayList cell = grid.get(gridKey(gx, gy));
+					for (int j = 0; cell != null && j < cell.size(); j++) {
+						int n = cell.getQuick(j);
+						double dist = MapUtils.squareRootDist31(x[i], y[i], x[n], y[n]);
+						if (dist <= radius) {
+							transfers.add(n);
+							dists.add(Float.floatToRawIntBits((float) dist));
+						}
+					}
+				}
+			}
+			offsets[i + 1] = transfers.size();
+		}
+
+		ByteArrayOutputStream bous = new ByteArrayOutputStream(HEADER_SIZE + ids.length * 12 + transfers.size() * 20);
+		DataOutputStream out = new DataOutputStream(bous);
+		out.writeInt(VERSION);
+		out.writeLong(reader.getFile().length());
+		out.writeLong(reader.getFile().lastModified());
+		out.writeLong(ind.getFilePointer());
+		out.writeInt(radius);
+		out.writeInt(ids.length);
+		out.writeInt(transfers.size());
+		out.writeInt(left);
+		out.writeInt(top);
+		out.writeInt(right);
+		out.writeInt(bottom);
+		for (long id : ids) {
+			out.writeLong(id);
+		}
+		for (int o : offsets) {
+			out.writeInt(o);
+		}
+		for (int i = 0; i < transfers.size(); i++) {
+			out.writeLong(ids[transfers.getQuick(i)]);
+		}
+		for (int i = 0; i < transfers.size(); i++) {
+			out.writeInt(x[transfers.getQuick(i)]);
+		}
+		for (int i = 0; i < transfers.size(); i++) {
+			out.writeInt(y[transfers.getQuick(i)]);
+		}
+		for (int i = 0; i < dists.size(); i++) {
+			out.writeFloat(Float.intBitsToFloat(dists.getQuick(i)));
+		}
+		out.close();
+		return bous.toByteArray();
+	}
+
+	private static long gridKey(int x, int y) {
+		return (((long) x) << 32) | (y & 0xffffffffL);
+	}
+
+	public int getRadius() {
+		return radius;
+	}
+
+	// transfers of point are complete only if all stops within radius belong to this index
+	public boolean covers(int x31, int y31, int radius31) {
+		return (long) left31 + radius31 <= x31 && (long) right31 - radius31 >= x31
+				&& (long) top31 + radius31 <= y31 && (long) bottom31 - radius31 >= y31;
+	}
+
+	// position of stop or -1
+	public int findStop(long stopId) {
+		int lo = 0, hi = stops - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			long id = buf.getLong(HEADER_SIZE + mid * 8);
+			if (id < stopId) {
+				lo = mid + 1;
+			} else if (id > stopId) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	// transfers of stop are [getTransfersStart(pos), getTransfersEnd(pos))
+	public int getTransfersStart(int pos) {
+		return buf.getInt(offsetsPos + pos * 4);
+	}
+
+	public int getTransfersEnd(int pos) {
+		return buf.getInt(offsetsPos + pos * 4 + 4);
+	}
+
+	public long getTransferStopId(int i) {
+		return buf.getLong(idsPos + i * 8);
+	}
+
+	public int getTransferX31(int i) {
+		return buf.getInt(xPos + i * 4);
+	}
+
+	public int getTransferY31(int i) {
+		return buf.getInt(yPos + i * 4);
+	}
+
+	public float getTransferDist(int i) {
+		return buf.getFloat(distPos + i * 4);
+	}
+}
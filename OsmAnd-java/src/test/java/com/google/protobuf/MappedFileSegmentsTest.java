@@ -0,0 +1,140 @@
+package com.google.protobuf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+// Mapped CodedInputStream over 1 KB segments (buffer is 5 KB), so refill, seek, skip and bytes fields cross
+// segment boundaries
+public class MappedFileSegmentsTest {
+
+	private static final int SEGMENT_SHIFT = 10;
+	private static final int RECORDS = 300;
+
+	private static File file;
+	// record: varint value, bytes field (varint length + bytes)
+	private static long[] offsets;
+	private static int[] lengths;
+
+	@BeforeClass
+	public static void writeFile() throws IOException {
+		file = File.createTempFile("mapped", ".bin");
+		offsets = new long[RECORDS];
+		lengths = new int[RECORDS];
+		Random rnd = new Random(7);
+		FileOutputStream fous = new FileOutputStream(file);
+		CodedOutputStream out = CodedOutputStream.newInstance(fous);
+		long pos = 0;
+		for (int i = 0; i < RECORDS; i++) {
+			offsets[i] = pos;
+			// one field bigger than stream buffer
+			lengths[i] = i == RECORDS / 2 ? 12000 : rnd.nextInt(700);
+			out.writeRawVarint32(value(i));
+			out.writeRawVarint32(lengths[i]);
+			out.writeRawBytes(bytes(i));
+			pos += CodedOutputStream.computeRawVarint32Size(value(i))
+					+ CodedOutputStream.computeRawVarint32Size(lengths[i]) + lengths[i];
+		}
+		out.flush();
+		fous.close();
+	}
+
+	@AfterClass
+	public static void deleteFile() {
+		file.delete();
+	}
+
+	private static int value(int i) {
+		return i * 100003;
+	}
+
+	private static byte[] bytes(int i) {
+		byte[] b = new byte[lengths[i]];
+		for (int k = 0; k < b.length; k++) {
+			b[k] = (byte) (i + k);
+		}
+		return b;
+	}
+
+	private static void checkRecord(CodedInputStream in, int i) throws IOException {
+		Assert.assertEquals(offsets[i], in.getTotalBytesRead());
+		Assert.assertEquals(value(i), in.readRawVarint32());
+		ByteBuffer buf = in.readByteBuffer();
+		Assert.assertTrue(buf.isReadOnly());
+		byte[] actual = new byte[buf.remaining()];
+		buf.get(actual);
+		Assert.assertArrayEquals(bytes(i), actual);
+	}
+
+	private static CodedInputStream newStream() throws IOException {
+		CodedInputStream in = CodedInputStream.newInstance(new MappedFileSegments(file, SEGMENT_SHIFT));
+		in.setSizeLimit(CodedInputStream.MAX_DEFAULT_SIZE_LIMIT);
+		return in;
+	}
+
+	@Test
+	public void testSequentialRead() throws IOException {
+		CodedInputStream in = newStream();
+		for (int i = 0; i < RECORDS; i++) {
+			checkRecord(in, i);
+		}
+		Assert.assertTrue(in.isAtEnd());
+	}
+
+	@Test
+	public void testSeekAndSkip() throws IOException {
+		CodedInputStream in = newStream();
+		Random rnd = new Random(11);
+		for (int k = 0; k < 200; k++) {
+			int i = rnd.nextInt(RECORDS);
+			in.seek(offsets[i]);
+			checkRecord(in, i);
+			if (i + 1 < RECORDS) {
+				int next = i + 1 + rnd.nextInt(RECORDS - i - 1);
+				in.skipRawBytes(offsets[next] - in.getTotalBytesRead());
+				checkRecord(in, next);
+			}
+		}
+	}
+
+	@Test
+	public void testReadRawBytesAcrossSegments() throws IOException {
+		CodedInputStream in = newStream();
+		int i = RECORDS / 2;
+		in.seek(offsets[i]);
+		in.readRawVarint32();
+		Assert.assertArrayEquals(bytes(i), in.readRawBytes(in.readRawVarint32()));
+		checkRecord(in, i + 1);
+	}
+
+	@Test
+	public void testByteBufferIsViewInsideSegment() throws IOException {
+		CodedInputStream in = newStream();
+		int inside = 0;
+		int crossing = 0;
+		for (int i = 0; i < RECORDS; i++) {
+			in.readRawVarint32();
+			long start = in.getTotalBytesRead() + CodedOutputStream.computeRawVarint32Size(lengths[i]);
+			ByteBuffer buf = in.readByteBuffer();
+			if (lengths[i] == 0) {
+				continue;
+			}
+			boolean sameSegment = (start >> SEGMENT_SHIFT) == ((start + lengths[i] - 1) >> SEGMENT_SHIFT);
+			// view of mapping is direct, copy is heap buffer
+			Assert.assertEquals(sameSegment, buf.isDirect());
+			if (sameSegment) {
+				inside++;
+			} else {
+				crossing++;
+			}
+		}
+		Assert.assertTrue(inside > 0 && crossing > 0);
+	}
+}
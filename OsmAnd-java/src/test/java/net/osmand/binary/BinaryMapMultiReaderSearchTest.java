@@ -0,0 +1,206 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.ResultMatcher;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+
+// Parallel search of many files with stub readers: results in order of readers, global limit, cancellation
+public class BinaryMapMultiReaderSearchTest {
+
+	private File file;
+	private ExecutorService executor;
+	private List<StubReader> readers = new ArrayList<StubReader>();
+
+	// reader without file structure, publishes count objects with id = 100 * fileId + i every delay ms
+	private static class StubReader extends BinaryMapIndexReader {
+		final int fileId;
+		final int count;
+		final long delay;
+		volatile int visited;
+		volatile boolean started;
+		volatile boolean finished;
+
+		StubReader(File file, int fileId, int count, long delay) throws IOException {
+			super(new RandomAccessFile(file, "r"), file, false);
+			this.fileId = fileId;
+			this.count = count;
+			this.delay = delay;
+		}
+
+		@Override
+		public List<BinaryMapDataObject> searchMapIndex(SearchRequest<BinaryMapDataObject> req) throws IOException {
+			started = true;
+			try {
+				for (int i = 0; i < count && !req.isCancelled(); i++) {
+					if (delay > 0) {
+						Thread.sleep(delay);
+					}
+					visited++;
+					BinaryMapDataObject o = new BinaryMapDataObject();
+					o.id = 100 * fileId + i;
+					req.publish(o);
+				}
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			} finally {
+				finished = true;
+			}
+			return req.getSearchResults();
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("stub", ".obf");
+		FileOutputStream fous = new FileOutputStream(file);
+		fous.write(new byte[10]);
+		fous.close();
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		for (StubReader r : readers) {
+			r.close();
+		}
+		file.delete();
+	}
+
+	private StubReader reader(int fileId, int count, long delay) throws IOException {
+		StubReader r = new StubReader(file, fileId, count, delay);
+		readers.add(r);
+		return r;
+	}
+
+	private static SearchRequest<BinaryMapDataObject> request(ResultMatcher<BinaryMapDataObject> matcher) {
+		return BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15, null, matcher);
+	}
+
+	private static List<Long> ids(List<BinaryMapDataObject> res) {
+		List<Long> ids = new ArrayList<Long>();
+		for (BinaryMapDataObject o : res) {
+			ids.add(o.getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testOrderOfReaders() throws Exception {
+		// first file is the slowest
+		List<BinaryMapIndexReader> list = Arrays.<BinaryMapIndexReader>asList(reader(0, 3, 20), reader(1, 3, 5), reader(2, 3, 0));
+		List<BinaryMapDataObject> res = new BinaryMapMultiReaderSearch(executor).searchMapIndex(list, request(null));
+		Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 100L, 101L, 102L, 200L, 201L, 202L), ids(res));
+	}
+
+	@Test
+	public void testGlobalLimit() throws Exception {
+		StubReader r1 = reader(1, 100, 0);
+		StubReader r2 = reader(2, 100, 0);
+		List<BinaryMapIndexReader> list = Arrays.<BinaryMapIndexReader>asList(reader(0, 3, 0), r1, r2);
+		SearchRequest<BinaryMapDataObject> req = request(null);
+		req.setLimit(5);
+		List<BinaryMapDataObject> res = new BinaryMapMultiReaderSearch(executor).searchMapIndex(list, req);
+		Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 100L, 101L), ids(res));
+		// every file stops reading at limit
+		Assert.assertTrue(r1.visited <= 5);
+		Assert.assertTrue(r2.visited <= 5);
+	}
+
+	@Test
+	public void testLimitWithFilteringMatcher() throws Exception {
+		List<BinaryMapIndexReader> list = Arrays.<BinaryMapIndexReader>asList(reader(0, 6, 0), reader(1, 6, 0));
+		SearchRequest<BinaryMapDataObject> req = request(new ResultMatcher<BinaryMapDataObject>() {
+			@Override
+			public boolean publish(BinaryMapDataObject object) {
+				return object.getId() % 3 == 0;
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return false;
+			}
+		});
+		req.setLimit(3);
+		// limit counts only accepted objects as in search of single file
+		List<BinaryMapDataObject> res = new BinaryMapMultiReaderSearch(executor).searchMapIndex(list, req);
+		Assert.assertEquals(Arrays.asList(0L, 3L, 102L), ids(res));
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		final StubReader r0 = reader(0, 1000, 2);
+		StubReader r1 = reader(1, 1000, 2);
+		List<BinaryMapIndexReader> list = Arrays.<BinaryMapIndexReader>asList(r0, r1);
+		List<BinaryMapDataObject> res = new BinaryMapMultiReaderSearch(executor).searchMapIndex(list,
+				request(new ResultMatcher<BinaryMapDataObject>() {
+					@Override
+					public boolean publish(BinaryMapDataObject object) {
+						return true;
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return r0.visited >= 10;
+					}
+				}));
+		Assert.assertTrue(res.isEmpty());
+		waitFinished();
+		Assert.assertTrue(r0.visited < 1000);
+		Assert.assertTrue(r1.visited < 1000);
+	}
+
+	@Test
+	public void testInterruptedCallerGetsException() throws Exception {
+		final List<BinaryMapIndexReader> list = Arrays.<BinaryMapIndexReader>asList(reader(0, 1000, 2), reader(1, 1000, 2));
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread caller = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					new BinaryMapMultiReaderSearch(executor).searchMapIndex(list, request(null));
+				} catch (Throwable e) {
+					error.set(e);
+				}
+			}
+		});
+		caller.start();
+		while (readers.get(0).visited < 5) {
+			Thread.sleep(2);
+		}
+		caller.interrupt();
+		caller.join(5000);
+		Assert.assertFalse(caller.isAlive());
+		Assert.assertTrue(String.valueOf(error.get()), error.get() instanceof InterruptedException);
+		waitFinished();
+		for (StubReader r : readers) {
+			Assert.assertTrue(r.visited < 1000);
+		}
+	}
+
+	// search of file could be cancelled before start
+	private void waitFinished() throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		for (StubReader r : readers) {
+			while (r.started && !r.finished) {
+				Assert.assertTrue(System.currentTimeMillis() < end);
+				Thread.sleep(2);
+			}
+		}
+	}
+}
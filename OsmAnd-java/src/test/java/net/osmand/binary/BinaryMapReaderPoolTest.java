@@ -0,0 +1,107 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.data.Amenity;
+import net.osmand.util.Algorithms;
+
+import com.google.protobuf.MappedFileSegments;
+
+// Concurrency stress test: same queries from 1..N threads through reader pool must return the same results
+public class BinaryMapReaderPoolTest {
+
+	private static final String SEARCH_RESOURCES_PATH = "src/test/resources/search/";
+	private static final int QUERIES_PER_THREAD = 20;
+
+	@Test
+	public void testConcurrentPoiSearch() throws Exception {
+		File obfFile = prepareObfFile();
+		if (obfFile == null) {
+			System.out.printf("Could not find obf files in %s%n", SEARCH_RESOURCES_PATH);
+			return;
+		}
+		BinaryMapIndexReader raf = null;
+		BinaryMapIndexReader mapped = null;
+		try {
+			raf = new BinaryMapIndexReader(new RandomAccessFile(obfFile, "r"), obfFile);
+			runStress(new BinaryMapReaderPool(raf));
+			mapped = new BinaryMapIndexReader(new MappedFileSegments(obfFile));
+			runStress(new BinaryMapReaderPool(mapped));
+		} finally {
+			if (raf != null) {
+				raf.close();
+			}
+			if (mapped != null) {
+				mapped.close();
+			}
+			obfFile.delete();
+		}
+	}
+
+	private void runStress(final BinaryMapReaderPool pool) throws Exception {
+		final int expected = pool.searchPoi(buildRequest()).size();
+		int cores = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= cores; threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < threads * QUERIES_PER_THREAD; i++) {
+				futures.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return pool.searchPoi(buildRequest()).size();
+					}
+				}));
+			}
+			for (Future<Integer> f : futures) {
+				Assert.assertEquals(expected, f.get().intValue());
+			}
+			executor.shutdown();
+		}
+		Assert.assertTrue(pool.getCreatedReaders() <= cores);
+		pool.close();
+	}
+
+	private static SearchRequest<Amenity> buildRequest() {
+		return BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15,
+				BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+	}
+
+	private static File prepareObfFile() throws IOException {
+		File[] files = new File(SEARCH_RESOURCES_PATH).listFiles();
+		if (files == null) {
+			return null;
+		}
+		// the biggest map gives the most representative load
+		File obfZipFile = null;
+		for (File file : files) {
+			if (file.getName().endsWith(".obf.gz") && (obfZipFile == null || file.length() > obfZipFile.length())) {
+				obfZipFile = file;
+			}
+		}
+		if (obfZipFile == null) {
+			return null;
+		}
+		File obfFile = new File(obfZipFile.getParentFile(), obfZipFile.getName().replace(".obf.gz", ".obf"));
+		GZIPInputStream gzin = new GZIPInputStream(new FileInputStream(obfZipFile));
+		FileOutputStream fous = new FileOutputStream(obfFile);
+		Algorithms.streamCopy(gzin, fous);
+		fous.close();
+		gzin.close();
+		return obfFile;
+	}
+}
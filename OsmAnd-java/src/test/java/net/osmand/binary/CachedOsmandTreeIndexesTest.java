@@ -0,0 +1,184 @@
+package net.osmand.binary;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader.MapIndex;
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.data.Amenity;
+import net.osmand.util.Algorithms;
+
+// Trees cache is written and read back, reader initialized from it returns the same map, POI and route data
+// as reader which reads headers from file; broken entry doesn't change reader
+public class CachedOsmandTreeIndexesTest {
+
+	private static final String ROUTING_RESOURCES_PATH = "src/test/resources/routing/";
+	private static final String SEARCH_RESOURCES_PATH = "src/test/resources/search/";
+
+	private File dir;
+	private List<File> obfs = new ArrayList<File>();
+	private List<BinaryMapIndexReader> readers = new ArrayList<BinaryMapIndexReader>();
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("trees-cache").toFile();
+		File routing = new File(ROUTING_RESOURCES_PATH + "Routing_test_archive.obf");
+		if (routing.exists()) {
+			obfs.add(routing);
+		}
+		File[] files = new File(SEARCH_RESOURCES_PATH).listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			if (files[i].getName().endsWith(".obf.gz")) {
+				File obf = new File(dir, files[i].getName().replace(".obf.gz", ".obf"));
+				GZIPInputStream gzin = new GZIPInputStream(new FileInputStream(files[i]));
+				FileOutputStream fous = new FileOutputStream(obf);
+				Algorithms.streamCopy(gzin, fous);
+				fous.close();
+				gzin.close();
+				obfs.add(obf);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (BinaryMapIndexReader r : readers) {
+			r.close();
+		}
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private BinaryMapIndexReader open(File f) throws IOException {
+		BinaryMapIndexReader r = new BinaryMapIndexReader(new RandomAccessFile(f, "r"), f);
+		readers.add(r);
+		return r;
+	}
+
+	@Test
+	public void testReaderFromCacheEqualsFresh() throws IOException {
+		if (obfs.isEmpty()) {
+			System.out.printf("Could not find obf files in %s, %s%n", ROUTING_RESOURCES_PATH, SEARCH_RESOURCES_PATH);
+			return;
+		}
+		File cacheFile = new File(dir, CachedOsmandTreeIndexes.TREES_DEFAULT_FILENAME);
+		CachedOsmandTreeIndexes cache = new CachedOsmandTreeIndexes();
+		for (File f : obfs) {
+			cache.addToCache(open(f), f);
+		}
+		cache.writeToFile(cacheFile);
+
+		CachedOsmandTreeIndexes read = new CachedOsmandTreeIndexes();
+		read.readFromFile(cacheFile);
+		for (File f : obfs) {
+			BinaryMapIndexReader cached = open(f);
+			Assert.assertTrue(f.getName(), read.initReader(cached, f));
+			for (MapIndex mi : cached.mapIndexes) {
+				for (MapRoot root : mi.getRoots()) {
+					Assert.assertNotNull(root.trees);
+				}
+			}
+			BinaryMapIndexReader fresh = open(f);
+			Assert.assertEquals(f.getName(), getData(fresh), getData(cached));
+		}
+	}
+
+	@Test
+	public void testBrokenEntryDoesNotChangeReader() throws IOException {
+		if (obfs.isEmpty()) {
+			return;
+		}
+		File f = obfs.get(0);
+		File cacheFile = new File(dir, CachedOsmandTreeIndexes.TREES_DEFAULT_FILENAME);
+		CachedOsmandTreeIndexes cache = new CachedOsmandTreeIndexes();
+		cache.addToCache(open(f), f);
+		cache.writeToFile(cacheFile);
+		appendToEntry(cacheFile);
+
+		CachedOsmandTreeIndexes read = new CachedOsmandTreeIndexes();
+		read.readFromFile(cacheFile);
+		BinaryMapIndexReader reader = open(f);
+		// entry is parsed completely, only extra byte at the end doesn't match
+		Assert.assertFalse(read.initReader(reader, f));
+		for (MapIndex mi : reader.mapIndexes) {
+			for (MapRoot root : mi.getRoots()) {
+				Assert.assertNull(root.trees);
+			}
+		}
+		for (PoiRegion reg : reader.poiIndexes) {
+			Assert.assertTrue(reg.categories.isEmpty());
+		}
+		for (RouteRegion reg : reader.routingIndexes) {
+			for (RouteSubregion s : reg.subregions) {
+				Assert.assertNull(s.subregions);
+			}
+		}
+		Assert.assertEquals(getData(open(f)), getData(reader));
+	}
+
+	// single entry file: version, files, name, size, date, length, data + extra byte
+	private static void appendToEntry(File cacheFile) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(cacheFile));
+		int version = in.readInt();
+		Assert.assertEquals(1, in.readInt());
+		String name = in.readUTF();
+		long size = in.readLong();
+		long date = in.readLong();
+		byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		in.close();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(cacheFile));
+		out.writeInt(version);
+		out.writeInt(1);
+		out.writeUTF(name);
+		out.writeLong(size);
+		out.writeLong(date);
+		out.writeInt(data.length + 1);
+		out.write(data);
+		out.write(0);
+		out.close();
+	}
+
+	private static List<String> getData(BinaryMapIndexReader reader) throws IOException {
+		List<String> res = new ArrayList<String>();
+		for (BinaryMapDataObject o : reader.searchMapIndex(BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE,
+				0, Integer.MAX_VALUE, 15, null))) {
+			res.add("map " + o.getId());
+		}
+		for (Amenity a : reader.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0,
+				Integer.MAX_VALUE, 15, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null))) {
+			res.add("poi " + a.getId() + " " + a.getType().getKeyName() + " " + a.getSubType());
+		}
+		SearchRequest<?> all = BinaryMapIndexReader.buildSearchRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15, null);
+		for (RouteRegion reg : reader.getRoutingIndexes()) {
+			for (List<RouteSubregion> l : Arrays.asList(reg.getSubregions(), reg.getBaseSubregions())) {
+				List<RouteSubregion> subregions = reader.searchRouteIndexTree(all, l);
+				for (RouteSubregion s : subregions) {
+					res.add("route " + s.filePointer + " " + reader.loadRouteIndexData(s).size());
+				}
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,59 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader.MapRoot;
+
+public class MapDataBlockCacheTest {
+
+	@Test
+	public void testLruEvictionBySize() {
+		File file = new File("test.obf");
+		MapRoot root = new MapRoot();
+		long blockSize = new MapDataBlockCache.CachedBlock(createObjects(10)).size;
+		MapDataBlockCache cache = new MapDataBlockCache(blockSize * 2);
+		cache.put(file, 100, root, createObjects(10));
+		cache.put(file, 200, root, createObjects(10));
+		// touch first block, so second one is evicted
+		Assert.assertNotNull(cache.get(file, 100, root));
+		cache.put(file, 300, root, createObjects(10));
+		Assert.assertEquals(2, cache.getBlocksCount());
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertNull(cache.get(file, 200, root));
+		Assert.assertNotNull(cache.get(file, 300, root));
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertTrue(cache.getSizeBytes() <= blockSize * 2);
+	}
+
+	@Test
+	public void testBlocksOfOtherRootAreNotShared() {
+		File file = new File("test.obf");
+		MapDataBlockCache cache = new MapDataBlockCache(Long.MAX_VALUE);
+		cache.put(file, 100, new MapRoot(), createObjects(1));
+		Assert.assertNull(cache.get(file, 100, new MapRoot()));
+	}
+
+	@Test
+	public void testObjectBounds() {
+		List<BinaryMapDataObject> objects = new ArrayList<BinaryMapDataObject>();
+		objects.add(new BinaryMapDataObject(1, new int[] { 10, 20, 5, 40, 30, 15 }, new int[0][0], 0, false,
+				new int[] { 1 }, new int[0], 0, 0));
+		MapDataBlockCache.CachedBlock block = new MapDataBlockCache.CachedBlock(objects);
+		Assert.assertArrayEquals(new int[] { 5, 15, 30, 40 }, block.bounds);
+	}
+
+	private static List<BinaryMapDataObject> createObjects(int count) {
+		List<BinaryMapDataObject> objects = new ArrayList<BinaryMapDataObject>();
+		for (int i = 0; i < count; i++) {
+			objects.add(new BinaryMapDataObject(i, new int[] { i, i, i + 1, i + 1 }, new int[0][0], 0, false,
+					new int[] { 1 }, new int[0], 0, 0));
+		}
+		return objects;
+	}
+}
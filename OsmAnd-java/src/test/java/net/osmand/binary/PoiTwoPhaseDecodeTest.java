@@ -0,0 +1,198 @@
+package net.osmand.binary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import net.osmand.Location;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiAdditionalFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchPoiTypeFilter;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapPoiReaderAdapter.PoiSubType;
+import net.osmand.data.Amenity;
+import net.osmand.osm.PoiCategory;
+import net.osmand.util.Algorithms;
+
+// Filtered POI requests decoded in two phases (projection to cursor, then accepted atoms) should return
+// the same amenities as single pass decode
+public class PoiTwoPhaseDecodeTest {
+
+	private static final String SEARCH_RESOURCES_PATH = "src/test/resources/search/";
+
+	private static File obfFile;
+	private static BinaryMapIndexReader reader;
+	private static List<Amenity> all;
+
+	@BeforeClass
+	public static void setUp() throws IOException {
+		obfFile = prepareObfFile();
+		if (obfFile == null) {
+			System.out.printf("Could not find obf files in %s%n", SEARCH_RESOURCES_PATH);
+			return;
+		}
+		reader = new BinaryMapIndexReader(new RandomAccessFile(obfFile, "r"), obfFile);
+		all = reader.searchPoi(BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE,
+				15, BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null));
+	}
+
+	@AfterClass
+	public static void tearDown() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+		if (obfFile != null) {
+			obfFile.delete();
+		}
+	}
+
+	private interface RequestFactory {
+		SearchRequest<Amenity> create();
+	}
+
+	private static List<String> search(RequestFactory factory, boolean twoPhase) throws IOException {
+		BinaryMapPoiReaderAdapter.TWO_PHASE_DECODE = twoPhase;
+		try {
+			List<String> res = new ArrayList<String>();
+			for (Amenity a : reader.searchPoi(factory.create())) {
+				TreeMap<String, String> info = new TreeMap<String, String>();
+				for (String key : a.getAdditionalInfoKeys()) {
+					info.put(key, a.getAdditionalInfo(key));
+				}
+				res.add(a.getId() + " " + a.getType().getKeyName() + " " + a.getSubType() + " " + a.getLocation() + " "
+						+ a.getName() + " " + new TreeMap<String, String>(a.getNamesMap(true)) + " " + info);
+			}
+			return res;
+		} finally {
+			BinaryMapPoiReaderAdapter.TWO_PHASE_DECODE = true;
+		}
+	}
+
+	private static void assertSameResults(RequestFactory factory) throws IOException {
+		List<String> single = search(factory, false);
+		List<String> twoPhase = search(factory, true);
+		Assert.assertFalse(single.isEmpty());
+		Assert.assertTrue(single.size() < all.size());
+		Assert.assertEquals(single, twoPhase);
+	}
+
+	@Test
+	public void testTypeFilter() throws IOException {
+		if (reader == null) {
+			return;
+		}
+		Assert.assertFalse(all.isEmpty());
+		// every second subtype of category
+		final PoiCategory category = all.get(all.size() / 2).getType();
+		final SearchPoiTypeFilter filter = new SearchPoiTypeFilter() {
+			@Override
+			public boolean accept(PoiCategory type, String subcategory) {
+				return type == category && (subcategory.hashCode() & 1) == 0;
+			}
+
+			@Override
+			public boolean isEmpty() {
+				return false;
+			}
+		};
+		assertSameResults(new RequestFactory() {
+			@Override
+			public SearchRequest<Amenity> create() {
+				return BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15,
+						filter, null);
+			}
+		});
+	}
+
+	@Test
+	public void testAdditionalFilter() throws IOException {
+		if (reader == null) {
+			return;
+		}
+		final SearchPoiAdditionalFilter filter = new SearchPoiAdditionalFilter() {
+			@Override
+			public boolean accept(PoiSubType poiSubType, String value) {
+				return (value.hashCode() & 1) == 0;
+			}
+
+			@Override
+			public String getName() {
+				return "test";
+			}
+
+			@Override
+			public String getIconResource() {
+				return null;
+			}
+		};
+		assertSameResults(new RequestFactory() {
+			@Override
+			public SearchRequest<Amenity> create() {
+				return BinaryMapIndexReader.buildSearchPoiRequest(0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 15,
+						BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, filter, null);
+			}
+		});
+	}
+
+	@Test
+	public void testRouteRadius() throws IOException {
+		if (reader == null) {
+			return;
+		}
+		// route through a few amenities from south to north
+		List<Amenity> sorted = new ArrayList<Amenity>(all);
+		Collections.sort(sorted, new Comparator<Amenity>() {
+			@Override
+			public int compare(Amenity o1, Amenity o2) {
+				return Double.compare(o1.getLocation().getLatitude(), o2.getLocation().getLatitude());
+			}
+		});
+		final List<Location> route = new ArrayList<Location>();
+		for (int i = 0; i < sorted.size(); i += Math.max(1, sorted.size() / 5)) {
+			route.add(new Location("", sorted.get(i).getLocation().getLatitude(), sorted.get(i).getLocation().getLongitude()));
+		}
+		assertSameResults(new RequestFactory() {
+			@Override
+			public SearchRequest<Amenity> create() {
+				return BinaryMapIndexReader.buildSearchPoiRequest(route, 200,
+						BinaryMapIndexReader.ACCEPT_ALL_POI_TYPE_FILTER, null);
+			}
+		});
+	}
+
+	private static File prepareObfFile() throws IOException {
+		File[] files = new File(SEARCH_RESOURCES_PATH).listFiles();
+		if (files == null) {
+			return null;
+		}
+		// the biggest map has most of categories and additional tags
+		File obfZipFile = null;
+		for (File file : files) {
+			if (file.getName().endsWith(".obf.gz") && (obfZipFile == null || file.length() > obfZipFile.length())) {
+				obfZipFile = file;
+			}
+		}
+		if (obfZipFile == null) {
+			return null;
+		}
+		File obfFile = new File(obfZipFile.getParentFile(), obfZipFile.getName().replace(".obf.gz", ".poi-decode.obf"));
+		GZIPInputStream gzin = new GZIPInputStream(new FileInputStream(obfZipFile));
+		FileOutputStream fous = new FileOutputStream(obfFile);
+		Algorithms.streamCopy(gzin, fous);
+		fous.close();
+		gzin.close();
+		return obfFile;
+	}
+}
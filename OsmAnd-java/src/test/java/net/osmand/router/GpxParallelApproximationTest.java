@@ -0,0 +1,62 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.LocationsHolder;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+
+// Approximation by routing split into chunks on several threads should give the same route and final points
+// (anchors stitching, gpx point indexes and targetInd of chunk points are remapped to the whole track)
+@RunWith(Parameterized.class)
+public class GpxParallelApproximationTest extends RoutingTestBase {
+
+	// several chunks even for short test routes
+	private static final double MIN_CHUNK_DISTANCE = 300;
+
+	public GpxParallelApproximationTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testParallelEqualsSequential() throws Exception {
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd().setGpxApproximationMinChunkDistance(MIN_CHUNK_DISTANCE);
+		List<RouteSegmentResult> route = fe.searchRoute(createContext(fe), te.getStartPoint(), te.getEndPoint(), null).detailed;
+		Assert.assertNotNull(route);
+		List<LatLon> track = getTrack(route);
+		GpxRouteApproximation sequential = approximate(fe, track, 1);
+		GpxRouteApproximation parallel = approximate(fe, track, 4);
+		Assert.assertFalse(sequential.fullRoute.isEmpty());
+		Assert.assertEquals(segments(sequential.fullRoute), segments(parallel.fullRoute));
+		Assert.assertEquals(finalPoints(sequential), finalPoints(parallel));
+	}
+
+	private GpxRouteApproximation approximate(RoutePlannerFrontEnd fe, List<LatLon> track, int threads) throws Exception {
+		fe.setGpxApproximationThreads(threads);
+		GpxRouteApproximation gctx = new GpxRouteApproximation(createContext(fe));
+		List<GpxPoint> gpxPoints = fe.generateGpxPoints(gctx, new LocationsHolder(track));
+		return fe.searchGpxRoute(gctx, gpxPoints, null, false);
+	}
+
+	private static List<String> segments(List<RouteSegmentResult> route) {
+		List<String> l = new ArrayList<>();
+		for (RouteSegmentResult s : route) {
+			l.add(toString(s));
+		}
+		return l;
+	}
+
+	private static List<String> finalPoints(GpxRouteApproximation gctx) {
+		List<String> l = new ArrayList<>();
+		for (GpxPoint p : gctx.finalPoints) {
+			l.add(p.ind + " -> " + p.targetInd + " " + segments(p.routeToTarget));
+		}
+		return l;
+	}
+}
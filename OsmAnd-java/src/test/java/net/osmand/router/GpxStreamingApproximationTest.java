@@ -0,0 +1,59 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.LocationsHolder;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutePlannerFrontEnd.GpxPoint;
+
+// Track of calculated route is fed point by point to streaming approximation, result should be the same
+// as GpxSegmentsApproximation of the whole track and window of points should stay bounded
+@RunWith(Parameterized.class)
+public class GpxStreamingApproximationTest extends RoutingTestBase {
+
+	public GpxStreamingApproximationTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testStreamingEqualsSegmentsApproximation() throws Exception {
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		List<RouteSegmentResult> route = fe.searchRoute(createContext(fe), te.getStartPoint(), te.getEndPoint(), null).detailed;
+		Assert.assertNotNull(route);
+		List<LatLon> track = getTrack(route);
+
+		GpxRouteApproximation gctx = new GpxRouteApproximation(createContext(fe));
+		List<GpxPoint> gpxPoints = fe.generateGpxPoints(gctx, new LocationsHolder(track));
+		new GpxSegmentsApproximation().fastGpxApproximation(fe, gctx, gpxPoints);
+		List<String> expected = new ArrayList<>();
+		for (GpxPoint p : gpxPoints) {
+			if (p.routeToTarget != null) {
+				for (RouteSegmentResult s : p.routeToTarget) {
+					expected.add(toString(s));
+				}
+			}
+		}
+
+		GpxStreamingApproximation streaming = new GpxStreamingApproximation(fe, createContext(fe));
+		List<String> actual = new ArrayList<>();
+		for (LatLon l : track) {
+			for (RouteSegmentResult s : streaming.addPoint(l, 0)) {
+				actual.add(toString(s));
+			}
+			Assert.assertTrue(streaming.getWindowSize() <= GpxSegmentsApproximation.LOOKUP_AHEAD);
+		}
+		for (RouteSegmentResult s : streaming.finish()) {
+			actual.add(toString(s));
+		}
+		Assert.assertEquals(0, streaming.getWindowSize());
+		Assert.assertEquals(track.size(), streaming.getPointsCount());
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, actual);
+	}
+}
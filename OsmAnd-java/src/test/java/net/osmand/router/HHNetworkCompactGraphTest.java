@@ -0,0 +1,57 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHNetworkSegmentRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+
+// Route on compact graph (segments in primitive arrays, on and off heap) should be the same as on object graph:
+// same network points and same cost
+@RunWith(Parameterized.class)
+public class HHNetworkCompactGraphTest extends RoutingTestBase {
+
+	private static final double COST_PRECISION = 1e-3;
+
+	public HHNetworkCompactGraphTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testCompactGraphRouteEqualsObjectGraph() throws Exception {
+		HHNetworkRouteRes expected = calcRoute(HHRoutingConfig.astar(0));
+		Assert.assertTrue("Route is not found", expected != null && expected.error == null);
+		checkSameRoute(expected, calcRoute(HHRoutingConfig.astar(0).compactGraph(false)));
+		checkSameRoute(expected, calcRoute(HHRoutingConfig.astar(0).compactGraph(true)));
+	}
+
+	private HHNetworkRouteRes calcRoute(HHRoutingConfig c) throws Exception {
+		c.ROUTE_LAST_MILE = true;
+		return createHHPlanner().runRouting(te.getStartPoint(), te.getEndPoint(), c);
+	}
+
+	private void checkSameRoute(HHNetworkRouteRes expected, HHNetworkRouteRes actual) {
+		Assert.assertTrue(actual != null && actual.error == null);
+		Assert.assertEquals(expected.getHHRoutingTime(), actual.getHHRoutingTime(),
+				expected.getHHRoutingTime() * COST_PRECISION);
+		Assert.assertEquals(points(expected), points(actual));
+	}
+
+	// network points of route (last mile segments don't have network segment)
+	private List<Integer> points(HHNetworkRouteRes res) {
+		List<Integer> l = new ArrayList<>();
+		for (HHNetworkSegmentRes s : res.segments) {
+			if (s.segment != null) {
+				l.add(s.segment.start.index);
+				l.add(s.segment.end.index);
+			}
+		}
+		return l;
+	}
+}
@@ -0,0 +1,141 @@
+package net.osmand.router;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.HHRoutingContext;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.HHRouteDataStructure.NetworkDBSegment;
+
+// Plateau alternatives on small graph from start 0 to end 7:
+// best 0-1-2-7 (30), A 0-3-4-7 (33), B 0-5-6-7 (36), C 0-1-2-9-10-7 (31, mostly best route),
+// D 0-12-13-7 (42, above max stretch 1.3)
+public class HHRoutePlateauSearchTest {
+
+	private static final int START = 0;
+	private static final int END = 7;
+
+	private HHRoutingContext<NetworkDBPoint> hctx;
+	private NetworkDBPoint[] points;
+	private HHNetworkRouteRes route;
+
+	@Before
+	public void setUp() {
+		hctx = new HHRoutingContext<NetworkDBPoint>();
+		hctx.pointsById = new TLongObjectHashMap<NetworkDBPoint>();
+		hctx.config = HHRoutingConfig.dijkstra(0);
+		hctx.config.ALT_PLATEAU = true;
+		hctx.config.ALT_NON_UNIQUENESS = 0.6;
+		points = new NetworkDBPoint[14];
+		for (int i = 0; i < points.length; i++) {
+			points[i] = new NetworkDBPoint();
+			points[i].index = i;
+			hctx.pointsById.put(i, points[i]);
+		}
+		path(10, 0, 1, 2, 7);
+		path(11, 0, 3, 4, 7);
+		path(12, 0, 5, 6, 7);
+		connect(2, 9, 2);
+		connect(9, 10, 5);
+		connect(10, 7, 4);
+		path(14, 0, 12, 13, 7);
+		route = new HHNetworkRouteRes();
+		for (int p : new int[] { 0, 1, 2, 7 }) {
+			route.uniquePoints.add(p);
+		}
+	}
+
+	private void path(double dist, int... pnts) {
+		for (int i = 1; i < pnts.length; i++) {
+			connect(pnts[i - 1], pnts[i], dist);
+		}
+	}
+
+	private void connect(int from, int to, double dist) {
+		NetworkDBSegment s = new NetworkDBSegment(points[from], points[to], dist, true, false);
+		points[from].connected.add(s);
+		points[to].connectedReverse.add(s);
+	}
+
+	private static TLongObjectHashMap<NetworkDBPoint> root(NetworkDBPoint p) {
+		TLongObjectHashMap<NetworkDBPoint> roots = new TLongObjectHashMap<NetworkDBPoint>();
+		roots.put(p.index, p);
+		return roots;
+	}
+
+	private List<TIntArrayList> selectAlternatives() throws Exception {
+		HHRoutePlateauSearch<NetworkDBPoint> search = new HHRoutePlateauSearch<NetworkDBPoint>(hctx, false);
+		double maxCost = 30 * hctx.config.ALT_MAX_STRETCH;
+		HHRoutePlateauSearch.Tree fwd = search.buildTree(root(points[START]), false, maxCost, null);
+		HHRoutePlateauSearch.Tree bwd = search.buildTree(root(points[END]), true, maxCost, null);
+		return search.selectAlternatives(fwd, bwd, route, 30);
+	}
+
+	private static TIntArrayList list(int... pnts) {
+		return new TIntArrayList(pnts);
+	}
+
+	@Test
+	public void testTrees() throws Exception {
+		HHRoutePlateauSearch<NetworkDBPoint> search = new HHRoutePlateauSearch<NetworkDBPoint>(hctx, false);
+		HHRoutePlateauSearch.Tree fwd = search.buildTree(root(points[START]), false, 39, null);
+		HHRoutePlateauSearch.Tree bwd = search.buildTree(root(points[END]), true, 39, null);
+		Assert.assertEquals(30, fwd.dist[END], 1e-9);
+		Assert.assertEquals(2, fwd.parent[END]);
+		Assert.assertEquals(30, bwd.dist[START], 1e-9);
+		Assert.assertEquals(1, bwd.parent[START]);
+		Assert.assertEquals(10, bwd.dist[2], 1e-9);
+		Assert.assertEquals(END, bwd.parent[2]);
+		// points above max cost are not settled
+		Assert.assertTrue(fwd.settled[13]);
+		Assert.assertFalse(fwd.settled[11]);
+		Assert.assertEquals(42, fwd.dist[13] + bwd.dist[13], 1e-9);
+	}
+
+	@Test
+	public void testPlateauAlternativesRanked() throws Exception {
+		List<TIntArrayList> alts = selectAlternatives();
+		// best route and C overlap with best route, D is too long; A is cheaper than B with same overlap
+		Assert.assertEquals(2, alts.size());
+		Assert.assertEquals(list(0, 3, 4, 7), alts.get(0));
+		Assert.assertEquals(list(0, 5, 6, 7), alts.get(1));
+
+		hctx.config.ALT_MAX_ROUTES = 1;
+		alts = selectAlternatives();
+		Assert.assertEquals(1, alts.size());
+		Assert.assertEquals(list(0, 3, 4, 7), alts.get(0));
+	}
+
+	@Test
+	public void testOverlapAndPlateauFilters() throws Exception {
+		// C shares 4 of 6 points with best route, it is ranked after A by overlap
+		hctx.config.ALT_NON_UNIQUENESS = 0.7;
+		List<TIntArrayList> alts = selectAlternatives();
+		Assert.assertEquals(3, alts.size());
+		Assert.assertEquals(list(0, 3, 4, 7), alts.get(0));
+		Assert.assertTrue(alts.contains(list(0, 1, 2, 9, 10, 7)));
+		// without overlap weight only cost is ranked
+		hctx.config.ALT_OVERLAP_WEIGHT = 0;
+		alts = selectAlternatives();
+		Assert.assertEquals(list(0, 1, 2, 9, 10, 7), alts.get(0));
+		Assert.assertEquals(list(0, 3, 4, 7), alts.get(1));
+		Assert.assertEquals(list(0, 5, 6, 7), alts.get(2));
+
+		// plateau of C (9-10) is 5, of A and B 11 and 12
+		hctx.config.ALT_MIN_PLATEAU = 6 / 30.0;
+		alts = selectAlternatives();
+		Assert.assertEquals(2, alts.size());
+		Assert.assertEquals(list(0, 3, 4, 7), alts.get(0));
+		hctx.config.ALT_MIN_PLATEAU = 11.5 / 30.0;
+		alts = selectAlternatives();
+		Assert.assertEquals(1, alts.size());
+		Assert.assertEquals(list(0, 5, 6, 7), alts.get(0));
+	}
+}
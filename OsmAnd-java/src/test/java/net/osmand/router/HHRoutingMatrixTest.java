@@ -0,0 +1,54 @@
+package net.osmand.router;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+
+// Every cell of HH routing matrix should have the same cost as HH route between the points, including
+// source and target of the same cluster (connected without network points)
+@RunWith(Parameterized.class)
+public class HHRoutingMatrixTest extends RoutingTestBase {
+
+	private static final double COST_PRECISION = 0.01;
+
+	public HHRoutingMatrixTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testMatrixEqualsRoutes() throws Exception {
+		LatLon start = te.getStartPoint();
+		LatLon end = te.getEndPoint();
+		HHNetworkRouteRes route = createHHPlanner().runRouting(start, end, config());
+		Assert.assertTrue("Route is not found", route != null && route.error == null && !route.detailed.isEmpty());
+		// point on the first road of route is in the same cluster as start
+		LatLon near = route.detailed.get(0).getEndPoint();
+
+		List<LatLon> sources = Arrays.asList(start, end);
+		List<LatLon> targets = Arrays.asList(end, near);
+		double[][] matrix = createHHPlanner().runRoutingMatrix(sources, targets, config(), 2);
+		for (int i = 0; i < sources.size(); i++) {
+			for (int j = 0; j < targets.size(); j++) {
+				HHNetworkRouteRes r = createHHPlanner().runRouting(sources.get(i), targets.get(j), config());
+				Assert.assertTrue(r != null && r.error == null);
+				double cost = r.getHHRoutingTime();
+				Assert.assertEquals(sources.get(i) + " -> " + targets.get(j), cost, matrix[i][j],
+						Math.max(1, cost * COST_PRECISION));
+			}
+		}
+	}
+
+	private HHRoutingConfig config() {
+		HHRoutingConfig c = HHRoutingConfig.dijkstra(0);
+		c.ROUTE_LAST_MILE = true;
+		return c;
+	}
+}
@@ -0,0 +1,146 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.HHRouteDataStructure.HHRoutingConfig;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.util.MapUtils;
+
+// Network db prepared from test maps is used by HHRoutePlanner: routes should have the same cost as A*,
+// also when preprocessing is resumed with part of clusters already processed
+@RunWith(Parameterized.class)
+public class HHRoutingPreprocessorTest extends RoutingTestBase {
+
+	private static final double COST_PRECISION = 0.02;
+	// ~5 km clusters, so test area has several of them
+	private static final int CLUSTER_ZOOM = 13;
+	private static final double BBOX_MARGIN = 0.02;
+
+	private File dir;
+
+	public HHRoutingPreprocessorTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("hhdb").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testNetworkRoutesEqualAStar() throws Exception {
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		RoutingContext ctx = createContext(fe);
+		Assert.assertNotNull(fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), null).detailed);
+		double astarTime = ctx.routingTime;
+
+		HHRoutingPreparationDB db = openDB("full");
+		HHRoutingPreparationDB resumed = openDB("resumed");
+		try {
+			preprocess(db);
+			Assert.assertTrue(db.getPointsCount() > 0);
+			int segments = getSegmentsCount(db);
+			double hhTime = runRouting(db);
+			Assert.assertEquals(astarTime, hhTime, Math.max(1, astarTime * COST_PRECISION));
+
+			// interrupted preprocessing: every second cluster is not processed yet
+			preprocess(resumed);
+			List<Integer> clusters = getProcessedClusters(resumed);
+			Assert.assertFalse(clusters.isEmpty());
+			for (int i = 0; i < clusters.size(); i += 2) {
+				unmarkProcessed(resumed, clusters.get(i));
+			}
+			Assert.assertEquals(clusters.size() / 2, getProcessedClusters(resumed).size());
+			preprocess(resumed);
+			Assert.assertEquals(clusters, getProcessedClusters(resumed));
+			Assert.assertEquals(segments, getSegmentsCount(resumed));
+			Assert.assertEquals(hhTime, runRouting(resumed), 1e-3);
+		} finally {
+			db.close();
+			resumed.close();
+		}
+	}
+
+	private HHRoutingPreparationDB openDB(String name) throws SQLException {
+		File f = new File(dir, name + HHRoutingDB.EXT);
+		return new HHRoutingPreparationDB(f, DriverManager.getConnection("jdbc:sqlite:" + f.getAbsolutePath()));
+	}
+
+	private void preprocess(HHRoutingPreparationDB db) throws Exception {
+		HHRoutingPreprocessor p = new HHRoutingPreprocessor(getReaders(), RoutingConfiguration.getDefault(),
+				getVehicle(), te.getParams());
+		p.clusterZoom = CLUSTER_ZOOM;
+		p.threads = 2;
+		LatLon s = te.getStartPoint();
+		LatLon e = te.getEndPoint();
+		p.run(db, MapUtils.get31TileNumberX(Math.min(s.getLongitude(), e.getLongitude()) - BBOX_MARGIN),
+				MapUtils.get31TileNumberY(Math.max(s.getLatitude(), e.getLatitude()) + BBOX_MARGIN),
+				MapUtils.get31TileNumberX(Math.max(s.getLongitude(), e.getLongitude()) + BBOX_MARGIN),
+				MapUtils.get31TileNumberY(Math.min(s.getLatitude(), e.getLatitude()) - BBOX_MARGIN));
+	}
+
+	private double runRouting(HHRoutingPreparationDB db) throws Exception {
+		HHRoutePlanner<NetworkDBPoint> planner = HHRoutePlanner.createDB(createContext(new RoutePlannerFrontEnd()), db);
+		HHRoutingConfig config = HHRoutingConfig.dijkstra(0);
+		config.ROUTE_LAST_MILE = true;
+		HHNetworkRouteRes r = planner.runRouting(te.getStartPoint(), te.getEndPoint(), config);
+		Assert.assertTrue("Route is not found", r != null && r.error == null && !r.detailed.isEmpty());
+		return r.getHHRoutingTime();
+	}
+
+	private static int getSegmentsCount(HHRoutingPreparationDB db) throws SQLException {
+		Statement st = db.conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT count(*) FROM segments");
+		int cnt = rs.next() ? rs.getInt(1) : 0;
+		rs.close();
+		st.close();
+		return cnt;
+	}
+
+	private static List<Integer> getProcessedClusters(HHRoutingPreparationDB db) throws SQLException {
+		List<Integer> res = new ArrayList<>();
+		Statement st = db.conn.createStatement();
+		ResultSet rs = st.executeQuery("SELECT clusterId FROM processedClusters ORDER BY clusterId");
+		while (rs.next()) {
+			res.add(rs.getInt(1));
+		}
+		rs.close();
+		st.close();
+		return res;
+	}
+
+	// segments of cluster start at points entering it (dual point belongs to cluster)
+	private static void unmarkProcessed(HHRoutingPreparationDB db, int clusterId) throws SQLException {
+		Statement st = db.conn.createStatement();
+		String points = "SELECT idPoint FROM points WHERE dualClusterId = " + clusterId;
+		st.execute("DELETE FROM segments WHERE idPoint IN (" + points + ")");
+		st.execute("DELETE FROM geometry WHERE idPoint IN (" + points + ")");
+		st.execute("DELETE FROM processedClusters WHERE clusterId = " + clusterId);
+		st.close();
+	}
+}
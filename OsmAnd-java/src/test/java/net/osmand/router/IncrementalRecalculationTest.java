@@ -0,0 +1,45 @@
+package net.osmand.router;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.data.LatLon;
+
+// Recalculation from start deviated from calculated route (forward search stops at reverse search tree
+// of previous calculation) should find the same route as full calculation from that start
+@RunWith(Parameterized.class)
+public class IncrementalRecalculationTest extends RoutingTestBase {
+
+	public IncrementalRecalculationTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testRecalculationEqualsFullCalculation() throws Exception {
+		RoutePlannerFrontEnd incremental = new RoutePlannerFrontEnd().setUseIncrementalRecalculation(true);
+		List<RouteSegmentResult> route = incremental.searchRoute(createContext(incremental), te.getStartPoint(),
+				te.getEndPoint(), null).detailed;
+		Assert.assertNotNull(route);
+		Assert.assertFalse(route.isEmpty());
+		// start is moved aside of route at third of it
+		LatLon p = route.get(route.size() / 3).getStartPoint();
+		LatLon deviated = new LatLon(p.getLatitude() + 0.0003, p.getLongitude() + 0.0003);
+
+		RoutingContext ictx = createContext(incremental);
+		List<RouteSegmentResult> recalculated = incremental.searchRoute(ictx, deviated, te.getEndPoint(), null).detailed;
+		RoutePlannerFrontEnd full = new RoutePlannerFrontEnd();
+		RoutingContext fctx = createContext(full);
+		List<RouteSegmentResult> expected = full.searchRoute(fctx, deviated, te.getEndPoint(), null).detailed;
+
+		Assert.assertNotNull(recalculated);
+		Assert.assertNotNull(expected);
+		Assert.assertEquals(fctx.routingTime, ictx.routingTime, fctx.routingTime * 0.01);
+		Assert.assertEquals(expected.get(0).getObject().getId(), recalculated.get(0).getObject().getId());
+		Assert.assertEquals(expected.get(expected.size() - 1).getObject().getId(),
+				recalculated.get(recalculated.size() - 1).getObject().getId());
+	}
+}
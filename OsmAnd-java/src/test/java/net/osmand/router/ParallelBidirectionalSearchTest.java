@@ -0,0 +1,43 @@
+package net.osmand.router;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+// Parallel bidirectional search (forward and reverse A* on 2 threads) should find route of the same cost
+// as sequential 2 directions search
+@RunWith(Parameterized.class)
+public class ParallelBidirectionalSearchTest extends RoutingTestBase {
+
+	// route time is a float sum, collected in different order by sides
+	private static final double COST_EPSILON = 1e-5;
+
+	public ParallelBidirectionalSearchTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testParallelCostEqualsSequential() throws Exception {
+		// both searches are optimal only with admissible heuristic
+		Assume.assumeTrue(createConfig().heuristicCoefficient <= 1);
+		float sequential = calcRouteCost(false);
+		float parallel = calcRouteCost(true);
+		Assert.assertTrue("Route is not found", sequential > 0 && parallel > 0);
+		Assert.assertEquals(sequential, parallel, Math.max(sequential * COST_EPSILON, 1e-3));
+	}
+
+	private float calcRouteCost(boolean parallelBidirectional) throws Exception {
+		RoutingConfiguration config = createConfig();
+		config.planRoadDirection = 0;
+		config.parallelBidirectional = parallelBidirectional;
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		RoutingContext ctx = createContext(fe, config);
+		List<RouteSegmentResult> route = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), null).detailed;
+		Assert.assertNotNull(route);
+		return ctx.routingTime;
+	}
+}
@@ -0,0 +1,42 @@
+package net.osmand.router;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+// A* with primitive indexed heap frontier should find route of the same cost as with default priority queue
+@RunWith(Parameterized.class)
+public class PrimitiveHeapRoutingTest extends RoutingTestBase {
+
+	// segments with equal cost could be polled in other order
+	private static final double COST_EPSILON = 1e-5;
+
+	public PrimitiveHeapRoutingTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testHeapRouteEqualsDefault() throws Exception {
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		RoutingContext def = createContext(fe, false);
+		List<RouteSegmentResult> expected = fe.searchRoute(def, te.getStartPoint(), te.getEndPoint(), null).detailed;
+		RoutingContext heap = createContext(fe, true);
+		List<RouteSegmentResult> actual = fe.searchRoute(heap, te.getStartPoint(), te.getEndPoint(), null).detailed;
+		Assert.assertNotNull(expected);
+		Assert.assertNotNull(actual);
+		Assert.assertFalse("Route is not found", expected.isEmpty());
+		Assert.assertEquals(def.routingTime, heap.routingTime, Math.max(def.routingTime * COST_EPSILON, 1e-3));
+		Assert.assertEquals(expected.get(0).getObject().getId(), actual.get(0).getObject().getId());
+		Assert.assertEquals(expected.get(expected.size() - 1).getObject().getId(),
+				actual.get(actual.size() - 1).getObject().getId());
+	}
+
+	private RoutingContext createContext(RoutePlannerFrontEnd fe, boolean primitiveHeapQueue) {
+		RoutingConfiguration config = createConfig();
+		config.primitiveHeapQueue = primitiveHeapQueue;
+		return createContext(fe, config);
+	}
+}
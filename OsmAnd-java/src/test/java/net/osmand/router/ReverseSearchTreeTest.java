@@ -0,0 +1,52 @@
+package net.osmand.router;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+public class ReverseSearchTreeTest {
+
+	private static RouteDataObject road(long id) {
+		RouteDataObject ro = new RouteDataObject(new RouteRegion());
+		ro.id = id << 6;
+		ro.types = new int[0];
+		ro.pointsX = new int[] { 100, 200, 300 };
+		ro.pointsY = new int[] { 100, 100, 100 };
+		return ro;
+	}
+
+	private static RouteSegment segment(TLongObjectHashMap<RouteSegment> segments, RouteDataObject road, int start,
+			float cost) {
+		RouteSegment s = new RouteSegment(road, start, start + 1);
+		s.setDistanceFromStart(cost);
+		segments.put(segments.size(), s);
+		return s;
+	}
+
+	@Test
+	public void testPruneCountsPinnedRoads() {
+		RouteDataObject near = road(1);
+		RouteDataObject far = road(2);
+		TLongObjectHashMap<RouteSegment> segments = new TLongObjectHashMap<RouteSegment>();
+		segment(segments, near, 0, 1);
+		segment(segments, near, 1, 2);
+		segment(segments, far, 0, 3);
+		ReverseSearchTree tree = new ReverseSearchTree(segments);
+		long full = 3 * BinaryRoutePlanner.STANDARD_ROAD_VISITED_OVERHEAD + RoutingContext.getEstimatedSize(near)
+				+ RoutingContext.getEstimatedSize(far);
+		tree.prune(full);
+		Assert.assertEquals(3, tree.size());
+		// both segments of near road fit, far road object doesn't
+		tree.prune(full - 1);
+		Assert.assertEquals(2, tree.size());
+		for (RouteSegment s : segments.valueCollection()) {
+			Assert.assertSame(near, s.getRoad());
+		}
+		tree.prune(0);
+		Assert.assertEquals(0, tree.size());
+	}
+}
@@ -0,0 +1,104 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import gnu.trove.set.hash.TLongHashSet;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.RoutingContext.RoutingSubregionTile;
+import net.osmand.util.MapUtils;
+
+// Subregions read in one pass per file (sorted by file pointer) should give the same roads as reading
+// subregions one at a time, both by reader and by RoutingContext tiles
+@RunWith(Parameterized.class)
+public class RouteBatchLoadingTest extends RoutingTestBase {
+
+	// below RoutingConfiguration.ZOOM_TO_LOAD_TILES, so several tiles are loaded around point
+	private static final int ZOOM_AROUND = 15;
+	private static final double BBOX_MARGIN = 0.01;
+
+	public RouteBatchLoadingTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testReaderBatchEqualsSingleSubregions() throws IOException {
+		LatLon s = te.getStartPoint();
+		LatLon e = te.getEndPoint();
+		SearchRequest<RouteDataObject> req = BinaryMapIndexReader.buildSearchRouteRequest(
+				MapUtils.get31TileNumberX(Math.min(s.getLongitude(), e.getLongitude()) - BBOX_MARGIN),
+				MapUtils.get31TileNumberX(Math.max(s.getLongitude(), e.getLongitude()) + BBOX_MARGIN),
+				MapUtils.get31TileNumberY(Math.max(s.getLatitude(), e.getLatitude()) + BBOX_MARGIN),
+				MapUtils.get31TileNumberY(Math.min(s.getLatitude(), e.getLatitude()) - BBOX_MARGIN), null);
+		int checked = 0;
+		for (BinaryMapIndexReader reader : readers) {
+			for (RouteRegion reg : reader.getRoutingIndexes()) {
+				List<RouteSubregion> subregions = new ArrayList<>(reader.searchRouteIndexTree(req, reg.getSubregions()));
+				// batch is read sorted by file pointer, result is in order of request
+				Collections.reverse(subregions);
+				List<List<RouteDataObject>> batch = reader.loadRouteIndexData(subregions);
+				Assert.assertEquals(subregions.size(), batch.size());
+				for (int i = 0; i < subregions.size(); i++) {
+					Assert.assertEquals(toString(reader.loadRouteIndexData(subregions.get(i))), toString(batch.get(i)));
+					checked++;
+				}
+			}
+		}
+		Assert.assertTrue(checked > 1);
+	}
+
+	@Test
+	public void testContextBatchEqualsSingleSubregions() throws IOException {
+		int x31 = MapUtils.get31TileNumberX(te.getStartPoint().getLongitude());
+		int y31 = MapUtils.get31TileNumberY(te.getStartPoint().getLatitude());
+		RoutingContext batch = createContext(new RoutePlannerFrontEnd());
+		List<RouteDataObject> expected = new ArrayList<>();
+		batch.loadTileData(x31, y31, ZOOM_AROUND, expected);
+
+		// same tiles as loadTileData, every subregion is loaded separately
+		RoutingContext single = createContext(new RoutePlannerFrontEnd());
+		int t = 1 << Math.max(0, single.config.ZOOM_TO_LOAD_TILES - ZOOM_AROUND);
+		int shift = 1 << (31 - Math.max(single.config.ZOOM_TO_LOAD_TILES, ZOOM_AROUND));
+		for (int i = -t; i <= t; i++) {
+			for (int j = -t; j <= t; j++) {
+				List<RoutingSubregionTile> tiles = single.loadTileHeaders(x31 + i * shift, y31 + j * shift);
+				TLongHashSet excludeIds = new TLongHashSet();
+				for (int k = 0; tiles != null && k < tiles.size(); k++) {
+					if (!tiles.get(k).isLoaded()) {
+						single.loadSubregionTile(tiles.get(k), true, null, excludeIds);
+					}
+				}
+			}
+		}
+		List<RouteDataObject> actual = new ArrayList<>();
+		single.loadTileData(x31, y31, ZOOM_AROUND, actual);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(sorted(expected), sorted(actual));
+	}
+
+	private static List<String> toString(List<RouteDataObject> objects) {
+		List<String> res = new ArrayList<>();
+		for (RouteDataObject o : objects) {
+			res.add(o == null ? "null" : o.getId() + ":" + o.getPointsLength());
+		}
+		return res;
+	}
+
+	private static List<String> sorted(List<RouteDataObject> objects) {
+		List<String> res = toString(objects);
+		Collections.sort(res);
+		return res;
+	}
+}
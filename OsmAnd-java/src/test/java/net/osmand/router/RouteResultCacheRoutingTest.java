@@ -0,0 +1,51 @@
+package net.osmand.router;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+
+// Route calculated for the second time (cache hit) should be returned as calculated: same segments and routing time,
+// alternatives are calculated again (routes with alternatives are not cached)
+@RunWith(Parameterized.class)
+public class RouteResultCacheRoutingTest extends RoutingTestBase {
+
+	public RouteResultCacheRoutingTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testCacheHitEqualsCalculated() throws Exception {
+		RouteResultCache cache = new RouteResultCache(10);
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd().disableHHRoutingConfig().setRouteResultCache(cache);
+		RoutingContext ctx = createContext(fe);
+		RouteCalcResult calculated = fe.searchRoute(ctx, te.getStartPoint(), te.getEndPoint(), null);
+		Assert.assertTrue(calculated.isCorrect());
+		RoutingContext cachedCtx = createContext(fe);
+		RouteCalcResult cached = fe.searchRoute(cachedCtx, te.getStartPoint(), te.getEndPoint(), null);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(getTrack(calculated.getList()), getTrack(cached.getList()));
+		Assert.assertEquals(ctx.routingTime, cachedCtx.routingTime, 0);
+	}
+
+	@Test
+	public void testAlternativesSurviveCacheHit() throws Exception {
+		RouteResultCache cache = new RouteResultCache(10);
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd()
+				.setHHRoutingConfig(RoutePlannerFrontEnd.defaultHHConfig().calcAlternative()).setRouteResultCache(cache);
+		RouteCalcResult first = fe.searchRoute(createContext(fe), te.getStartPoint(), te.getEndPoint(), null);
+		RouteCalcResult second = fe.searchRoute(createContext(fe), te.getStartPoint(), te.getEndPoint(), null);
+		Assert.assertTrue(first instanceof HHNetworkRouteRes);
+		Assert.assertTrue(second instanceof HHNetworkRouteRes);
+		HHNetworkRouteRes exp = (HHNetworkRouteRes) first;
+		HHNetworkRouteRes act = (HHNetworkRouteRes) second;
+		Assert.assertEquals(exp.altRoutes.size(), act.altRoutes.size());
+		for (int i = 0; i < exp.altRoutes.size(); i++) {
+			Assert.assertEquals(getTrack(exp.altRoutes.get(i).getList()), getTrack(act.altRoutes.get(i).getList()));
+		}
+		Assert.assertEquals(getTrack(first.getList()), getTrack(second.getList()));
+	}
+}
@@ -0,0 +1,195 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.RouteSegmentPoint;
+import net.osmand.router.GeneralRouter.GeneralRouterProfile;
+import net.osmand.router.HHRouteDataStructure.HHNetworkRouteRes;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.util.MapUtils;
+
+public class RouteResultCacheTest {
+
+	private static RouteDataObject road(long id, double lat, double lon, int points) {
+		RouteRegion reg = new RouteRegion();
+		reg.initRouteEncodingRule(0, "highway", "primary");
+		RouteDataObject ro = new RouteDataObject(reg);
+		ro.id = id << 6;
+		ro.types = new int[] { 0 };
+		ro.pointsX = new int[points];
+		ro.pointsY = new int[points];
+		for (int i = 0; i < points; i++) {
+			ro.pointsX[i] = MapUtils.get31TileNumberX(lon + i * 0.001);
+			ro.pointsY[i] = MapUtils.get31TileNumberY(lat + i * 0.001);
+		}
+		return ro;
+	}
+
+	private static List<RouteSegmentResult> route() {
+		RouteDataObject r1 = road(1, 52.0, 4.0, 4);
+		RouteDataObject r2 = road(2, 52.003, 4.003, 3);
+		// second road is passed in reverse direction and starts at the end of first one
+		r2.pointsX[2] = r1.pointsX[3];
+		r2.pointsY[2] = r1.pointsY[3];
+		List<RouteSegmentResult> list = new ArrayList<>();
+		list.add(new RouteSegmentResult(r1, 0, 3));
+		list.add(new RouteSegmentResult(r2, 2, 0));
+		return list;
+	}
+
+	private static RoutingContext context() {
+		RoutingConfiguration config = new RoutingConfiguration();
+		config.router = new GeneralRouter(GeneralRouterProfile.CAR, new LinkedHashMap<String, String>());
+		return new RoutingContext(config, null, new BinaryMapIndexReader[0], RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+	}
+
+	@Test
+	public void testKeyByDrivingSide() {
+		RouteResultCache cache = new RouteResultCache(10);
+		RoutingContext ctx = context();
+		List<RouteSegmentPoint> points = Collections.emptyList();
+		String right = cache.createKey(ctx, points, "normal");
+		ctx.leftSideNavigation = true;
+		Assert.assertNotEquals(right, cache.createKey(ctx, points, "normal"));
+	}
+
+	@Test
+	public void testTimeDependentRouteIsNotCached() throws IOException {
+		RouteResultCache cache = new RouteResultCache(10);
+		RoutingContext ctx = context();
+		List<RouteSegmentPoint> points = Collections.emptyList();
+		Assert.assertNotNull(cache.createKey(ctx, points, "normal"));
+		// route with speed profiles depends on departure time (now)
+		File file = File.createTempFile("speeds", ".bin");
+		try {
+			TrafficSpeedProfiles.write(file, new TLongObjectHashMap<byte[]>());
+			ctx.config.speedProfiles = TrafficSpeedProfiles.load(file);
+		} finally {
+			file.delete();
+		}
+		Assert.assertNull(cache.createKey(ctx, points, "normal"));
+	}
+
+	@Test
+	public void testMemoryLru() {
+		RouteResultCache cache = new RouteResultCache(1);
+		cache.put("a", new RouteCalcResult(route()));
+		Assert.assertNotNull(cache.get("a", false));
+		cache.put("b", new RouteCalcResult(route()));
+		Assert.assertNull(cache.get("a", false));
+		Assert.assertEquals(2, cache.get("b", false).getList().size());
+		Assert.assertEquals(2, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		// errors are not cached
+		cache.put("c", new RouteCalcResult("error"));
+		Assert.assertNull(cache.get("c", false));
+	}
+
+	@Test
+	public void testCachedRouteIsNotShared() {
+		RouteResultCache cache = new RouteResultCache(10);
+		List<RouteSegmentResult> route = route();
+		route.get(0).setTurnType(TurnType.valueOf(TurnType.TL, false));
+		cache.put("a", new RouteCalcResult(route));
+		// changes of original route don't affect cache
+		route.get(0).setSegmentTime(100);
+		route.get(0).getObject().types[0] = 1;
+
+		RouteSegmentResult first = cache.get("a", false).getList().get(0);
+		Assert.assertEquals(0, first.getSegmentTime(), 0);
+		Assert.assertEquals(0, first.getObject().types[0]);
+		// changes of returned route don't affect next hit
+		first.setSegmentTime(200);
+		first.getTurnType().setSkipToSpeak(true);
+		first.getObject().types[0] = 2;
+		first.attachRoute(1, new RouteSegmentResult(road(3, 52.001, 4.001, 2), 0, 1));
+
+		RouteSegmentResult next = cache.get("a", false).getList().get(0);
+		Assert.assertNotSame(first, next);
+		Assert.assertEquals(0, next.getSegmentTime(), 0);
+		Assert.assertFalse(next.getTurnType().isSkipToSpeak());
+		Assert.assertEquals(0, next.getObject().types[0]);
+		Assert.assertTrue(next.getAttachedRoutes(1).isEmpty());
+	}
+
+	@Test
+	public void testRoutingTimeRestored() throws IOException {
+		File dir = Files.createTempDirectory("route-cache").toFile();
+		try {
+			new RouteResultCache(10, dir).put("key", new RouteCalcResult(route()), 123.5f);
+			RoutingContext ctx = context();
+			// disk and memory hit
+			RouteResultCache cache = new RouteResultCache(10, dir);
+			for (int i = 0; i < 2; i++) {
+				ctx.routingTime = 0;
+				Assert.assertNotNull(cache.get("key", ctx));
+				Assert.assertEquals(123.5f, ctx.routingTime, 0);
+			}
+			Assert.assertEquals(1, cache.getDiskHits());
+			Assert.assertEquals(1, cache.getHits());
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testRouteWithAlternativesIsNotCached() {
+		RouteResultCache cache = new RouteResultCache(10);
+		HHNetworkRouteRes res = new HHNetworkRouteRes();
+		res.detailed.addAll(route());
+		HHNetworkRouteRes alt = new HHNetworkRouteRes();
+		alt.detailed.addAll(route());
+		res.altRoutes.add(alt);
+		cache.put("a", res);
+		Assert.assertNull(cache.get("a", false));
+		res.altRoutes.clear();
+		cache.put("a", res);
+		Assert.assertNotNull(cache.get("a", false));
+	}
+
+	@Test
+	public void testDiskRoundTrip() throws IOException {
+		File dir = Files.createTempDirectory("route-cache").toFile();
+		try {
+			List<RouteSegmentResult> route = route();
+			new RouteResultCache(10, dir).put("key", new RouteCalcResult(route));
+
+			RouteResultCache cache = new RouteResultCache(10, dir);
+			Assert.assertNull(cache.get("other", false));
+			RouteCalcResult res = cache.get("key", false);
+			Assert.assertNotNull(res);
+			Assert.assertEquals(1, cache.getDiskHits());
+			Assert.assertEquals(route.size(), res.getList().size());
+			for (int i = 0; i < route.size(); i++) {
+				RouteSegmentResult exp = route.get(i);
+				RouteSegmentResult act = res.getList().get(i);
+				Assert.assertEquals(exp.getObject().getId(), act.getObject().getId());
+				Assert.assertEquals(Math.abs(exp.getEndPointIndex() - exp.getStartPointIndex()),
+						Math.abs(act.getEndPointIndex() - act.getStartPointIndex()));
+				Assert.assertEquals(0, MapUtils.getDistance(exp.getStartPoint(), act.getStartPoint()), 0.5);
+				Assert.assertEquals(0, MapUtils.getDistance(exp.getEndPoint(), act.getEndPoint()), 0.5);
+			}
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+}
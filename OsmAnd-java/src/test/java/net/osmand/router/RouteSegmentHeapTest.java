@@ -0,0 +1,71 @@
+package net.osmand.router;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.BinaryRoutePlanner.FinalRouteSegment;
+import net.osmand.router.BinaryRoutePlanner.RouteSegment;
+
+public class RouteSegmentHeapTest {
+
+	private static RouteDataObject road(long id, int points) {
+		RouteDataObject ro = new RouteDataObject(new RouteRegion());
+		ro.id = id;
+		ro.pointsX = new int[points];
+		ro.pointsY = new int[points];
+		return ro;
+	}
+
+	@Test
+	public void testPollOrder() {
+		Random r = new Random(17);
+		RouteSegmentHeap heap = new RouteSegmentHeap();
+		for (int i = 0; i < 5000; i++) {
+			heap.add(new RouteSegment(road(i, 2), 0, 1), r.nextFloat() * 1000);
+		}
+		Assert.assertEquals(5000, heap.size());
+		float prev = Float.NEGATIVE_INFINITY;
+		while (!heap.isEmpty()) {
+			float cost = heap.peekCost();
+			Assert.assertTrue(prev <= cost);
+			Assert.assertNotNull(heap.poll());
+			prev = cost;
+		}
+		Assert.assertNull(heap.poll());
+	}
+
+	@Test
+	public void testDecreaseKey() {
+		RouteSegmentHeap heap = new RouteSegmentHeap();
+		RouteDataObject ro = road(1, 3);
+		RouteSegment a = new RouteSegment(ro, 0, 1);
+		RouteSegment b = new RouteSegment(ro, 1, 2);
+		heap.add(a, 10);
+		heap.add(b, 5);
+		heap.add(a, 20);
+		Assert.assertEquals(2, heap.size());
+		heap.add(a, 1);
+		Assert.assertEquals(2, heap.size());
+		Assert.assertSame(a, heap.poll());
+		Assert.assertSame(b, heap.poll());
+		// polled segment can be queued again
+		heap.add(a, 3);
+		Assert.assertEquals(3, heap.peekCost(), 0);
+	}
+
+	@Test
+	public void testFinalSegmentsNotMerged() {
+		RouteSegmentHeap heap = new RouteSegmentHeap();
+		RouteDataObject ro = road(1, 2);
+		heap.add(new RouteSegment(ro, 0, 1), 5);
+		heap.add(new FinalRouteSegment(ro, 0, 1), 7);
+		heap.add(new FinalRouteSegment(ro, 0, 1), 6);
+		Assert.assertEquals(3, heap.size());
+		Assert.assertFalse(heap.poll() instanceof FinalRouteSegment);
+		Assert.assertTrue(heap.poll() instanceof FinalRouteSegment);
+	}
+}
@@ -0,0 +1,38 @@
+package net.osmand.router;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+
+public class RouteTypesLookupTableTest {
+
+	@Test
+	public void testPutGet() {
+		RouteTypesLookupTable t = new RouteTypesLookupTable(new RouteRegion(), 4);
+		Random r = new Random(3);
+		int[][] types = new int[5000][];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = new int[] { i, r.nextInt(100) };
+			Assert.assertTrue(Float.isNaN(t.get(types[i], 1)));
+			t.put(types[i], 1, i);
+			t.put(types[i], 3, -i);
+		}
+		Assert.assertEquals(types.length, t.size());
+		for (int i = 0; i < types.length; i++) {
+			// lookup by content, not by array instance
+			int[] copy = types[i].clone();
+			Assert.assertEquals(i, t.get(copy, 1), 0);
+			Assert.assertEquals(-i, t.get(copy, 3), 0);
+			Assert.assertTrue(Float.isNaN(t.get(copy, 0)));
+		}
+		// stored types are not affected by later modification of the road
+		int[] ts = new int[] { 1, 2, 3 };
+		t.put(ts, 0, 7);
+		ts[0] = 10;
+		Assert.assertEquals(7, t.get(new int[] { 1, 2, 3 }, 0), 0);
+		Assert.assertTrue(Float.isNaN(t.get(ts, 0)));
+	}
+}
@@ -0,0 +1,88 @@
+package net.osmand.router;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.router.RoutePlannerFrontEnd.RouteCalculationMode;
+import net.osmand.router.RoutingContext.RoutingSubregionTile;
+import net.osmand.router.RoutingContext.TileStatistics;
+
+// Memory budget of RoutingContext tiles: unloading keeps working set and request limit includes search overhead
+public class RoutingContextTilesTest {
+
+	private RouteRegion region;
+	private RoutingContext ctx;
+	private long smallSize;
+	private RoutingSubregionTile big;
+
+	@Before
+	public void setUp() {
+		region = new RouteRegion();
+		region.initRouteEncodingRule(0, "highway", "primary");
+		ctx = new RoutingContext(new RoutingConfiguration(), null, new BinaryMapIndexReader[0],
+				RouteCalculationMode.NORMAL);
+		// 9 small tiles not accessed and 1 big tile (20 small) which is used by search
+		for (int i = 0; i < 9; i++) {
+			smallSize = addTile(i, 1).tileStatistics.size;
+		}
+		big = addTile(9, 20);
+		big.access = 1;
+	}
+
+	private RouteDataObject road(long id) {
+		RouteDataObject ro = new RouteDataObject(region);
+		ro.id = id << 6;
+		ro.types = new int[] { 0 };
+		ro.pointsX = new int[] { 100, 200, 300 };
+		ro.pointsY = new int[] { (int) id, (int) id, (int) id };
+		return ro;
+	}
+
+	private RoutingSubregionTile addTile(int ind, int roads) {
+		RoutingSubregionTile ts = new RoutingSubregionTile(new RouteSubregion(region));
+		ts.setLoadedNonNative();
+		for (int i = 0; i < roads; i++) {
+			ts.add(road(ind * 100 + i));
+		}
+		ctx.subregionTiles.add(ts);
+		ctx.global.size += ts.tileStatistics.size;
+		return ts;
+	}
+
+	@Test
+	public void testUnloadKeepsPartOfLoadedTiles() {
+		ctx.config.memoryLimitation = 30 * smallSize;
+		Assert.assertTrue(ctx.checkIfMemoryLimitCritical(ctx.config.memoryLimitation));
+		ctx.unloadUnusedTiles(ctx.config.memoryLimitation);
+		// size is still above 70% of limit, but 20% of tiles are kept while limit is not exceeded
+		Assert.assertEquals(2, ctx.getCurrentlyLoadedTiles());
+		Assert.assertTrue(big.isLoaded());
+		Assert.assertEquals(21 * smallSize, ctx.getCurrentEstimatedSize());
+	}
+
+	@Test
+	public void testUnloadCountsSearchOverhead() {
+		ctx.config.memoryLimitation = 30 * smallSize;
+		ctx.memoryOverhead = (int) (15 * smallSize);
+		ctx.unloadUnusedTiles(ctx.config.memoryLimitation);
+		// tiles and overhead don't exceed limit of request, so working set is unloaded as well
+		Assert.assertFalse(big.isLoaded());
+		Assert.assertTrue(ctx.getCurrentEstimatedSize() + ctx.memoryOverhead <= ctx.config.memoryLimitation);
+	}
+
+	@Test
+	public void testSharedObjectCountsOnlySegments() {
+		RouteDataObject ro = road(1);
+		TileStatistics own = new TileStatistics();
+		own.addObject(ro);
+		TileStatistics shared = new TileStatistics();
+		shared.addObject(ro, true);
+		Assert.assertTrue(shared.size > 0);
+		Assert.assertEquals(own.size, shared.size + RoutingContext.getEstimatedSize(ro));
+	}
+}
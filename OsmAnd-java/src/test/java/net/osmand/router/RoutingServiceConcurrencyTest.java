@@ -0,0 +1,88 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingService.RouteRequest;
+import net.osmand.router.RoutingService.RouteTask;
+
+// Requests calculated concurrently by workers of RoutingService over the same readers (and shared decoded tiles)
+// should give the same routes as requests calculated one by one
+@RunWith(Parameterized.class)
+public class RoutingServiceConcurrencyTest extends RoutingTestBase {
+
+	private static final int THREADS = 4;
+	private static final int REQUESTS = 3 * THREADS;
+
+	public RoutingServiceConcurrencyTest(String name, TestEntry te) {
+		super(te);
+	}
+
+	@Test
+	public void testConcurrentEqualsSequential() throws Exception {
+		checkConcurrentEqualsSequential(false);
+	}
+
+	@Test
+	public void testConcurrentHHEqualsSequential() throws Exception {
+		checkConcurrentEqualsSequential(true);
+	}
+
+	private void checkConcurrentEqualsSequential(boolean hh) throws Exception {
+		RoutingService sequential = createService(hh, 1);
+		List<String> expected;
+		try {
+			expected = toStrings(sequential.route(createRequest()));
+		} finally {
+			sequential.shutdown();
+		}
+		Assert.assertFalse("Route is not found", expected.isEmpty());
+
+		RoutingService service = createService(hh, THREADS);
+		try {
+			List<RouteTask> tasks = new ArrayList<>();
+			for (int i = 0; i < REQUESTS; i++) {
+				tasks.add(service.submit(createRequest()));
+			}
+			for (RouteTask t : tasks) {
+				Assert.assertEquals(expected, toStrings(t.get()));
+			}
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	private RoutingService createService(boolean hh, int threads) {
+		RoutePlannerFrontEnd fe = new RoutePlannerFrontEnd();
+		if (hh) {
+			fe.setHHRoutingConfig(RoutePlannerFrontEnd.defaultHHConfig());
+		} else {
+			fe.disableHHRoutingConfig();
+		}
+		RoutingService service = new RoutingService(fe, getReaders(), threads, REQUESTS);
+		service.memoryLimitMb = RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3;
+		return service;
+	}
+
+	private RouteRequest createRequest() {
+		RouteRequest r = new RouteRequest(te.getStartPoint(), te.getEndPoint(), getVehicle());
+		r.params.putAll(te.getParams());
+		return r;
+	}
+
+	private static List<String> toStrings(RouteCalcResult res) {
+		Assert.assertNotNull(res);
+		Assert.assertTrue(res.getError(), res.isCorrect());
+		List<String> list = new ArrayList<>();
+		for (RouteSegmentResult s : res.getList()) {
+			list.add(toString(s) + " " + s.getTurnType());
+		}
+		return list;
+	}
+}
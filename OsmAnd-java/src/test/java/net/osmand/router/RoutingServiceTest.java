@@ -0,0 +1,262 @@
+package net.osmand.router;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.data.LatLon;
+import net.osmand.router.RouteResultPreparation.RouteCalcResult;
+import net.osmand.router.RoutingService.LatencyHistogram;
+import net.osmand.router.RoutingService.RouteRequest;
+import net.osmand.router.RoutingService.RouteTask;
+
+public class RoutingServiceTest {
+
+	private static final long WAIT_MS = 5000;
+
+	private RoutingService service;
+	private final AtomicInteger calls = new AtomicInteger();
+	private CountDownLatch started;
+	private CountDownLatch release;
+	private volatile IOException error;
+
+	// 1 worker and 1 place in queue, calculation waits for release and ignores cancel flag till then
+	@Before
+	public void setUp() {
+		started = new CountDownLatch(1);
+		release = new CountDownLatch(1);
+		service = new RoutingService(new RoutePlannerFrontEnd(), new RoutingConfiguration.Builder(),
+				new BinaryMapIndexReader[0], 1, 1, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "RoutingServiceTest");
+						t.setDaemon(true);
+						return t;
+					}
+				}) {
+			@Override
+			protected RouteCalcResult calculateRoute(RouteRequest request, RouteCalculationProgress progress)
+					throws IOException, InterruptedException {
+				calls.incrementAndGet();
+				started.countDown();
+				Assert.assertTrue(release.await(WAIT_MS, TimeUnit.MILLISECONDS));
+				if (error != null) {
+					throw error;
+				}
+				return new RouteCalcResult(Collections.singletonList(
+						RoutePlannerFrontEnd.generateStraightLineSegment(10, Arrays.asList(request.start, request.end))));
+			}
+		};
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		service.shutdown();
+	}
+
+	private static RouteRequest request(long timeoutMillis) {
+		RouteRequest r = new RouteRequest(new LatLon(52.0, 4.0), new LatLon(52.01, 4.01), "car");
+		r.timeoutMillis = timeoutMillis;
+		return r;
+	}
+
+	private static void waitFor(Callable<Boolean> condition) throws Exception {
+		long end = System.currentTimeMillis() + WAIT_MS;
+		while (!condition.call()) {
+			Assert.assertTrue(System.currentTimeMillis() < end);
+			Thread.sleep(5);
+		}
+	}
+
+	private RouteTask submitRunning(long timeoutMillis) throws InterruptedException {
+		RouteTask task = service.submit(request(timeoutMillis));
+		Assert.assertTrue(started.await(WAIT_MS, TimeUnit.MILLISECONDS));
+		return task;
+	}
+
+	@Test
+	public void testQueueFullRejected() throws Exception {
+		RouteTask running = submitRunning(0);
+		RouteTask queued = service.submit(request(0));
+		Assert.assertEquals(1, service.getQueueSize());
+		try {
+			service.submit(request(0));
+			Assert.fail();
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+		Assert.assertEquals(1, service.getRejectedCount());
+		release.countDown();
+		Assert.assertTrue(running.get().isCorrect());
+		Assert.assertTrue(queued.get().isCorrect());
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getLatency().getCount() == 2;
+			}
+		});
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(0, service.getFailedCount());
+	}
+
+	@Test
+	public void testExpiredInQueue() throws Exception {
+		submitRunning(0);
+		final RouteTask queued = service.submit(request(50));
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return queued.isDone();
+			}
+		});
+		Assert.assertTrue(queued.isTimedOut());
+		// counted when worker takes task from queue
+		Assert.assertEquals(0, service.getTimedOutCount());
+		release.countDown();
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getTimedOutCount() == 1;
+			}
+		});
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getLatency().getCount() == 1;
+			}
+		});
+		Assert.assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testWatchdogCountsOnWorkerExit() throws Exception {
+		final RouteTask task = submitRunning(50);
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return task.isDone();
+			}
+		});
+		Assert.assertTrue(task.isCancelled());
+		Assert.assertTrue(task.isTimedOut());
+		Assert.assertTrue(task.getProgress().isCancelled);
+		try {
+			task.get();
+			Assert.fail();
+		} catch (CancellationException e) {
+			// expected
+		}
+		// worker is still busy with calculation
+		Assert.assertEquals(1, service.getActiveCount());
+		Assert.assertEquals(0, service.getTimedOutCount());
+		release.countDown();
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getTimedOutCount() == 1;
+			}
+		});
+		Assert.assertEquals(0, service.getCancelledCount());
+		Assert.assertEquals(0, service.getLatency().getCount());
+	}
+
+	@Test
+	public void testCancelledAndFailed() throws Exception {
+		RouteTask task = submitRunning(0);
+		Assert.assertTrue(task.cancel(true));
+		Assert.assertFalse(task.isTimedOut());
+		release.countDown();
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getCancelledCount() == 1;
+			}
+		});
+
+		error = new IOException("test");
+		try {
+			service.route(request(0));
+			Assert.fail();
+		} catch (IOException e) {
+			Assert.assertSame(error, e);
+		}
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return service.getFailedCount() == 1;
+			}
+		});
+		Assert.assertEquals(0, service.getTimedOutCount());
+		Assert.assertEquals(0, service.getLatency().getCount());
+	}
+
+	@Test
+	public void testShutdownCancelsQueuedAndRunning() throws Exception {
+		RouteTask running = submitRunning(0);
+		RouteTask queued = service.submit(request(0));
+		final boolean[] terminated = new boolean[1];
+		Thread shutdown = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				terminated[0] = service.shutdown(WAIT_MS);
+			}
+		});
+		shutdown.start();
+		waitFor(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return running.isCancelled() && queued.isCancelled();
+			}
+		});
+		Assert.assertTrue(running.getProgress().isCancelled);
+		// running calculation is not interrupted, shutdown waits till it stops
+		Assert.assertTrue(shutdown.isAlive());
+		release.countDown();
+		shutdown.join(WAIT_MS);
+		Assert.assertTrue(terminated[0]);
+		Assert.assertEquals(2, service.getCancelledCount());
+		Assert.assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void testLatencyHistogram() throws Exception {
+		final LatencyHistogram h = new LatencyHistogram();
+		Assert.assertEquals(0, h.getPercentile(0.5));
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= 1000; i++) {
+						h.record(i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		Assert.assertEquals(4000, h.getCount());
+		Assert.assertEquals(1000, h.getMax());
+		Assert.assertEquals(500.5, h.getMean(), 1e-9);
+		// 500 is in [256, 512) bucket
+		Assert.assertEquals(511, h.getPercentile(0.5));
+		Assert.assertEquals(1000, h.getPercentile(0.99));
+		Assert.assertEquals(1, h.getPercentile(0));
+	}
+}
@@ -0,0 +1,137 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.runners.Parameterized;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.RouteDataObject;
+import net.osmand.data.LatLon;
+import net.osmand.router.HHRouteDataStructure.NetworkDBPoint;
+import net.osmand.router.RoutingConfiguration.RoutingMemoryLimits;
+import net.osmand.util.MapUtils;
+
+// Common fixture of tests parameterized by test_routing.json entries (without intermediate points):
+// readers of the entry map and Routing_test_archive.obf are opened for every test
+public abstract class RoutingTestBase {
+
+	protected static final String ROUTING_RESOURCES_PATH = "src/test/resources/routing/";
+
+	protected final TestEntry te;
+	protected final List<BinaryMapIndexReader> readers = new ArrayList<>();
+
+	protected RoutingTestBase(TestEntry te) {
+		this.te = te;
+	}
+
+	@Parameterized.Parameters(name = "{index}: {0}")
+	public static Iterable<Object[]> data() throws IOException {
+		Reader reader = new InputStreamReader(Objects.requireNonNull(
+				RoutingTestBase.class.getResourceAsStream("/test_routing.json")));
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		TestEntry[] testEntries = gson.fromJson(reader, TestEntry[].class);
+		ArrayList<Object[]> arrayList = new ArrayList<>();
+		for (TestEntry te : testEntries) {
+			// hanging routing tests don't have expected results
+			if (te.isIgnore() || te.getExpectedResults() == null || !te.getTransitPoint().isEmpty()) {
+				continue;
+			}
+			arrayList.add(new Object[] { te.getTestName(), te });
+		}
+		reader.close();
+		return arrayList;
+	}
+
+	@Before
+	public void openReaders() throws IOException {
+		Map<String, String> params = te.getParams();
+		if (params.containsKey("map")) {
+			File fl = new File(ROUTING_RESOURCES_PATH + params.get("map"));
+			readers.add(new BinaryMapIndexReader(new RandomAccessFile(fl, "r"), fl));
+		}
+		File fl = new File(ROUTING_RESOURCES_PATH + "Routing_test_archive.obf");
+		readers.add(new BinaryMapIndexReader(new RandomAccessFile(fl, "r"), fl));
+	}
+
+	@After
+	public void closeReaders() throws IOException {
+		for (BinaryMapIndexReader r : readers) {
+			r.close();
+		}
+		readers.clear();
+	}
+
+	protected BinaryMapIndexReader[] getReaders() {
+		return readers.toArray(new BinaryMapIndexReader[0]);
+	}
+
+	protected String getVehicle() {
+		Map<String, String> params = te.getParams();
+		return params.containsKey("vehicle") ? params.get("vehicle") : "car";
+	}
+
+	protected RoutingConfiguration createConfig() {
+		RoutingMemoryLimits memoryLimits = new RoutingMemoryLimits(RoutingConfiguration.DEFAULT_MEMORY_LIMIT * 3,
+				RoutingConfiguration.DEFAULT_NATIVE_MEMORY_LIMIT);
+		RoutingConfiguration config = RoutingConfiguration.getDefault().build(getVehicle(), memoryLimits,
+				te.getParams());
+		if (te.getParams().containsKey("heuristicCoefficient")) {
+			config.heuristicCoefficient = Float.parseFloat(te.getParams().get("heuristicCoefficient"));
+		}
+		return config;
+	}
+
+	protected RoutingContext createContext(RoutePlannerFrontEnd fe) {
+		return createContext(fe, createConfig());
+	}
+
+	protected RoutingContext createContext(RoutePlannerFrontEnd fe, RoutingConfiguration config) {
+		RoutingContext ctx = fe.buildRoutingContext(config, null, getReaders(),
+				RoutePlannerFrontEnd.RouteCalculationMode.NORMAL);
+		ctx.leftSideNavigation = false;
+		ctx.calculationProgress = new RouteCalculationProgress();
+		return ctx;
+	}
+
+	protected HHRoutePlanner<NetworkDBPoint> createHHPlanner() {
+		return HHRoutePlanner.create(createContext(new RoutePlannerFrontEnd()));
+	}
+
+	// all points of route geometry
+	protected static List<LatLon> getTrack(List<RouteSegmentResult> route) {
+		List<LatLon> track = new ArrayList<>();
+		for (RouteSegmentResult s : route) {
+			RouteDataObject o = s.getObject();
+			int inc = s.isForwardDirection() ? 1 : -1;
+			for (int i = s.getStartPointIndex(); ; i += inc) {
+				LatLon l = new LatLon(MapUtils.get31LatitudeY(o.getPoint31YTile(i)),
+						MapUtils.get31LongitudeX(o.getPoint31XTile(i)));
+				if (track.isEmpty() || !track.get(track.size() - 1).equals(l)) {
+					track.add(l);
+				}
+				if (i == s.getEndPointIndex()) {
+					break;
+				}
+			}
+		}
+		return track;
+	}
+
+	protected static String toString(RouteSegmentResult s) {
+		return s.getGpxPointIndex() + ": " + (s.getObject().getId() >> 6) + " " + s.getStartPointIndex() + "-"
+				+ s.getEndPointIndex();
+	}
+}
@@ -0,0 +1,181 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteRegion;
+import net.osmand.binary.BinaryMapRouteReaderAdapter.RouteSubregion;
+import net.osmand.binary.RouteDataObject;
+
+public class RoutingTilesCacheTest {
+
+	private File file;
+	private RouteRegion region;
+	private TileReader reader;
+
+	// reader without file structure, every subregion is decoded to one primary road with minor stop in the middle
+	private class TileReader extends BinaryMapIndexReader {
+		final RouteRegion region = createRegion();
+		int loads;
+
+		TileReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+		}
+
+		@Override
+		public List<RouteDataObject> loadRouteIndexData(RouteSubregion rs) throws IOException {
+			loads++;
+			List<RouteDataObject> res = new ArrayList<RouteDataObject>();
+			res.add(road(region, rs.filePointer, 3));
+			return res;
+		}
+
+		@Override
+		public List<List<RouteDataObject>> loadRouteIndexData(List<RouteSubregion> subregions) throws IOException {
+			List<List<RouteDataObject>> res = new ArrayList<List<RouteDataObject>>();
+			for (RouteSubregion rs : subregions) {
+				res.add(loadRouteIndexData(rs));
+			}
+			return res;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("tiles", ".obf");
+		reader = new TileReader(new RandomAccessFile(file, "r"), file);
+		region = reader.region;
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+		file.delete();
+	}
+
+	private static RouteRegion createRegion() {
+		RouteRegion region = new RouteRegion();
+		region.initRouteEncodingRule(0, "highway", "residential");
+		region.initRouteEncodingRule(1, "highway", "stop");
+		region.initRouteEncodingRule(2, "stop", "minor");
+		region.initRouteEncodingRule(3, "highway", "primary");
+		return region;
+	}
+
+	private RouteDataObject road(long id, int type) {
+		return road(region, id, type);
+	}
+
+	private static RouteDataObject road(RouteRegion region, long id, int type) {
+		RouteDataObject ro = new RouteDataObject(region);
+		ro.id = id << 6;
+		ro.types = new int[] { type };
+		ro.pointsX = new int[] { 100, 200, 300 };
+		ro.pointsY = new int[] { 100, 100, 100 };
+		// minor stop sign in the middle point
+		ro.pointTypes = new int[][] { null, { 1, 2 }, null };
+		return ro;
+	}
+
+	private RouteSubregion subregion(long filePointer) {
+		return subregion(region, filePointer);
+	}
+
+	private static RouteSubregion subregion(RouteRegion region, long filePointer) {
+		RouteSubregion s = new RouteSubregion(region);
+		s.filePointer = filePointer;
+		return s;
+	}
+
+	@Test
+	public void testHitMissEviction() throws IOException {
+		RouteSubregion s1 = subregion(100);
+		RouteSubregion s2 = subregion(200);
+		long tileSize = RoutingContext.getEstimatedSize(road(100, 3));
+		RoutingTilesCache cache = new RoutingTilesCache(tileSize);
+
+		List<RouteDataObject> first = cache.loadRouteIndexData(reader, s1);
+		Assert.assertSame(first.get(0), cache.loadRouteIndexData(reader, s1).get(0));
+		Assert.assertEquals(1, reader.loads);
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		cache.loadRouteIndexData(reader, s2);
+		Assert.assertEquals(1, cache.getEvictions());
+		Assert.assertEquals(1, cache.getTilesCount());
+		Assert.assertTrue(cache.getSizeBytes() <= tileSize);
+		// evicted tile is decoded again
+		cache.loadRouteIndexData(reader, s1);
+		Assert.assertEquals(3, reader.loads);
+		Assert.assertEquals(3, cache.getMisses());
+	}
+
+	@Test
+	public void testReadersOfSameFileShareTiles() throws IOException {
+		RoutingTilesCache cache = new RoutingTilesCache(Long.MAX_VALUE);
+		// second reader of the same file (e.g. pool or other context) has its own RouteRegion instance
+		TileReader other = new TileReader(new RandomAccessFile(file, "r"), new File(file.getPath()));
+		try {
+			List<RouteDataObject> first = cache.loadRouteIndexData(reader, subregion(100));
+			List<RouteDataObject> second = cache.loadRouteIndexData(other, subregion(other.region, 100));
+			Assert.assertSame(first.get(0), second.get(0));
+			Assert.assertEquals(1, reader.loads);
+			Assert.assertEquals(0, other.loads);
+			Assert.assertEquals(1, cache.getHits());
+			// types of shared object are resolved in region of the reader which decoded it
+			RouteDataObject ro = second.get(0);
+			Assert.assertEquals("primary", ro.getHighway());
+			Assert.assertEquals(ro.region.findOrCreateRouteType("highway", "primary"), ro.types[0]);
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void testBatchOfOtherReaderUsesCachedTiles() throws IOException {
+		RoutingTilesCache cache = new RoutingTilesCache(Long.MAX_VALUE);
+		TileReader other = new TileReader(new RandomAccessFile(file, "r"), new File(file.getPath()));
+		try {
+			RouteDataObject cached = cache.loadRouteIndexData(reader, subregion(100)).get(0);
+			List<List<RouteDataObject>> batch = cache.loadRouteIndexData(other,
+					Arrays.asList(subregion(other.region, 100), subregion(other.region, 200)));
+			Assert.assertSame(cached, batch.get(0).get(0));
+			Assert.assertSame(other.region, batch.get(1).get(0).region);
+			// only missing tile is decoded by batch
+			Assert.assertEquals(1, other.loads);
+			Assert.assertEquals(1, cache.getHits());
+			Assert.assertEquals(2, cache.getMisses());
+		} finally {
+			other.close();
+		}
+	}
+
+	@Test
+	public void testResultPreparationDoesNotModifyCachedRoad() throws IOException {
+		RoutingTilesCache cache = new RoutingTilesCache(Long.MAX_VALUE);
+		RouteSubregion s = subregion(100);
+		// first request: primary road meets residential one at minor stop, stop sign is removed from its result
+		RouteDataObject cached = cache.loadRouteIndexData(reader, s).get(0);
+		RouteSegmentResult seg = new RouteSegmentResult(cached, 0, 2);
+		seg.attachRoute(1, new RouteSegmentResult(road(1, 0), 0, 2));
+		new RouteResultPreparation().filterMinorStops(seg);
+		Assert.assertArrayEquals(new int[] { 2 }, seg.getObject().getPointTypes(1));
+
+		// second request gets the same cached road with stop sign
+		RouteDataObject next = cache.loadRouteIndexData(reader, s).get(0);
+		Assert.assertSame(cached, next);
+		Assert.assertArrayEquals(new int[] { 1, 2 }, next.getPointTypes(1));
+	}
+}
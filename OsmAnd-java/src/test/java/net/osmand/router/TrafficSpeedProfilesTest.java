@@ -0,0 +1,53 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.util.Calendar;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+public class TrafficSpeedProfilesTest {
+
+	@Test
+	public void testWriteLoadInterpolate() throws Exception {
+		byte[] jam = new byte[TrafficSpeedProfiles.HOURS_IN_WEEK];
+		byte[] closed = new byte[TrafficSpeedProfiles.HOURS_IN_WEEK];
+		for (int i = 0; i < jam.length; i++) {
+			jam[i] = 100;
+		}
+		// Monday 8:00 - 50%
+		jam[8] = 50;
+		TLongObjectHashMap<byte[]> roads = new TLongObjectHashMap<byte[]>();
+		roads.put(10, jam);
+		roads.put(11, jam.clone());
+		roads.put(-12, closed);
+		File file = File.createTempFile("speeds", ".bin");
+		try {
+			TrafficSpeedProfiles.write(file, roads);
+			// equal profiles are stored once: header + 2 profiles + 3 roads
+			Assert.assertEquals(4 + 4 + 2 * TrafficSpeedProfiles.HOURS_IN_WEEK + 4 + 3 * 12, file.length());
+			TrafficSpeedProfiles profiles = TrafficSpeedProfiles.load(file);
+			Assert.assertEquals(3, profiles.size());
+			Assert.assertTrue(profiles.contains(-12));
+			Assert.assertFalse(profiles.contains(13));
+			Assert.assertEquals(1, profiles.getSpeedFactor(13, 0), 1e-6);
+			Assert.assertEquals(0, profiles.getSpeedFactor(-12, 8 * 3600), 1e-6);
+			Assert.assertEquals(0.5, profiles.getSpeedFactor(10, 8 * 3600), 1e-6);
+			Assert.assertEquals(0.75, profiles.getSpeedFactor(11, 7 * 3600 + 1800), 1e-6);
+			Assert.assertEquals(0.75, profiles.getSpeedFactor(11, 8 * 3600 + 1800 + TrafficSpeedProfiles.SECONDS_IN_WEEK), 1e-6);
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSecondOfWeek() {
+		Calendar c = Calendar.getInstance();
+		c.set(2024, Calendar.JANUARY, 1, 8, 30, 15); // Monday
+		Assert.assertEquals(8 * 3600 + 30 * 60 + 15, TrafficSpeedProfiles.getSecondOfWeek(c.getTimeInMillis()));
+		c.set(2024, Calendar.JANUARY, 7, 0, 0, 1); // Sunday
+		Assert.assertEquals(6 * 24 * 3600 + 1, TrafficSpeedProfiles.getSecondOfWeek(c.getTimeInMillis()));
+	}
+}
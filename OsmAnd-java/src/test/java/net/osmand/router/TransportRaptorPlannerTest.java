@@ -0,0 +1,151 @@
+package net.osmand.router;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import gnu.trove.list.array.TIntArrayList;
+import net.osmand.data.LatLon;
+import net.osmand.data.TransportRoute;
+import net.osmand.data.TransportSchedule;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+public class TransportRaptorPlannerTest {
+
+	private static final double LAT = 50;
+
+	private long ids = 1;
+
+	@Test
+	public void testParetoByChanges() throws Exception {
+		TransportStop a = stop(0), b = stop(0.05), c = stop(0.1), d = stop(0.15);
+		// direct route with long detour and two routes with change at c
+		TransportRoute direct = route(null, a, stop(0.05, 0.3), stop(0.15, 0.3), d);
+		TransportRoute first = route(null, a, b, c);
+		TransportRoute second = route(null, c, d);
+		List<TransportRouteResult> res = search(new HashMap<String, String>(), new LatLon(LAT, 0), new LatLon(LAT, 0.15),
+				direct, first, second);
+		Assert.assertEquals(2, res.size());
+		// the fastest first
+		Assert.assertEquals(2, res.get(0).getSegments().size());
+		Assert.assertSame(first, res.get(0).getSegments().get(0).route);
+		Assert.assertSame(second, res.get(0).getSegments().get(1).route);
+		Assert.assertEquals(1, res.get(1).getSegments().size());
+		Assert.assertSame(direct, res.get(1).getSegments().get(0).route);
+		Assert.assertTrue(res.get(0).getRouteTime() < res.get(1).getRouteTime());
+	}
+
+	@Test
+	public void testScheduleWaitsForTrip() throws Exception {
+		TransportStop a = stop(0), b = stop(0.05), c = stop(0.1);
+		TransportSchedule early = new TransportSchedule();
+		// departures 11:00 and 12:30 (10 seconds based), 5 minutes between stops
+		early.tripIntervals.add(11 * 360);
+		early.tripIntervals.add(90 * 6);
+		early.avgStopIntervals.add(30);
+		early.avgStopIntervals.add(30);
+		TransportRoute r = route(early, a, b, c);
+		Map<String, String> params = new HashMap<String, String>();
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, params);
+		cfg.useSchedule = true;
+		List<TransportRouteResult> res = search(cfg, new LatLon(LAT, 0), new LatLon(LAT, 0.1), r);
+		Assert.assertEquals(1, res.size());
+		TransportRoutePlanner.TransportRouteResultSegment sg = res.get(0).getSegments().get(0);
+		Assert.assertEquals(0, sg.start);
+		Assert.assertEquals(2, sg.end);
+		Assert.assertEquals(12 * 360 + 30 * 6, sg.depTime);
+		// wait from 12:00 till 12:30 and 10 minutes ride
+		Assert.assertEquals(40 * 60, res.get(0).getRouteTime(), 1);
+	}
+
+	@Test
+	public void testTransfersAwayFromEquator() throws Exception {
+		// 270 m along the parallel at 70 degrees
+		double lat = 70;
+		double dlon = 270 / MapUtils.getDistance(lat, 10, lat, 11);
+		TransportStop a = new TransportStop(), b = new TransportStop();
+		a.setId(ids++);
+		a.setLocation(lat, 10);
+		b.setId(ids++);
+		b.setLocation(lat, 10 + dlon);
+		TransportRoute first = route(null, a, stop(0.05));
+		TransportRoute second = route(null, b, stop(0.1));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new HashMap<String, String>());
+		cfg.walkChangeRadius = 300;
+		TransportRaptorNetwork network = new TransportRaptorNetwork(cfg, Arrays.asList(first, second), 0, 0,
+				Integer.MAX_VALUE, Integer.MAX_VALUE);
+		int sa = network.getRouteStop(0, 0), sb = network.getRouteStop(1, 0);
+		Assert.assertSame(a, network.stops[sa]);
+		Assert.assertSame(b, network.stops[sb]);
+		TIntArrayList found = network.findStops(network.stopX31[sa], network.stopY31[sa], 300, new TIntArrayList());
+		Assert.assertTrue(found.contains(sb));
+		boolean transfer = false;
+		for (int i = network.transferOffsets[sa]; i < network.transferOffsets[sa + 1]; i++) {
+			if (network.transferStops[i] == sb) {
+				Assert.assertEquals(270, network.transferDist[i], 3);
+				transfer = true;
+			}
+		}
+		Assert.assertTrue(transfer);
+	}
+
+	@Test
+	public void testTransfersNotChained() throws Exception {
+		// 200 m between s, n and m: m is within walk change radius of n but not of s
+		double dlon = 200 / MapUtils.getDistance(LAT, 0, LAT, 1);
+		TransportStop a = stop(0), s = stop(0.1), n = stop(0.1 + dlon), m = stop(0.1 + 2 * dlon);
+		// fast ride to s (walk to n is faster than ride to n) and slow ride to n
+		TransportRoute fast = route(null, a, s);
+		TransportRoute slow = route(null, a, stop(0.3, 0.1), n);
+		TransportRoute other = route(null, m, stop(0.2));
+		TransportRoutingConfiguration cfg = new TransportRoutingConfiguration(null, new HashMap<String, String>());
+		cfg.walkRadius = 100;
+		cfg.walkChangeRadius = 300;
+		List<TransportRouteResult> res = search(cfg, new LatLon(LAT, 0), m.getLocation(), fast, slow, other);
+		Assert.assertEquals(1, res.size());
+		List<TransportRoutePlanner.TransportRouteResultSegment> segments = res.get(0).getSegments();
+		Assert.assertEquals(1, segments.size());
+		Assert.assertSame(slow, segments.get(0).route);
+		Assert.assertSame(n, segments.get(0).getEnd());
+		Assert.assertEquals(200, res.get(0).getFinishWalkDist(), 3);
+	}
+
+	private List<TransportRouteResult> search(Map<String, String> params, LatLon start, LatLon end,
+	                                          TransportRoute... routes) throws Exception {
+		return search(new TransportRoutingConfiguration(null, params), start, end, routes);
+	}
+
+	private List<TransportRouteResult> search(TransportRoutingConfiguration cfg, LatLon start, LatLon end,
+	                                          TransportRoute... routes) throws Exception {
+		TransportRoutingContext ctx = new TransportRoutingContext(cfg, null);
+		TransportRaptorNetwork network = new TransportRaptorNetwork(cfg, Arrays.asList(routes), 0, 0,
+				Integer.MAX_VALUE, Integer.MAX_VALUE);
+		return new TransportRaptorPlanner().search(ctx, network, start, end);
+	}
+
+	private TransportStop stop(double lon) {
+		return stop(0, lon);
+	}
+
+	private TransportStop stop(double dlat, double lon) {
+		TransportStop s = new TransportStop();
+		s.setId(ids++);
+		s.setLocation(LAT + dlat, lon);
+		return s;
+	}
+
+	private TransportRoute route(TransportSchedule schedule, TransportStop... stops) {
+		TransportRoute r = new TransportRoute();
+		r.setId(ids++);
+		r.setType("bus");
+		r.setForwardStops(new ArrayList<TransportStop>(Arrays.asList(stops)));
+		r.setSchedule(schedule);
+		return r;
+	}
+}
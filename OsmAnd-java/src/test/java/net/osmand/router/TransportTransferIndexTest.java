@@ -0,0 +1,190 @@
+package net.osmand.router;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.osmand.binary.BinaryMapIndexReader;
+import net.osmand.binary.BinaryMapIndexReader.SearchRequest;
+import net.osmand.binary.BinaryMapTransportReaderAdapter.TransportIndex;
+import net.osmand.data.TransportStop;
+import net.osmand.util.MapUtils;
+
+public class TransportTransferIndexTest {
+
+	private static final int Z = BinaryMapIndexReader.TRANSPORT_STOP_ZOOM;
+	private static final int RADIUS = 300;
+	// bbox of index around X, Y in stop zoom tiles
+	private static final int BOX = 5000;
+	private static final int X = (int) MapUtils.getTileNumberX(Z, 4.0);
+	private static final int Y = (int) MapUtils.getTileNumberY(Z, 52.0);
+
+	private File dir;
+	private File obf;
+	private StopsReader reader;
+	private TransportIndex ind;
+
+	// reader without file structure, returns stops in line: 0 - center, 1 - ~90 m, 2 - ~600 m, 3 - ~3 km
+	private static class StopsReader extends BinaryMapIndexReader {
+		int searches;
+
+		StopsReader(RandomAccessFile raf, File file) throws IOException {
+			super(raf, file, false);
+		}
+
+		@Override
+		public List<TransportStop> searchTransportIndex(TransportIndex index, SearchRequest<TransportStop> req) {
+			searches++;
+			List<TransportStop> res = new ArrayList<TransportStop>();
+			int[] dx = { 0, 60, 400, 2000 };
+			for (int i = 0; i < dx.length; i++) {
+				TransportStop s = new TransportStop();
+				s.setId((long) (dx.length - i));
+				s.setLocation(Z, X + dx[i], Y);
+				res.add(s);
+			}
+			return res;
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("transfers").toFile();
+		obf = new File(dir, "test.obf");
+		writeObf(10);
+		reader = new StopsReader(new RandomAccessFile(obf, "r"), obf);
+		ind = new TransportIndex() {
+			@Override
+			public int getLeft() {
+				return X - BOX;
+			}
+
+			@Override
+			public int getRight() {
+				return X + BOX;
+			}
+
+			@Override
+			public int getTop() {
+				return Y - BOX;
+			}
+
+			@Override
+			public int getBottom() {
+				return Y + BOX;
+			}
+		};
+		ind.setFilePointer(100);
+		TransportTransferIndex.clearCache();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		TransportTransferIndex.clearCache();
+		reader.close();
+		for (File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private void writeObf(int size) throws IOException {
+		FileOutputStream fous = new FileOutputStream(obf);
+		fous.write(new byte[size]);
+		fous.close();
+	}
+
+	private static List<Long> transfers(TransportTransferIndex index, long stopId) {
+		int pos = index.findStop(stopId);
+		Assert.assertTrue(pos >= 0);
+		List<Long> res = new ArrayList<Long>();
+		for (int j = index.getTransfersStart(pos); j < index.getTransfersEnd(pos); j++) {
+			res.add(index.getTransferStopId(j));
+		}
+		return res;
+	}
+
+	private static void checkTransfers(TransportTransferIndex index) {
+		Assert.assertEquals(RADIUS, index.getRadius());
+		// stops are sorted by id, center stop (id 4) has itself and the closest one (id 3) in radius
+		List<Long> center = transfers(index, 4);
+		Assert.assertEquals(2, center.size());
+		Assert.assertTrue(center.contains(4L) && center.contains(3L));
+		Assert.assertEquals(1, transfers(index, 1).size());
+		Assert.assertEquals(-1, index.findStop(5));
+		int pos = index.findStop(4);
+		for (int j = index.getTransfersStart(pos); j < index.getTransfersEnd(pos); j++) {
+			if (index.getTransferStopId(j) == 3) {
+				Assert.assertEquals(X + 60 << (31 - Z), index.getTransferX31(j));
+				Assert.assertEquals(Y << (31 - Z), index.getTransferY31(j));
+				double dist = MapUtils.squareRootDist31(X << (31 - Z), Y << (31 - Z), X + 60 << (31 - Z), Y << (31 - Z));
+				Assert.assertEquals(dist, index.getTransferDist(j), 0.01);
+				Assert.assertTrue(dist > 50 && dist < RADIUS);
+			}
+		}
+	}
+
+	@Test
+	public void testBuildWriteAndMappedReload() throws IOException {
+		TransportTransferIndex index = TransportTransferIndex.getIndex(dir, reader, ind, RADIUS);
+		checkTransfers(index);
+		Assert.assertEquals(1, reader.searches);
+		Assert.assertTrue(new File(dir, "test.obf.100.transfers").exists());
+		// memory cache
+		Assert.assertSame(index, TransportTransferIndex.getIndex(dir, reader, ind, RADIUS));
+
+		// mapped from file without reading stops
+		TransportTransferIndex.clearCache();
+		TransportTransferIndex mapped = TransportTransferIndex.getIndex(dir, reader, ind, RADIUS);
+		Assert.assertNotSame(index, mapped);
+		Assert.assertEquals(1, reader.searches);
+		checkTransfers(mapped);
+		// smaller radius is served by the same index
+		Assert.assertSame(mapped, TransportTransferIndex.getIndex(dir, reader, ind, RADIUS / 2));
+		Assert.assertEquals(1, reader.searches);
+	}
+
+	@Test
+	public void testInvalidation() throws IOException {
+		TransportTransferIndex.getIndex(dir, reader, ind, RADIUS);
+		Assert.assertEquals(1, reader.searches);
+
+		// obf size changed
+		writeObf(20);
+		TransportTransferIndex.clearCache();
+		checkTransfers(TransportTransferIndex.getIndex(dir, reader, ind, RADIUS));
+		Assert.assertEquals(2, reader.searches);
+
+		// obf date changed (cached in memory index is checked as well)
+		Assert.assertTrue(obf.setLastModified(obf.lastModified() - 60000));
+		checkTransfers(TransportTransferIndex.getIndex(dir, reader, ind, RADIUS));
+		Assert.assertEquals(3, reader.searches);
+
+		// bigger radius
+		TransportTransferIndex bigger = TransportTransferIndex.getIndex(dir, reader, ind, 1000);
+		Assert.assertEquals(4, reader.searches);
+		Assert.assertEquals(1000, bigger.getRadius());
+		Assert.assertEquals(3, transfers(bigger, 4).size());
+	}
+
+	@Test
+	public void testCoversFallback() throws IOException {
+		TransportTransferIndex index = TransportTransferIndex.getIndex(dir, reader, ind, RADIUS);
+		int pz = 31 - Z;
+		int radius31 = 1000 << pz;
+		Assert.assertTrue(index.covers(X << pz, Y << pz, radius31));
+		// stops of neighbour index could be within radius, transfers are searched spatially
+		Assert.assertFalse(index.covers(X - BOX + 500 << pz, Y << pz, radius31));
+		Assert.assertFalse(index.covers(X << pz, Y + BOX << pz, radius31));
+		Assert.assertFalse(index.covers(X + 2 * BOX << pz, Y << pz, radius31));
+	}
+}